@@ -0,0 +1,280 @@
+package kr.co.kornic.smart.myapplication;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs {@link VuzixSpeechClient} calls on a worker thread instead of the caller's.
+ *
+ * Every {@link VuzixSpeechClient} method is a {@link android.content.ContentResolver} IPC, and
+ * creating one queries the provider. This facade queues each call on a single worker, in the
+ * order they are made, and returns a {@link Future}; the optional {@link Callback} is called on
+ * the main thread. The client itself is created by {@link #load} or by the first call that needs
+ * it, so an activity can start the camera preview while its vocabulary is being registered.
+ *
+ * If creating the client fails, that call fails and the next one tries again.
+ */
+public final class AsyncSpeechClient
+{
+    /**
+     * Receives the outcome of one call, on the main thread.
+     */
+    public interface Callback<T>
+    {
+        void onResult(T result);
+
+        void onError(Exception error);
+    }
+
+    interface ClientFactory
+    {
+        VuzixSpeechClient create() throws Exception;
+    }
+
+    abstract static class Operation<T>
+    {
+        abstract T run(VuzixSpeechClient client) throws Exception;
+    }
+
+    private final ClientFactory mFactory;
+    private final Executor mCallbackExecutor;
+    private final ExecutorService mWorker;
+    private VuzixSpeechClient mClient; // Worker thread only
+    private boolean mClosed; // Guarded by this
+
+    public AsyncSpeechClient(final Activity activity)
+    {
+        this(new ClientFactory()
+        {
+            @Override
+            public VuzixSpeechClient create() throws RemoteException
+            {
+                return new VuzixSpeechClient(activity);
+            }
+        }, mainThreadExecutor());
+    }
+
+    AsyncSpeechClient(ClientFactory factory, Executor callbackExecutor)
+    {
+        mFactory = factory;
+        mCallbackExecutor = callbackExecutor;
+        mWorker = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                return new Thread(r, "SpeechClient");
+            }
+        });
+    }
+
+    /**
+     * Creates the client, loading the vocabulary, if that hasn't been done yet.
+     */
+    public Future<Void> load(Callback<Void> callback)
+    {
+        return submit(new Operation<Void>()
+        {
+            @Override
+            Void run(VuzixSpeechClient client)
+            {
+                return null;
+            }
+        }, callback);
+    }
+
+    public Future<Boolean> insertPhrase(final String phrase, final String substitution, Callback<Boolean> callback)
+    {
+        return submit(new Operation<Boolean>()
+        {
+            @Override
+            Boolean run(VuzixSpeechClient client)
+            {
+                return client.insertPhrase(phrase, substitution);
+            }
+        }, callback);
+    }
+
+    public Future<Boolean> insertIntentPhrase(final String phrase, final String intentLabel, Callback<Boolean> callback)
+    {
+        return submit(new Operation<Boolean>()
+        {
+            @Override
+            Boolean run(VuzixSpeechClient client) throws RemoteException
+            {
+                return client.insertIntentPhrase(phrase, intentLabel);
+            }
+        }, callback);
+    }
+
+    public Future<Boolean> deletePhrase(final String phrase, Callback<Boolean> callback)
+    {
+        return submit(new Operation<Boolean>()
+        {
+            @Override
+            Boolean run(VuzixSpeechClient client)
+            {
+                return client.deletePhrase(phrase);
+            }
+        }, callback);
+    }
+
+    public Future<Boolean> defineIntent(final String label, Intent intent, Callback<Boolean> callback)
+    {
+        final Intent copy = new Intent(intent);
+        return submit(new Operation<Boolean>()
+        {
+            @Override
+            Boolean run(VuzixSpeechClient client) throws RemoteException
+            {
+                return client.defineIntent(label, copy);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see VuzixSpeechClient#getPhrases()
+     */
+    public Future<Map<String, String>> getPhrases(Callback<Map<String, String>> callback)
+    {
+        return submit(new Operation<Map<String, String>>()
+        {
+            @Override
+            Map<String, String> run(VuzixSpeechClient client)
+            {
+                return client.getPhrases();
+            }
+        }, callback);
+    }
+
+    /**
+     * @see VuzixSpeechClient#syncVocabulary
+     */
+    public Future<VocabularyDiff> syncVocabulary(Map<String, String> desiredPhrases, Map<String, Intent> desiredIntents,
+                                                 Callback<VocabularyDiff> callback)
+    {
+        // Copied now: the caller may change its maps before the worker gets to them
+        final LinkedHashMap<String, String> phrases = new LinkedHashMap<>(desiredPhrases);
+        final HashMap<String, Intent> intents = new HashMap<>(desiredIntents.size() + 16);
+        for (Map.Entry<String, Intent> entry : desiredIntents.entrySet())
+            intents.put(entry.getKey(), new Intent(entry.getValue()));
+        return submit(new Operation<VocabularyDiff>()
+        {
+            @Override
+            VocabularyDiff run(VuzixSpeechClient client) throws RemoteException
+            {
+                return client.syncVocabulary(phrases, intents);
+            }
+        }, callback);
+    }
+
+    public Future<String> dump(Callback<String> callback)
+    {
+        return submit(new Operation<String>()
+        {
+            @Override
+            String run(VuzixSpeechClient client)
+            {
+                return client.dump();
+            }
+        }, callback);
+    }
+
+    /**
+     * Closes the client once the calls already queued have run, then stops the worker. Later
+     * calls are rejected. Closing again does nothing.
+     */
+    public synchronized void close()
+    {
+        if (mClosed)
+            return;
+        mClosed = true;
+        mWorker.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (mClient != null)
+                    mClient.close();
+                mClient = null;
+            }
+        });
+        mWorker.shutdown();
+    }
+
+    /**
+     * Queues {@code operation} after every call made so far.
+     *
+     * @param callback May be null
+     */
+    <T> Future<T> submit(final Operation<T> operation, final Callback<T> callback)
+    {
+        return mWorker.submit(new Callable<T>()
+        {
+            @Override
+            public T call() throws Exception
+            {
+                final T result;
+                try
+                {
+                    if (mClient == null)
+                        mClient = mFactory.create();
+                    result = operation.run(mClient);
+                }
+                catch (final Exception e)
+                {
+                    if (callback != null)
+                    {
+                        mCallbackExecutor.execute(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                callback.onError(e);
+                            }
+                        });
+                    }
+                    throw e;
+                }
+                if (callback != null)
+                {
+                    mCallbackExecutor.execute(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            callback.onResult(result);
+                        }
+                    });
+                }
+                return result;
+            }
+        });
+    }
+
+    private static Executor mainThreadExecutor()
+    {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                handler.post(command);
+            }
+        };
+    }
+}
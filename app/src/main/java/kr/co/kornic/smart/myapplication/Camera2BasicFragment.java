@@ -17,19 +17,19 @@ import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
-import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.Image;
 import android.media.ImageReader;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v13.app.FragmentCompat;
 import android.support.v4.content.ContextCompat;
@@ -44,16 +44,15 @@ import android.view.ViewGroup;
 import android.widget.Toast;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Camera2BasicFragment extends Fragment implements View.OnClickListener, FragmentCompat.OnRequestPermissionsResultCallback
 {
@@ -99,6 +98,16 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
      */
     private static final int STATE_PICTURE_TAKEN = 4;
 
+    /**
+     * Default number of still images that may be in flight between the camera and the disk.
+     */
+    private static final int DEFAULT_IMAGE_POOL_SIZE = 4;
+
+    /**
+     * How old the last preview result may be for its 3A state to be trusted by the fast shutter.
+     */
+    private static final long FAST_SHUTTER_MAX_RESULT_AGE_NS = 200000000L;
+
     /**
      * Max preview width that is guaranteed by Camera2 API
      */
@@ -109,6 +118,13 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
      */
     private static final int MAX_PREVIEW_HEIGHT = 1080;
 
+    /**
+     * Max size of the YUV copies that best-of-burst frames are scored on. Larger copies see finer
+     * detail but take longer to score.
+     */
+    private static final int SCORE_MAX_WIDTH = 1280;
+    private static final int SCORE_MAX_HEIGHT = 720;
+
     /**
      * {@link TextureView.SurfaceTextureListener} handles several lifecycle events on a
      * {@link TextureView}.
@@ -120,6 +136,7 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
         @Override
         public void onSurfaceTextureAvailable(SurfaceTexture texture, int width, int height)
         {
+            mSurfaceTexture = texture;
             openCamera(width, height);
         }
 
@@ -130,6 +147,11 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
 
         @Override
         public boolean onSurfaceTextureDestroyed(SurfaceTexture texture) {
+            // Across a configuration change the camera keeps streaming into this texture, which
+            // is handed to the next TextureView; otherwise the TextureView releases it.
+            if (mRetainingPreview)
+                return false;
+            mSurfaceTexture = null;
             return true;
         }
 
@@ -150,6 +172,23 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
      */
     private AutoFitTextureView mTextureView;
 
+    /**
+     * The {@link SurfaceTexture} the preview is streamed into. It outlives {@link #mTextureView}
+     * across configuration changes.
+     */
+    private SurfaceTexture mSurfaceTexture;
+
+    /**
+     * Set in {@link #onPause()} when the activity is being recreated for a configuration change.
+     * The camera is then left open and only the view is replaced.
+     */
+    private boolean mRetainingPreview;
+
+    /**
+     * {@link SystemClock#elapsedRealtime()} when the configuration change started.
+     */
+    private long mRetainStartMillis;
+
     /**
      * A {@link CameraCaptureSession } for camera preview.
      */
@@ -173,25 +212,23 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
         @Override
         public void onOpened(@NonNull CameraDevice cameraDevice)
         {
-            // This method is called when the camera is opened.  We start camera preview here.
-            mCameraOpenCloseLock.release();
+            // This method is called when the camera is opened. The lifecycle decides whether to
+            // start the preview or to close it again.
             mCameraDevice = cameraDevice;
-            createCameraPreviewSession();
+            mLifecycle.onOpened();
         }
 
         @Override
         public void onDisconnected(@NonNull CameraDevice cameraDevice) {
-            mCameraOpenCloseLock.release();
-            cameraDevice.close();
-            mCameraDevice = null;
+            mCameraDevice = cameraDevice;
+            mLifecycle.onLost();
         }
 
         @Override
         public void onError(@NonNull CameraDevice cameraDevice, int error)
         {
-            mCameraOpenCloseLock.release();
-            cameraDevice.close();
-            mCameraDevice = null;
+            mCameraDevice = cameraDevice;
+            mLifecycle.onLost();
             Activity activity = getActivity();
             if (null != activity)
             {
@@ -199,6 +236,12 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
             }
         }
 
+        @Override
+        public void onClosed(@NonNull CameraDevice cameraDevice)
+        {
+            mLifecycle.onClosed();
+        }
+
     };
 
     /**
@@ -216,11 +259,61 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
      */
     private ImageReader mImageReader;
 
+    /**
+     * The size of the JPEG stills, chosen by {@link #setUpCameraOutputs}.
+     */
+    private Size mStillSize;
+
+    /**
+     * Number of images {@link #mImageReader} can hold, which is also the capacity of
+     * {@link #mSaveQueue}.
+     */
+    private int mImagePoolSize = DEFAULT_IMAGE_POOL_SIZE;
+
+    /**
+     * Number of stills each {@link #takePicture} captures to keep only the sharpest, or 1 to
+     * capture a single still.
+     */
+    private int mBestOfFrames = 1;
+
+    /**
+     * The size of the YUV copies the best-of-burst frames are scored on, or null when
+     * {@link #mBestOfFrames} is 1.
+     */
+    private Size mScoreSize;
+
+    /**
+     * An {@link ImageReader} receiving a YUV copy of each best-of-burst still, and the scorer and
+     * luma buffer it uses. Only accessed on the thread of {@link #mBackgroundHandler}.
+     */
+    private ImageReader mScoreReader;
+    private SharpnessScorer mSharpnessScorer;
+    private byte[] mScoreLuma;
+
+    /**
+     * Saves still images on their own thread. Every capture reserves a slot here first, so the
+     * {@link ImageReader} is never asked for more images than it can hold. Created with the
+     * reader each time the camera opens.
+     */
+    private ImageSaveQueue mSaveQueue;
+
     /**
      * This is the output file for our picture.
      */
     private File mFile;
 
+    /**
+     * Tags of the still captures in flight, keyed by sensor timestamp. A tag is either the
+     * {@link CaptureScheduler.Request} of a single picture or the output {@link File} of a burst
+     * frame.
+     */
+    private final ConcurrentHashMap<Long, Object> mPendingCaptures = new ConcurrentHashMap<>();
+
+    /**
+     * Number of burst frames that were not captured because the save queue was full.
+     */
+    private final AtomicInteger mDroppedFrames = new AtomicInteger();
+
     /**
      * This a callback object for the {@link ImageReader}. "onImageAvailable" will be called when a
      * still image is ready to be saved.
@@ -230,7 +323,59 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
 
         @Override
         public void onImageAvailable(ImageReader reader) {
-            mBackgroundHandler.post(new ImageSaver(reader.acquireNextImage(), mFile));
+            Image image = reader.acquireNextImage();
+            long timestamp = image.getTimestamp();
+            Object tag = mPendingCaptures.get(timestamp);
+            if (tag instanceof BestShot)
+            {
+                // Kept until the whole burst has been scored
+                ((BestShot) tag).mSelector.addFrame(timestamp, image);
+                return;
+            }
+            mPendingCaptures.remove(timestamp);
+            if (tag instanceof File)
+                mSaveQueue.submit(new ImageSaver(image, (File) tag, null));
+            else
+            {
+                CaptureScheduler.Request request = (CaptureScheduler.Request) tag;
+                if (null != request)
+                    mCaptureLatency.mark(request.getId(), CaptureLatencyTracker.Stage.IMAGE_AVAILABLE);
+                mSaveQueue.submit(new ImageSaver(image, mFile, request));
+            }
+        }
+
+    };
+
+    /**
+     * Scores the YUV copy of each best-of-burst still and hands the score to the still's
+     * {@link BestShot}. The luma is copied out first, so the image goes back to the reader at once.
+     */
+    private final ImageReader.OnImageAvailableListener mOnScoreImageAvailableListener
+            = new ImageReader.OnImageAvailableListener() {
+
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image = reader.acquireNextImage();
+            long timestamp = image.getTimestamp();
+            double score;
+            try
+            {
+                Image.Plane luma = image.getPlanes()[0];
+                ByteBuffer buffer = luma.getBuffer();
+                int length = buffer.remaining();
+                if (null == mScoreLuma || mScoreLuma.length < length)
+                    mScoreLuma = new byte[length];
+                buffer.get(mScoreLuma, 0, length);
+                score = mSharpnessScorer.score(mScoreLuma, image.getWidth(), image.getHeight(), luma.getRowStride());
+            }
+            finally
+            {
+                image.close();
+            }
+
+            Object tag = mPendingCaptures.get(timestamp);
+            if (tag instanceof BestShot)
+                ((BestShot) tag).mSelector.addScore(timestamp, score);
         }
 
     };
@@ -246,16 +391,162 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
     private CaptureRequest mPreviewRequest;
 
     /**
-     * The current state of camera state for taking pictures.
+     * The current state of camera state for taking pictures. Only accessed on the thread of
+     * {@link #mBackgroundHandler}.
      *
      * @see #mCaptureCallback
      */
     private int mState = STATE_PREVIEW;
 
     /**
-     * A {@link Semaphore} to prevent the app from exiting before closing the camera.
+     * The request whose focus lock and exposure {@link #mState} is tracking. Only accessed on the
+     * thread of {@link #mBackgroundHandler}.
+     */
+    private CaptureScheduler.Request mCurrentRequest;
+
+    /**
+     * Whether {@link #lockFocus} may skip the focus lock and precapture sequence when the preview
+     * already reports 3A as converged.
+     */
+    private volatile boolean mFastShutterEnabled = true;
+
+    /**
+     * Whether the capture in progress triggered a focus lock, which {@link #unlockFocus} must
+     * cancel. The fast shutter doesn't, and cancelling would make continuous AF scan again. Only
+     * accessed on the thread of {@link #mBackgroundHandler}.
+     */
+    private boolean mFocusLocked;
+
+    /**
+     * AF state of the latest preview result, or -1 if the device doesn't report it. Only accessed
+     * on the thread of {@link #mBackgroundHandler}, like the fields below.
+     */
+    private int mPreviewAfState = -1;
+
+    /**
+     * AE state of the latest preview result, or -1 if the device doesn't report it.
+     */
+    private int mPreviewAeState = -1;
+
+    /**
+     * {@link SystemClock#elapsedRealtimeNanos()} when the latest preview result arrived, or 0 if
+     * none has arrived since the session was created.
+     */
+    private long mPreviewResultNanos;
+
+    /**
+     * Number of captures that fired the still request directly, and that went through the focus
+     * lock first.
+     */
+    private final AtomicInteger mFastShutterCount = new AtomicInteger();
+    private final AtomicInteger mFullShutterCount = new AtomicInteger();
+
+    /**
+     * Starts scheduled captures on the background thread, where the capture state machine runs.
+     */
+    private final CaptureScheduler.Driver mCaptureDriver = new CaptureScheduler.Driver()
+    {
+        @Override
+        public void startCapture(final CaptureScheduler.Request request)
+        {
+            Handler handler = mBackgroundHandler;
+            if (null == handler || !handler.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    lockFocus(request);
+                }
+            }))
+                request.finish(false);
+        }
+    };
+
+    /**
+     * Serializes {@link #takePicture()} triggers and pipelines them: the next focus lock starts
+     * as soon as the previous still has been exposed, while its JPEG is still being saved.
+     */
+    private final CaptureScheduler mCaptureScheduler = new CaptureScheduler(mCaptureDriver);
+
+    /**
+     * Times each stage of the scheduled captures, from the trigger to the saved file.
+     */
+    private final CaptureLatencyTracker mCaptureLatency = new CaptureLatencyTracker(16);
+
+    /**
+     * {@link CameraManager} used to open the camera.
+     */
+    private CameraManager mCameraManager;
+
+    /**
+     * Carries out the steps {@link #mLifecycle} decides on, on the background thread.
+     */
+    private final CameraLifecycle.Driver mLifecycleDriver = new CameraLifecycle.Driver()
+    {
+        @Override
+        public void openCamera()
+        {
+            mBackgroundHandler.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    openCameraDevice();
+                }
+            });
+        }
+
+        @Override
+        public void createSession()
+        {
+            mBackgroundHandler.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    createCameraPreviewSession();
+                }
+            });
+        }
+
+        @Override
+        public void closeCamera()
+        {
+            mBackgroundHandler.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    closeCameraDevice();
+                }
+            });
+        }
+
+        @Override
+        public void onCameraIdle()
+        {
+            if (mDestroyed)
+                stopBackgroundThread();
+        }
+    };
+
+    /**
+     * Opens and closes the camera without blocking the UI thread. Replaces the semaphore the UI
+     * thread used to wait on for up to 2.5 seconds.
+     */
+    private final CameraLifecycle mLifecycle = new CameraLifecycle(mLifecycleDriver);
+
+    /**
+     * Set once the fragment is destroyed, so the background thread stops when the camera is
+     * closed.
+     */
+    private volatile boolean mDestroyed;
+
+    /**
+     * Whether the first preview frame of the current session was reported to {@link #mLifecycle}.
+     * Only accessed on the thread of {@link #mBackgroundHandler}.
      */
-    private Semaphore mCameraOpenCloseLock = new Semaphore(1);
+    private boolean mFirstFrameReported;
 
     /**
      * Whether the current camera device supports Flash or not.
@@ -279,15 +570,28 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
             switch (mState)
             {
                 case STATE_PREVIEW:
+                {
+                    // Remember the 3A state for the fast shutter.
+                    Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
+                    Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
+                    mPreviewAfState = afState == null ? -1 : afState;
+                    mPreviewAeState = aeState == null ? -1 : aeState;
+                    mPreviewResultNanos = SystemClock.elapsedRealtimeNanos();
                     break;
+                }
 
                 case STATE_WAITING_LOCK:
                 {
                     Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
                     if (afState == null)
+                    {
+                        markStage(CaptureLatencyTracker.Stage.FOCUS_LOCKED);
+                        mState = STATE_PICTURE_TAKEN;
                         captureStillPicture();
+                    }
 
                     else if (CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED == afState || CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED == afState) {
+                        markStage(CaptureLatencyTracker.Stage.FOCUS_LOCKED);
                         // CONTROL_AE_STATE can be null on some devices
                         Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
                         if (aeState == null || aeState == CaptureResult.CONTROL_AE_STATE_CONVERGED) {
@@ -336,6 +640,12 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
                                        @NonNull CaptureRequest request,
                                        @NonNull TotalCaptureResult result)
         {
+            if (!mFirstFrameReported)
+            {
+                mFirstFrameReported = true;
+                mLifecycle.onFirstFrame();
+                Log.d(TAG, "Open to first frame: " + getOpenToFirstFrameMillis() + " ms");
+            }
             process(result);
         }
 
@@ -418,6 +728,14 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
         return new Camera2BasicFragment();
     }
 
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        // The camera, its threads and the preview texture survive the recreation of the activity.
+        setRetainInstance(true);
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState)
@@ -430,6 +748,15 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
     {
         view.findViewById(R.id.picture).setOnClickListener(this);
         mTextureView = (AutoFitTextureView) view.findViewById(R.id.texture);
+        mTextureView.setSurfaceTextureListener(mSurfaceTextureListener);
+
+        // The camera is still streaming into the texture of the previous view; show it here.
+        if (mRetainingPreview && null != mSurfaceTexture)
+        {
+            mTextureView.setSurfaceTexture(mSurfaceTexture);
+            if (null != mPreviewSize)
+                setAspectRatio();
+        }
     }
 
     @Override
@@ -443,26 +770,62 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
     public void onResume()
     {
         super.onResume();
-        startBackgroundThread();
+        if (null == mBackgroundThread)
+            startBackgroundThread();
+
+        if (mRetainingPreview)
+        {
+            // Nothing to reopen: the new view already shows the running preview. If the camera
+            // was lost meanwhile, it is opened again with the same outputs.
+            mRetainingPreview = false;
+            if (null != mSurfaceTexture)
+            {
+                mLifecycle.requestOpen();
+                Log.d(TAG, "Preview kept across configuration change in "
+                        + (SystemClock.elapsedRealtime() - mRetainStartMillis) + " ms");
+                return;
+            }
+        }
 
         // When the screen is turned off and turned back on, the SurfaceTexture is already
         // available, and "onSurfaceTextureAvailable" will not be called. In that case, we can open
         // a camera and start preview from here (otherwise, we wait until the surface is ready in
-        // the SurfaceTextureListener).
+        // the SurfaceTextureListener set in onViewCreated).
         if (mTextureView.isAvailable())
+        {
+            mSurfaceTexture = mTextureView.getSurfaceTexture();
             openCamera(mTextureView.getWidth(), mTextureView.getHeight());
-        else
-            mTextureView.setSurfaceTextureListener(mSurfaceTextureListener);
+        }
     }
 
     @Override
     public void onPause()
     {
-        closeCamera();
-        stopBackgroundThread();
+        Activity activity = getActivity();
+        if (null != activity && activity.isChangingConfigurations())
+        {
+            // The activity comes right back; keep the camera streaming.
+            mRetainingPreview = true;
+            mRetainStartMillis = SystemClock.elapsedRealtime();
+        }
+        else
+        {
+            // Returns at once; the camera closes on the background thread. If we are resumed
+            // before it has, it is simply kept or reopened.
+            mLifecycle.requestClose();
+        }
         super.onPause();
     }
 
+    @Override
+    public void onDestroy()
+    {
+        // The background thread stops once the camera is closed.
+        mDestroyed = true;
+        mLifecycle.requestClose();
+        super.onDestroy();
+    }
+
     private void requestCameraPermission()
     {
         if (FragmentCompat.shouldShowRequestPermissionRationale(this, Manifest.permission.CAMERA))
@@ -493,33 +856,22 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
     private void setUpCameraOutputs(int width, int height)
     {
         Activity activity = getActivity();
-        CameraManager manager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
         try
         {
-            for (String cameraId : manager.getCameraIdList())
+            // The back camera's id and output sizes come from an index cached per firmware, so
+            // this doesn't cost any Binder round trip after the first start.
+            CameraCapabilityIndex capabilities = CameraCapabilities.get(activity);
+            if (null != capabilities && capabilities.jpegSizes.length > 0)
             {
-                CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
-
-                // We don't use a front facing camera in this sample.
-                Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
-                if (facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT)
-                    continue;
-
-                StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-                if (map == null)
-                    continue;
-
                 // For still image captures, we use the largest available size.
-                Size largest = Collections.max(Arrays.asList(map.getOutputSizes(ImageFormat.JPEG)),new CompareSizesByArea());
-                mImageReader = ImageReader.newInstance(largest.getWidth(), largest.getHeight(),ImageFormat.JPEG, /*maxImages*/2);
-                mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, mBackgroundHandler);
+                Size largest = new Size(capabilities.jpegSizes[0], capabilities.jpegSizes[1]);
+                mStillSize = largest;
 
                 // Find out if we need to swap dimension to get the preview size relative to sensor
                 // coordinate.
                 int displayRotation = activity.getWindowManager().getDefaultDisplay().getRotation();
 
-                //noinspection ConstantConditions
-                mSensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+                mSensorOrientation = capabilities.sensorOrientation;
                 boolean swappedDimensions = false;
                 switch (displayRotation)
                 {
@@ -561,21 +913,20 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
                 // Danger, W.R.! Attempting to use too large a preview size could  exceed the camera
                 // bus' bandwidth limitation, resulting in gorgeous previews but the storage of
                 // garbage capture data.
-                mPreviewSize = chooseOptimalSize(map.getOutputSizes(SurfaceTexture.class),
+                mPreviewSize = chooseOptimalSize(CameraCapabilities.toSizes(capabilities.previewSizes),
                         rotatedPreviewWidth, rotatedPreviewHeight, maxPreviewWidth,
                         maxPreviewHeight, largest);
 
-                // We fit the aspect ratio of TextureView to the size of preview we picked.
-                int orientation = getResources().getConfiguration().orientation;
-                if (orientation == Configuration.ORIENTATION_LANDSCAPE)
-                    mTextureView.setAspectRatio(mPreviewSize.getWidth(), mPreviewSize.getHeight());
-                else
-                    mTextureView.setAspectRatio(mPreviewSize.getHeight(), mPreviewSize.getWidth());
+                setAspectRatio();
+
+                // Best-of-burst stills are scored on the largest YUV copy that scores quickly.
+                mScoreSize = null;
+                int score = mBestOfFrames > 1 ? CameraCapabilityIndex.largestWithin(capabilities.yuvSizes, SCORE_MAX_WIDTH, SCORE_MAX_HEIGHT) : -1;
+                if (score >= 0)
+                    mScoreSize = new Size(capabilities.yuvSizes[score], capabilities.yuvSizes[score + 1]);
 
-                // Check if the flash is supported.
-                Boolean available = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
-                mFlashSupported = available == null ? false : available;
-                mCameraId = cameraId;
+                mFlashSupported = capabilities.flashSupported;
+                mCameraId = capabilities.cameraId;
                 return;
             }
         }
@@ -591,7 +942,20 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
     }
 
     /**
-     * Opens the camera specified by {@link Camera2BasicFragment#mCameraId}.
+     * Fits the aspect ratio of {@link #mTextureView} to the size of preview we picked.
+     */
+    private void setAspectRatio()
+    {
+        int orientation = getResources().getConfiguration().orientation;
+        if (orientation == Configuration.ORIENTATION_LANDSCAPE)
+            mTextureView.setAspectRatio(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+        else
+            mTextureView.setAspectRatio(mPreviewSize.getHeight(), mPreviewSize.getWidth());
+    }
+
+    /**
+     * Asks for the camera specified by {@link Camera2BasicFragment#mCameraId} to be opened. Never
+     * blocks: the device is opened on the background thread.
      */
     private void openCamera(int width, int height)
     {
@@ -603,58 +967,116 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
 
         setUpCameraOutputs(width, height);
         configureTransform(width, height);
+        if (null == mCameraId || null == mStillSize)
+            return;
+
         Activity activity = getActivity();
-        CameraManager manager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
+        mCameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
+        mLifecycle.requestOpen();
+    }
 
-        try
+    /**
+     * Creates the still {@link ImageReader} and its save queue, and opens the
+     * {@link CameraDevice}. Runs on the background thread.
+     */
+    private void openCameraDevice()
+    {
+        mImageReader = ImageReader.newInstance(mStillSize.getWidth(), mStillSize.getHeight(), ImageFormat.JPEG, mImagePoolSize);
+        mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, mBackgroundHandler);
+        mSaveQueue = new ImageSaveQueue(mImagePoolSize, "CameraSaver");
+        if (null != mScoreSize)
         {
-            if (!mCameraOpenCloseLock.tryAcquire(2500, TimeUnit.MILLISECONDS))
-                throw new RuntimeException("Time out waiting to lock camera opening.");
+            // A burst can't hold more stills than the save queue, so neither can this reader.
+            mScoreReader = ImageReader.newInstance(mScoreSize.getWidth(), mScoreSize.getHeight(), ImageFormat.YUV_420_888, mImagePoolSize);
+            mScoreReader.setOnImageAvailableListener(mOnScoreImageAvailableListener, mBackgroundHandler);
+            mSharpnessScorer = new SharpnessScorer(Runtime.getRuntime().availableProcessors());
+        }
 
-            manager.openCamera(mCameraId, mStateCallback, mBackgroundHandler);
+        try
+        {
+            mCameraManager.openCamera(mCameraId, mStateCallback, mBackgroundHandler);
         }
         catch (CameraAccessException e)
         {
             e.printStackTrace();
+            mLifecycle.onLost();
         }
-        catch (InterruptedException e)
+        catch (SecurityException e)
         {
-            throw new RuntimeException("Interrupted while trying to lock camera opening.", e);
+            e.printStackTrace();
+            mLifecycle.onLost();
         }
     }
 
     /**
-     * Closes the current {@link CameraDevice}.
+     * Closes the current {@link CameraDevice}, if any, and everything opened with it. Runs on the
+     * background thread; {@link #mStateCallback} reports when the device is closed.
      */
-    private void closeCamera()
+    private void closeCameraDevice()
     {
-        try
+        mState = STATE_PREVIEW;
+        mCurrentRequest = null;
+        mCaptureScheduler.cancelAll();
+
+        if (null != mCaptureSession)
         {
-            mCameraOpenCloseLock.acquire();
-            if (null != mCaptureSession)
-            {
-                mCaptureSession.close();
-                mCaptureSession = null;
-            }
-            if (null != mCameraDevice)
-            {
-                mCameraDevice.close();
-                mCameraDevice = null;
-            }
-            if (null != mImageReader)
+            mCaptureSession.close();
+            mCaptureSession = null;
+        }
+        // Best-of-burst stills still waiting for their scores go back to the reader.
+        for (Object tag : mPendingCaptures.values())
+        {
+            if (tag instanceof BestShot)
+                ((BestShot) tag).mSelector.cancel();
+        }
+        if (null != mScoreReader)
+        {
+            // Scored images are closed right away, so nothing holds this reader's images.
+            mScoreReader.close();
+            mScoreReader = null;
+            mSharpnessScorer.shutdown();
+            mSharpnessScorer = null;
+            mScoreLuma = null;
+        }
+        if (null != mImageReader)
+        {
+            // Images still being saved belong to the reader, so it is closed after them.
+            final ImageReader reader = mImageReader;
+            mImageReader = null;
+            reader.setOnImageAvailableListener(null, null);
+            mSaveQueue.execute(new Runnable()
             {
-                mImageReader.close();
-                mImageReader = null;
-            }
+                @Override
+                public void run()
+                {
+                    reader.close();
+                }
+            });
         }
-        catch (InterruptedException e)
+        if (null != mSaveQueue)
         {
-            throw new RuntimeException("Interrupted while trying to lock camera closing.", e);
+            mSaveQueue.quitSafely();
+            mSaveQueue = null;
         }
-        finally
+        mPendingCaptures.clear();
+
+        if (null != mCameraDevice)
         {
-            mCameraOpenCloseLock.release();
+            mCameraDevice.close();
+            mCameraDevice = null;
         }
+        else
+            mLifecycle.onClosed();
+    }
+
+    /**
+     * @return The time from the last open request to the first preview frame, in milliseconds, or
+     * -1 if the preview hasn't started yet
+     */
+    public long getOpenToFirstFrameMillis()
+    {
+        long nanos = mLifecycle.getOpenToFirstFrameNanos();
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
     }
 
     /**
@@ -668,21 +1090,13 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
     }
 
     /**
-     * Stops the background thread and its {@link Handler}.
+     * Stops the background thread once the tasks already posted have run. Doesn't wait for it.
      */
     private void stopBackgroundThread()
     {
         mBackgroundThread.quitSafely();
-        try
-        {
-            mBackgroundThread.join();
-            mBackgroundThread = null;
-            mBackgroundHandler = null;
-        }
-        catch (InterruptedException e)
-        {
-            e.printStackTrace();
-        }
+        mBackgroundThread = null;
+        mBackgroundHandler = null;
     }
 
     /**
@@ -692,8 +1106,12 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
     {
         try
         {
-            SurfaceTexture texture = mTextureView.getSurfaceTexture();
-            assert texture != null;
+            SurfaceTexture texture = mSurfaceTexture;
+            if (null == texture)
+            {
+                mLifecycle.onLost();
+                return;
+            }
 
             // We configure the size of default buffer to be the size of camera preview we want.
             texture.setDefaultBufferSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
@@ -707,7 +1125,12 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
             mPreviewRequestBuilder.addTarget(surface);
 
             // Here, we create a CameraCaptureSession for camera preview.
-            mCameraDevice.createCaptureSession(Arrays.asList(surface, mImageReader.getSurface()),
+            List<Surface> outputs = new ArrayList<>(3);
+            outputs.add(surface);
+            outputs.add(mImageReader.getSurface());
+            if (null != mScoreReader)
+                outputs.add(mScoreReader.getSurface());
+            mCameraDevice.createCaptureSession(outputs,
                     new CameraCaptureSession.StateCallback()
                     {
                         @Override
@@ -715,10 +1138,15 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
                         {
                             // The camera is already closed
                             if (null == mCameraDevice)
+                            {
+                                cameraCaptureSession.close();
                                 return;
+                            }
 
                             // When the session is ready, we start displaying the preview.
                             mCaptureSession = cameraCaptureSession;
+                            mPreviewResultNanos = 0;
+                            mFirstFrameReported = false;
                             try
                             {
                                 // Auto focus should be continuous for camera preview.
@@ -731,10 +1159,12 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
                                 mPreviewRequest = mPreviewRequestBuilder.build();
                                 mCaptureSession.setRepeatingRequest(mPreviewRequest,
                                         mCaptureCallback, mBackgroundHandler);
+                                mLifecycle.onConfigured();
                             }
                             catch (CameraAccessException e)
                             {
                                 e.printStackTrace();
+                                mLifecycle.onLost();
                             }
                         }
 
@@ -742,13 +1172,15 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
                         public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession)
                         {
                             showToast("Failed");
+                            mLifecycle.onLost();
                         }
-                    }, null
+                    }, mBackgroundHandler
             );
         }
         catch (CameraAccessException e)
         {
             e.printStackTrace();
+            mLifecycle.onLost();
         }
     }
 
@@ -790,32 +1222,280 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
      * Initiate a still image capture.
      */
     public void takePicture() {
-        lockFocus();
+        takePicture(new CaptureScheduler.Listener()
+        {
+            @Override
+            public void onCaptureFinished(CaptureScheduler.Request request, boolean success)
+            {
+                if (success)
+                {
+                    showToast("Saved: " + mFile);
+                    Log.d(TAG, mFile.toString());
+                }
+            }
+        });
+    }
+
+    /**
+     * Initiate a still image capture. Can be called at any time: if a capture is already in
+     * progress the trigger is queued, coalesced or dropped according to
+     * {@link #setCapturePolicy}.
+     *
+     * @param listener Notified on an arbitrary thread once the picture is saved or the capture
+     *                 fails; may be null
+     * @return The scheduled request, or null if the trigger was dropped
+     */
+    public CaptureScheduler.Request takePicture(CaptureScheduler.Listener listener)
+    {
+        return takePicture(System.nanoTime(), listener);
+    }
+
+    /**
+     * Initiate a still image capture that was triggered earlier, e.g. by a voice command. The
+     * capture latency is then measured from {@code triggerNanos}.
+     *
+     * @param triggerNanos {@link System#nanoTime()} when the capture was triggered
+     */
+    public CaptureScheduler.Request takePicture(long triggerNanos, final CaptureScheduler.Listener listener)
+    {
+        return mCaptureScheduler.submit(new CaptureScheduler.Listener()
+        {
+            @Override
+            public void onCaptureFinished(CaptureScheduler.Request request, boolean success)
+            {
+                // Only a saved picture finishes successfully, right after the save on its thread.
+                if (success)
+                    mCaptureLatency.mark(request.getId(), CaptureLatencyTracker.Stage.SAVED);
+                mCaptureLatency.finish(request.getId(), success);
+                if (null != listener)
+                    listener.onCaptureFinished(request, success);
+            }
+        }, triggerNanos);
+    }
+
+    /**
+     * @return The stage by stage latency of the captures taken with {@link #takePicture}, which
+     * can be queried at any time
+     */
+    public CaptureLatencyTracker getCaptureLatency()
+    {
+        return mCaptureLatency;
+    }
+
+    /**
+     * Logs the capture latency percentiles per stage.
+     *
+     * @return The logged table
+     */
+    public String dumpCaptureLatency()
+    {
+        String dump = mCaptureLatency.dump();
+        Log.i(TAG, "Capture latency\n" + dump);
+        return dump;
+    }
+
+    /**
+     * Writes the capture latency percentiles per stage to {@code file}.
+     */
+    public void dumpCaptureLatency(File file) throws IOException
+    {
+        mCaptureLatency.dumpTo(file);
+    }
+
+    /**
+     * Sets how {@link #takePicture()} triggers that arrive during a capture are handled.
+     *
+     * @param policy     Queue, coalesce or drop overlapping triggers
+     * @param maxPending How many requests may wait behind the one in progress
+     */
+    public void setCapturePolicy(CaptureScheduler.Policy policy, int maxPending)
+    {
+        mCaptureScheduler.setPolicy(policy, maxPending);
+    }
+
+    /**
+     * Captures up to {@code count} full-resolution frames back to back with
+     * {@link CameraCaptureSession#captureBurst}, each saved to its own file. Focus is not locked,
+     * so the burst starts at once. Frames that would overflow the save queue are not requested
+     * and are counted in {@link #getDroppedFrameCount()}.
+     *
+     * @param count The number of frames wanted
+     * @return The number of frames actually requested
+     */
+    public int takePictureBurst(int count)
+    {
+        if (count <= 0)
+            throw new IllegalArgumentException("Burst count must be positive.");
+
+        final Activity activity = getActivity();
+        final ImageSaveQueue saveQueue = mSaveQueue;
+        if (null == activity || null == mCameraDevice || null == mCaptureSession || null == saveQueue)
+            return 0;
+
+        int granted = saveQueue.reserve(count);
+        mDroppedFrames.addAndGet(count - granted);
+        if (granted == 0)
+        {
+            showToast("Busy saving, burst skipped");
+            return 0;
+        }
+
+        try
+        {
+            CaptureRequest.Builder captureBuilder = createStillCaptureBuilder(activity);
+            String prefix = "burst_" + System.currentTimeMillis() + "_";
+            List<CaptureRequest> burst = new ArrayList<>(granted);
+            for (int i = 0; i < granted; i++)
+            {
+                captureBuilder.setTag(new File(activity.getExternalFilesDir(null), prefix + i + ".jpg"));
+                burst.add(captureBuilder.build());
+            }
+
+            mCaptureSession.captureBurst(burst, new StillCaptureCallback()
+            {
+                @Override
+                public void onCaptureSequenceCompleted(@NonNull CameraCaptureSession session,
+                                                       int sequenceId, long frameNumber)
+                {
+                    showToast("Burst saved");
+                }
+            }, mBackgroundHandler);
+            return granted;
+        }
+        catch (CameraAccessException e)
+        {
+            saveQueue.release(granted);
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Sets how many still images may be in flight between the camera and the disk. Larger pools
+     * allow longer bursts at the cost of memory. Takes effect the next time the camera is opened.
+     */
+    public void setImagePoolSize(int imagePoolSize)
+    {
+        if (imagePoolSize <= 0)
+            throw new IllegalArgumentException("Image pool size must be positive.");
+        mImagePoolSize = imagePoolSize;
+    }
+
+    /**
+     * Makes each {@link #takePicture} capture {@code frames} stills back to back and save only the
+     * sharpest, as scored by {@link SharpnessScorer} on a small YUV copy of each. Useful when the
+     * wearer is walking. The burst is limited to the image pool size; 1 captures a single still.
+     * Takes effect the next time the camera is opened.
+     */
+    public void setBestOfBurst(int frames)
+    {
+        if (frames <= 0)
+            throw new IllegalArgumentException("Burst count must be positive.");
+        mBestOfFrames = frames;
+    }
+
+    /**
+     * @return The number of burst frames skipped because the save queue was full
+     */
+    public int getDroppedFrameCount()
+    {
+        return mDroppedFrames.get();
     }
 
     /**
      * Lock the focus as the first step for a still image capture.
      */
-    private void lockFocus()
+    private void lockFocus(CaptureScheduler.Request request)
     {
+        mCaptureLatency.start(request.getId(), request.getSubmitNanos());
+        if (null == mCaptureSession)
+        {
+            request.finish(false);
+            return;
+        }
+
+        if (mFastShutterEnabled && isPreview3AConverged())
+        {
+            // Focus and exposure are already settled, fire the still request right away.
+            mFastShutterCount.incrementAndGet();
+            mCurrentRequest = request;
+            mState = STATE_PICTURE_TAKEN;
+            captureStillPicture();
+            return;
+        }
+        mFullShutterCount.incrementAndGet();
+
         try
         {
             // This is how to tell the camera to lock focus.
             mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_START);
 
             // Tell #mCaptureCallback to wait for the lock.
+            mCurrentRequest = request;
             mState = STATE_WAITING_LOCK;
+            mFocusLocked = true;
             mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback, mBackgroundHandler);
         }
         catch (CameraAccessException e)
         {
             e.printStackTrace();
+            mState = STATE_PREVIEW;
+            mCurrentRequest = null;
+            request.finish(false);
         }
     }
 
+    /**
+     * Whether the latest preview result is recent and reports focus and exposure as stable, in
+     * which case a focus lock and precapture sequence would not change the picture.
+     */
+    private boolean isPreview3AConverged()
+    {
+        if (0 == mPreviewResultNanos ||
+                SystemClock.elapsedRealtimeNanos() - mPreviewResultNanos > FAST_SHUTTER_MAX_RESULT_AGE_NS)
+            return false;
+
+        // CONTROL_AF_STATE and CONTROL_AE_STATE can be null on some devices
+        boolean focused = mPreviewAfState == -1 ||
+                mPreviewAfState == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED ||
+                mPreviewAfState == CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED;
+        boolean exposed = mPreviewAeState == -1 ||
+                mPreviewAeState == CaptureResult.CONTROL_AE_STATE_CONVERGED ||
+                mPreviewAeState == CaptureResult.CONTROL_AE_STATE_LOCKED;
+        return focused && exposed;
+    }
+
+    /**
+     * Enables or disables the fast shutter. When enabled, a capture fires the still request
+     * immediately if the latest preview result already reports focus and exposure as converged,
+     * skipping the focus lock and precapture sequence.
+     */
+    public void setFastShutterEnabled(boolean enabled)
+    {
+        mFastShutterEnabled = enabled;
+    }
+
+    /**
+     * @return The number of captures that took the fast shutter path
+     */
+    public int getFastShutterCount()
+    {
+        return mFastShutterCount.get();
+    }
+
+    /**
+     * @return The fraction of captures that took the fast shutter path, or 0 if none were taken
+     */
+    public float getFastShutterRatio()
+    {
+        int fast = mFastShutterCount.get();
+        int total = fast + mFullShutterCount.get();
+        return total == 0 ? 0f : (float) fast / total;
+    }
+
     /**
      * Run the precapture sequence for capturing a still image. This method should be called when
-     * we get a response in {@link #mCaptureCallback} from {@link #lockFocus()}.
+     * we get a response in {@link #mCaptureCallback} from {@link #lockFocus}.
      */
     private void runPrecaptureSequence()
     {
@@ -825,50 +1505,76 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
             mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
 
             // Tell #mCaptureCallback to wait for the precapture sequence to be set.
+            markStage(CaptureLatencyTracker.Stage.PRECAPTURE_STARTED);
             mState = STATE_WAITING_PRECAPTURE;
             mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback, mBackgroundHandler);
         }
         catch (CameraAccessException e)
         {
             e.printStackTrace();
+            abortCapture();
         }
     }
 
     /**
      * Capture a still picture. This method should be called when we get a response in
-     * {@link #mCaptureCallback} from both {@link #lockFocus()}.
+     * {@link #mCaptureCallback} from both {@link #lockFocus}.
      */
     private void captureStillPicture()
     {
+        final CaptureScheduler.Request scheduled = mCurrentRequest;
+        int granted = 0;
         try
         {
             final Activity activity = getActivity();
 
             if (null == activity || null == mCameraDevice)
+            {
+                abortCapture();
                 return;
+            }
 
-            // This is the CaptureRequest.Builder that we use to take a picture.
-            final CaptureRequest.Builder captureBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
-            captureBuilder.addTarget(mImageReader.getSurface());
-
-            // Use the same AE and AF modes as the preview.
-            captureBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-            setAutoFlash(captureBuilder);
+            // Every image needs a slot in the save queue, otherwise the ImageReader could run out.
+            granted = mSaveQueue.reserve(null == mScoreReader ? 1 : mBestOfFrames);
+            if (granted == 0)
+            {
+                showToast("Busy saving, picture skipped");
+                abortCapture();
+                return;
+            }
 
-            // Orientation
-            int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
-            captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, getOrientation(rotation));
+            // This is the CaptureRequest.Builder that we use to take a picture.
+            markStage(CaptureLatencyTracker.Stage.STILL_REQUESTED);
+            final CaptureRequest.Builder captureBuilder = createStillCaptureBuilder(activity);
+            if (granted > 1)
+            {
+                captureBestOfBurst(scheduled, captureBuilder, granted);
+                return;
+            }
+            captureBuilder.setTag(scheduled);
 
             CameraCaptureSession.CaptureCallback CaptureCallback
-                    = new CameraCaptureSession.CaptureCallback() {
+                    = new StillCaptureCallback() {
 
                 @Override
                 public void onCaptureCompleted(@NonNull CameraCaptureSession session,
                                                @NonNull CaptureRequest request,
                                                @NonNull TotalCaptureResult result) {
-                    showToast("Saved: " + mFile);
-                    Log.d(TAG, mFile.toString());
                     unlockFocus();
+                    // The sensor is free; the next request can lock focus while this JPEG is saved.
+                    scheduled.exposed();
+                }
+
+                @Override
+                public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                            @NonNull CaptureRequest request,
+                                            @NonNull CaptureFailure failure) {
+                    super.onCaptureFailed(session, request, failure);
+                    unlockFocus();
+                    if (failure.wasImageCaptured())
+                        scheduled.exposed();
+                    else
+                        scheduled.finish(false);
                 }
             };
 
@@ -877,7 +1583,184 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
         }
         catch (CameraAccessException e)
         {
+            mSaveQueue.release(granted);
             e.printStackTrace();
+            abortCapture();
+        }
+    }
+
+    /**
+     * Captures {@code frames} stills back to back for {@code scheduled}, each also sent to
+     * {@link #mScoreReader}, and saves only the sharpest. Focus is already locked and the save
+     * slots are reserved.
+     */
+    private void captureBestOfBurst(final CaptureScheduler.Request scheduled,
+                                    CaptureRequest.Builder captureBuilder,
+                                    final int frames) throws CameraAccessException
+    {
+        final BestShot shot = new BestShot(scheduled, frames);
+        captureBuilder.addTarget(mScoreReader.getSurface());
+        captureBuilder.setTag(shot);
+        List<CaptureRequest> burst = new ArrayList<>(frames);
+        for (int i = 0; i < frames; i++)
+            burst.add(captureBuilder.build());
+
+        CameraCaptureSession.CaptureCallback callback = new StillCaptureCallback()
+        {
+            private int mRemaining = frames;
+            private boolean mExposed;
+
+            @Override
+            public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                           @NonNull CaptureRequest request,
+                                           @NonNull TotalCaptureResult result)
+            {
+                mExposed = true;
+                frameDone();
+            }
+
+            @Override
+            public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                        @NonNull CaptureRequest request,
+                                        @NonNull CaptureFailure failure)
+            {
+                super.onCaptureFailed(session, request, failure);
+                if (failure.wasImageCaptured())
+                    mExposed = true;
+                else
+                    shot.mSelector.frameFailed();
+                frameDone();
+            }
+
+            // The sensor is free once the last frame of the burst is done.
+            private void frameDone()
+            {
+                if (--mRemaining > 0)
+                    return;
+                unlockFocus();
+                // If no frame was exposed, the selector fails the request.
+                if (mExposed)
+                    scheduled.exposed();
+            }
+        };
+
+        mCaptureSession.stopRepeating();
+        mCaptureSession.captureBurst(burst, callback, null);
+    }
+
+    /**
+     * Records that the capture in progress reached {@code stage}.
+     */
+    private void markStage(CaptureLatencyTracker.Stage stage)
+    {
+        if (null != mCurrentRequest)
+            mCaptureLatency.mark(mCurrentRequest.getId(), stage);
+    }
+
+    /**
+     * Gives up on the capture in progress: returns to preview and fails its request.
+     */
+    private void abortCapture()
+    {
+        CaptureScheduler.Request request = mCurrentRequest;
+        unlockFocus();
+        if (null != request)
+            request.finish(false);
+    }
+
+    /**
+     * Creates the {@link CaptureRequest.Builder} for a JPEG still targeting {@link #mImageReader}.
+     */
+    private CaptureRequest.Builder createStillCaptureBuilder(Activity activity) throws CameraAccessException
+    {
+        CaptureRequest.Builder captureBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+        captureBuilder.addTarget(mImageReader.getSurface());
+
+        // Use the same AE and AF modes as the preview.
+        captureBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        setAutoFlash(captureBuilder);
+
+        // Orientation
+        int rotation = activity.getWindowManager().getDefaultDisplay().getRotation();
+        captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, getOrientation(rotation));
+        return captureBuilder;
+    }
+
+    /**
+     * A {@link CameraCaptureSession.CaptureCallback} for still captures. It remembers the tag of
+     * each request under the frame's sensor timestamp, so
+     * {@link #mOnImageAvailableListener} can find it, and gives the save slot back when a capture
+     * fails before any image was produced.
+     */
+    private class StillCaptureCallback extends CameraCaptureSession.CaptureCallback
+    {
+        /**
+         * The queue the slots were reserved from; the camera may have been reopened with a new
+         * one by the time a capture fails.
+         */
+        private final ImageSaveQueue mQueue = mSaveQueue;
+
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                                     @NonNull CaptureRequest request,
+                                     long timestamp, long frameNumber)
+        {
+            Object tag = request.getTag();
+            if (null != tag)
+                mPendingCaptures.put(timestamp, tag);
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                    @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure)
+        {
+            if (!failure.wasImageCaptured() && null != mQueue)
+                mQueue.release(1);
+            Log.e(TAG, "Still capture failed: " + failure.getReason());
+        }
+    }
+
+    /**
+     * Tags the stills of a best-of-burst capture. Their JPEGs and scores meet in
+     * {@link #mSelector}, which saves the sharpest for the request and closes the others.
+     */
+    private class BestShot implements SharpestFrameSelector.Listener<Image>, ZslRingBuffer.Recycler<Image>
+    {
+        private final CaptureScheduler.Request mRequest;
+
+        /**
+         * The queue the slots were reserved from, as in {@link StillCaptureCallback}.
+         */
+        private final ImageSaveQueue mQueue = mSaveQueue;
+
+        private final SharpestFrameSelector<Image> mSelector;
+
+        BestShot(CaptureScheduler.Request request, int frames)
+        {
+            mRequest = request;
+            mSelector = new SharpestFrameSelector<>(frames, this, this);
+        }
+
+        @Override
+        public void recycle(Image image)
+        {
+            image.close();
+            mQueue.release(1);
+        }
+
+        @Override
+        public void onSelected(Image image, long timestamp, double score)
+        {
+            mPendingCaptures.values().removeAll(Collections.singleton(this));
+            if (null == image)
+            {
+                mRequest.finish(false);
+                return;
+            }
+            Log.d(TAG, "Sharpest frame of the burst scored " + score);
+            mCaptureLatency.mark(mRequest.getId(), CaptureLatencyTracker.Stage.IMAGE_AVAILABLE);
+            mQueue.submit(new ImageSaver(image, mFile, mRequest));
         }
     }
 
@@ -902,16 +1785,28 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
      */
     private void unlockFocus()
     {
+        // After this, the camera will go back to the normal state of preview.
+        mState = STATE_PREVIEW;
+        mCurrentRequest = null;
+        boolean locked = mFocusLocked;
+        mFocusLocked = false;
+        if (null == mCaptureSession)
+            return;
+
         try
         {
-            // Reset the auto-focus trigger
-            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
-                    CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
-            setAutoFlash(mPreviewRequestBuilder);
-            mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback,
-                    mBackgroundHandler);
-            // After this, the camera will go back to the normal state of preview.
-            mState = STATE_PREVIEW;
+            if (locked)
+            {
+                // Reset the auto-focus and precapture triggers
+                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                        CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
+                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
+                        CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
+                setAutoFlash(mPreviewRequestBuilder);
+                mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback,
+                        mBackgroundHandler);
+            }
+            // The fast shutter only stopped the preview, so just restart it
             mCaptureSession.setRepeatingRequest(mPreviewRequest, mCaptureCallback,
                     mBackgroundHandler);
         }
@@ -953,7 +1848,8 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
     }
 
     /**
-     * Saves a JPEG {@link Image} into the specified {@link File}.
+     * Saves a JPEG {@link Image} into the specified {@link File}, then finishes its
+     * {@link CaptureScheduler.Request}, if any.
      */
     private static class ImageSaver implements Runnable
     {
@@ -965,24 +1861,28 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
          * The file we save the image into.
          */
         private final File mFile;
+        /**
+         * The scheduled capture the image belongs to, or null for a burst frame.
+         */
+        private final CaptureScheduler.Request mRequest;
 
-        public ImageSaver(Image image, File file)
+        public ImageSaver(Image image, File file, CaptureScheduler.Request request)
         {
             mImage = image;
             mFile = file;
+            mRequest = request;
         }
 
         @Override
         public void run()
         {
+            // The plane buffer is direct, so it is written to disk without copying it to the heap.
             ByteBuffer buffer = mImage.getPlanes()[0].getBuffer();
-            byte[] bytes = new byte[buffer.remaining()];
-            buffer.get(bytes);
-            FileOutputStream output = null;
+            boolean saved = false;
             try
             {
-                output = new FileOutputStream(mFile);
-                output.write(bytes);
+                JpegFileWriter.write(buffer, mFile);
+                saved = true;
             }
             catch (IOException e)
             {
@@ -991,17 +1891,8 @@ public class Camera2BasicFragment extends Fragment implements View.OnClickListen
             finally
             {
                 mImage.close();
-                if (null != output)
-                {
-                    try
-                    {
-                        output.close();
-                    }
-                    catch (IOException e)
-                    {
-                        e.printStackTrace();
-                    }
-                }
+                if (null != mRequest)
+                    mRequest.finish(saved);
             }
         }
     }
@@ -0,0 +1,220 @@
+package kr.co.kornic.smart.myapplication;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Size;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Provides the {@link CameraCapabilityIndex} of the back camera, querying
+ * {@link CameraManager} only when no index exists yet for the current firmware.
+ */
+final class CameraCapabilities
+{
+    private static final String TAG = "CameraCapabilities";
+
+    /**
+     * Name of the index file in {@link Context#getFilesDir()}.
+     */
+    private static final String FILE_NAME = "camera_capabilities.bin";
+
+    /**
+     * The index once loaded, shared by every camera user in the process.
+     */
+    private static volatile CameraCapabilityIndex sIndex;
+
+    private CameraCapabilities()
+    {
+    }
+
+    /**
+     * Returns the index from memory, from disk, or, on the very first start with this firmware,
+     * from {@link CameraManager}, logging how long it took.
+     *
+     * @return The index, or null if the device has no usable back camera
+     */
+    static CameraCapabilityIndex get(Context context) throws CameraAccessException
+    {
+        CameraCapabilityIndex index = sIndex;
+        if (null != index)
+            return index;
+
+        synchronized (CameraCapabilities.class)
+        {
+            if (null != sIndex)
+                return sIndex;
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            File file = indexFile(context);
+            index = CameraCapabilityIndex.readFrom(file, Build.FINGERPRINT);
+            if (null != index)
+                Log.d(TAG, "Camera capabilities loaded from cache in " + micros(start) + " us");
+            else
+            {
+                index = query(context);
+                Log.d(TAG, "Camera capabilities queried in " + micros(start) + " us");
+                if (null == index)
+                    return null;
+
+                try
+                {
+                    index.writeTo(file);
+                }
+                catch (IOException e)
+                {
+                    Log.e(TAG, "Cannot cache camera capabilities: " + e.getMessage());
+                }
+            }
+            sIndex = index;
+            return index;
+        }
+    }
+
+    /**
+     * Walks the camera list the way the app used to on every open.
+     *
+     * @return The index of the first camera that isn't front facing, or null if there is none
+     */
+    static CameraCapabilityIndex query(Context context) throws CameraAccessException
+    {
+        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        for (String cameraId : manager.getCameraIdList())
+        {
+            CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+
+            // We don't use a front facing camera.
+            Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            if (facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT)
+                continue;
+
+            StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            if (map == null)
+                continue;
+
+            Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+            Boolean flash = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+            return new CameraCapabilityIndex(Build.FINGERPRINT, cameraId,
+                    orientation == null ? 0 : orientation,
+                    flash == null ? false : flash,
+                    pack(map.getOutputSizes(SurfaceTexture.class)),
+                    pack(map.getOutputSizes(ImageFormat.JPEG)),
+                    pack(map.getOutputSizes(ImageFormat.YUV_420_888)),
+                    pack(stallFree(map, ImageFormat.JPEG)));
+        }
+        return null;
+    }
+
+    /**
+     * @return The output sizes of {@code format} whose stall duration is zero
+     */
+    private static Size[] stallFree(StreamConfigurationMap map, int format)
+    {
+        Size[] sizes = map.getOutputSizes(format);
+        if (sizes == null)
+            return null;
+
+        int count = 0;
+        Size[] free = new Size[sizes.length];
+        for (Size size : sizes)
+        {
+            if (map.getOutputStallDuration(format, size) == 0)
+                free[count++] = size;
+        }
+        return Arrays.copyOf(free, count);
+    }
+
+    /**
+     * Times the cold-start lookup both ways: querying {@link CameraManager} as before, and
+     * reading the cached index. The result is logged and returned.
+     *
+     * @param rounds How many times to repeat each lookup; the medians are reported
+     */
+    static String compareColdStart(Context context, int rounds) throws CameraAccessException
+    {
+        File file = indexFile(context);
+        long[] queried = new long[rounds];
+        long[] cached = new long[rounds];
+        for (int i = 0; i < rounds; i++)
+        {
+            long start = SystemClock.elapsedRealtimeNanos();
+            CameraCapabilityIndex index = query(context);
+            queried[i] = micros(start);
+            if (null == index)
+                return "No usable camera";
+
+            if (i == 0)
+            {
+                try
+                {
+                    index.writeTo(file);
+                }
+                catch (IOException e)
+                {
+                    return "Cannot cache camera capabilities: " + e.getMessage();
+                }
+            }
+
+            start = SystemClock.elapsedRealtimeNanos();
+            CameraCapabilityIndex.readFrom(file, Build.FINGERPRINT);
+            cached[i] = micros(start);
+        }
+
+        String result = "Camera capabilities cold start: queried " + median(queried) + " us, cached "
+                + median(cached) + " us (median of " + rounds + ")";
+        Log.i(TAG, result);
+        return result;
+    }
+
+    /**
+     * Converts packed {@code width, height} pairs back into {@link Size}s.
+     */
+    static Size[] toSizes(int[] packed)
+    {
+        Size[] sizes = new Size[packed.length / 2];
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = new Size(packed[2 * i], packed[2 * i + 1]);
+        return sizes;
+    }
+
+    private static int[] pack(Size[] sizes)
+    {
+        if (sizes == null)
+            return new int[0];
+
+        int[] packed = new int[sizes.length * 2];
+        for (int i = 0; i < sizes.length; i++)
+        {
+            packed[2 * i] = sizes[i].getWidth();
+            packed[2 * i + 1] = sizes[i].getHeight();
+        }
+        return packed;
+    }
+
+    private static File indexFile(Context context)
+    {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    private static long micros(long startNanos)
+    {
+        return (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000;
+    }
+
+    private static long median(long[] values)
+    {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,204 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * What the app needs to know about the back camera to open it: its id, sensor orientation, flash
+ * support and the output sizes it offers for preview, JPEG and YUV, along with the JPEG sizes
+ * that can be streamed without a stall.
+ *
+ * Querying this from {@link android.hardware.camera2.CameraManager} costs several Binder round
+ * trips, yet the answer only changes with the firmware. The index is therefore computed once,
+ * stored in a small binary file stamped with the build fingerprint, and read back on later
+ * starts. Sizes are packed as {@code width, height} pairs sorted by decreasing area, so the
+ * largest size is always first.
+ */
+final class CameraCapabilityIndex
+{
+    /**
+     * Bump whenever the file layout changes.
+     */
+    static final int VERSION = 2;
+
+    private static final int MAGIC = 0x43415049; // "CAPI"
+
+    final String fingerprint;
+    final String cameraId;
+    final int sensorOrientation;
+    final boolean flashSupported;
+    final int[] previewSizes;
+    final int[] jpegSizes;
+    final int[] yuvSizes;
+
+    /**
+     * The JPEG sizes whose output stall duration is zero, which can be added to a repeating
+     * request without holding back the frame rate.
+     */
+    final int[] stallFreeJpegSizes;
+
+    /**
+     * The size arrays are sorted in place.
+     */
+    CameraCapabilityIndex(String fingerprint, String cameraId, int sensorOrientation, boolean flashSupported,
+                          int[] previewSizes, int[] jpegSizes, int[] yuvSizes, int[] stallFreeJpegSizes)
+    {
+        this.fingerprint = fingerprint;
+        this.cameraId = cameraId;
+        this.sensorOrientation = sensorOrientation;
+        this.flashSupported = flashSupported;
+        this.previewSizes = sortByAreaDescending(previewSizes);
+        this.jpegSizes = sortByAreaDescending(jpegSizes);
+        this.yuvSizes = sortByAreaDescending(yuvSizes);
+        this.stallFreeJpegSizes = sortByAreaDescending(stallFreeJpegSizes);
+    }
+
+    /**
+     * Writes the index to {@code file}, going through a temporary file so that a crash never
+     * leaves a truncated index behind.
+     */
+    void writeTo(File file) throws IOException
+    {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+            out.writeUTF(cameraId);
+            out.writeInt(sensorOrientation);
+            out.writeBoolean(flashSupported);
+            writeSizes(out, previewSizes);
+            writeSizes(out, jpegSizes);
+            writeSizes(out, yuvSizes);
+            writeSizes(out, stallFreeJpegSizes);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        if (!temp.renameTo(file))
+        {
+            temp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo}.
+     *
+     * @param fingerprint The current build fingerprint
+     * @return The index, or null if the file is missing, unreadable, from another version of this
+     * class or from another firmware
+     */
+    static CameraCapabilityIndex readFrom(File file, String fingerprint)
+    {
+        if (!file.isFile())
+            return null;
+
+        try
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try
+            {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                    return null;
+
+                String storedFingerprint = in.readUTF();
+                if (!storedFingerprint.equals(fingerprint))
+                    return null;
+
+                String cameraId = in.readUTF();
+                int sensorOrientation = in.readInt();
+                boolean flashSupported = in.readBoolean();
+                int[] previewSizes = readSizes(in);
+                int[] jpegSizes = readSizes(in);
+                int[] yuvSizes = readSizes(in);
+                int[] stallFreeJpegSizes = readSizes(in);
+                return new CameraCapabilityIndex(storedFingerprint, cameraId, sensorOrientation, flashSupported,
+                        previewSizes, jpegSizes, yuvSizes, stallFreeJpegSizes);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Sorts packed {@code width, height} pairs by decreasing area.
+     *
+     * @return The same array
+     */
+    static int[] sortByAreaDescending(int[] sizes)
+    {
+        if (sizes.length % 2 != 0)
+            throw new IllegalArgumentException("Sizes must be width, height pairs.");
+
+        // Insertion sort; cameras report a few dozen sizes at most.
+        for (int i = 2; i < sizes.length; i += 2)
+        {
+            int w = sizes[i];
+            int h = sizes[i + 1];
+            long area = (long) w * h;
+            int j = i - 2;
+            while (j >= 0 && (long) sizes[j] * sizes[j + 1] < area)
+            {
+                sizes[j + 2] = sizes[j];
+                sizes[j + 3] = sizes[j + 1];
+                j -= 2;
+            }
+            sizes[j + 2] = w;
+            sizes[j + 3] = h;
+        }
+        return sizes;
+    }
+
+    /**
+     * @param sizes Packed {@code width, height} pairs sorted by decreasing area
+     * @return The offset in {@code sizes} of the largest size that fits in
+     * {@code maxWidth x maxHeight}, or -1 if none does
+     */
+    static int largestWithin(int[] sizes, int maxWidth, int maxHeight)
+    {
+        for (int i = 0; i < sizes.length; i += 2)
+        {
+            if (sizes[i] <= maxWidth && sizes[i + 1] <= maxHeight)
+                return i;
+        }
+        return -1;
+    }
+
+    private static void writeSizes(DataOutputStream out, int[] sizes) throws IOException
+    {
+        out.writeShort(sizes.length / 2);
+        for (int value : sizes)
+            out.writeShort(value);
+    }
+
+    private static int[] readSizes(DataInputStream in) throws IOException
+    {
+        int[] sizes = new int[in.readUnsignedShort() * 2];
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = in.readUnsignedShort();
+        return sizes;
+    }
+}
@@ -0,0 +1,239 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * The open/close state machine of a camera, driven without ever blocking the caller.
+ *
+ * The UI only states what it wants with {@link #requestOpen()} and {@link #requestClose()}; the
+ * camera callbacks report progress with the {@code on...} methods. Whenever the camera reaches a
+ * stable point the machine compares it with the latest wish and asks its {@link Driver} for the
+ * next step, so a pause followed quickly by a resume collapses: if the camera is still opening
+ * when the resume comes, it simply carries on; if it is closing, it is reopened once closed.
+ *
+ * All methods are thread-safe and return immediately. {@link Driver} calls are made without
+ * holding the lock; the driver is expected to post the actual work to the camera thread.
+ */
+final class CameraLifecycle
+{
+    enum State
+    {
+        CLOSED, OPENING, OPEN, CONFIGURING, STREAMING, CLOSING
+    }
+
+    /**
+     * Performs the camera operations the state machine decides on.
+     */
+    interface Driver
+    {
+        /**
+         * Open the camera device; report {@link #onOpened()} or {@link #onLost()}.
+         */
+        void openCamera();
+
+        /**
+         * Create the capture session and start the preview; report {@link #onConfigured()} or
+         * {@link #onLost()}.
+         */
+        void createSession();
+
+        /**
+         * Close the session and the device, if it was opened at all; report {@link #onClosed()}.
+         */
+        void closeCamera();
+
+        /**
+         * The camera is closed and nobody wants it open.
+         */
+        void onCameraIdle();
+    }
+
+    private enum Action
+    {
+        NONE, OPEN, CONFIGURE, CLOSE, IDLE
+    }
+
+    private final Driver mDriver;
+    private State mState = State.CLOSED;
+    private boolean mWantOpen;
+    private long mOpenRequestedNanos;
+    private boolean mFirstFrameSeen;
+    private long mOpenToFirstFrameNanos = -1;
+    private int mOpenCount;
+
+    CameraLifecycle(Driver driver)
+    {
+        mDriver = driver;
+    }
+
+    synchronized State getState()
+    {
+        return mState;
+    }
+
+    /**
+     * @return The time from the last {@link #requestOpen()} that actually opened the camera to
+     * the first preview frame, in nanoseconds, or -1 if no frame arrived yet
+     */
+    synchronized long getOpenToFirstFrameNanos()
+    {
+        return mOpenToFirstFrameNanos;
+    }
+
+    /**
+     * @return How many times the driver was asked to open the camera
+     */
+    synchronized int getOpenCount()
+    {
+        return mOpenCount;
+    }
+
+    void requestOpen()
+    {
+        Action action;
+        synchronized (this)
+        {
+            if (!mWantOpen)
+                mOpenRequestedNanos = System.nanoTime();
+            mWantOpen = true;
+            action = nextAction();
+        }
+        perform(action);
+    }
+
+    void requestClose()
+    {
+        Action action;
+        synchronized (this)
+        {
+            mWantOpen = false;
+            action = nextAction();
+        }
+        perform(action);
+    }
+
+    void onOpened()
+    {
+        Action action;
+        synchronized (this)
+        {
+            if (mState != State.OPENING)
+                return;
+            mState = State.OPEN;
+            action = nextAction();
+        }
+        perform(action);
+    }
+
+    void onConfigured()
+    {
+        Action action;
+        synchronized (this)
+        {
+            if (mState != State.CONFIGURING)
+                return;
+            mState = State.STREAMING;
+            action = nextAction();
+        }
+        perform(action);
+    }
+
+    /**
+     * Records the open-to-first-frame latency. Only the first call after each open counts.
+     */
+    void onFirstFrame()
+    {
+        synchronized (this)
+        {
+            if (mFirstFrameSeen || mState != State.STREAMING)
+                return;
+            mFirstFrameSeen = true;
+            mOpenToFirstFrameNanos = System.nanoTime() - mOpenRequestedNanos;
+        }
+    }
+
+    /**
+     * The camera failed to open or configure, or was disconnected. It is closed and not reopened
+     * until the next {@link #requestOpen()}.
+     */
+    void onLost()
+    {
+        Action action;
+        synchronized (this)
+        {
+            mWantOpen = false;
+            if (mState == State.CLOSED || mState == State.CLOSING)
+                return;
+            mState = State.CLOSING;
+            action = Action.CLOSE;
+        }
+        perform(action);
+    }
+
+    void onClosed()
+    {
+        Action action;
+        synchronized (this)
+        {
+            if (mState == State.CLOSED)
+                return;
+            mState = State.CLOSED;
+            action = nextAction();
+        }
+        perform(action);
+    }
+
+    /**
+     * Moves towards the wanted state from a stable one. Called with the lock held.
+     */
+    private Action nextAction()
+    {
+        switch (mState)
+        {
+            case CLOSED:
+                if (!mWantOpen)
+                    return Action.IDLE;
+                mState = State.OPENING;
+                mFirstFrameSeen = false;
+                mOpenCount++;
+                return Action.OPEN;
+
+            case OPEN:
+                if (!mWantOpen)
+                    break;
+                mState = State.CONFIGURING;
+                return Action.CONFIGURE;
+
+            case STREAMING:
+                if (!mWantOpen)
+                    break;
+                return Action.NONE;
+
+            default:
+                // OPENING, CONFIGURING and CLOSING wait for their callback.
+                return Action.NONE;
+        }
+
+        mState = State.CLOSING;
+        return Action.CLOSE;
+    }
+
+    private void perform(Action action)
+    {
+        switch (action)
+        {
+            case OPEN:
+                mDriver.openCamera();
+                break;
+            case CONFIGURE:
+                mDriver.createSession();
+                break;
+            case CLOSE:
+                mDriver.closeCamera();
+                break;
+            case IDLE:
+                mDriver.onCameraIdle();
+                break;
+            default:
+                break;
+        }
+    }
+}
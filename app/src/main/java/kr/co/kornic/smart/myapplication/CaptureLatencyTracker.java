@@ -0,0 +1,218 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Times every still capture stage by stage, from the trigger to the JPEG on disk.
+ *
+ * The capture path calls {@link #start} when a request gets the sensor and {@link #mark} as it
+ * reaches each {@link Stage}; {@link #finish} then adds the time spent reaching every stage, and
+ * the total, to one {@link LatencyHistogram} each. Stages a capture skips, such as the precapture
+ * sequence when exposure is already converged, are simply not recorded: the time goes to the
+ * next stage that is.
+ *
+ * Timestamps are kept in a preallocated table with one row per capture in flight, indexed by
+ * request id, so nothing is allocated on the capture path. All methods are thread-safe.
+ */
+final class CaptureLatencyTracker
+{
+    /**
+     * Points on the capture path, in order.
+     */
+    enum Stage
+    {
+        TRIGGERED("trigger"),
+        STARTED("queued"),
+        FOCUS_LOCKED("focus lock"),
+        PRECAPTURE_STARTED("precapture start"),
+        STILL_REQUESTED("3A settle"),
+        IMAGE_AVAILABLE("exposure + JPEG"),
+        SAVED("save");
+
+        /**
+         * Describes the time spent reaching this stage from the previous one.
+         */
+        final String label;
+
+        Stage(String label)
+        {
+            this.label = label;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final int mSlots;
+    private final int[] mIds;
+    private final long[] mStamps;
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGES.length];
+    private final LatencyHistogram mTotal = new LatencyHistogram();
+    private int mFailedCount;
+
+    /**
+     * @param slots How many captures may be timed at once; later ones overwrite the oldest
+     */
+    CaptureLatencyTracker(int slots)
+    {
+        if (slots <= 0)
+            throw new IllegalArgumentException("Slot count must be positive.");
+
+        mSlots = slots;
+        mIds = new int[slots];
+        mStamps = new long[slots * STAGES.length];
+        for (int i = 0; i < slots; i++)
+            mIds[i] = -1;
+        for (int i = 1; i < STAGES.length; i++)
+            mHistograms[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Starts timing a capture that got the sensor now.
+     *
+     * @param id             The request id, unique among the captures in flight
+     * @param triggeredNanos {@link System#nanoTime()} when the capture was triggered
+     */
+    void start(int id, long triggeredNanos)
+    {
+        start(id, triggeredNanos, System.nanoTime());
+    }
+
+    synchronized void start(int id, long triggeredNanos, long nowNanos)
+    {
+        int slot = slotOf(id);
+        mIds[slot] = id;
+        int row = slot * STAGES.length;
+        for (int i = 0; i < STAGES.length; i++)
+            mStamps[row + i] = 0;
+        mStamps[row + Stage.TRIGGERED.ordinal()] = triggeredNanos;
+        mStamps[row + Stage.STARTED.ordinal()] = nowNanos;
+    }
+
+    /**
+     * Records that the capture reached {@code stage} now. Ignored if the capture isn't timed.
+     */
+    void mark(int id, Stage stage)
+    {
+        mark(id, stage, System.nanoTime());
+    }
+
+    synchronized void mark(int id, Stage stage, long nowNanos)
+    {
+        int slot = slotOf(id);
+        if (mIds[slot] == id)
+            mStamps[slot * STAGES.length + stage.ordinal()] = nowNanos;
+    }
+
+    /**
+     * Stops timing a capture. The stage times of a successful capture are added to the
+     * histograms; a failed capture is only counted.
+     */
+    synchronized void finish(int id, boolean success)
+    {
+        int slot = slotOf(id);
+        if (mIds[slot] != id)
+            return;
+        mIds[slot] = -1;
+
+        if (!success)
+        {
+            mFailedCount++;
+            return;
+        }
+
+        int row = slot * STAGES.length;
+        long first = mStamps[row];
+        long previous = first;
+        for (int i = 1; i < STAGES.length; i++)
+        {
+            long stamp = mStamps[row + i];
+            if (stamp == 0)
+                continue;
+            mHistograms[i].record(stamp - previous);
+            previous = stamp;
+        }
+        mTotal.record(previous - first);
+    }
+
+    /**
+     * @return The time spent reaching {@code stage} from the previous stage recorded
+     */
+    LatencyHistogram getHistogram(Stage stage)
+    {
+        if (stage == Stage.TRIGGERED)
+            throw new IllegalArgumentException("Nothing comes before the trigger.");
+        return mHistograms[stage.ordinal()];
+    }
+
+    /**
+     * @return The time from the trigger to the last stage recorded, normally {@link Stage#SAVED}
+     */
+    LatencyHistogram getTotal()
+    {
+        return mTotal;
+    }
+
+    synchronized int getFailedCount()
+    {
+        return mFailedCount;
+    }
+
+    synchronized void reset()
+    {
+        for (int i = 1; i < STAGES.length; i++)
+            mHistograms[i].reset();
+        mTotal.reset();
+        mFailedCount = 0;
+    }
+
+    /**
+     * @return A table of count, p50, p95, p99 and max per stage, in milliseconds
+     */
+    String dump()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-18s %7s %9s %9s %9s %9s%n", "capture stage (ms)", "count", "p50", "p95", "p99", "max"));
+        for (int i = 1; i < STAGES.length; i++)
+            appendRow(sb, STAGES[i].label, mHistograms[i]);
+        appendRow(sb, "total", mTotal);
+        sb.append("failed: ").append(getFailedCount());
+        return sb.toString();
+    }
+
+    /**
+     * Writes {@link #dump()} to {@code file}, replacing it.
+     */
+    void dumpTo(File file) throws IOException
+    {
+        OutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(dump().getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static void appendRow(StringBuilder sb, String label, LatencyHistogram histogram)
+    {
+        sb.append(String.format(Locale.US, "%-18s %7d %9.2f %9.2f %9.2f %9.2f%n", label, histogram.getCount(),
+                millis(histogram.getPercentile(50)), millis(histogram.getPercentile(95)),
+                millis(histogram.getPercentile(99)), millis(histogram.getMax())));
+    }
+
+    private static double millis(long nanos)
+    {
+        return nanos / 1e6;
+    }
+
+    private int slotOf(int id)
+    {
+        return (id & Integer.MAX_VALUE) % mSlots;
+    }
+}
@@ -0,0 +1,264 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Orders still capture triggers so that overlapping ones neither corrupt the AF/AE sequence nor
+ * get lost.
+ *
+ * A capture goes through two phases: <em>exposure</em>, during which the sensor is busy with the
+ * focus lock, the precapture sequence and the still frame itself, and <em>encoding</em>, during
+ * which the JPEG is produced and written to disk. Only one request may be exposing at a time, but
+ * the next request is started as soon as the previous one has been exposed, so its focus lock runs
+ * while the previous JPEG is still being saved.
+ *
+ * Triggers that arrive while a request is exposing are handled according to the {@link Policy}.
+ * All methods are thread-safe. {@link Driver} and {@link Listener} callbacks are made without
+ * holding the scheduler's lock, on the thread that caused them.
+ */
+final class CaptureScheduler
+{
+    /**
+     * What to do with a trigger that arrives while another capture is exposing.
+     */
+    enum Policy
+    {
+        /**
+         * Capture every trigger, in order, up to the maximum number of pending requests.
+         */
+        QUEUE,
+
+        /**
+         * Merge triggers into the request that is already waiting, so a burst of triggers yields
+         * one extra picture. Every merged trigger is notified when that picture is done.
+         */
+        COALESCE,
+
+        /**
+         * Ignore triggers while busy.
+         */
+        DROP
+    }
+
+    /**
+     * Starts the exposure phase of a request. Called when the sensor becomes free.
+     */
+    interface Driver
+    {
+        void startCapture(Request request);
+    }
+
+    /**
+     * Reports the completion of a request.
+     */
+    interface Listener
+    {
+        /**
+         * @param request The finished request
+         * @param success Whether the picture was captured and saved
+         */
+        void onCaptureFinished(Request request, boolean success);
+    }
+
+    /**
+     * One still capture. A request is finished exactly once.
+     */
+    final class Request
+    {
+        private final int mId;
+        private final long mSubmitNanos;
+        private final List<Listener> mListeners = new ArrayList<>(1);
+        private boolean mFinished;
+
+        private Request(int id, long submitNanos)
+        {
+            mId = id;
+            mSubmitNanos = submitNanos;
+        }
+
+        /**
+         * @return A sequence number, unique within the scheduler
+         */
+        int getId()
+        {
+            return mId;
+        }
+
+        /**
+         * @return {@link System#nanoTime()} when the first trigger of this request was submitted,
+         * or the time the caller gave for it, e.g. when the voice command behind it was received
+         */
+        long getSubmitNanos()
+        {
+            return mSubmitNanos;
+        }
+
+        /**
+         * Marks the sensor as free for the next request; the picture is still being encoded.
+         */
+        void exposed()
+        {
+            onExposed(this);
+        }
+
+        /**
+         * Completes the request and notifies its listeners.
+         */
+        void finish(boolean success)
+        {
+            CaptureScheduler.this.finish(this, success);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "CaptureRequest#" + mId;
+        }
+    }
+
+    private final Driver mDriver;
+    private final ArrayDeque<Request> mPending = new ArrayDeque<>();
+    private Policy mPolicy = Policy.QUEUE;
+    private int mMaxPending = 2;
+    private Request mExposing;
+    private int mNextId;
+    private int mDroppedCount;
+
+    CaptureScheduler(Driver driver)
+    {
+        mDriver = driver;
+    }
+
+    /**
+     * @param policy     How triggers are handled while a capture is exposing
+     * @param maxPending How many requests may wait for the sensor; triggers beyond that are dropped
+     */
+    synchronized void setPolicy(Policy policy, int maxPending)
+    {
+        if (maxPending < 0)
+            throw new IllegalArgumentException("maxPending cannot be negative.");
+        mPolicy = policy;
+        mMaxPending = maxPending;
+    }
+
+    /**
+     * Schedules a still capture.
+     *
+     * @param listener Notified when the picture is saved or the capture fails; may be null
+     * @return The request the trigger was assigned to, which is an already waiting one if the
+     * trigger was coalesced, or null if it was dropped
+     */
+    Request submit(Listener listener)
+    {
+        return submit(listener, System.nanoTime());
+    }
+
+    /**
+     * Schedules a still capture triggered at {@code triggerNanos}, which is reported as the
+     * request's {@link Request#getSubmitNanos()} if the trigger starts a new request.
+     */
+    Request submit(Listener listener, long triggerNanos)
+    {
+        Request start = null;
+        Request request;
+        synchronized (this)
+        {
+            if (mExposing == null)
+            {
+                request = new Request(mNextId++, triggerNanos);
+                mExposing = request;
+                start = request;
+            }
+            else if (mPolicy == Policy.COALESCE && !mPending.isEmpty())
+                request = mPending.peekLast();
+            else if (mPolicy != Policy.DROP && mPending.size() < mMaxPending)
+            {
+                request = new Request(mNextId++, triggerNanos);
+                mPending.addLast(request);
+            }
+            else
+            {
+                mDroppedCount++;
+                return null;
+            }
+
+            if (listener != null)
+                request.mListeners.add(listener);
+        }
+
+        if (start != null)
+            mDriver.startCapture(start);
+        return request;
+    }
+
+    /**
+     * @return The number of triggers dropped because the scheduler was busy
+     */
+    synchronized int getDroppedCount()
+    {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return Whether a request is exposing or waiting for the sensor
+     */
+    synchronized boolean isBusy()
+    {
+        return mExposing != null || !mPending.isEmpty();
+    }
+
+    /**
+     * Fails every request that has not finished yet, for example because the camera is closing.
+     * Requests already being encoded still finish normally.
+     */
+    void cancelAll()
+    {
+        List<Request> cancelled;
+        synchronized (this)
+        {
+            cancelled = new ArrayList<>(mPending.size() + 1);
+            if (mExposing != null)
+                cancelled.add(mExposing);
+            cancelled.addAll(mPending);
+            mExposing = null;
+            mPending.clear();
+        }
+
+        for (Request request : cancelled)
+            finish(request, false);
+    }
+
+    private void onExposed(Request request)
+    {
+        Request next = null;
+        synchronized (this)
+        {
+            if (mExposing != request)
+                return;
+
+            mExposing = next = mPending.pollFirst();
+        }
+
+        if (next != null)
+            mDriver.startCapture(next);
+    }
+
+    private void finish(Request request, boolean success)
+    {
+        List<Listener> listeners;
+        synchronized (this)
+        {
+            if (request.mFinished)
+                return;
+            request.mFinished = true;
+            listeners = new ArrayList<>(request.mListeners);
+        }
+
+        // A request that fails before it was exposed frees the sensor as well.
+        onExposed(request);
+        for (Listener listener : listeners)
+            listener.onCaptureFinished(request, success);
+    }
+}
@@ -0,0 +1,231 @@
+package kr.co.kornic.smart.myapplication;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.provider.BaseColumns;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The vocabulary tables of the Speech Recognition Service, through its content provider. Every
+ * call is one IPC.
+ */
+final class ContentResolverVocabularyStore implements VocabularyStore
+{
+    private static final class SpeechRecognitionContract
+    {
+        public static final String AUTHORITY = "com.vuzix.speechrecognitionservice.SpeechRecognitionVocabulary";
+        public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY);
+
+        public interface VocabularyColumns extends BaseColumns
+        {
+            public final String PHRASES = "phrases";
+            public final String PHRASE_ID = "phraseId";
+            public final String LABELS = "labels";
+            public final String LABEL_ID = "labelId";
+            public final String PARAMS = "params";
+            public final String INTENTS = "intents";
+            public final String ACTIVITY = "activity";
+            public final String ERROR = "error";
+        }
+
+        public static final class Phrases implements BaseColumns
+        {
+            public static final Uri CONTENT_URI = Uri.withAppendedPath(SpeechRecognitionContract.CONTENT_URI, VocabularyColumns.PHRASES);
+        }
+
+        public static final class Intents implements BaseColumns
+        {
+            public static final Uri CONTENT_URI = Uri.withAppendedPath(SpeechRecognitionContract.CONTENT_URI, VocabularyColumns.LABELS);
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final HashMap<Observer, ContentObserver> mObservers = new HashMap<>();
+
+    ContentResolverVocabularyStore(ContentResolver resolver)
+    {
+        mResolver = resolver;
+    }
+
+    @Override
+    public void registerObserver(final Observer observer)
+    {
+        ContentObserver contentObserver = new ContentObserver(null) // Called on a binder thread
+        {
+            @Override
+            public void onChange(boolean selfChange)
+            {
+                observer.onChange();
+            }
+        };
+        synchronized (mObservers)
+        {
+            mObservers.put(observer, contentObserver);
+        }
+        mResolver.registerContentObserver(SpeechRecognitionContract.CONTENT_URI, true, contentObserver);
+    }
+
+    @Override
+    public void unregisterObserver(Observer observer)
+    {
+        ContentObserver contentObserver;
+        synchronized (mObservers)
+        {
+            contentObserver = mObservers.remove(observer);
+        }
+        if (contentObserver != null)
+            mResolver.unregisterContentObserver(contentObserver);
+    }
+
+    @Override
+    public Phrases queryPhrases(String packageName, int clientId) throws RemoteException
+    {
+        String[] selectionArgs = new String[] { packageName };
+        Cursor cursor = mResolver.query(SpeechRecognitionContract.Phrases.CONTENT_URI, null, Integer.toString(clientId), selectionArgs, null);
+        if (cursor == null)
+            throw new RemoteException("SpeechRecognitionService content resolver failure");
+
+        try
+        {
+            int nameColumn = cursor.getColumnIndex(SpeechRecognitionContract.VocabularyColumns.PHRASES);
+            int indexColumn = cursor.getColumnIndex(SpeechRecognitionContract.VocabularyColumns._ID);
+            int paramsColumn = cursor.getColumnIndex(SpeechRecognitionContract.VocabularyColumns.PARAMS);
+            int phraseCount = cursor.getCount();
+            String[] phrases = new String[phraseCount];
+            int[] indexes = new int[phraseCount];
+            String[] params = new String[phraseCount];
+            for (int i = 0; i < phraseCount && cursor.moveToNext(); i++)
+            {
+                phrases[i] = cursor.getString(nameColumn);
+                indexes[i] = cursor.getInt(indexColumn);
+                if (paramsColumn >= 0)
+                    params[i] = cursor.isNull(paramsColumn) ? "" : cursor.getString(paramsColumn);
+            }
+            return new Phrases(phrases, indexes, params);
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public List<String> queryIntentLabels(String packageName, int clientId) throws RemoteException
+    {
+        String[] selectionArgs = new String[] { packageName };
+        Cursor cursor = mResolver.query(SpeechRecognitionContract.Intents.CONTENT_URI, null, Integer.toString(clientId), selectionArgs, null);
+        if (cursor == null)
+            throw new RemoteException("SpeechRecognitionService content resolver failure");
+
+        try
+        {
+            int labelColumn = cursor.getColumnIndex(SpeechRecognitionContract.VocabularyColumns.LABELS);
+            ArrayList<String> labels = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext())
+                labels.add(cursor.getString(labelColumn));
+            return labels;
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public int insertPhrase(String packageName, int clientId, String phrase, String params)
+    {
+        Uri result = mResolver.insert(SpeechRecognitionContract.Phrases.CONTENT_URI, phraseValues(packageName, clientId, phrase, params));
+        return (int) ContentUris.parseId(result);
+    }
+
+    @Override
+    public void updatePhrase(String packageName, int clientId, int index, String phrase, String params)
+    {
+        mResolver.update(ContentUris.withAppendedId(SpeechRecognitionContract.Phrases.CONTENT_URI, index),
+                phraseValues(packageName, null, phrase, params), Integer.toString(clientId), null);
+    }
+
+    @Override
+    public void deletePhrase(String packageName, int clientId, int index)
+    {
+        String[] selectionArgs = new String[] { packageName };
+        mResolver.delete(ContentUris.withAppendedId(SpeechRecognitionContract.Phrases.CONTENT_URI, index),
+                Integer.toString(clientId), selectionArgs);
+    }
+
+    @Override
+    public int insertIntent(String packageName, int clientId, String label, String intent)
+    {
+        Uri result = mResolver.insert(SpeechRecognitionContract.Intents.CONTENT_URI, intentValues(packageName, clientId, label, intent));
+        return (int) ContentUris.parseId(result);
+    }
+
+    @Override
+    public int[] applyBatch(String packageName, int clientId, List<Edit> edits) throws RemoteException, OperationApplicationException
+    {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(edits.size());
+        String clientIdStr = Integer.toString(clientId);
+        String[] selectionArgs = new String[] { packageName };
+        for (Edit edit : edits)
+        {
+            switch (edit.kind)
+            {
+                case Edit.INSERT_PHRASE:
+                    operations.add(ContentProviderOperation.newInsert(SpeechRecognitionContract.Phrases.CONTENT_URI)
+                            .withValues(phraseValues(packageName, clientId, edit.key, edit.value)).build());
+                    break;
+                case Edit.UPDATE_PHRASE:
+                    operations.add(ContentProviderOperation.newUpdate(ContentUris.withAppendedId(SpeechRecognitionContract.Phrases.CONTENT_URI, edit.index))
+                            .withValues(phraseValues(packageName, null, edit.key, edit.value)).withSelection(clientIdStr, null).build());
+                    break;
+                case Edit.DELETE_PHRASE:
+                    operations.add(ContentProviderOperation.newDelete(ContentUris.withAppendedId(SpeechRecognitionContract.Phrases.CONTENT_URI, edit.index))
+                            .withSelection(clientIdStr, selectionArgs).build());
+                    break;
+                default:
+                    operations.add(ContentProviderOperation.newInsert(SpeechRecognitionContract.Intents.CONTENT_URI)
+                            .withValues(intentValues(packageName, clientId, edit.key, edit.value)).build());
+                    break;
+            }
+        }
+
+        ContentProviderResult[] results = mResolver.applyBatch(SpeechRecognitionContract.AUTHORITY, operations);
+        int[] indexes = new int[results.length];
+        for (int i = 0; i < results.length; i++)
+            indexes[i] = results[i].uri == null ? -1 : (int) ContentUris.parseId(results[i].uri);
+        return indexes;
+    }
+
+    // Inserts carry the client id, updates only select by it
+    private static ContentValues phraseValues(String packageName, Integer clientId, String phrase, String params)
+    {
+        ContentValues cv = new ContentValues();
+        cv.put(SpeechRecognitionContract.VocabularyColumns.ACTIVITY, packageName);
+        cv.put(SpeechRecognitionContract.VocabularyColumns.PHRASES, phrase);
+        cv.put(SpeechRecognitionContract.VocabularyColumns.PARAMS, params);
+        if (clientId != null)
+            cv.put(SpeechRecognitionContract.VocabularyColumns._ID, clientId);
+        return cv;
+    }
+
+    private static ContentValues intentValues(String packageName, int clientId, String label, String intent)
+    {
+        ContentValues cv = new ContentValues();
+        cv.put(SpeechRecognitionContract.VocabularyColumns.ACTIVITY, packageName);
+        cv.put(SpeechRecognitionContract.VocabularyColumns.LABELS, label);
+        cv.put(SpeechRecognitionContract.VocabularyColumns.INTENTS, intent);
+        cv.put(SpeechRecognitionContract.VocabularyColumns._ID, clientId);
+        return cv;
+    }
+}
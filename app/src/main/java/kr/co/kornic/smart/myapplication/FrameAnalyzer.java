@@ -0,0 +1,65 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.Locale;
+
+/**
+ * Looks at the frames of the analysis stream, see {@link VuzixCam#addFrameAnalyzer}.
+ */
+public interface FrameAnalyzer
+{
+    /**
+     * How an analyzer keeps up with the stream, see {@link VuzixCam#getFrameAnalyzerStats}.
+     */
+    final class Stats
+    {
+        private final long mAnalyzedCount;
+        private final long mDroppedCount;
+        private final float mFps;
+
+        Stats(long analyzedCount, long droppedCount, float fps)
+        {
+            mAnalyzedCount = analyzedCount;
+            mDroppedCount = droppedCount;
+            mFps = fps;
+        }
+
+        /**
+         * @return The frames handed to the analyzer
+         */
+        public long getAnalyzedCount()
+        {
+            return mAnalyzedCount;
+        }
+
+        /**
+         * @return The frames skipped because the analyzer was still busy with an earlier one
+         */
+        public long getDroppedCount()
+        {
+            return mDroppedCount;
+        }
+
+        /**
+         * @return The rate of analyzed frames over the last few, by their sensor timestamps; 0
+         * until two frames were analyzed
+         */
+        public float getFps()
+        {
+            return mFps;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.US, "%.1f fps, %d analyzed, %d dropped", mFps, mAnalyzedCount, mDroppedCount);
+        }
+    }
+
+    /**
+     * Called on the analyzer's executor, one frame at a time. Frames that arrive meanwhile are
+     * dropped but for the latest, which is analyzed next.
+     *
+     * @param frame Only valid until this returns
+     */
+    void analyze(YuvFrame frame);
+}
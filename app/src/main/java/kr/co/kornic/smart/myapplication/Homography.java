@@ -0,0 +1,85 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * Perspective transforms as 3 x 3 matrices, row by row in a {@code double[9]}, mapping (x, y) to
+ * ((h0 x + h1 y + h2) / w, (h3 x + h4 y + h5) / w) with w = h6 x + h7 y + h8. The methods fill
+ * arrays the caller owns, so transforming allocates nothing.
+ */
+final class Homography
+{
+    private Homography()
+    {
+    }
+
+    /**
+     * Fills {@code h} with the transform taking the corners (0, 0), (1, 0), (1, 1) and (0, 1) of
+     * the unit square to the given points, in that order.
+     */
+    static void squareToQuadrilateral(double[] h, double x0, double y0, double x1, double y1,
+                                      double x2, double y2, double x3, double y3)
+    {
+        double dx3 = x0 - x1 + x2 - x3;
+        double dy3 = y0 - y1 + y2 - y3;
+        double g = 0;
+        double k = 0;
+        if (dx3 != 0 || dy3 != 0)
+        {
+            double dx1 = x1 - x2;
+            double dx2 = x3 - x2;
+            double dy1 = y1 - y2;
+            double dy2 = y3 - y2;
+            double denominator = dx1 * dy2 - dx2 * dy1;
+            g = (dx3 * dy2 - dx2 * dy3) / denominator;
+            k = (dx1 * dy3 - dx3 * dy1) / denominator;
+        }
+        h[0] = x1 - x0 + g * x1;
+        h[1] = x3 - x0 + k * x3;
+        h[2] = x0;
+        h[3] = y1 - y0 + g * y1;
+        h[4] = y3 - y0 + k * y3;
+        h[5] = y0;
+        h[6] = g;
+        h[7] = k;
+        h[8] = 1;
+    }
+
+    /**
+     * Fills {@code out} with the inverse of {@code h}, up to a scale factor, which a perspective
+     * transform ignores.
+     */
+    static void invert(double[] h, double[] out)
+    {
+        out[0] = h[4] * h[8] - h[5] * h[7];
+        out[1] = h[2] * h[7] - h[1] * h[8];
+        out[2] = h[1] * h[5] - h[2] * h[4];
+        out[3] = h[5] * h[6] - h[3] * h[8];
+        out[4] = h[0] * h[8] - h[2] * h[6];
+        out[5] = h[2] * h[3] - h[0] * h[5];
+        out[6] = h[3] * h[7] - h[4] * h[6];
+        out[7] = h[1] * h[6] - h[0] * h[7];
+        out[8] = h[0] * h[4] - h[1] * h[3];
+    }
+
+    /**
+     * Fills {@code out}, which must be neither input, with the transform applying {@code b} then
+     * {@code a}.
+     */
+    static void multiply(double[] a, double[] b, double[] out)
+    {
+        for (int row = 0; row < 9; row += 3)
+        {
+            for (int col = 0; col < 3; col++)
+                out[row + col] = a[row] * b[col] + a[row + 1] * b[col + 3] + a[row + 2] * b[col + 6];
+        }
+    }
+
+    static double mapX(double[] h, double x, double y)
+    {
+        return (h[0] * x + h[1] * y + h[2]) / (h[6] * x + h[7] * y + h[8]);
+    }
+
+    static double mapY(double[] h, double x, double y)
+    {
+        return (h[3] * x + h[4] * y + h[5]) / (h[6] * x + h[7] * y + h[8]);
+    }
+}
@@ -0,0 +1,185 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A bounded queue of save jobs, run one at a time on a dedicated thread.
+ *
+ * The queue hands out a fixed number of slots, one per image that may be in flight between the
+ * camera and the disk. A caller reserves slots before it asks the camera for frames and every
+ * submitted job gives its slot back once it has run. Sizing the queue to the
+ * {@link android.media.ImageReader}'s {@code maxImages} therefore guarantees that the reader is
+ * never asked for more images than it can hold: when the disk falls behind, new captures are
+ * refused up front instead of stalling the camera or exhausting the reader.
+ */
+final class ImageSaveQueue
+{
+    /**
+     * Marker job telling the worker thread to stop.
+     */
+    private static final Runnable QUIT = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+        }
+    };
+
+    private final int mCapacity;
+    private final Semaphore mSlots;
+    private final BlockingQueue<Runnable> mJobs = new LinkedBlockingQueue<>();
+    private final Thread mThread;
+
+    /**
+     * @param capacity The number of images that may be in flight at once
+     * @param name     The name of the worker thread
+     */
+    ImageSaveQueue(int capacity, String name)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive.");
+
+        mCapacity = capacity;
+        mSlots = new Semaphore(capacity);
+        mThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                loop();
+            }
+        }, name);
+        mThread.start();
+    }
+
+    /**
+     * @return The number of slots the queue was created with
+     */
+    int getCapacity()
+    {
+        return mCapacity;
+    }
+
+    /**
+     * @return The number of slots that can currently be reserved
+     */
+    int available()
+    {
+        return mSlots.availablePermits();
+    }
+
+    /**
+     * Reserves up to {@code count} slots without blocking.
+     *
+     * @param count The number of images the caller would like to capture
+     * @return The number of slots granted, between 0 and {@code count}
+     */
+    int reserve(int count)
+    {
+        while (true)
+        {
+            int granted = Math.min(count, mSlots.availablePermits());
+            if (granted <= 0)
+                return 0;
+
+            if (mSlots.tryAcquire(granted))
+                return granted;
+        }
+    }
+
+    /**
+     * Gives back slots that were reserved but will never be submitted, for example because the
+     * capture failed.
+     */
+    void release(int count)
+    {
+        mSlots.release(count);
+    }
+
+    /**
+     * Queues a job for one previously reserved slot. The slot is released once the job has run.
+     */
+    void submit(Runnable job)
+    {
+        mJobs.add(job);
+    }
+
+    /**
+     * Queues a job that doesn't hold a slot, to run after every job already queued. Used for
+     * clean-up that must wait for pending saves, such as closing the reader their images come
+     * from.
+     */
+    void execute(Runnable job)
+    {
+        mJobs.add(new Unslotted(job));
+    }
+
+    /**
+     * Runs the jobs already queued, then stops the worker thread and waits for it to finish.
+     */
+    void quit() throws InterruptedException
+    {
+        mJobs.add(QUIT);
+        mThread.join();
+    }
+
+    /**
+     * Like {@link #quit()}, but returns at once; the worker thread stops on its own once the
+     * queued jobs have run.
+     */
+    void quitSafely()
+    {
+        mJobs.add(QUIT);
+    }
+
+    private void loop()
+    {
+        while (true)
+        {
+            Runnable job;
+            try
+            {
+                job = mJobs.take();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+
+            if (job == QUIT)
+                return;
+
+            try
+            {
+                job.run();
+            }
+            catch (RuntimeException e)
+            {
+                e.printStackTrace();
+            }
+            finally
+            {
+                if (!(job instanceof Unslotted))
+                    mSlots.release();
+            }
+        }
+    }
+
+    private static final class Unslotted implements Runnable
+    {
+        private final Runnable mJob;
+
+        Unslotted(Runnable job)
+        {
+            mJob = job;
+        }
+
+        @Override
+        public void run()
+        {
+            mJob.run();
+        }
+    }
+}
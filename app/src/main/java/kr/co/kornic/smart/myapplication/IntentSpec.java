@@ -0,0 +1,183 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The intent broadcast for an intent label, in the form the Speech Recognition Service stores it:
+ * {@code action:<action>[;data:<uri>][;category:<category>]...[;type:<type>][;component:<name>]}
+ * followed by one {@code ;<key>:<value>} per extra.
+ *
+ * The format has no escaping: values may contain {@code ':'} but not {@code ';'}, and an extra
+ * named like one of the fields above reads back as that field.
+ */
+public final class IntentSpec
+{
+    private static final String ACTION = "action";
+    private static final String DATA = "data";
+    private static final String CATEGORY = "category";
+    private static final String TYPE = "type";
+    private static final String COMPONENT = "component";
+
+    private final String mAction;
+    private String mData;
+    private final ArrayList<String> mCategories = new ArrayList<>(2);
+    private String mType;
+    private String mComponent;
+    private final LinkedHashMap<String, String> mExtras = new LinkedHashMap<>();
+
+    public IntentSpec(String action)
+    {
+        if (action == null)
+            throw new IllegalArgumentException("An intent spec needs an action.");
+        mAction = action;
+    }
+
+    public IntentSpec setData(String data)
+    {
+        mData = data;
+        return this;
+    }
+
+    public IntentSpec addCategory(String category)
+    {
+        mCategories.add(category);
+        return this;
+    }
+
+    public IntentSpec setType(String type)
+    {
+        mType = type;
+        return this;
+    }
+
+    /**
+     * @param component A flattened {@link android.content.ComponentName}
+     */
+    public IntentSpec setComponent(String component)
+    {
+        mComponent = component;
+        return this;
+    }
+
+    public IntentSpec putExtra(String key, String value)
+    {
+        mExtras.put(key, value);
+        return this;
+    }
+
+    public String getAction()
+    {
+        return mAction;
+    }
+
+    public String getData()
+    {
+        return mData;
+    }
+
+    public List<String> getCategories()
+    {
+        return Collections.unmodifiableList(mCategories);
+    }
+
+    public String getType()
+    {
+        return mType;
+    }
+
+    public String getComponent()
+    {
+        return mComponent;
+    }
+
+    /**
+     * @return Key => value as text, in the order they were put
+     */
+    public Map<String, String> getExtras()
+    {
+        return Collections.unmodifiableMap(mExtras);
+    }
+
+    /**
+     * Appends the encoded spec to {@code out}.
+     *
+     * @return {@code out}
+     */
+    public StringBuilder encodeTo(StringBuilder out)
+    {
+        out.append(ACTION).append(':').append(mAction);
+        appendField(out, DATA, mData);
+        for (int i = 0; i < mCategories.size(); i++)
+            appendField(out, CATEGORY, mCategories.get(i));
+        appendField(out, TYPE, mType);
+        appendField(out, COMPONENT, mComponent);
+        for (Map.Entry<String, String> extra : mExtras.entrySet())
+            out.append(';').append(extra.getKey()).append(':').append(extra.getValue());
+        return out;
+    }
+
+    public String encode()
+    {
+        return encodeTo(new StringBuilder(64)).toString();
+    }
+
+    /**
+     * Reads a spec written by {@link #encodeTo}, in one pass.
+     *
+     * @throws IllegalArgumentException if it doesn't start with an action
+     */
+    public static IntentSpec parse(String encoded)
+    {
+        IntentSpec spec = null;
+        int start = 0;
+        int length = encoded.length();
+        while (start <= length)
+        {
+            int end = encoded.indexOf(';', start);
+            if (end < 0)
+                end = length;
+            int colon = encoded.indexOf(':', start);
+            if (colon < 0 || colon > end)
+                throw new IllegalArgumentException("Field without a value in " + encoded);
+
+            String key = encoded.substring(start, colon);
+            String value = encoded.substring(colon + 1, end);
+            if (spec == null)
+            {
+                if (!key.equals(ACTION))
+                    throw new IllegalArgumentException("Intent spec must start with an action: " + encoded);
+                spec = new IntentSpec(value);
+            }
+            else if (key.equals(DATA))
+                spec.mData = value;
+            else if (key.equals(CATEGORY))
+                spec.mCategories.add(value);
+            else if (key.equals(TYPE))
+                spec.mType = value;
+            else if (key.equals(COMPONENT))
+                spec.mComponent = value;
+            else
+                spec.mExtras.put(key, value);
+            start = end + 1;
+        }
+        if (spec == null)
+            throw new IllegalArgumentException("Empty intent spec");
+        return spec;
+    }
+
+    @Override
+    public String toString()
+    {
+        return encode();
+    }
+
+    private static void appendField(StringBuilder out, String key, String value)
+    {
+        if (value != null)
+            out.append(';').append(key).append(':').append(value);
+    }
+}
@@ -0,0 +1,48 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes encoded JPEG data straight from a {@link ByteBuffer} to disk.
+ *
+ * The plane buffer of a JPEG {@link android.media.Image} is a direct buffer, so handing it to a
+ * {@link FileChannel} lets the kernel read the bytes in place. No intermediate heap array is
+ * allocated, whatever the size of the picture.
+ */
+final class JpegFileWriter
+{
+    private JpegFileWriter()
+    {
+    }
+
+    /**
+     * Writes the remaining bytes of {@code buffer} into {@code file}, replacing its contents.
+     * On return the buffer position is at its limit.
+     *
+     * @param buffer The encoded JPEG data, typically {@code image.getPlanes()[0].getBuffer()}
+     * @param file   The file we save the image into
+     * @return The number of bytes written
+     * @throws IOException If the file cannot be opened or written
+     */
+    static long write(ByteBuffer buffer, File file) throws IOException
+    {
+        FileOutputStream output = new FileOutputStream(file);
+        try
+        {
+            FileChannel channel = output.getChannel();
+            long written = 0;
+            while (buffer.hasRemaining())
+                written += channel.write(buffer);
+
+            return written;
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+}
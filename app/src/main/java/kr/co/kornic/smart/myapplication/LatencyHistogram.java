@@ -0,0 +1,131 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * A fixed-size histogram of durations in nanoseconds with log-scaled buckets.
+ *
+ * Every power of two is split into 8 buckets, so any recorded value is reported within 12.5% of
+ * its true value, from 1 ns up to {@link Long#MAX_VALUE}. The bucket array is allocated up front
+ * and {@link #record} never allocates, so it can be called on the camera threads.
+ *
+ * All methods are thread-safe.
+ */
+final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount;
+    private long mSum;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax;
+
+    /**
+     * @param nanos A duration; negative values are counted as 0
+     */
+    synchronized void record(long nanos)
+    {
+        if (nanos < 0)
+            nanos = 0;
+
+        mCounts[bucketOf(nanos)]++;
+        mCount++;
+        mSum += nanos;
+        if (nanos < mMin)
+            mMin = nanos;
+        if (nanos > mMax)
+            mMax = nanos;
+    }
+
+    synchronized long getCount()
+    {
+        return mCount;
+    }
+
+    /**
+     * @return The smallest value recorded, or 0 if none was
+     */
+    synchronized long getMin()
+    {
+        return mCount == 0 ? 0 : mMin;
+    }
+
+    /**
+     * @return The largest value recorded, or 0 if none was
+     */
+    synchronized long getMax()
+    {
+        return mMax;
+    }
+
+    /**
+     * @return The exact mean of the values recorded, or 0 if none was
+     */
+    synchronized long getMean()
+    {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * @param percentile Between 0 and 100, e.g. 99 for the p99
+     * @return The value below which {@code percentile} percent of the recorded values fall, to
+     * within the bucket resolution, or 0 if nothing was recorded
+     */
+    synchronized long getPercentile(double percentile)
+    {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        if (mCount == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += mCounts[i];
+            if (seen >= rank)
+                return Math.max(mMin, Math.min(mMax, upperBound(i)));
+        }
+        return mMax;
+    }
+
+    synchronized void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+            mCounts[i] = 0;
+        mCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+
+    /**
+     * Values below {@code 2 * SUB_BUCKETS} get a bucket each; above that, each power of two is
+     * split into {@code SUB_BUCKETS} buckets by the bits that follow the leading one.
+     */
+    static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long upperBound(int bucket)
+    {
+        return bucket + 1 >= BUCKETS ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+}
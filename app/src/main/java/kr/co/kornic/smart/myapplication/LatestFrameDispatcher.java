@@ -0,0 +1,259 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Hands the frames of the analysis stream to the {@link FrameAnalyzer}s, keeping only the latest.
+ *
+ * Each analyzer runs on its own executor and sees one frame at a time. A frame that arrives while
+ * its analyzer is busy waits in a single slot, replacing (and dropping) the one that waited
+ * before, so a slow analyzer holds at most two frames and never delays the camera thread. The
+ * frames themselves come from a small pool; a frame goes back to it once every analyzer given it
+ * has returned.
+ */
+final class LatestFrameDispatcher
+{
+    private static final int FPS_WINDOW = 16; // Frames the rate is averaged over
+    private static final int MAX_POOLED = 4;
+
+    private static final class Entry
+    {
+        final FrameAnalyzer analyzer;
+        final Executor executor;
+        YuvFrame pending; // The latest frame that arrived while busy
+        boolean busy;
+        boolean removed;
+        long analyzedCount;
+        long droppedCount;
+        final long[] recentTimestamps = new long[FPS_WINDOW];
+
+        Entry(FrameAnalyzer analyzer, Executor executor)
+        {
+            this.analyzer = analyzer;
+            this.executor = executor;
+        }
+    }
+
+    private final CopyOnWriteArrayList<Entry> mEntries = new CopyOnWriteArrayList<>();
+    private final ArrayList<YuvFrame> mPool = new ArrayList<>(MAX_POOLED);
+    private int mFramesInFlight;
+
+    private final YuvFrame.Recycler mRecycler = new YuvFrame.Recycler()
+    {
+        @Override
+        public void recycle(YuvFrame frame)
+        {
+            synchronized (mPool)
+            {
+                mFramesInFlight--;
+                if (mPool.size() < MAX_POOLED)
+                    mPool.add(frame);
+            }
+        }
+    };
+
+    void add(FrameAnalyzer analyzer, Executor executor)
+    {
+        if (find(analyzer) != null)
+            throw new IllegalArgumentException("Analyzer already added");
+        mEntries.add(new Entry(analyzer, executor));
+    }
+
+    /**
+     * Stops giving frames to {@code analyzer}. A frame it is analyzing is still finished.
+     */
+    void remove(FrameAnalyzer analyzer)
+    {
+        Entry entry = find(analyzer);
+        if (entry == null)
+            return;
+        mEntries.remove(entry);
+        YuvFrame pending;
+        synchronized (entry)
+        {
+            entry.removed = true;
+            pending = entry.pending;
+            entry.pending = null;
+        }
+        if (pending != null)
+            pending.release();
+    }
+
+    boolean isEmpty()
+    {
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * Drops the frames waiting for their analyzers, e.g. when the camera closes.
+     */
+    void clearPending()
+    {
+        for (Entry entry : mEntries)
+        {
+            YuvFrame pending;
+            synchronized (entry)
+            {
+                pending = entry.pending;
+                entry.pending = null;
+                if (pending != null)
+                    entry.droppedCount++;
+            }
+            if (pending != null)
+                pending.release();
+        }
+    }
+
+    /**
+     * @return A pooled frame to copy the next camera frame into, referenced once by the caller
+     * until it calls {@link YuvFrame#release()}
+     */
+    YuvFrame obtain(int width, int height, int yLength, int uvLength)
+    {
+        synchronized (mPool)
+        {
+            mFramesInFlight++;
+            for (int i = mPool.size() - 1; i >= 0; i--)
+            {
+                if (mPool.get(i).fits(width, height, yLength, uvLength))
+                    return mPool.remove(i);
+            }
+        }
+        return new YuvFrame(width, height, yLength, uvLength, mRecycler);
+    }
+
+    /**
+     * @return The frames obtained and not yet back in the pool
+     */
+    int getFramesInFlight()
+    {
+        synchronized (mPool)
+        {
+            return mFramesInFlight;
+        }
+    }
+
+    /**
+     * Offers {@code frame} to every analyzer. The caller keeps its own reference.
+     */
+    void offer(YuvFrame frame)
+    {
+        for (Entry entry : mEntries)
+        {
+            YuvFrame dropped = null;
+            boolean idle;
+            synchronized (entry)
+            {
+                if (entry.removed)
+                    continue;
+                frame.retain();
+                idle = !entry.busy;
+                if (idle)
+                {
+                    entry.busy = true;
+                }
+                else
+                {
+                    dropped = entry.pending;
+                    entry.pending = frame;
+                    if (dropped != null)
+                        entry.droppedCount++;
+                }
+            }
+            if (dropped != null)
+                dropped.release();
+            if (idle)
+                start(entry, frame);
+        }
+    }
+
+    /**
+     * @return How {@code analyzer} keeps up, or null if it was never added or was removed
+     */
+    FrameAnalyzer.Stats getStats(FrameAnalyzer analyzer)
+    {
+        Entry entry = find(analyzer);
+        if (entry == null)
+            return null;
+        synchronized (entry)
+        {
+            float fps = 0;
+            int samples = (int) Math.min(entry.analyzedCount, FPS_WINDOW);
+            if (samples >= 2)
+            {
+                long newest = entry.recentTimestamps[(int) ((entry.analyzedCount - 1) % FPS_WINDOW)];
+                long oldest = entry.recentTimestamps[(int) ((entry.analyzedCount - samples) % FPS_WINDOW)];
+                if (newest > oldest)
+                    fps = (samples - 1) * 1e9f / (newest - oldest);
+            }
+            return new FrameAnalyzer.Stats(entry.analyzedCount, entry.droppedCount, fps);
+        }
+    }
+
+    private void start(final Entry entry, final YuvFrame frame)
+    {
+        try
+        {
+            entry.executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    synchronized (entry)
+                    {
+                        entry.recentTimestamps[(int) (entry.analyzedCount % FPS_WINDOW)] = frame.getTimestamp();
+                        entry.analyzedCount++;
+                    }
+                    try
+                    {
+                        entry.analyzer.analyze(frame);
+                    }
+                    finally
+                    {
+                        frame.release();
+                        next(entry);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            frame.release();
+            synchronized (entry)
+            {
+                entry.droppedCount++;
+            }
+            next(entry);
+        }
+    }
+
+    // Runs the frame that waited meanwhile, if any
+    private void next(Entry entry)
+    {
+        YuvFrame frame;
+        synchronized (entry)
+        {
+            frame = entry.pending;
+            entry.pending = null;
+            if (frame == null)
+            {
+                entry.busy = false;
+                return;
+            }
+        }
+        start(entry, frame);
+    }
+
+    private Entry find(FrameAnalyzer analyzer)
+    {
+        for (Entry entry : mEntries)
+        {
+            if (entry.analyzer == analyzer)
+                return entry;
+        }
+        return null;
+    }
+}
@@ -11,20 +11,48 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.SurfaceTexture;
+import android.media.Image;
 import android.os.Bundle;
+import android.os.Handler;
 
 import android.util.Log;
 import android.view.TextureView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MainActivity extends Activity implements TextureView.SurfaceTextureListener
 {
     private final String LOG_TAG = "CameraActivity";
+
+    // 음성 명령 "photo" 가 방송하는 치환 문자열
+    private static final PhraseSubstitution SNAP_IT = PhraseSubstitution.text("snapit");
+
     private BroadcastReceiver mVoiceCmdReceiver;
+    private VoiceCommandRouter mCommandRouter;
+    private ExecutorService mCommandExecutor; // 촬영 등 무거운 음성 명령 처리용
+    private AsyncSpeechClient mSpeechClient;
+    private ExecutorService mAnalysisExecutor; // 프레임 분석용
+    private MotionDetector mMotionDetector;
+    private final AtomicInteger mDroppedMotionPictures = new AtomicInteger(); // 저장하지 못한 움직임 감지 촬영 수
+    private ExecutorService mScanExecutor; // QR 코드 인식용. 움직임 감지와 따로 돌도록 별도 스레드
+    private QrScanStage mQrScanStage;
     private Camera2BasicFragment camfrag;
     TextureView camView;
     private Activity mActivity;
     VuzixCam vuzixCam;
 
+    // 화면 회전 등 설정 변경 동안 카메라를 보관하는 프래그먼트
+    private VuzixCamHolder camHolder;
+
     @Override
     protected void onCreate(Bundle savedInstanceState)
     {
@@ -35,31 +63,80 @@ public class MainActivity extends Activity implements TextureView.SurfaceTexture
 
         camView = (TextureView) findViewById(R.id.cam_view);
         camView.setSurfaceTextureListener(this);
-        vuzixCam = new VuzixCam(this, camView.getWidth(), camView.getHeight());
 
+        camHolder = VuzixCamHolder.get(this);
+        vuzixCam = camHolder.getCam();
+        if (vuzixCam == null)
+        {
+            vuzixCam = new VuzixCam(this, camView.getWidth(), camView.getHeight());
+            // 최근 3프레임을 보관해 셔터 지연 없이 촬영. 기기가 ZSL 을 지원하지 않으면 일반 촬영
+            vuzixCam.setZsl(3, 48L * 1024 * 1024, 1000);
+            // 움직임 감지와 QR 코드 인식용 분석 스트림. 분석기가 없으면 프레임을 복사하지 않음
+            vuzixCam.setAnalysisSize(640, 480);
+            camHolder.setCam(vuzixCam);
+        }
+        else
+        {
+            // 설정 변경으로 다시 생성됨: 열려 있는 카메라와 프리뷰 텍스처를 그대로 이어받음
+            vuzixCam.attach(this);
+            SurfaceTexture previewTexture = camHolder.takePreviewTexture();
+            if (previewTexture != null)
+                camView.setSurfaceTexture(previewTexture);
+        }
+
+        mCommandExecutor = Executors.newSingleThreadExecutor();
+        mAnalysisExecutor = Executors.newSingleThreadExecutor();
+        mMotionDetector = new MotionDetector(new MotionDetector.Listener()
+        {
+            // 분석 스레드에서 실행됨
+            @Override
+            public void onSceneChanged(long timestamp, float changed)
+            {
+                Log.d(LOG_TAG, "Scene changed: " + changed);
+                takeMotionPicture();
+            }
+        });
+        // 초당 10프레임만 분석
+        mMotionDetector.setMaxRate(10);
+        mScanExecutor = Executors.newSingleThreadExecutor();
+        mQrScanStage = new QrScanStage(new QrScanStage.Listener()
+        {
+            // 분석 스레드에서 실행됨. 같은 코드는 시야에서 벗어났다 돌아올 때만 다시 알림
+            @Override
+            public void onQrCode(final String text, long timestamp)
+            {
+                Log.i(LOG_TAG, "QR code: " + text);
+                runOnUiThread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        Toast.makeText(mActivity, text, Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        });
+        mCommandRouter = buildCommandRouter();
         mVoiceCmdReceiver = new VoiceCmdReceiver();
         registerReceiver(mVoiceCmdReceiver, new IntentFilter(VuzixSpeechClient.ACTION_VOICE_COMMAND));
 
-        try
-        {
-            com.vuzix.sdk.vuzixspeechclient.VuzixSpeechClient sc = new com.vuzix.sdk.vuzixspeechclient.VuzixSpeechClient(this);
-            sc.deletePhrase("flashlight on");
-            sc.deletePhrase("flashlight off");
-            sc.defineIntent("picture", new Intent(VuzixSpeechClient.ACTION_VOICE_COMMAND).putExtra("click", true));
-            sc.defineIntent("getinfo", new Intent(VuzixSpeechClient.ACTION_VOICE_COMMAND).putExtra("info", 97));
-            sc.defineIntent("hello", new Intent(VuzixSpeechClient.ACTION_VOICE_COMMAND).putExtra("hello", "hello"));
-            sc.insertPhrase("hello");
-            sc.insertPhrase("photo", "s:snapit");
-            sc.insertPhrase("do dialog");
-            sc.insertPhrase("okay", "s:&K_ENTER");
-            sc.insertIntentPhrase("pic", "picture");
-            sc.insertIntentPhrase("give me information", "getinfo");
-            Log.i(LOG_TAG, sc.dump());
-        }
-        catch (Exception e)
+        // 어휘 등록은 전용 스레드에서 순서대로 처리. 카메라 프리뷰는 등록을 기다리지 않고 바로 시작됨
+        mSpeechClient = new AsyncSpeechClient(this);
+        mSpeechClient.getPhrases(new AsyncSpeechClient.Callback<Map<String, String>>()
         {
-            Log.e(LOG_TAG, "Error setting custom vocabulary: " + e.getMessage());
-        }
+            @Override
+            public void onResult(Map<String, String> current)
+            {
+                if (!isDestroyed())
+                    syncVocabulary(current);
+            }
+
+            @Override
+            public void onError(Exception error)
+            {
+                Log.e(LOG_TAG, "Error setting custom vocabulary: " + error.getMessage());
+            }
+        });
 
     }
 
@@ -79,11 +156,271 @@ public class MainActivity extends Activity implements TextureView.SurfaceTexture
     }
 
 
+    @Override
+    protected void onPause()
+    {
+        // 설정 변경 중이면 카메라를 닫지 않음. 새 액티비티가 이어서 사용
+        if (!isChangingConfigurations())
+            vuzixCam.closeCamera();
+        super.onPause();
+    }
+
     @Override
     protected void onDestroy()
     {
         super.onDestroy();
         unregisterReceiver(mVoiceCmdReceiver);
+        // 카메라는 다음 액티비티로 넘어갈 수 있으므로 분석기만 해제
+        vuzixCam.removeFrameAnalyzer(mMotionDetector);
+        mAnalysisExecutor.shutdown();
+        vuzixCam.removeFrameAnalyzer(mQrScanStage);
+        mScanExecutor.shutdown();
+        Log.d(LOG_TAG, "Voice command latency:\n" + mCommandRouter.dump());
+        Log.d(LOG_TAG, "Motion pictures dropped: " + mDroppedMotionPictures.get());
+        mCommandExecutor.shutdown();
+        mSpeechClient.close();
+    }
+
+    // 원하는 어휘 상태를 선언하고 실제와 다른 부분만 한 번의 트랜잭션으로 전송.
+    // 이미 같은 상태면(재시작 등) 쓰기 IPC 가 전혀 발생하지 않음
+    private void syncVocabulary(Map<String, String> current)
+    {
+        Map<String, String> phrases = new LinkedHashMap<>(current); // 기본 어휘는 유지
+        phrases.remove("flashlight on");
+        phrases.remove("flashlight off");
+        phrases.put("hello", null);
+        phrases.put("photo", SNAP_IT.encode());
+        phrases.put("do dialog", null);
+        phrases.put("motion on", null);
+        phrases.put("motion off", null);
+        phrases.put("scan on", null);
+        phrases.put("scan off", null);
+        phrases.put("okay", "s:&K_ENTER");
+        phrases.put("pic", VuzixSpeechClient.intentSubstitution("picture", null));
+        phrases.put("give me information", VuzixSpeechClient.intentSubstitution("getinfo", null));
+
+        mSpeechClient.syncVocabulary(phrases, vocabularyIntents(), new AsyncSpeechClient.Callback<VocabularyDiff>()
+        {
+            @Override
+            public void onResult(VocabularyDiff diff)
+            {
+                Log.i(LOG_TAG, "Vocabulary sync: " + (diff.isEmpty() ? "unchanged" : diff.toString()));
+            }
+
+            @Override
+            public void onError(Exception error)
+            {
+                Log.e(LOG_TAG, "Error setting custom vocabulary: " + error.getMessage());
+            }
+        });
+        mSpeechClient.dump(new AsyncSpeechClient.Callback<String>()
+        {
+            @Override
+            public void onResult(String dump)
+            {
+                Log.i(LOG_TAG, dump);
+            }
+
+            @Override
+            public void onError(Exception error)
+            {
+            }
+        });
+    }
+
+    // 음성 어휘에 등록하는 인텐트. 라벨 => 인텐트
+    private static Map<String, Intent> vocabularyIntents()
+    {
+        Map<String, Intent> intents = new HashMap<>();
+        intents.put("picture", new Intent(VuzixSpeechClient.ACTION_VOICE_COMMAND).putExtra("click", true));
+        intents.put("getinfo", new Intent(VuzixSpeechClient.ACTION_VOICE_COMMAND).putExtra("info", 97));
+        intents.put("hello", new Intent(VuzixSpeechClient.ACTION_VOICE_COMMAND).putExtra("hello", "hello"));
+        return intents;
+    }
+
+    // 음성 명령별 처리기 표. 촬영은 백그라운드, 대화상자는 UI 스레드에서 실행
+    private VoiceCommandRouter buildCommandRouter()
+    {
+        final Handler uiHandler = new Handler();
+        Executor uiExecutor = new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                uiHandler.post(command);
+            }
+        };
+        VoiceCommandRouter.CommandHandler capture = new VoiceCommandRouter.CommandHandler()
+        {
+            @Override
+            public void onCommand(VoiceCommandRouter.VoiceCommand command)
+            {
+                takePicture(command);
+            }
+        };
+        VoiceCommandRouter.CommandHandler intro = new VoiceCommandRouter.CommandHandler()
+        {
+            @Override
+            public void onCommand(VoiceCommandRouter.VoiceCommand command)
+            {
+                if (isDestroyed())
+                {
+                    command.finish(false);
+                    return;
+                }
+                new AlertDialog.Builder(mActivity)
+                        .setMessage(R.string.intro_message)
+                        .setPositiveButton(android.R.string.ok, null)
+                        .show();
+                command.finish(true);
+            }
+        };
+
+        // 움직임 감지 촬영 켜기/끄기
+        VoiceCommandRouter.CommandHandler motionOn = new VoiceCommandRouter.CommandHandler()
+        {
+            @Override
+            public void onCommand(VoiceCommandRouter.VoiceCommand command)
+            {
+                if (vuzixCam.getFrameAnalyzerStats(mMotionDetector) == null)
+                {
+                    // 켠 뒤 첫 프레임을 기준 장면으로 사용
+                    mMotionDetector.reset();
+                    vuzixCam.addFrameAnalyzer(mMotionDetector, mAnalysisExecutor);
+                }
+                command.finish(true);
+            }
+        };
+        VoiceCommandRouter.CommandHandler motionOff = new VoiceCommandRouter.CommandHandler()
+        {
+            @Override
+            public void onCommand(VoiceCommandRouter.VoiceCommand command)
+            {
+                vuzixCam.removeFrameAnalyzer(mMotionDetector);
+                command.finish(true);
+            }
+        };
+
+        // QR 코드 인식 켜기/끄기
+        VoiceCommandRouter.CommandHandler scanOn = new VoiceCommandRouter.CommandHandler()
+        {
+            @Override
+            public void onCommand(VoiceCommandRouter.VoiceCommand command)
+            {
+                if (vuzixCam.getFrameAnalyzerStats(mQrScanStage) == null)
+                {
+                    // 켤 때마다 시야의 코드를 다시 알림
+                    mQrScanStage.reset();
+                    vuzixCam.addFrameAnalyzer(mQrScanStage, mScanExecutor);
+                }
+                command.finish(true);
+            }
+        };
+        VoiceCommandRouter.CommandHandler scanOff = new VoiceCommandRouter.CommandHandler()
+        {
+            @Override
+            public void onCommand(VoiceCommandRouter.VoiceCommand command)
+            {
+                vuzixCam.removeFrameAnalyzer(mQrScanStage);
+                command.finish(true);
+            }
+        };
+
+        Map<String, Intent> intents = vocabularyIntents();
+        return new VoiceCommandRouter.Builder(uiExecutor, mCommandExecutor)
+                .onSubstitution(SNAP_IT, VoiceCommandRouter.Dispatch.BACKGROUND, capture)
+                .onPhrase("do_dialog", VoiceCommandRouter.Dispatch.UI, intro)
+                .onPhrase("motion_on", VoiceCommandRouter.Dispatch.UI, motionOn)
+                .onPhrase("motion_off", VoiceCommandRouter.Dispatch.UI, motionOff)
+                .onPhrase("scan_on", VoiceCommandRouter.Dispatch.UI, scanOn)
+                .onPhrase("scan_off", VoiceCommandRouter.Dispatch.UI, scanOff)
+                .onIntent("picture", VuzixSpeechClient.intentSpecOf(intents.get("picture")), VoiceCommandRouter.Dispatch.BACKGROUND, capture)
+                .onIntent("getinfo", VuzixSpeechClient.intentSpecOf(intents.get("getinfo")), VoiceCommandRouter.Dispatch.UI, intro)
+                .build();
+    }
+
+    // 사진 촬영. 프래그먼트가 없으면 VuzixCam 으로 촬영해 저장.
+    // 저장이 끝나면 명령을 완료해 음성 인식부터 저장까지의 지연을 기록
+    private void takePicture(final VoiceCommandRouter.VoiceCommand command)
+    {
+        if (camfrag != null)
+        {
+            CaptureScheduler.Request request = camfrag.takePicture(command.getReceivedNanos(), new CaptureScheduler.Listener()
+            {
+                @Override
+                public void onCaptureFinished(CaptureScheduler.Request request, boolean success)
+                {
+                    command.finish(success);
+                }
+            });
+            if (request == null)
+                command.finish(false);
+            return;
+        }
+
+        if (!savePicture(new File(getExternalFilesDir(null), "pic.jpg"), command))
+            command.finish(false);
+    }
+
+    // 움직임 감지 촬영. 장면마다 따로 저장
+    private void takeMotionPicture()
+    {
+        if (camfrag != null)
+        {
+            camfrag.takePicture(null);
+            return;
+        }
+        if (!savePicture(new File(getExternalFilesDir(null), "motion_" + System.currentTimeMillis() + ".jpg"), null))
+            finishPicture(null, false);
+    }
+
+    // 명령이 있으면 저장 결과로 완료하고, 없으면(움직임 감지) 저장하지 못한 촬영 수를 기록
+    private void finishPicture(VoiceCommandRouter.VoiceCommand command, boolean saved)
+    {
+        if (command != null)
+            command.finish(saved);
+        else if (!saved)
+            Log.w(LOG_TAG, "Motion picture dropped (" + mDroppedMotionPictures.incrementAndGet() + " so far)");
+    }
+
+    // 사진을 찍어 file 에 저장. 명령이 있으면 저장 결과로 완료
+    // @return 카메라가 준비되지 않아 촬영하지 못하면 false
+    private boolean savePicture(final File file, final VoiceCommandRouter.VoiceCommand command)
+    {
+        boolean started = vuzixCam.takePicture(new VuzixCam.PictureCallback()
+        {
+            // saveExecutor 에서 실행됨
+            @Override
+            public void onPicture(Image image)
+            {
+                boolean saved = false;
+                try
+                {
+                    JpegFileWriter.write(image.getPlanes()[0].getBuffer(), file);
+                    Log.d(LOG_TAG, "Saved: " + file);
+                    saved = true;
+                }
+                catch (IOException e)
+                {
+                    Log.e(LOG_TAG, "Error saving picture: " + e.getMessage());
+                }
+                finally
+                {
+                    image.close();
+                    finishPicture(command, saved);
+                }
+            }
+
+            @Override
+            public void onPictureFailed()
+            {
+                Log.w(LOG_TAG, "Picture failed: " + file);
+                finishPicture(command, false);
+            }
+        });
+        if (!started)
+            Log.w(LOG_TAG, "Camera is not ready, picture skipped");
+        return started;
     }
 
     @Override
@@ -100,7 +437,13 @@ public class MainActivity extends Activity implements TextureView.SurfaceTexture
 
     @Override
     public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
-        return false;
+        // 설정 변경 중이면 텍스처를 해제하지 않고 홀더에 맡겨 새 TextureView 에 다시 붙임
+        if (isChangingConfigurations())
+        {
+            camHolder.keepPreviewTexture(surface);
+            return false;
+        }
+        return true;
     }
 
     @Override
@@ -113,32 +456,27 @@ public class MainActivity extends Activity implements TextureView.SurfaceTexture
         @Override
         public void onReceive(Context context, Intent intent)
         {
-            String phrase = intent.getStringExtra("phrase");
-            Log.d("jisu", phrase) ;
-            if (intent.getAction().equals(VuzixSpeechClient.ACTION_VOICE_COMMAND))
-            {
-                phrase = intent.getStringExtra("phrase");
-                if (phrase != null && phrase.equals("snapit"))
-                    camfrag.takePicture();
+            // 지연 측정 기준 시각. 추출보다 먼저 기록
+            long receivedNanos = System.nanoTime();
+            if (!VuzixSpeechClient.ACTION_VOICE_COMMAND.equals(intent.getAction()))
+                return;
 
-                else if (phrase != null && phrase.equals("do_dialog"))
+            // 처리는 라우터가 지정한 스레드에서 하므로 여기서는 추출과 조회만 함
+            String phrase = null;
+            Map<String, String> extras = null;
+            Bundle bundle = intent.getExtras();
+            if (bundle != null)
+            {
+                extras = new HashMap<>();
+                for (String key : bundle.keySet())
                 {
-                    new AlertDialog.Builder(mActivity)
-                            .setMessage(R.string.intro_message)
-                            .setPositiveButton(android.R.string.ok, null)
-                            .show();
+                    if (key.equals("phrase"))
+                        phrase = bundle.getString(key);
+                    else
+                        extras.put(key, String.valueOf(bundle.get(key)));
                 }
-
-                else if (intent.getBooleanExtra("click", false))
-                    camfrag.takePicture();
-
-                else if (intent.getIntExtra("info", 0) == 97)
-                    new AlertDialog.Builder(mActivity)
-                            .setMessage(R.string.intro_message)
-                            .setPositiveButton(android.R.string.ok, null)
-                            .show();
-
             }
+            mCommandRouter.dispatch(phrase, extras, receivedNanos);
         }
     }
 }
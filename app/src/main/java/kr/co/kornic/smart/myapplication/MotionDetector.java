@@ -0,0 +1,280 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * Detects when the scene in front of the camera has changed and come to rest again, e.g. a
+ * gauge needle that moved or a part that arrived on a line, so a picture can be taken hands-free.
+ *
+ * Each analyzed frame is reduced to a grid of block means of its luma, sampling every second
+ * pixel. A block has changed when its mean differs from the reference scene, the one of the last
+ * trigger, by more than a threshold; the mean difference over all blocks is taken out first, so
+ * an exposure change alone doesn't count. Once the changed fraction of blocks reaches the start
+ * fraction, the detector waits for the frames to stop moving between analyses for a few frames,
+ * then notifies its {@link Listener} and takes the new scene as the reference. If the changed
+ * fraction falls back under the stop fraction first, e.g. someone walked through the view, it
+ * goes back to waiting without a trigger.
+ *
+ * The grid is allocated up front and reused, so analyzing a frame allocates nothing. Frames
+ * arriving faster than the configured rate are skipped.
+ */
+public final class MotionDetector implements FrameAnalyzer
+{
+    /**
+     * Receives the triggers, on the thread the detector analyzes on.
+     */
+    public interface Listener
+    {
+        /**
+         * @param timestamp The sensor timestamp of the frame the scene settled in
+         * @param changed   The fraction of blocks that differ from the previous scene
+         */
+        void onSceneChanged(long timestamp, float changed);
+    }
+
+    private static final int SAMPLE_STEP = 2;
+
+    private final Listener mListener;
+    private final int mColumns;
+    private final int mRows;
+
+    // Block edges in pixels for the current frame size
+    private final int[] mBlockLeft;
+    private final int[] mBlockTop;
+    private final int[] mBlockSamples;
+    private int mFrameWidth;
+    private int mFrameHeight;
+
+    // Block means of the reference scene, the previous analysis and this one
+    private final int[] mReference;
+    private int[] mPrevious;
+    private int[] mCurrent;
+    private boolean mHasReference;
+
+    private int mBlockThreshold = 12;
+    private float mStartFraction = 0.1f;
+    private float mStopFraction = 0.03f;
+    private int mSettleFrames = 3;
+    private long mMinIntervalNs;
+
+    private boolean mChanged;
+    private int mStableFrames;
+    private long mLastAnalyzed = Long.MIN_VALUE;
+    private float mChangedFraction;
+    private int mTriggerCount;
+
+    /**
+     * @param columns The number of blocks across
+     * @param rows    The number of blocks down
+     */
+    public MotionDetector(int columns, int rows, Listener listener)
+    {
+        if (columns <= 0 || rows <= 0)
+            throw new IllegalArgumentException("Invalid grid.");
+
+        mListener = listener;
+        mColumns = columns;
+        mRows = rows;
+        mBlockLeft = new int[columns + 1];
+        mBlockTop = new int[rows + 1];
+        mBlockSamples = new int[columns * rows];
+        mReference = new int[columns * rows];
+        mPrevious = new int[columns * rows];
+        mCurrent = new int[columns * rows];
+    }
+
+    /**
+     * A 16 x 12 grid.
+     */
+    public MotionDetector(Listener listener)
+    {
+        this(16, 12, listener);
+    }
+
+    /**
+     * @param blockThreshold The difference of mean luma, 0 to 255, from which a block has changed
+     * @param startFraction  The fraction of changed blocks from which the scene has changed
+     * @param stopFraction   The fraction under which the scene is back to the reference, or has
+     *                       stopped moving; lower than {@code startFraction}
+     */
+    public synchronized void setThresholds(int blockThreshold, float startFraction, float stopFraction)
+    {
+        if (blockThreshold < 0 || !(startFraction > 0 && startFraction <= 1) || !(stopFraction >= 0 && stopFraction < startFraction))
+            throw new IllegalArgumentException("Invalid thresholds.");
+
+        mBlockThreshold = blockThreshold;
+        mStartFraction = startFraction;
+        mStopFraction = stopFraction;
+    }
+
+    /**
+     * @param frames The analyses the scene must stay still for after a change before it triggers
+     */
+    public synchronized void setSettleFrames(int frames)
+    {
+        if (frames < 1)
+            throw new IllegalArgumentException("At least one frame is needed.");
+        mSettleFrames = frames;
+    }
+
+    /**
+     * @param fps The most frames analyzed per second, by sensor timestamp; 0 analyzes every frame
+     */
+    public synchronized void setMaxRate(float fps)
+    {
+        if (fps < 0)
+            throw new IllegalArgumentException("Invalid rate.");
+        mMinIntervalNs = fps == 0 ? 0 : (long) (1e9 / fps);
+    }
+
+    /**
+     * Takes the next analyzed frame as the reference scene, e.g. when detection is turned on.
+     */
+    public synchronized void reset()
+    {
+        mHasReference = false;
+        mChanged = false;
+        mStableFrames = 0;
+        mLastAnalyzed = Long.MIN_VALUE;
+        mChangedFraction = 0;
+    }
+
+    /**
+     * @return The fraction of blocks that differed from the reference in the last analysis
+     */
+    public synchronized float getChangedFraction()
+    {
+        return mChangedFraction;
+    }
+
+    /**
+     * @return The number of times the listener was notified
+     */
+    public synchronized int getTriggerCount()
+    {
+        return mTriggerCount;
+    }
+
+    @Override
+    public void analyze(YuvFrame frame)
+    {
+        float trigger = -1;
+        synchronized (this)
+        {
+            long timestamp = frame.getTimestamp();
+            if (mLastAnalyzed != Long.MIN_VALUE && timestamp - mLastAnalyzed < mMinIntervalNs)
+                return;
+            mLastAnalyzed = timestamp;
+
+            if (frame.getWidth() != mFrameWidth || frame.getHeight() != mFrameHeight)
+                resize(frame.getWidth(), frame.getHeight());
+            measure(frame, mCurrent);
+
+            if (!mHasReference)
+            {
+                System.arraycopy(mCurrent, 0, mReference, 0, mCurrent.length);
+                mHasReference = true;
+            }
+            else
+            {
+                mChangedFraction = changedFraction(mCurrent, mReference);
+                float moving = changedFraction(mCurrent, mPrevious);
+                if (!mChanged)
+                {
+                    mChanged = mChangedFraction >= mStartFraction;
+                    mStableFrames = 0;
+                }
+                else if (mChangedFraction < mStopFraction)
+                {
+                    // Back to the reference scene before it settled
+                    mChanged = false;
+                }
+                else if (moving >= mStopFraction)
+                {
+                    mStableFrames = 0;
+                }
+                else if (++mStableFrames >= mSettleFrames)
+                {
+                    System.arraycopy(mCurrent, 0, mReference, 0, mCurrent.length);
+                    mChanged = false;
+                    mTriggerCount++;
+                    trigger = mChangedFraction;
+                }
+            }
+
+            int[] previous = mPrevious;
+            mPrevious = mCurrent;
+            mCurrent = previous;
+        }
+
+        if (trigger >= 0)
+            mListener.onSceneChanged(frame.getTimestamp(), trigger);
+    }
+
+    // Splits the frame into the grid and forgets the scenes measured at another size
+    private void resize(int width, int height)
+    {
+        mFrameWidth = width;
+        mFrameHeight = height;
+        for (int c = 0; c <= mColumns; c++)
+            mBlockLeft[c] = (int) ((long) width * c / mColumns);
+        for (int r = 0; r <= mRows; r++)
+            mBlockTop[r] = (int) ((long) height * r / mRows);
+        for (int r = 0; r < mRows; r++)
+        {
+            int samplesDown = (mBlockTop[r + 1] - mBlockTop[r] + SAMPLE_STEP - 1) / SAMPLE_STEP;
+            for (int c = 0; c < mColumns; c++)
+            {
+                int samplesAcross = (mBlockLeft[c + 1] - mBlockLeft[c] + SAMPLE_STEP - 1) / SAMPLE_STEP;
+                mBlockSamples[r * mColumns + c] = samplesDown * samplesAcross;
+            }
+        }
+        mHasReference = false;
+        mChanged = false;
+    }
+
+    // The mean luma of each block, from every second pixel of every second row
+    private void measure(YuvFrame frame, int[] means)
+    {
+        byte[] luma = frame.getY();
+        int rowStride = frame.getYRowStride();
+        for (int r = 0; r < mRows; r++)
+        {
+            int block = r * mColumns;
+            for (int c = 0; c < mColumns; c++)
+                means[block + c] = 0;
+            for (int y = mBlockTop[r]; y < mBlockTop[r + 1]; y += SAMPLE_STEP)
+            {
+                int offset = y * rowStride;
+                for (int c = 0; c < mColumns; c++)
+                {
+                    int sum = 0;
+                    for (int x = mBlockLeft[c], right = mBlockLeft[c + 1]; x < right; x += SAMPLE_STEP)
+                        sum += luma[offset + x] & 0xFF;
+                    means[block + c] += sum;
+                }
+            }
+            for (int c = 0; c < mColumns; c++)
+            {
+                int samples = mBlockSamples[block + c];
+                means[block + c] = samples == 0 ? 0 : means[block + c] / samples;
+            }
+        }
+    }
+
+    // The fraction of blocks differing by more than the threshold, once the mean shift is taken out
+    private float changedFraction(int[] a, int[] b)
+    {
+        int blocks = a.length;
+        int shift = 0;
+        for (int i = 0; i < blocks; i++)
+            shift += a[i] - b[i];
+        shift /= blocks;
+
+        int changed = 0;
+        for (int i = 0; i < blocks; i++)
+        {
+            if (Math.abs(a[i] - b[i] - shift) > mBlockThreshold)
+                changed++;
+        }
+        return (float) changed / blocks;
+    }
+}
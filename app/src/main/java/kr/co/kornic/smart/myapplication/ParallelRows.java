@@ -0,0 +1,167 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Splits the rows of an image into one band per thread and runs them in parallel. The caller
+ * runs the first band itself and returns once every band is done.
+ *
+ * The workers and their tasks are created once, so a call allocates nothing but the executor's
+ * queue entries. Calls are serialized.
+ */
+final class ParallelRows
+{
+    interface Body
+    {
+        /**
+         * Processes rows {@code fromRow} (inclusive) to {@code toRow} (exclusive).
+         */
+        void run(int fromRow, int toRow);
+    }
+
+    private final class Band implements Runnable
+    {
+        Body body;
+        int fromRow;
+        int toRow;
+
+        @Override
+        public void run()
+        {
+            Throwable failure = null;
+            try
+            {
+                body.run(fromRow, toRow);
+            }
+            catch (Throwable t)
+            {
+                failure = t;
+            }
+            bandDone(failure);
+        }
+    }
+
+    private final int mThreads;
+    private final ExecutorService mExecutor; // null with a single thread
+    private final Band[] mBands;
+    private int mRemaining;
+    private Throwable mFailure;
+
+    /**
+     * @param threads The threads to split the rows over, the caller's included
+     */
+    ParallelRows(int threads)
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed.");
+
+        mThreads = threads;
+        mBands = new Band[threads];
+        for (int i = 0; i < threads; i++)
+            mBands[i] = new Band();
+        mExecutor = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, new ThreadFactory()
+        {
+            private int mCount;
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "ParallelRows-" + (++mCount));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    int getThreads()
+    {
+        return mThreads;
+    }
+
+    /**
+     * Runs {@code body} over {@code rows} rows. Rethrows what a band threw, once all are done.
+     */
+    synchronized void run(int rows, Body body)
+    {
+        int bands = Math.min(mThreads, rows);
+        if (bands <= 1)
+        {
+            body.run(0, rows);
+            return;
+        }
+
+        synchronized (mBands)
+        {
+            mRemaining = bands - 1;
+            mFailure = null;
+        }
+        for (int i = 0; i < bands; i++)
+        {
+            Band band = mBands[i];
+            band.body = body;
+            band.fromRow = (int) ((long) rows * i / bands);
+            band.toRow = (int) ((long) rows * (i + 1) / bands);
+            if (i > 0)
+                mExecutor.execute(band);
+        }
+
+        Throwable failure = null;
+        try
+        {
+            body.run(mBands[0].fromRow, mBands[0].toRow);
+        }
+        catch (Throwable t)
+        {
+            failure = t;
+        }
+
+        boolean interrupted = false;
+        synchronized (mBands)
+        {
+            while (mRemaining > 0)
+            {
+                try
+                {
+                    mBands.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true; // The bands still use the caller's buffers
+                }
+            }
+            if (failure == null)
+                failure = mFailure;
+        }
+        for (int i = 1; i < bands; i++)
+            mBands[i].body = null;
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+    }
+
+    /**
+     * Stops the worker threads. Must not be called during {@link #run}.
+     */
+    void shutdown()
+    {
+        if (mExecutor != null)
+            mExecutor.shutdown();
+    }
+
+    private void bandDone(Throwable failure)
+    {
+        synchronized (mBands)
+        {
+            if (failure != null && mFailure == null)
+                mFailure = failure;
+            if (--mRemaining == 0)
+                mBands.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * The phrases of a speech vocabulary with their index in the Speech Recognition Service.
+ *
+ * The service keeps phrases in a list: a new phrase is appended, and deleting one decrements the
+ * index of every phrase after it. Rewriting those indexes on each delete costs O(n). Instead,
+ * every phrase gets a virtual key in the order of its index, and a Fenwick tree counts which keys
+ * are still live. A phrase's index is then the number of live keys before its own plus a fixed
+ * offset, so lookups and deletes cost O(log n) and never touch the other phrases.
+ *
+ * If the service ever reports an index out of order for a new phrase, the keys are reassigned in
+ * index order (O(n log n)); the same happens when too many keys are dead.
+ *
+ * A phrase may also be stored without an index (any negative index), e.g. while its insert is
+ * still queued; it then takes no part in the index arithmetic. Not thread-safe.
+ */
+final class PhraseIndexMap
+{
+    private static final class Entry
+    {
+        final String phrase;
+        int key = -1; // -1 until the entry is in the tree
+        int offset = -1; // The absolute index while key is -1, negative if there is none
+        String params;
+
+        Entry(String phrase, String params)
+        {
+            this.phrase = phrase;
+            this.params = params;
+        }
+    }
+
+    private static final Comparator<Entry> BY_INDEX = new Comparator<Entry>()
+    {
+        @Override
+        public int compare(Entry lhs, Entry rhs)
+        {
+            return lhs.offset < rhs.offset ? -1 : (lhs.offset == rhs.offset ? 0 : 1);
+        }
+    };
+
+    private final HashMap<String, Entry> mEntries;
+    private Entry[] mByKey;
+    private int[] mTree; // 1-based Fenwick tree of live flags per key
+    private int mNextKey;
+    private int mLiveKeys;
+
+    PhraseIndexMap()
+    {
+        this(16);
+    }
+
+    PhraseIndexMap(int capacity)
+    {
+        capacity = Math.max(capacity, 16);
+        mEntries = new HashMap<>(capacity);
+        mByKey = new Entry[capacity];
+        mTree = new int[capacity + 1];
+    }
+
+    /**
+     * @return A deep copy, which can be edited independently
+     */
+    PhraseIndexMap copy()
+    {
+        PhraseIndexMap copy = new PhraseIndexMap(mByKey.length);
+        for (Entry entry : mEntries.values())
+        {
+            Entry clone = new Entry(entry.phrase, entry.params);
+            clone.key = entry.key;
+            clone.offset = entry.offset;
+            copy.mEntries.put(clone.phrase, clone);
+            if (clone.key >= 0)
+                copy.mByKey[clone.key] = clone;
+        }
+        System.arraycopy(mTree, 0, copy.mTree, 0, mTree.length);
+        copy.mNextKey = mNextKey;
+        copy.mLiveKeys = mLiveKeys;
+        return copy;
+    }
+
+    int size()
+    {
+        return mEntries.size();
+    }
+
+    boolean contains(String phrase)
+    {
+        return mEntries.containsKey(phrase);
+    }
+
+    /**
+     * @return The phrases, in no particular order
+     */
+    Set<String> phrases()
+    {
+        return Collections.unmodifiableSet(mEntries.keySet());
+    }
+
+    /**
+     * @return The current index of {@code phrase}, or -1 if it is unknown or has no index
+     */
+    int indexOf(String phrase)
+    {
+        Entry entry = mEntries.get(phrase);
+        if (entry == null || entry.key < 0)
+            return -1;
+        return indexOf(entry);
+    }
+
+    /**
+     * @return The params of {@code phrase}, or null if it is unknown
+     */
+    String paramsOf(String phrase)
+    {
+        Entry entry = mEntries.get(phrase);
+        return entry == null ? null : entry.params;
+    }
+
+    void setParams(String phrase, String params)
+    {
+        Entry entry = mEntries.get(phrase);
+        if (entry == null)
+            throw new IllegalArgumentException("Unknown phrase " + phrase);
+        entry.params = params;
+    }
+
+    /**
+     * Adds {@code phrase} at {@code index}, replacing it if it is already there. The other indexes
+     * don't move: the service appends new phrases.
+     *
+     * @param index The index the service assigned, or a negative value if it has none yet
+     */
+    void put(String phrase, int index, String params)
+    {
+        remove(phrase);
+        Entry entry = new Entry(phrase, params);
+        mEntries.put(phrase, entry);
+        if (index < 0)
+            return;
+
+        if (mLiveKeys > 0 && index <= indexOf(mByKey[keyOfRank(mLiveKeys)]))
+        {
+            // Not an append: reassign every key in index order.
+            entry.offset = index;
+            rebuild();
+            return;
+        }
+
+        ensureCapacity(mNextKey + 1);
+        entry.key = mNextKey++;
+        entry.offset = index - mLiveKeys;
+        mByKey[entry.key] = entry;
+        add(entry.key, 1);
+        mLiveKeys++;
+    }
+
+    /**
+     * Adds many phrases at once, e.g. as loaded from the service, in any order.
+     */
+    void putAll(String[] phrases, int[] indexes, String[] params)
+    {
+        for (int i = 0; i < phrases.length; i++)
+        {
+            remove(phrases[i]);
+            Entry entry = new Entry(phrases[i], params == null ? null : params[i]);
+            entry.offset = indexes[i];
+            mEntries.put(entry.phrase, entry);
+        }
+        rebuild();
+    }
+
+    /**
+     * Removes {@code phrase}; every phrase after it moves down one index, as in the service.
+     *
+     * @return Its index before the removal, or -1 if it was unknown or had no index
+     */
+    int remove(String phrase)
+    {
+        Entry entry = mEntries.remove(phrase);
+        if (entry == null || entry.key < 0)
+            return -1;
+
+        int index = indexOf(entry);
+        mByKey[entry.key] = null;
+        add(entry.key, -1);
+        mLiveKeys--;
+        return index;
+    }
+
+    private int indexOf(Entry entry)
+    {
+        return prefix(entry.key) + entry.offset;
+    }
+
+    /**
+     * Makes room for keys up to {@code keys - 1}, compacting first if most keys are dead.
+     */
+    private void ensureCapacity(int keys)
+    {
+        if (keys <= mByKey.length)
+            return;
+
+        if (mNextKey - mLiveKeys > mLiveKeys)
+        {
+            rebuild();
+            if (mNextKey < mByKey.length)
+                return;
+        }
+
+        Entry[] byKey = new Entry[Math.max(keys, mByKey.length * 2)];
+        System.arraycopy(mByKey, 0, byKey, 0, mNextKey);
+        mByKey = byKey;
+        mTree = new int[byKey.length + 1];
+        buildTree();
+    }
+
+    /**
+     * Gives a fresh key, in index order, to every entry in the tree and to every entry waiting
+     * outside it with an absolute index.
+     */
+    private void rebuild()
+    {
+        ArrayList<Entry> indexed = new ArrayList<>(mLiveKeys + 1);
+        for (int key = 0; key < mNextKey; key++)
+        {
+            Entry entry = mByKey[key];
+            if (entry != null)
+            {
+                entry.offset = indexOf(entry); // Now the absolute index
+                indexed.add(entry);
+            }
+        }
+        for (Entry entry : mEntries.values())
+        {
+            if (entry.key < 0 && entry.offset >= 0)
+                indexed.add(entry);
+        }
+        Collections.sort(indexed, BY_INDEX);
+
+        int capacity = mByKey.length;
+        while (capacity < indexed.size() + 1)
+            capacity *= 2;
+        mByKey = new Entry[capacity];
+        mTree = new int[capacity + 1];
+        for (int key = 0; key < indexed.size(); key++)
+        {
+            Entry entry = indexed.get(key);
+            entry.key = key;
+            entry.offset -= key; // index = live keys before + offset
+            mByKey[key] = entry;
+        }
+        mNextKey = indexed.size();
+        mLiveKeys = indexed.size();
+        buildTree();
+    }
+
+    /**
+     * Rebuilds the tree from {@link #mByKey} in O(n).
+     */
+    private void buildTree()
+    {
+        for (int i = 1; i < mTree.length; i++)
+            mTree[i] = 0;
+        for (int i = 1; i < mTree.length; i++)
+        {
+            if (i <= mNextKey && mByKey[i - 1] != null)
+                mTree[i]++;
+            int parent = i + (i & -i);
+            if (parent < mTree.length)
+                mTree[parent] += mTree[i];
+        }
+    }
+
+    private void add(int key, int delta)
+    {
+        for (int i = key + 1; i < mTree.length; i += i & -i)
+            mTree[i] += delta;
+    }
+
+    /**
+     * @return The number of live keys below {@code key}
+     */
+    private int prefix(int key)
+    {
+        int sum = 0;
+        for (int i = key; i > 0; i -= i & -i)
+            sum += mTree[i];
+        return sum;
+    }
+
+    /**
+     * @return The key of the {@code rank}-th live key, counting from 1
+     */
+    private int keyOfRank(int rank)
+    {
+        int position = 0;
+        for (int step = Integer.highestOneBit(mTree.length - 1); step > 0; step >>= 1)
+        {
+            int next = position + step;
+            if (next < mTree.length && mTree[next] < rank)
+            {
+                position = next;
+                rank -= mTree[next];
+            }
+        }
+        return position; // 1-based position + 1, minus 1 for the 0-based key
+    }
+}
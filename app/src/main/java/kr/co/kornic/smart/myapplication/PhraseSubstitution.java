@@ -0,0 +1,245 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * What the Speech Recognition Service does when it hears a phrase, as stored in the params of the
+ * phrase: {@code s:<text>}, {@code s:&k<keycode>} or {@code s:&i<intent label>}, optionally followed
+ * by {@code ;r:<repeat interval ms>} and more {@code ;}-separated params.
+ *
+ * {@link #encodeTo} appends the params to a caller's {@link StringBuilder}, so a caller encoding
+ * many phrases can reuse one buffer; {@link #parse} reads them back in one pass.
+ */
+public final class PhraseSubstitution
+{
+    public enum Kind
+    {
+        /**
+         * No substitution: the phrase itself is broadcast. Any params are kept as they are.
+         */
+        NONE,
+        /**
+         * {@link #getText()} is broadcast instead of the phrase.
+         */
+        TEXT,
+        /**
+         * {@link #getKeycode()} is injected as a key event.
+         */
+        KEYCODE,
+        /**
+         * The intent defined under {@link #getIntentLabel()} is broadcast.
+         */
+        INTENT
+    }
+
+    private static final String SUBSTITUTION = "s:";
+    private static final String KEYCODE_PREFIX = "&k";
+    private static final String INTENT_PREFIX = "&i";
+    private static final String REPEAT = "r:";
+
+    private final Kind mKind;
+    private final String mText; // Text or intent label
+    private final int mKeycode;
+    private final int mRepeatIntervalMs;
+    private final String mParams; // Everything after the known fields, without the leading ';'
+
+    private PhraseSubstitution(Kind kind, String text, int keycode, int repeatIntervalMs, String params)
+    {
+        mKind = kind;
+        mText = text;
+        mKeycode = keycode;
+        mRepeatIntervalMs = repeatIntervalMs;
+        mParams = params == null || params.length() == 0 ? null : params;
+    }
+
+    public static PhraseSubstitution text(String text)
+    {
+        return new PhraseSubstitution(Kind.TEXT, text, 0, 0, null);
+    }
+
+    /**
+     * @param repeatIntervalMs 0 for no repeat
+     * @param params           More params, or null
+     */
+    public static PhraseSubstitution keycode(int keycode, int repeatIntervalMs, String params)
+    {
+        return new PhraseSubstitution(Kind.KEYCODE, null, keycode, Math.max(0, repeatIntervalMs), params);
+    }
+
+    /**
+     * @param params More params, or null
+     */
+    public static PhraseSubstitution intent(String intentLabel, String params)
+    {
+        return new PhraseSubstitution(Kind.INTENT, intentLabel, 0, 0, params);
+    }
+
+    public Kind getKind()
+    {
+        return mKind;
+    }
+
+    /**
+     * @return The text of a {@link Kind#TEXT} substitution, otherwise null
+     */
+    public String getText()
+    {
+        return mKind == Kind.TEXT ? mText : null;
+    }
+
+    public int getKeycode()
+    {
+        return mKeycode;
+    }
+
+    /**
+     * @return The intent label of an {@link Kind#INTENT} substitution, otherwise null
+     */
+    public String getIntentLabel()
+    {
+        return mKind == Kind.INTENT ? mText : null;
+    }
+
+    public int getRepeatIntervalMs()
+    {
+        return mRepeatIntervalMs;
+    }
+
+    /**
+     * @return The params that follow the substitution, or null
+     */
+    public String getParams()
+    {
+        return mParams;
+    }
+
+    /**
+     * Appends the encoded params to {@code out}.
+     *
+     * @return {@code out}
+     */
+    public StringBuilder encodeTo(StringBuilder out)
+    {
+        switch (mKind)
+        {
+            case TEXT:
+                out.append(SUBSTITUTION).append(mText);
+                break;
+            case KEYCODE:
+                out.append(SUBSTITUTION).append(KEYCODE_PREFIX).append(mKeycode);
+                if (mRepeatIntervalMs > 0)
+                    out.append(';').append(REPEAT).append(mRepeatIntervalMs);
+                break;
+            case INTENT:
+                out.append(SUBSTITUTION).append(INTENT_PREFIX).append(mText);
+                break;
+            default:
+                if (mParams != null)
+                    out.append(mParams);
+                return out;
+        }
+        if (mParams != null)
+            out.append(';').append(mParams);
+        return out;
+    }
+
+    public String encode()
+    {
+        return encodeTo(new StringBuilder(32)).toString();
+    }
+
+    /**
+     * Reads params as written by {@link #encodeTo}, or by the service.
+     *
+     * @param params null or empty for {@link Kind#NONE}
+     */
+    public static PhraseSubstitution parse(String params)
+    {
+        if (params == null || params.length() == 0)
+            return new PhraseSubstitution(Kind.NONE, null, 0, 0, null);
+        if (!params.regionMatches(true, 0, SUBSTITUTION, 0, SUBSTITUTION.length()))
+            return new PhraseSubstitution(Kind.NONE, null, 0, 0, params);
+
+        int start = SUBSTITUTION.length();
+        int end = params.indexOf(';', start);
+        if (end < 0)
+            end = params.length();
+        String rest = end < params.length() ? params.substring(end + 1) : null;
+
+        if (params.startsWith(INTENT_PREFIX, start))
+            return new PhraseSubstitution(Kind.INTENT, params.substring(start + INTENT_PREFIX.length(), end), 0, 0, rest);
+
+        if (params.startsWith(KEYCODE_PREFIX, start))
+        {
+            int keycode = parseInt(params, start + KEYCODE_PREFIX.length(), end);
+            if (keycode >= 0)
+            {
+                int repeat = 0;
+                if (rest != null && rest.startsWith(REPEAT))
+                {
+                    int repeatEnd = rest.indexOf(';');
+                    if (repeatEnd < 0)
+                        repeatEnd = rest.length();
+                    repeat = parseInt(rest, REPEAT.length(), repeatEnd);
+                    if (repeat >= 0)
+                        rest = repeatEnd < rest.length() ? rest.substring(repeatEnd + 1) : null;
+                    else
+                        repeat = 0;
+                }
+                return new PhraseSubstitution(Kind.KEYCODE, null, keycode, repeat, rest);
+            }
+            // Not a number, e.g. "&K_ENTER": the service takes it as text
+        }
+
+        return new PhraseSubstitution(Kind.TEXT, params.substring(start, end), 0, 0, rest);
+    }
+
+    /**
+     * @return The non-negative decimal number in {@code s} from {@code start} to {@code end}, or -1
+     */
+    private static int parseInt(String s, int start, int end)
+    {
+        if (start >= end || end - start > 9)
+            return -1;
+        int value = 0;
+        for (int i = start; i < end; i++)
+        {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (!(o instanceof PhraseSubstitution))
+            return false;
+        PhraseSubstitution other = (PhraseSubstitution) o;
+        return mKind == other.mKind && mKeycode == other.mKeycode && mRepeatIntervalMs == other.mRepeatIntervalMs
+                && equal(mText, other.mText) && equal(mParams, other.mParams);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = mKind.hashCode();
+        hash = hash * 31 + (mText == null ? 0 : mText.hashCode());
+        hash = hash * 31 + mKeycode;
+        hash = hash * 31 + mRepeatIntervalMs;
+        return hash * 31 + (mParams == null ? 0 : mParams.hashCode());
+    }
+
+    @Override
+    public String toString()
+    {
+        return encode();
+    }
+
+    private static boolean equal(String a, String b)
+    {
+        return a == null ? b == null : a.equals(b);
+    }
+}
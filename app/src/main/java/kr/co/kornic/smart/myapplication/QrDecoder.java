@@ -0,0 +1,1036 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.nio.charset.Charset;
+
+/**
+ * Decodes a QR code, versions 1 to 10, from the luma of a frame, in plain Java so it runs on the
+ * analysis thread and in unit tests alike.
+ *
+ * <ol>
+ * <li>The region is binarized against a local threshold: the black point of each 8 x 8 block,
+ * averaged over the 5 x 5 blocks around it, so shadows and glare across a label don't matter.</li>
+ * <li>Every second row is scanned for the 1:1:3:1:1 runs across a finder pattern; each hit is
+ * checked down its centre column and back across, and hits on the same pattern are merged.</li>
+ * <li>Of the patterns found, the three closest to an isosceles right triangle are taken as the
+ * top left, top right and bottom left corners. Their spacing gives the version, and from version 2
+ * the bottom right alignment pattern is searched for near where it should be, to follow the
+ * perspective of a label seen at an angle.</li>
+ * <li>Each module is sampled through the perspective transform, the format and version
+ * information are read from either of their copies, and the data is unmasked and read in the
+ * zigzag order, de-interleaved and Reed-Solomon corrected block by block.</li>
+ * <li>The numeric, alphanumeric and byte segments are decoded; bytes as UTF-8 when they are valid
+ * UTF-8 or declared so by an ECI, as ISO-8859-1 otherwise.</li>
+ * </ol>
+ *
+ * Every buffer is allocated up front or grown to the largest region seen, so decoding allocates
+ * only the text. When the codewords read are the same as last time, e.g. a label held in view,
+ * the last text is returned without correcting and decoding them again. Calls are serialized.
+ */
+public final class QrDecoder
+{
+    private static final int BLOCK_SIZE = 8;
+    private static final int MIN_DYNAMIC_RANGE = 24;
+    private static final int ROW_STEP = 2;
+    private static final int MAX_CANDIDATES = 32;
+    // Of 25 alignment pattern modules, how many must match
+    private static final int MIN_ALIGNMENT_MATCH = 23;
+
+    private static final int MAX_DIMENSION = QrVersion.dimension(QrVersion.MAX_VERSION);
+    private static final int MAX_CODEWORDS = QrVersion.totalCodewords(QrVersion.MAX_VERSION);
+    private static final int MAX_BLOCK = 146;
+
+    private static final String ALPHANUMERIC = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final int ECI_ISO_8859_1 = 3;
+    private static final int ECI_UTF_8 = 26;
+
+    // The binarized region, 1 for dark, and the black point of each block
+    private byte[] mBinary = new byte[0];
+    private int[] mBlackPoints = new int[0];
+    private int mWidth;
+    private int mHeight;
+
+    // Finder pattern candidates: centre, module size and how many scans hit it
+    private final float[] mCandidateX = new float[MAX_CANDIDATES];
+    private final float[] mCandidateY = new float[MAX_CANDIDATES];
+    private final float[] mCandidateSize = new float[MAX_CANDIDATES];
+    private final int[] mCandidateHits = new int[MAX_CANDIDATES];
+    private int mCandidates;
+    private final int[] mRuns = new int[5];
+    private final int[] mCrossRuns = new int[5];
+    private final int[] mCorners = new int[3];
+
+    private double mAlignmentX;
+    private double mAlignmentY;
+    private final double[] mSquareToImage = new double[9];
+    private final double[] mSquareToModules = new double[9];
+    private final double[] mModulesToSquare = new double[9];
+    private final double[] mModulesToImage = new double[9];
+
+    private final boolean[] mModules = new boolean[MAX_DIMENSION * MAX_DIMENSION];
+    private final int[] mCodewords = new int[MAX_CODEWORDS];
+    private final int[] mBlock = new int[MAX_BLOCK];
+    private final int[] mData = new int[MAX_CODEWORDS];
+    private final byte[] mBytes = new byte[MAX_CODEWORDS];
+    private final QrReedSolomon mReedSolomon = new QrReedSolomon();
+    private final StringBuilder mText = new StringBuilder();
+    private int mDataLength;
+    private int mBitOffset;
+
+    // The last code decoded, by its codewords as read
+    private final int[] mLastCodewords = new int[MAX_CODEWORDS];
+    private int mLastVersion;
+    private int mLastEcLevel;
+    private String mLastText;
+    private int mLastCorrected;
+    private int mCorrected;
+
+    /**
+     * Decodes a code anywhere in the frame.
+     */
+    public String decode(YuvFrame frame)
+    {
+        return decode(frame.getY(), frame.getYRowStride(), 0, 0, frame.getWidth(), frame.getHeight());
+    }
+
+    /**
+     * Decodes a code within a region of the luma.
+     *
+     * @param luma      One byte per pixel, rows {@code rowStride} apart
+     * @param left      The region's first column
+     * @param top       The region's first row
+     * @return The text of the code, or null if none was found or it could not be read
+     */
+    public synchronized String decode(byte[] luma, int rowStride, int left, int top, int width, int height)
+    {
+        if (left < 0 || top < 0 || width <= 0 || height <= 0 || left + width > rowStride
+                || (long) (top + height - 1) * rowStride + left + width > luma.length)
+            throw new IllegalArgumentException("Region outside the frame");
+
+        binarize(luma, rowStride, left, top, width, height);
+        findFinderPatterns();
+        if (!selectCorners())
+            return null;
+
+        // The top left corner is the one across from the longest side
+        int a = mCorners[0];
+        int b = mCorners[1];
+        int c = mCorners[2];
+        float ab = distance(a, b);
+        float ac = distance(a, c);
+        float bc = distance(b, c);
+        int topLeft;
+        int p;
+        int q;
+        if (bc >= ab && bc >= ac)
+        {
+            topLeft = a;
+            p = b;
+            q = c;
+        }
+        else if (ac >= ab)
+        {
+            topLeft = b;
+            p = a;
+            q = c;
+        }
+        else
+        {
+            topLeft = c;
+            p = a;
+            q = b;
+        }
+        // Going clockwise in the image, whose y axis points down, the top right comes first
+        float cross = (mCandidateX[p] - mCandidateX[topLeft]) * (mCandidateY[q] - mCandidateY[topLeft])
+                - (mCandidateY[p] - mCandidateY[topLeft]) * (mCandidateX[q] - mCandidateX[topLeft]);
+        int topRight = cross > 0 ? p : q;
+        int bottomLeft = cross > 0 ? q : p;
+
+        // The centres of the finders are 7 modules in from the sides
+        float moduleSize = moduleSize(topLeft, topRight, bottomLeft);
+        double estimate = ((distance(topLeft, topRight) + distance(topLeft, bottomLeft)) / (2 * moduleSize) + 7 - 17) / 4;
+        int first = (int) Math.round(estimate);
+        int second = estimate > first ? first + 1 : first - 1;
+        for (int attempt = 0; attempt < 2; attempt++)
+        {
+            int version = attempt == 0 ? first : second;
+            if (!QrVersion.isValid(version))
+                continue;
+            // Through the alignment pattern if there is one, else, or should that fail, as a parallelogram
+            boolean aligned = version >= 2 && locateAlignment(version, topLeft, topRight, bottomLeft, moduleSize);
+            for (int pass = aligned ? 0 : 1; pass < 2; pass++)
+            {
+                if (!sample(version, topLeft, topRight, bottomLeft, pass == 0))
+                    continue;
+                String text = decodeModules(mModules, QrVersion.dimension(version));
+                if (null != text)
+                    return text;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The codewords the last successful decode corrected
+     */
+    public synchronized int getCorrectedCount()
+    {
+        return mLastCorrected;
+    }
+
+    // Thresholds the region into mBinary, each pixel against the mean black point of the 5 x 5
+    // blocks around its own
+    private void binarize(byte[] luma, int rowStride, int left, int top, int width, int height)
+    {
+        int blocksX = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int blocksY = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (mBinary.length < width * height)
+            mBinary = new byte[width * height];
+        if (mBlackPoints.length < blocksX * blocksY)
+            mBlackPoints = new int[blocksX * blocksY];
+        mWidth = width;
+        mHeight = height;
+        byte[] binary = mBinary;
+        int[] blackPoints = mBlackPoints;
+
+        for (int by = 0; by < blocksY; by++)
+        {
+            int y0 = by * BLOCK_SIZE;
+            int y1 = Math.min(height, y0 + BLOCK_SIZE);
+            for (int bx = 0; bx < blocksX; bx++)
+            {
+                int x0 = bx * BLOCK_SIZE;
+                int x1 = Math.min(width, x0 + BLOCK_SIZE);
+                int sum = 0;
+                int min = 0xFF;
+                int max = 0;
+                for (int y = y0; y < y1; y++)
+                {
+                    int offset = (top + y) * rowStride + left;
+                    for (int x = x0; x < x1; x++)
+                    {
+                        int pixel = luma[offset + x] & 0xFF;
+                        sum += pixel;
+                        if (pixel < min)
+                            min = pixel;
+                        if (pixel > max)
+                            max = pixel;
+                    }
+                }
+
+                int average = sum / ((y1 - y0) * (x1 - x0));
+                if (max - min <= MIN_DYNAMIC_RANGE)
+                {
+                    // A flat block is taken as light, unless its neighbours say it is inside a dark area
+                    average = min / 2;
+                    if (by > 0 && bx > 0)
+                    {
+                        int neighbours = (blackPoints[(by - 1) * blocksX + bx] + 2 * blackPoints[by * blocksX + bx - 1]
+                                + blackPoints[(by - 1) * blocksX + bx - 1]) / 4;
+                        if (min < neighbours)
+                            average = neighbours;
+                    }
+                }
+                blackPoints[by * blocksX + bx] = average;
+            }
+        }
+
+        for (int by = 0; by < blocksY; by++)
+        {
+            int y0 = by * BLOCK_SIZE;
+            int y1 = Math.min(height, y0 + BLOCK_SIZE);
+            int fromY = Math.max(0, by - 2);
+            int toY = Math.min(blocksY - 1, by + 2);
+            for (int bx = 0; bx < blocksX; bx++)
+            {
+                int x0 = bx * BLOCK_SIZE;
+                int x1 = Math.min(width, x0 + BLOCK_SIZE);
+                int fromX = Math.max(0, bx - 2);
+                int toX = Math.min(blocksX - 1, bx + 2);
+                int sum = 0;
+                for (int ny = fromY; ny <= toY; ny++)
+                {
+                    for (int nx = fromX; nx <= toX; nx++)
+                        sum += blackPoints[ny * blocksX + nx];
+                }
+                int threshold = sum / ((toY - fromY + 1) * (toX - fromX + 1));
+
+                for (int y = y0; y < y1; y++)
+                {
+                    int offset = (top + y) * rowStride + left;
+                    int out = y * width;
+                    for (int x = x0; x < x1; x++)
+                        binary[out + x] = (byte) ((luma[offset + x] & 0xFF) <= threshold ? 1 : 0);
+                }
+            }
+        }
+    }
+
+    private void findFinderPatterns()
+    {
+        mCandidates = 0;
+        int[] runs = mRuns;
+        byte[] binary = mBinary;
+        int width = mWidth;
+
+        for (int y = 0; y < mHeight; y += ROW_STEP)
+        {
+            for (int i = 0; i < 5; i++)
+                runs[i] = 0;
+            int state = 0;
+            int offset = y * width;
+            for (int x = 0; x < width; x++)
+            {
+                if (binary[offset + x] != 0)
+                {
+                    // Dark: a light run, if any, has ended
+                    if ((state & 1) == 1)
+                        state++;
+                    runs[state]++;
+                }
+                else if ((state & 1) == 1)
+                {
+                    runs[state]++;
+                }
+                else if (state < 4)
+                {
+                    runs[++state]++;
+                }
+                else
+                {
+                    // Five runs complete
+                    if (isFinderRatio(runs))
+                        addCandidate(runs, x, y);
+                    shiftRuns(runs);
+                    state = 3;
+                }
+            }
+            if (state == 4 && isFinderRatio(runs))
+                addCandidate(runs, width, y);
+        }
+    }
+
+    // Keeps the last dark, light and dark runs as the first three of the next pattern
+    private static void shiftRuns(int[] runs)
+    {
+        runs[0] = runs[2];
+        runs[1] = runs[3];
+        runs[2] = runs[4];
+        runs[3] = 1;
+        runs[4] = 0;
+    }
+
+    private static boolean isFinderRatio(int[] runs)
+    {
+        int total = 0;
+        for (int i = 0; i < 5; i++)
+        {
+            if (runs[i] == 0)
+                return false;
+            total += runs[i];
+        }
+        if (total < 7)
+            return false;
+        float module = total / 7f;
+        float variance = module / 2;
+        return Math.abs(module - runs[0]) < variance
+                && Math.abs(module - runs[1]) < variance
+                && Math.abs(3 * module - runs[2]) < 3 * variance
+                && Math.abs(module - runs[3]) < variance
+                && Math.abs(module - runs[4]) < variance;
+    }
+
+    // Checks a horizontal hit down its centre column and back across, then merges it with the
+    // candidate it hits again or adds it
+    private void addCandidate(int[] runs, int end, int y)
+    {
+        int total = runs[0] + runs[1] + runs[2] + runs[3] + runs[4];
+        float centreX = end - runs[4] - runs[3] - runs[2] / 2f;
+        float centreY = crossCheck((int) centreX, y, true, runs[2], total);
+        if (Float.isNaN(centreY))
+            return;
+        centreX = crossCheck((int) centreX, (int) centreY, false, runs[2], total);
+        if (Float.isNaN(centreX))
+            return;
+        float size = total / 7f;
+
+        for (int i = 0; i < mCandidates; i++)
+        {
+            float known = mCandidateSize[i];
+            if (Math.abs(centreX - mCandidateX[i]) <= known && Math.abs(centreY - mCandidateY[i]) <= known
+                    && Math.abs(size - known) <= Math.max(1, known))
+            {
+                int hits = mCandidateHits[i];
+                mCandidateX[i] = (mCandidateX[i] * hits + centreX) / (hits + 1);
+                mCandidateY[i] = (mCandidateY[i] * hits + centreY) / (hits + 1);
+                mCandidateSize[i] = (known * hits + size) / (hits + 1);
+                mCandidateHits[i] = hits + 1;
+                return;
+            }
+        }
+        if (mCandidates == MAX_CANDIDATES)
+            return;
+        mCandidateX[mCandidates] = centreX;
+        mCandidateY[mCandidates] = centreY;
+        mCandidateSize[mCandidates] = size;
+        mCandidateHits[mCandidates] = 1;
+        mCandidates++;
+    }
+
+    // Counts the five runs through (x, y) along a column or a row. Returns the centre along it,
+    // or NaN if the runs are not those of a finder of about the same size.
+    private float crossCheck(int x, int y, boolean vertical, int maxCount, int originalTotal)
+    {
+        int[] runs = mCrossRuns;
+        for (int i = 0; i < 5; i++)
+            runs[i] = 0;
+        int start = vertical ? y : x;
+        int limit = vertical ? mHeight : mWidth;
+
+        int p = start;
+        while (p >= 0 && isDark(x, y, p, vertical))
+        {
+            runs[2]++;
+            p--;
+        }
+        while (p >= 0 && !isDark(x, y, p, vertical) && runs[1] <= maxCount)
+        {
+            runs[1]++;
+            p--;
+        }
+        if (p < 0 || runs[1] > maxCount)
+            return Float.NaN;
+        while (p >= 0 && isDark(x, y, p, vertical) && runs[0] <= maxCount)
+        {
+            runs[0]++;
+            p--;
+        }
+        if (runs[0] > maxCount)
+            return Float.NaN;
+
+        p = start + 1;
+        while (p < limit && isDark(x, y, p, vertical))
+        {
+            runs[2]++;
+            p++;
+        }
+        while (p < limit && !isDark(x, y, p, vertical) && runs[3] <= maxCount)
+        {
+            runs[3]++;
+            p++;
+        }
+        if (p == limit || runs[3] > maxCount)
+            return Float.NaN;
+        while (p < limit && isDark(x, y, p, vertical) && runs[4] <= maxCount)
+        {
+            runs[4]++;
+            p++;
+        }
+        if (runs[4] > maxCount)
+            return Float.NaN;
+
+        int total = runs[0] + runs[1] + runs[2] + runs[3] + runs[4];
+        if (5 * Math.abs(total - originalTotal) >= 2 * originalTotal || !isFinderRatio(runs))
+            return Float.NaN;
+        return p - runs[4] - runs[3] - runs[2] / 2f;
+    }
+
+    private boolean isDark(int x, int y, int p, boolean vertical)
+    {
+        return mBinary[vertical ? p * mWidth + x : y * mWidth + p] != 0;
+    }
+
+    // Picks the three candidates closest to the corners of an isosceles right triangle, preferring
+    // those more than one row hit
+    private boolean selectCorners()
+    {
+        int minHits = 1;
+        int confirmed = 0;
+        for (int i = 0; i < mCandidates; i++)
+        {
+            if (mCandidateHits[i] >= 2)
+                confirmed++;
+        }
+        if (confirmed >= 3)
+            minHits = 2;
+
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < mCandidates; i++)
+        {
+            if (mCandidateHits[i] < minHits)
+                continue;
+            for (int j = i + 1; j < mCandidates; j++)
+            {
+                if (mCandidateHits[j] < minHits)
+                    continue;
+                for (int k = j + 1; k < mCandidates; k++)
+                {
+                    if (mCandidateHits[k] < minHits)
+                        continue;
+                    double score = triangleScore(i, j, k);
+                    if (score < best)
+                    {
+                        best = score;
+                        mCorners[0] = i;
+                        mCorners[1] = j;
+                        mCorners[2] = k;
+                    }
+                }
+            }
+        }
+        return best < Double.MAX_VALUE;
+    }
+
+    // 0 for an isosceles right triangle of finders the same size, MAX_VALUE if it can't be a code
+    private double triangleScore(int i, int j, int k)
+    {
+        float minSize = Math.min(mCandidateSize[i], Math.min(mCandidateSize[j], mCandidateSize[k]));
+        float maxSize = Math.max(mCandidateSize[i], Math.max(mCandidateSize[j], mCandidateSize[k]));
+        // Along the rows, perspective and turning make the finders' sizes differ more than they are
+        if (maxSize > 2 * minSize)
+            return Double.MAX_VALUE;
+
+        double ij = squaredDistance(i, j);
+        double ik = squaredDistance(i, k);
+        double jk = squaredDistance(j, k);
+        double hypotenuse = Math.max(ij, Math.max(ik, jk));
+        double leg1 = hypotenuse == ij ? ik : ij;
+        double leg2 = hypotenuse == jk ? ik : jk;
+        double shortLeg = Math.min(leg1, leg2);
+        double longLeg = Math.max(leg1, leg2);
+        if (longLeg > 2 * shortLeg)
+            return Double.MAX_VALUE;
+
+        // From version 1 to 10, the finder centres are 14 to 50 modules apart
+        double size = (minSize + maxSize) / 2;
+        double legModules = Math.sqrt(shortLeg) / size;
+        if (legModules < 10 || Math.sqrt(longLeg) / size > 65)
+            return Double.MAX_VALUE;
+
+        double rightAngle = Math.abs(hypotenuse - leg1 - leg2) / hypotenuse;
+        if (rightAngle > 0.4)
+            return Double.MAX_VALUE;
+        return rightAngle + (Math.sqrt(longLeg / shortLeg) - 1) + (maxSize / minSize - 1);
+    }
+
+    // The module size along the sides of the code rather than along the rows the finders were
+    // found on, which a turned code stretches
+    private float moduleSize(int topLeft, int topRight, int bottomLeft)
+    {
+        float sum = 0;
+        int count = 0;
+        int[] from = { topLeft, topRight, topLeft, bottomLeft };
+        int[] to = { topRight, topLeft, bottomLeft, topLeft };
+        for (int i = 0; i < 4; i++)
+        {
+            double fromX = mCandidateX[from[i]];
+            double fromY = mCandidateY[from[i]];
+            double dx = mCandidateX[to[i]] - fromX;
+            double dy = mCandidateY[to[i]] - fromY;
+            // Across the whole finder: its centre to the far side of its ring, both ways
+            // Each walk ends on the first light pixel, half a pixel past the edge on average
+            float width = ringDistance(fromX, fromY, dx, dy) + ringDistance(fromX, fromY, -dx, -dy) - 1;
+            if (!Float.isNaN(width))
+            {
+                sum += width / 7;
+                count++;
+            }
+        }
+        if (count == 0)
+            return (mCandidateSize[topLeft] + mCandidateSize[topRight] + mCandidateSize[bottomLeft]) / 3;
+        return sum / count;
+    }
+
+    // Walks from the centre of a finder along (dx, dy), at most its length, through the dark
+    // centre, the light ring and the dark ring. Returns the distance to the light beyond, or NaN.
+    private float ringDistance(double fromX, double fromY, double dx, double dy)
+    {
+        double length = Math.sqrt(dx * dx + dy * dy);
+        double stepX = dx / length;
+        double stepY = dy / length;
+        int state = 0;
+        for (int step = 0; step <= length; step++)
+        {
+            int x = (int) (fromX + stepX * step);
+            int y = (int) (fromY + stepY * step);
+            if (x < 0 || y < 0 || x >= mWidth || y >= mHeight)
+                return state == 2 ? step : Float.NaN;
+            // Dark in states 0 and 2, light in state 1
+            if ((state == 1) == (mBinary[y * mWidth + x] != 0))
+            {
+                if (state == 2)
+                    return step;
+                state++;
+            }
+        }
+        return Float.NaN;
+    }
+
+    // Searches for the bottom right alignment pattern, 3 modules in from where a fourth finder
+    // centre would be on a parallelogram; first close by, then further for a stronger perspective
+    private boolean locateAlignment(int version, int topLeft, int topRight, int bottomLeft, float moduleSize)
+    {
+        int sides = QrVersion.dimension(version) - 7;
+        double tlX = mCandidateX[topLeft];
+        double tlY = mCandidateY[topLeft];
+        double acrossX = (mCandidateX[topRight] - tlX) / sides;
+        double acrossY = (mCandidateY[topRight] - tlY) / sides;
+        double downX = (mCandidateX[bottomLeft] - tlX) / sides;
+        double downY = (mCandidateY[bottomLeft] - tlY) / sides;
+        double estimateX = tlX + (sides - 3) * (acrossX + downX);
+        double estimateY = tlY + (sides - 3) * (acrossY + downY);
+        for (int radius = 4; radius <= 8; radius *= 2)
+        {
+            if (findAlignment(estimateX, estimateY, acrossX, acrossY, downX, downY, radius * moduleSize))
+                return true;
+        }
+        return false;
+    }
+
+    // Maps the modules onto the image through the finders and either the alignment pattern found
+    // or a parallelogram, and samples them into mModules
+    private boolean sample(int version, int topLeft, int topRight, int bottomLeft, boolean aligned)
+    {
+        int dimension = QrVersion.dimension(version);
+        double tlX = mCandidateX[topLeft];
+        double tlY = mCandidateY[topLeft];
+        double trX = mCandidateX[topRight];
+        double trY = mCandidateY[topRight];
+        double blX = mCandidateX[bottomLeft];
+        double blY = mCandidateY[bottomLeft];
+        double brX = aligned ? mAlignmentX : trX - tlX + blX;
+        double brY = aligned ? mAlignmentY : trY - tlY + blY;
+        double brModule = aligned ? dimension - 6.5 : dimension - 3.5;
+
+        Homography.squareToQuadrilateral(mSquareToImage, tlX, tlY, trX, trY, brX, brY, blX, blY);
+        Homography.squareToQuadrilateral(mSquareToModules, 3.5, 3.5, dimension - 3.5, 3.5,
+                brModule, brModule, 3.5, dimension - 3.5);
+        Homography.invert(mSquareToModules, mModulesToSquare);
+        Homography.multiply(mSquareToImage, mModulesToSquare, mModulesToImage);
+
+        double[] h = mModulesToImage;
+        for (int y = 0; y < dimension; y++)
+        {
+            for (int x = 0; x < dimension; x++)
+            {
+                double px = Homography.mapX(h, x + 0.5, y + 0.5);
+                double py = Homography.mapY(h, x + 0.5, y + 0.5);
+                // A module just off the region is read from its edge
+                if (px < -1 || py < -1 || px > mWidth + 1 || py > mHeight + 1 || Double.isNaN(px) || Double.isNaN(py))
+                    return false;
+                int ix = Math.max(0, Math.min(mWidth - 1, (int) Math.floor(px)));
+                int iy = Math.max(0, Math.min(mHeight - 1, (int) Math.floor(py)));
+                mModules[y * dimension + x] = mBinary[iy * mWidth + ix] != 0;
+            }
+        }
+        return true;
+    }
+
+    // Searches within the radius around the estimate for the dark centre, light ring and dark ring of an alignment
+    // pattern, one module being (acrossX, acrossY) along the rows of the code and (downX, downY)
+    // along its columns; leaves the centre of the best matches in mAlignmentX and mAlignmentY
+    private boolean findAlignment(double estimateX, double estimateY, double acrossX, double acrossY,
+                                  double downX, double downY, double searchRadius)
+    {
+        int radius = (int) Math.ceil(searchRadius);
+        int reach = (int) Math.ceil(2 * (Math.abs(acrossX) + Math.abs(acrossY) + Math.abs(downX) + Math.abs(downY)));
+        int fromX = Math.max(reach, (int) estimateX - radius);
+        int toX = Math.min(mWidth - 1 - reach, (int) estimateX + radius);
+        int fromY = Math.max(reach, (int) estimateY - radius);
+        int toY = Math.min(mHeight - 1 - reach, (int) estimateY + radius);
+
+        int best = 0;
+        long sumX = 0;
+        long sumY = 0;
+        int count = 0;
+        for (int y = fromY; y <= toY; y++)
+        {
+            for (int x = fromX; x <= toX; x++)
+            {
+                int match = 0;
+                for (int my = -2; my <= 2; my++)
+                {
+                    for (int mx = -2; mx <= 2; mx++)
+                    {
+                        int px = (int) (x + 0.5 + mx * acrossX + my * downX);
+                        int py = (int) (y + 0.5 + mx * acrossY + my * downY);
+                        boolean dark = mBinary[py * mWidth + px] != 0;
+                        boolean ring = Math.max(Math.abs(mx), Math.abs(my)) == 1;
+                        if (dark != ring)
+                            match++;
+                    }
+                }
+                if (match > best)
+                {
+                    best = match;
+                    sumX = 0;
+                    sumY = 0;
+                    count = 0;
+                }
+                if (match == best)
+                {
+                    sumX += x;
+                    sumY += y;
+                    count++;
+                }
+            }
+        }
+        if (best < MIN_ALIGNMENT_MATCH)
+            return false;
+        mAlignmentX = (double) sumX / count + 0.5;
+        mAlignmentY = (double) sumY / count + 0.5;
+        return true;
+    }
+
+    /**
+     * Decodes sampled modules, dark true, row by row.
+     *
+     * @return The text, or null if the modules aren't a readable code
+     */
+    String decodeModules(boolean[] modules, int dimension)
+    {
+        int version = (dimension - 17) / 4;
+        if (!QrVersion.isValid(version) || QrVersion.dimension(version) != dimension)
+            return null;
+
+        // Around the top left finder, then split between the other two
+        int format1 = 0;
+        for (int x = 0; x < 6; x++)
+            format1 = bit(format1, modules, dimension, x, 8);
+        format1 = bit(format1, modules, dimension, 7, 8);
+        format1 = bit(format1, modules, dimension, 8, 8);
+        format1 = bit(format1, modules, dimension, 8, 7);
+        for (int y = 5; y >= 0; y--)
+            format1 = bit(format1, modules, dimension, 8, y);
+        int format2 = 0;
+        for (int y = dimension - 1; y >= dimension - 7; y--)
+            format2 = bit(format2, modules, dimension, 8, y);
+        for (int x = dimension - 8; x < dimension; x++)
+            format2 = bit(format2, modules, dimension, x, 8);
+        int format = QrVersion.decodeFormat(format1, format2);
+        if (format < 0)
+            return null;
+        int ecLevel = format >> 3;
+        int mask = format & 7;
+
+        if (version >= 7)
+        {
+            // Right of the bottom left finder and below the top right one
+            int version1 = 0;
+            for (int y = 5; y >= 0; y--)
+            {
+                for (int x = dimension - 9; x >= dimension - 11; x--)
+                    version1 = bit(version1, modules, dimension, x, y);
+            }
+            int version2 = 0;
+            for (int x = 5; x >= 0; x--)
+            {
+                for (int y = dimension - 9; y >= dimension - 11; y--)
+                    version2 = bit(version2, modules, dimension, x, y);
+            }
+            if (QrVersion.decodeVersion(version1, version2) != version)
+                return null;
+        }
+
+        int total = readCodewords(modules, dimension, version, mask);
+        if (null != mLastText && version == mLastVersion && ecLevel == mLastEcLevel && sameAsLast(total))
+            return mLastText;
+
+        if (!correct(version, ecLevel))
+            return null;
+        String text = parse(QrVersion.dataCodewords(version, ecLevel), version);
+        if (null == text)
+            return null;
+
+        System.arraycopy(mCodewords, 0, mLastCodewords, 0, total);
+        mLastVersion = version;
+        mLastEcLevel = ecLevel;
+        mLastText = text;
+        mLastCorrected = mCorrected;
+        return text;
+    }
+
+    private static int bit(int bits, boolean[] modules, int dimension, int x, int y)
+    {
+        return (bits << 1) | (modules[y * dimension + x] ? 1 : 0);
+    }
+
+    // Reads the unmasked data modules into mCodewords, two columns at a time from the right,
+    // alternately up and down, skipping the vertical timing pattern
+    private int readCodewords(boolean[] modules, int dimension, int version, int mask)
+    {
+        int total = QrVersion.totalCodewords(version);
+        int count = 0;
+        int value = 0;
+        int bits = 0;
+        boolean up = true;
+        for (int right = dimension - 1; right > 0 && count < total; right -= 2)
+        {
+            if (right == 6)
+                right--;
+            for (int i = 0; i < dimension; i++)
+            {
+                int y = up ? dimension - 1 - i : i;
+                for (int col = 0; col < 2; col++)
+                {
+                    int x = right - col;
+                    if (QrVersion.isFunction(version, x, y))
+                        continue;
+                    value = (value << 1) | (modules[y * dimension + x] ^ QrVersion.isMasked(mask, x, y) ? 1 : 0);
+                    if (++bits == 8 && count < total)
+                    {
+                        mCodewords[count++] = value;
+                        value = 0;
+                        bits = 0;
+                    }
+                }
+            }
+            up = !up;
+        }
+        return total;
+    }
+
+    private boolean sameAsLast(int total)
+    {
+        for (int i = 0; i < total; i++)
+        {
+            if (mCodewords[i] != mLastCodewords[i])
+                return false;
+        }
+        return true;
+    }
+
+    // De-interleaves each block, corrects it and appends its data codewords to mData
+    private boolean correct(int version, int ecLevel)
+    {
+        int ecPerBlock = QrVersion.ecCodewordsPerBlock(version, ecLevel);
+        int shortBlocks = QrVersion.shortBlocks(version, ecLevel);
+        int longBlocks = QrVersion.longBlocks(version, ecLevel);
+        int blocks = shortBlocks + longBlocks;
+        int shortData = QrVersion.shortBlockDataCodewords(version, ecLevel);
+        // After the data codewords every block has, the extra one of each long block, then error correction
+        int ecStart = shortData * blocks + longBlocks;
+
+        mCorrected = 0;
+        int out = 0;
+        for (int b = 0; b < blocks; b++)
+        {
+            boolean isLong = b >= shortBlocks;
+            int data = isLong ? shortData + 1 : shortData;
+            for (int k = 0; k < shortData; k++)
+                mBlock[k] = mCodewords[k * blocks + b];
+            if (isLong)
+                mBlock[shortData] = mCodewords[shortData * blocks + b - shortBlocks];
+            for (int e = 0; e < ecPerBlock; e++)
+                mBlock[data + e] = mCodewords[ecStart + e * blocks + b];
+
+            int corrected = mReedSolomon.correct(mBlock, data + ecPerBlock, ecPerBlock);
+            if (corrected < 0)
+                return false;
+            mCorrected += corrected;
+            System.arraycopy(mBlock, 0, mData, out, data);
+            out += data;
+        }
+        return true;
+    }
+
+    // Decodes the segments of the corrected data codewords
+    private String parse(int length, int version)
+    {
+        mText.setLength(0);
+        mDataLength = length;
+        mBitOffset = 0;
+        boolean small = version < 10;
+        int eci = -1;
+
+        while (available() >= 4)
+        {
+            int mode = readBits(4);
+            switch (mode)
+            {
+                case 0:
+                    // Terminator
+                    return mText.toString();
+                case 1:
+                    if (!readNumeric(readBits(small ? 10 : 12)))
+                        return null;
+                    break;
+                case 2:
+                    if (!readAlphanumeric(readBits(small ? 9 : 11)))
+                        return null;
+                    break;
+                case 4:
+                    if (!readBytes(readBits(small ? 8 : 16), eci))
+                        return null;
+                    break;
+                case 7:
+                    eci = readEci();
+                    if (eci < 0)
+                        return null;
+                    break;
+                case 3:
+                    // Structured append: this symbol's position and parity, the text is still its own
+                    if (available() < 16)
+                        return null;
+                    readBits(16);
+                    break;
+                case 5:
+                case 9:
+                    // FNC1 markers carry no text of their own
+                    if (mode == 9)
+                        readBits(8);
+                    break;
+                default:
+                    // Kanji and anything newer
+                    return null;
+            }
+        }
+        return mText.toString();
+    }
+
+    private boolean readNumeric(int count)
+    {
+        while (count >= 3)
+        {
+            int value = readBits(10);
+            if (value < 0 || value > 999)
+                return false;
+            mText.append((char) ('0' + value / 100)).append((char) ('0' + value / 10 % 10)).append((char) ('0' + value % 10));
+            count -= 3;
+        }
+        if (count == 2)
+        {
+            int value = readBits(7);
+            if (value < 0 || value > 99)
+                return false;
+            mText.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+        }
+        else if (count == 1)
+        {
+            int value = readBits(4);
+            if (value < 0 || value > 9)
+                return false;
+            mText.append((char) ('0' + value));
+        }
+        return count >= 0;
+    }
+
+    private boolean readAlphanumeric(int count)
+    {
+        while (count >= 2)
+        {
+            int value = readBits(11);
+            if (value < 0 || value >= 45 * 45)
+                return false;
+            mText.append(ALPHANUMERIC.charAt(value / 45)).append(ALPHANUMERIC.charAt(value % 45));
+            count -= 2;
+        }
+        if (count == 1)
+        {
+            int value = readBits(6);
+            if (value < 0 || value >= 45)
+                return false;
+            mText.append(ALPHANUMERIC.charAt(value));
+        }
+        return count >= 0;
+    }
+
+    private boolean readBytes(int count, int eci)
+    {
+        if (count < 0 || count * 8 > available())
+            return false;
+        for (int i = 0; i < count; i++)
+            mBytes[i] = (byte) readBits(8);
+
+        Charset charset;
+        if (eci == ECI_UTF_8)
+            charset = UTF_8;
+        else if (eci == ECI_ISO_8859_1 || eci == 1)
+            charset = ISO_8859_1;
+        else
+            charset = isUtf8(mBytes, count) ? UTF_8 : ISO_8859_1;
+        mText.append(new String(mBytes, 0, count, charset));
+        return true;
+    }
+
+    // The ECI designator, in one to three bytes
+    private int readEci()
+    {
+        int first = readBits(8);
+        if (first < 0)
+            return -1;
+        if ((first & 0x80) == 0)
+            return first;
+        if ((first & 0xC0) == 0x80)
+        {
+            int second = readBits(8);
+            return second < 0 ? -1 : ((first & 0x3F) << 8) | second;
+        }
+        if ((first & 0xE0) == 0xC0)
+        {
+            int rest = readBits(16);
+            return rest < 0 ? -1 : ((first & 0x1F) << 16) | rest;
+        }
+        return -1;
+    }
+
+    private static boolean isUtf8(byte[] bytes, int count)
+    {
+        int i = 0;
+        while (i < count)
+        {
+            int b = bytes[i++] & 0xFF;
+            int continuation;
+            if (b < 0x80)
+                continuation = 0;
+            else if (b >= 0xC2 && b < 0xE0)
+                continuation = 1;
+            else if (b >= 0xE0 && b < 0xF0)
+                continuation = 2;
+            else if (b >= 0xF0 && b < 0xF5)
+                continuation = 3;
+            else
+                return false;
+            if (i + continuation > count)
+                return false;
+            for (int c = 0; c < continuation; c++)
+            {
+                if ((bytes[i++] & 0xC0) != 0x80)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private int available()
+    {
+        return mDataLength * 8 - mBitOffset;
+    }
+
+    // The next bits of the data, most significant first, or -1 past its end
+    private int readBits(int count)
+    {
+        if (count > available())
+            return -1;
+        int value = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int offset = mBitOffset++;
+            value = (value << 1) | ((mData[offset >> 3] >> (7 - (offset & 7))) & 1);
+        }
+        return value;
+    }
+
+    private float distance(int a, int b)
+    {
+        return (float) Math.sqrt(squaredDistance(a, b));
+    }
+
+    private double squaredDistance(int a, int b)
+    {
+        double dx = mCandidateX[a] - mCandidateX[b];
+        double dy = mCandidateY[a] - mCandidateY[b];
+        return dx * dx + dy * dy;
+    }
+}
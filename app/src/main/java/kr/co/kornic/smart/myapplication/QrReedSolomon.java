@@ -0,0 +1,193 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * Reed-Solomon error correction over GF(256) as QR codes use it: field polynomial
+ * x^8 + x^4 + x^3 + x^2 + 1, generator roots alpha^0 to alpha^(n - 1) for n error correction
+ * codewords, which correct up to n / 2 wrong codewords.
+ *
+ * A block is corrected by taking its syndromes, finding the error locator with Berlekamp-Massey,
+ * its roots with a Chien search and the error values with Forney's formula. The work arrays are
+ * sized for the longest QR block and reused, so correcting allocates nothing. Not thread-safe.
+ */
+final class QrReedSolomon
+{
+    static final int MAX_EC_CODEWORDS = 30;
+
+    private static final int[] EXP = new int[510];
+    private static final int[] LOG = new int[256];
+
+    static
+    {
+        int x = 1;
+        for (int i = 0; i < 255; i++)
+        {
+            EXP[i] = x;
+            EXP[i + 255] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x > 0xFF)
+                x ^= 0x11D;
+        }
+    }
+
+    private final int[] mSyndromes = new int[MAX_EC_CODEWORDS];
+    private final int[] mLocator = new int[MAX_EC_CODEWORDS + 1];
+    private final int[] mPrevious = new int[MAX_EC_CODEWORDS + 1];
+    private final int[] mScratch = new int[MAX_EC_CODEWORDS + 1];
+    private final int[] mEvaluator = new int[MAX_EC_CODEWORDS];
+    private final int[] mErrors = new int[MAX_EC_CODEWORDS];
+
+    static int multiply(int a, int b)
+    {
+        if (a == 0 || b == 0)
+            return 0;
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    static int divide(int a, int b)
+    {
+        if (b == 0)
+            throw new ArithmeticException("Division by zero in GF(256)");
+        if (a == 0)
+            return 0;
+        return EXP[LOG[a] + 255 - LOG[b]];
+    }
+
+    /**
+     * @return alpha to the {@code power}, which is 0 or more
+     */
+    static int exp(int power)
+    {
+        return EXP[power % 255];
+    }
+
+    /**
+     * Corrects a block in place.
+     *
+     * @param block       The codewords of the block, data then error correction; the first is the
+     *                    coefficient of the highest power
+     * @param length      The number of codewords in the block
+     * @param ecCodewords How many of them are error correction
+     * @return The number of codewords corrected, or -1 if there were too many errors to correct
+     */
+    int correct(int[] block, int length, int ecCodewords)
+    {
+        if (ecCodewords > MAX_EC_CODEWORDS || ecCodewords >= length || length > 255)
+            throw new IllegalArgumentException("Invalid block of " + length + " with " + ecCodewords);
+
+        int[] syndromes = mSyndromes;
+        boolean clean = true;
+        for (int j = 0; j < ecCodewords; j++)
+        {
+            // The received polynomial at alpha^j, by Horner's rule
+            int root = EXP[j];
+            int s = 0;
+            for (int k = 0; k < length; k++)
+                s = multiply(s, root) ^ block[k];
+            syndromes[j] = s;
+            clean &= s == 0;
+        }
+        if (clean)
+            return 0;
+
+        int errors = findLocator(ecCodewords);
+        if (errors < 0)
+            return -1;
+        int[] locator = mLocator;
+
+        // Chien search: an error at power p makes alpha^-p a root of the locator
+        int found = 0;
+        for (int p = 0; p < length; p++)
+        {
+            int inverse = EXP[255 - p];
+            int value = 0;
+            for (int i = errors; i >= 0; i--)
+                value = multiply(value, inverse) ^ locator[i];
+            if (value == 0)
+            {
+                if (found == errors)
+                    return -1;
+                mErrors[found++] = p;
+            }
+        }
+        if (found != errors)
+            return -1;
+
+        // Forney: the evaluator is the syndromes times the locator, modulo x^ecCodewords
+        int[] evaluator = mEvaluator;
+        for (int i = 0; i < ecCodewords; i++)
+        {
+            int value = 0;
+            for (int j = 0, last = Math.min(i, errors); j <= last; j++)
+                value ^= multiply(locator[j], syndromes[i - j]);
+            evaluator[i] = value;
+        }
+        for (int k = 0; k < found; k++)
+        {
+            int p = mErrors[k];
+            int inverseLog = 255 - p;
+            int inverse = EXP[inverseLog];
+
+            int omega = 0;
+            for (int i = ecCodewords - 1; i >= 0; i--)
+                omega = multiply(omega, inverse) ^ evaluator[i];
+            // The formal derivative keeps only the odd powers
+            int derivative = 0;
+            for (int i = 1; i <= errors; i += 2)
+                derivative ^= multiply(locator[i], EXP[inverseLog * (i - 1) % 255]);
+            if (derivative == 0)
+                return -1;
+
+            block[length - 1 - p] ^= multiply(EXP[p], divide(omega, derivative));
+        }
+        return found;
+    }
+
+    // Berlekamp-Massey over the syndromes; leaves the locator in mLocator and returns its degree,
+    // or -1 if it needs more errors than the block can correct
+    private int findLocator(int ecCodewords)
+    {
+        int[] locator = mLocator;
+        int[] previous = mPrevious;
+        int[] syndromes = mSyndromes;
+        for (int i = 0; i <= ecCodewords; i++)
+        {
+            locator[i] = 0;
+            previous[i] = 0;
+        }
+        locator[0] = 1;
+        previous[0] = 1;
+
+        int degree = 0;
+        int shift = 1;
+        int previousDiscrepancy = 1;
+        for (int n = 0; n < ecCodewords; n++)
+        {
+            int discrepancy = syndromes[n];
+            for (int i = 1; i <= degree; i++)
+                discrepancy ^= multiply(locator[i], syndromes[n - i]);
+            if (discrepancy == 0)
+            {
+                shift++;
+                continue;
+            }
+
+            int factor = divide(discrepancy, previousDiscrepancy);
+            boolean grow = 2 * degree <= n;
+            if (grow)
+                System.arraycopy(locator, 0, mScratch, 0, ecCodewords + 1);
+            for (int i = 0; i + shift <= ecCodewords; i++)
+                locator[i + shift] ^= multiply(factor, previous[i]);
+            if (grow)
+            {
+                degree = n + 1 - degree;
+                System.arraycopy(mScratch, 0, previous, 0, ecCodewords + 1);
+                previousDiscrepancy = discrepancy;
+                shift = 1;
+            }
+            else
+                shift++;
+        }
+        return 2 * degree > ecCodewords ? -1 : degree;
+    }
+}
@@ -0,0 +1,166 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads QR codes off the analysis stream with a {@link QrDecoder}, e.g. to scan shelf and asset
+ * labels hands-free.
+ *
+ * Only a centred region is decoded, where the wearer is looking, and only one frame in every
+ * few, which keeps up with the preview rate on the glasses. The texts seen lately are cached by
+ * content: a code is reported when it comes into view, not again on every frame it stays in view,
+ * and again only once it has been out of view for the repeat delay.
+ */
+public final class QrScanStage implements FrameAnalyzer
+{
+    /**
+     * Receives the codes, on the thread the stage analyzes on.
+     */
+    public interface Listener
+    {
+        /**
+         * @param timestamp The sensor timestamp of the frame the code was read from
+         */
+        void onQrCode(String text, long timestamp);
+    }
+
+    private static final int CACHE_SIZE = 16;
+
+    // When a text was last read
+    private static final class Sighting
+    {
+        long lastSeen;
+    }
+
+    private final QrDecoder mDecoder = new QrDecoder();
+    private final Listener mListener;
+    private final Map<String, Sighting> mSeen = new LinkedHashMap<String, Sighting>(CACHE_SIZE, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Sighting> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private float mRegion = 0.6f;
+    private int mFrameInterval = 2;
+    private long mRepeatDelayNs = 3000000000L;
+
+    private long mFrameCount;
+    private int mScannedCount;
+    private int mDecodedCount;
+    private int mReportedCount;
+
+    public QrScanStage(Listener listener)
+    {
+        mListener = listener;
+    }
+
+    /**
+     * @param region The fraction of the width and of the height decoded, around the centre
+     */
+    public synchronized void setRegion(float region)
+    {
+        if (!(region > 0 && region <= 1))
+            throw new IllegalArgumentException("Invalid region.");
+        mRegion = region;
+    }
+
+    /**
+     * @param frames Decodes one frame in every {@code frames}; 1 decodes every frame
+     */
+    public synchronized void setFrameInterval(int frames)
+    {
+        if (frames < 1)
+            throw new IllegalArgumentException("Invalid interval.");
+        mFrameInterval = frames;
+    }
+
+    /**
+     * @param millis How long a code must be out of view before it is reported again
+     */
+    public synchronized void setRepeatDelay(long millis)
+    {
+        if (millis < 0)
+            throw new IllegalArgumentException("Invalid delay.");
+        mRepeatDelayNs = millis * 1000000L;
+    }
+
+    /**
+     * Forgets the codes seen, so each is reported again the next time it is read.
+     */
+    public synchronized void reset()
+    {
+        mSeen.clear();
+        mFrameCount = 0;
+    }
+
+    /**
+     * @return The frames decoded, whether a code was found or not
+     */
+    public synchronized int getScannedCount()
+    {
+        return mScannedCount;
+    }
+
+    /**
+     * @return The frames a code was read from
+     */
+    public synchronized int getDecodedCount()
+    {
+        return mDecodedCount;
+    }
+
+    /**
+     * @return The number of times the listener was notified
+     */
+    public synchronized int getReportedCount()
+    {
+        return mReportedCount;
+    }
+
+    @Override
+    public void analyze(YuvFrame frame)
+    {
+        int left;
+        int top;
+        int width;
+        int height;
+        synchronized (this)
+        {
+            if (mFrameCount++ % mFrameInterval != 0)
+                return;
+            width = Math.round(frame.getWidth() * mRegion);
+            height = Math.round(frame.getHeight() * mRegion);
+            left = (frame.getWidth() - width) / 2;
+            top = (frame.getHeight() - height) / 2;
+        }
+
+        // Serialized by the decoder; one frame at a time anyway
+        String text = mDecoder.decode(frame.getY(), frame.getYRowStride(), left, top, width, height);
+
+        long timestamp = frame.getTimestamp();
+        synchronized (this)
+        {
+            mScannedCount++;
+            if (null == text)
+                return;
+            mDecodedCount++;
+
+            Sighting sighting = mSeen.get(text);
+            boolean report = null == sighting || timestamp - sighting.lastSeen > mRepeatDelayNs;
+            if (null == sighting)
+            {
+                sighting = new Sighting();
+                mSeen.put(text, sighting);
+            }
+            sighting.lastSeen = timestamp;
+            if (!report)
+                return;
+            mReportedCount++;
+        }
+        mListener.onQrCode(text, timestamp);
+    }
+}
@@ -0,0 +1,258 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * The layout of QR code versions 1 to 10, up to 57 x 57 modules, which covers the short texts
+ * labels carry: block structure per error correction level, alignment pattern positions, which
+ * modules are function patterns, the data masks and the BCH-coded format and version information.
+ */
+final class QrVersion
+{
+    static final int MIN_VERSION = 1;
+    static final int MAX_VERSION = 10;
+
+    // Error correction levels by their format bits
+    static final int EC_M = 0;
+    static final int EC_L = 1;
+    static final int EC_H = 2;
+    static final int EC_Q = 3;
+
+    private static final int FORMAT_GENERATOR = 0x537;
+    private static final int FORMAT_MASK = 0x5412;
+    private static final int VERSION_GENERATOR = 0x1F25;
+    // Up to 3 wrong bits are corrected, both codes having a minimum distance of 7 or more
+    private static final int MAX_WRONG_BITS = 3;
+
+    // Per version and level by format bits: error correction codewords per block, then the number
+    // of blocks and their data codewords, for the short blocks and the long ones
+    private static final int[][][] BLOCKS = {
+            { { 10, 1, 16, 0, 0 }, { 7, 1, 19, 0, 0 }, { 17, 1, 9, 0, 0 }, { 13, 1, 13, 0, 0 } },
+            { { 16, 1, 28, 0, 0 }, { 10, 1, 34, 0, 0 }, { 28, 1, 16, 0, 0 }, { 22, 1, 22, 0, 0 } },
+            { { 26, 1, 44, 0, 0 }, { 15, 1, 55, 0, 0 }, { 22, 2, 13, 0, 0 }, { 18, 2, 17, 0, 0 } },
+            { { 18, 2, 32, 0, 0 }, { 20, 1, 80, 0, 0 }, { 16, 4, 9, 0, 0 }, { 26, 2, 24, 0, 0 } },
+            { { 24, 2, 43, 0, 0 }, { 26, 1, 108, 0, 0 }, { 22, 2, 11, 2, 12 }, { 18, 2, 15, 2, 16 } },
+            { { 16, 4, 27, 0, 0 }, { 18, 2, 68, 0, 0 }, { 28, 4, 15, 0, 0 }, { 24, 4, 19, 0, 0 } },
+            { { 18, 4, 31, 0, 0 }, { 20, 2, 78, 0, 0 }, { 26, 4, 13, 1, 14 }, { 18, 2, 14, 4, 15 } },
+            { { 22, 2, 38, 2, 39 }, { 24, 2, 97, 0, 0 }, { 26, 4, 14, 2, 15 }, { 22, 4, 18, 2, 19 } },
+            { { 22, 3, 36, 2, 37 }, { 30, 2, 116, 0, 0 }, { 24, 4, 12, 4, 13 }, { 20, 4, 16, 4, 17 } },
+            { { 26, 4, 43, 1, 44 }, { 18, 2, 68, 2, 69 }, { 28, 6, 15, 2, 16 }, { 24, 6, 19, 2, 20 } },
+    };
+
+    // Row and column of the alignment pattern centres per version
+    private static final int[][] ALIGNMENT = {
+            {}, { 6, 18 }, { 6, 22 }, { 6, 26 }, { 6, 30 },
+            { 6, 34 }, { 6, 22, 38 }, { 6, 24, 42 }, { 6, 26, 46 }, { 6, 28, 50 },
+    };
+
+    private static final boolean[][] FUNCTION = new boolean[MAX_VERSION][];
+
+    static
+    {
+        for (int version = MIN_VERSION; version <= MAX_VERSION; version++)
+            FUNCTION[version - 1] = functionModules(version);
+    }
+
+    private QrVersion()
+    {
+    }
+
+    static boolean isValid(int version)
+    {
+        return version >= MIN_VERSION && version <= MAX_VERSION;
+    }
+
+    /**
+     * @return The modules per side
+     */
+    static int dimension(int version)
+    {
+        return 17 + 4 * version;
+    }
+
+    static int ecCodewordsPerBlock(int version, int ecLevel)
+    {
+        return BLOCKS[version - 1][ecLevel][0];
+    }
+
+    static int shortBlocks(int version, int ecLevel)
+    {
+        return BLOCKS[version - 1][ecLevel][1];
+    }
+
+    /**
+     * @return The data codewords of a short block; long blocks have one more
+     */
+    static int shortBlockDataCodewords(int version, int ecLevel)
+    {
+        return BLOCKS[version - 1][ecLevel][2];
+    }
+
+    static int longBlocks(int version, int ecLevel)
+    {
+        return BLOCKS[version - 1][ecLevel][3];
+    }
+
+    static int dataCodewords(int version, int ecLevel)
+    {
+        int[] blocks = BLOCKS[version - 1][ecLevel];
+        return blocks[1] * blocks[2] + blocks[3] * blocks[4];
+    }
+
+    static int totalCodewords(int version)
+    {
+        int[] blocks = BLOCKS[version - 1][EC_M];
+        return dataCodewords(version, EC_M) + (blocks[1] + blocks[3]) * blocks[0];
+    }
+
+    static int[] alignmentCentres(int version)
+    {
+        return ALIGNMENT[version - 1];
+    }
+
+    /**
+     * @return Whether the module is part of a finder, separator, timing or alignment pattern, the
+     * format or the version information, rather than data
+     */
+    static boolean isFunction(int version, int x, int y)
+    {
+        return FUNCTION[version - 1][y * dimension(version) + x];
+    }
+
+    /**
+     * @return Whether data mask {@code mask} flips the module in column {@code x}, row {@code y}
+     */
+    static boolean isMasked(int mask, int x, int y)
+    {
+        switch (mask)
+        {
+            case 0:
+                return ((x + y) & 1) == 0;
+            case 1:
+                return (y & 1) == 0;
+            case 2:
+                return x % 3 == 0;
+            case 3:
+                return (x + y) % 3 == 0;
+            case 4:
+                return ((y / 2 + x / 3) & 1) == 0;
+            case 5:
+                return (x * y) % 2 + (x * y) % 3 == 0;
+            case 6:
+                return (((x * y) % 2 + (x * y) % 3) & 1) == 0;
+            case 7:
+                return (((x + y) % 2 + (x * y) % 3) & 1) == 0;
+            default:
+                throw new IllegalArgumentException("Invalid mask " + mask);
+        }
+    }
+
+    /**
+     * @return The 15 format bits for the level and mask, masked as they are placed
+     */
+    static int formatBits(int ecLevel, int mask)
+    {
+        int data = (ecLevel << 3) | mask;
+        return ((data << 10) | bchRemainder(data, FORMAT_GENERATOR)) ^ FORMAT_MASK;
+    }
+
+    /**
+     * @return The 18 version bits, placed from version 7
+     */
+    static int versionBits(int version)
+    {
+        return (version << 12) | bchRemainder(version, VERSION_GENERATOR);
+    }
+
+    /**
+     * Decodes the format from its two copies.
+     *
+     * @return The level in bits 3 and 4 and the mask in bits 0 to 2, or -1 if neither copy is
+     * close enough to a valid format
+     */
+    static int decodeFormat(int bits1, int bits2)
+    {
+        int best = -1;
+        int bestDistance = MAX_WRONG_BITS + 1;
+        for (int format = 0; format < 32; format++)
+        {
+            int expected = formatBits(format >> 3, format & 7);
+            int distance = Math.min(Integer.bitCount(bits1 ^ expected), Integer.bitCount(bits2 ^ expected));
+            if (distance < bestDistance)
+            {
+                best = format;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Decodes the version from its two copies.
+     *
+     * @return The version, or -1 if neither copy is close enough to a supported version from 7
+     */
+    static int decodeVersion(int bits1, int bits2)
+    {
+        int best = -1;
+        int bestDistance = MAX_WRONG_BITS + 1;
+        for (int version = 7; version <= MAX_VERSION; version++)
+        {
+            int expected = versionBits(version);
+            int distance = Math.min(Integer.bitCount(bits1 ^ expected), Integer.bitCount(bits2 ^ expected));
+            if (distance < bestDistance)
+            {
+                best = version;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    // The remainder of value * x^degree divided by the generator, over GF(2)
+    private static int bchRemainder(int value, int generator)
+    {
+        int degree = 31 - Integer.numberOfLeadingZeros(generator);
+        int remainder = value << degree;
+        while (31 - Integer.numberOfLeadingZeros(remainder) >= degree)
+            remainder ^= generator << (31 - Integer.numberOfLeadingZeros(remainder) - degree);
+        return remainder;
+    }
+
+    private static boolean[] functionModules(int version)
+    {
+        int dimension = dimension(version);
+        boolean[] function = new boolean[dimension * dimension];
+        int[] centres = ALIGNMENT[version - 1];
+        int last = centres.length - 1;
+
+        for (int y = 0; y < dimension; y++)
+        {
+            for (int x = 0; x < dimension; x++)
+            {
+                // Finders with their separators and the format information, the dark module included
+                boolean isFunction = (x < 9 && y < 9) || (x >= dimension - 8 && y < 9) || (x < 9 && y >= dimension - 8);
+                // Timing patterns
+                isFunction |= x == 6 || y == 6;
+                // Version information
+                isFunction |= version >= 7 && ((x >= dimension - 11 && x < dimension - 8 && y < 6)
+                        || (y >= dimension - 11 && y < dimension - 8 && x < 6));
+                function[y * dimension + x] = isFunction;
+            }
+        }
+
+        // Alignment patterns, except where they would overlap the finders
+        for (int i = 0; i <= last; i++)
+        {
+            for (int j = 0; j <= last; j++)
+            {
+                if ((i == 0 && j == 0) || (i == 0 && j == last) || (i == last && j == 0))
+                    continue;
+                for (int y = centres[i] - 2; y <= centres[i] + 2; y++)
+                {
+                    for (int x = centres[j] - 2; x <= centres[j] + 2; x++)
+                        function[y * dimension + x] = true;
+                }
+            }
+        }
+        return function;
+    }
+}
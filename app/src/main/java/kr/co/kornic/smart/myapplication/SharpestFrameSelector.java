@@ -0,0 +1,173 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * Picks the sharpest frame of a burst. Each frame arrives twice, in either order: as the frame to
+ * keep (e.g. its JPEG) and as its sharpness score (e.g. from a YUV copy of the same exposure),
+ * matched by sensor timestamp.
+ *
+ * A frame that scores below the best one so far is recycled as soon as both halves are in, so
+ * at most the best frame and those still waiting for their score are held. Once every frame
+ * of the burst is in or has failed, the best one goes to the {@link Listener}.
+ *
+ * Not thread-safe: the halves are expected on one thread, like the camera's handler.
+ *
+ * @param <T> The frame type
+ */
+final class SharpestFrameSelector<T>
+{
+    interface Listener<T>
+    {
+        /**
+         * @param frame The sharpest frame, now owned by the listener, or null if every frame failed
+         * @param score Its score
+         */
+        void onSelected(T frame, long timestamp, double score);
+    }
+
+    private final ZslRingBuffer.Recycler<T> mRecycler;
+    private final Listener<T> mListener;
+
+    // One slot per frame of the burst, filled in arrival order
+    private final long[] mTimestamps;
+    private final Object[] mFrames;
+    private final double[] mScores;
+    private final boolean[] mScored;
+    private int mSlots;
+
+    private int mRemaining;
+    private T mBest;
+    private long mBestTimestamp;
+    private double mBestScore;
+    private boolean mDone;
+
+    /**
+     * @param frames   The number of frames in the burst
+     * @param recycler Receives every frame that is not selected
+     */
+    SharpestFrameSelector(int frames, ZslRingBuffer.Recycler<T> recycler, Listener<T> listener)
+    {
+        if (frames <= 0)
+            throw new IllegalArgumentException("Burst count must be positive.");
+
+        mRecycler = recycler;
+        mListener = listener;
+        mTimestamps = new long[frames];
+        mFrames = new Object[frames];
+        mScores = new double[frames];
+        mScored = new boolean[frames];
+        mRemaining = frames;
+    }
+
+    void addFrame(long timestamp, T frame)
+    {
+        int slot = slot(timestamp);
+        if (slot < 0)
+        {
+            mRecycler.recycle(frame);
+            return;
+        }
+        mFrames[slot] = frame;
+        if (mScored[slot])
+            complete(slot);
+    }
+
+    void addScore(long timestamp, double score)
+    {
+        int slot = slot(timestamp);
+        if (slot < 0)
+            return;
+        mScores[slot] = score;
+        mScored[slot] = true;
+        if (null != mFrames[slot])
+            complete(slot);
+    }
+
+    /**
+     * Counts off a frame of the burst that will never arrive, e.g. because its capture failed.
+     */
+    void frameFailed()
+    {
+        if (!mDone)
+            countDown();
+    }
+
+    /**
+     * Recycles every frame held without selecting one, e.g. because the camera is closing.
+     */
+    void cancel()
+    {
+        if (mDone)
+            return;
+        mDone = true;
+        for (int i = 0; i < mSlots; i++)
+            recycleSlot(i);
+        if (null != mBest)
+            mRecycler.recycle(mBest);
+        mBest = null;
+    }
+
+    boolean isDone()
+    {
+        return mDone;
+    }
+
+    // Finds the slot of the frame, or takes the next one. -1 once done or if the burst is full.
+    private int slot(long timestamp)
+    {
+        if (mDone)
+            return -1;
+        for (int i = 0; i < mSlots; i++)
+        {
+            if (mTimestamps[i] == timestamp)
+                return i;
+        }
+        if (mSlots == mTimestamps.length)
+            return -1;
+        mTimestamps[mSlots] = timestamp;
+        return mSlots++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete(int slot)
+    {
+        T frame = (T) mFrames[slot];
+        mFrames[slot] = null;
+        mScored[slot] = false;
+
+        if (null == mBest || mScores[slot] > mBestScore)
+        {
+            if (null != mBest)
+                mRecycler.recycle(mBest);
+            mBest = frame;
+            mBestTimestamp = mTimestamps[slot];
+            mBestScore = mScores[slot];
+        }
+        else
+            mRecycler.recycle(frame);
+        countDown();
+    }
+
+    private void countDown()
+    {
+        if (--mRemaining > 0)
+            return;
+
+        mDone = true;
+        // Halves whose other half never came
+        for (int i = 0; i < mSlots; i++)
+            recycleSlot(i);
+        T best = mBest;
+        mBest = null;
+        mListener.onSelected(best, mBestTimestamp, mBestScore);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recycleSlot(int slot)
+    {
+        if (null != mFrames[slot])
+        {
+            mRecycler.recycle((T) mFrames[slot]);
+            mFrames[slot] = null;
+        }
+    }
+}
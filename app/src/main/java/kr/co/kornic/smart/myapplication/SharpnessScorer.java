@@ -0,0 +1,152 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * Scores how sharp a frame is as the variance of the Laplacian of its luma. Edges in focus give
+ * large second derivatives in both directions; motion blur and defocus flatten them, so of
+ * several exposures of the same scene the sharpest scores highest. Scores only compare frames
+ * of the same scene and size.
+ *
+ * Only a centred region is scored, where the wearer is looking, and only every {@code step}-th
+ * pixel of every {@code step}-th row. The Laplacian itself is taken on the adjacent pixels, so
+ * the finest detail still counts.
+ *
+ * Rows are split over {@link ParallelRows}; a score allocates nothing. Calls are serialized.
+ */
+final class SharpnessScorer
+{
+    private final ParallelRows mRows;
+    private float mRegion = 0.5f;
+    private int mStep = 2;
+
+    // The frame being scored, read by the bands
+    private byte[] mLuma;
+    private int mRowStride;
+    private int mLeft;
+    private int mRight;
+    private int mTop;
+
+    // Totals of the bands, guarded by mTotalsLock; the scorer's own lock is held by the caller
+    private final Object mTotalsLock = new Object();
+    private long mSum;
+    private long mSumOfSquares;
+    private long mCount;
+
+    private final ParallelRows.Body mBody = new ParallelRows.Body()
+    {
+        @Override
+        public void run(int fromRow, int toRow)
+        {
+            scoreRows(fromRow, toRow);
+        }
+    };
+
+    /**
+     * @param threads The threads to split the rows over, the caller's included
+     */
+    SharpnessScorer(int threads)
+    {
+        mRows = new ParallelRows(threads);
+    }
+
+    /**
+     * @param region The fraction of the width and of the height scored, around the centre
+     * @param step   Scores every {@code step}-th pixel of every {@code step}-th row
+     */
+    synchronized void setSampling(float region, int step)
+    {
+        if (!(region > 0 && region <= 1) || step < 1)
+            throw new IllegalArgumentException("Invalid sampling.");
+        mRegion = region;
+        mStep = step;
+    }
+
+    synchronized double score(YuvFrame frame)
+    {
+        return score(frame.getY(), frame.getWidth(), frame.getHeight(), frame.getYRowStride());
+    }
+
+    /**
+     * @param luma One byte per pixel, rows {@code rowStride} apart
+     * @return The variance of the Laplacian over the region, or 0 if the frame is too small
+     */
+    synchronized double score(byte[] luma, int width, int height, int rowStride)
+    {
+        // The border pixels have no neighbours to take the Laplacian on
+        int regionWidth = Math.round(width * mRegion);
+        int regionHeight = Math.round(height * mRegion);
+        int left = Math.max(1, (width - regionWidth) / 2);
+        int right = Math.min(width - 1, left + regionWidth);
+        int top = Math.max(1, (height - regionHeight) / 2);
+        int bottom = Math.min(height - 1, top + regionHeight);
+        if (right <= left || bottom <= top)
+            return 0;
+
+        mLuma = luma;
+        mRowStride = rowStride;
+        mLeft = left;
+        mRight = right;
+        mTop = top;
+        synchronized (mTotalsLock)
+        {
+            mSum = 0;
+            mSumOfSquares = 0;
+            mCount = 0;
+        }
+        try
+        {
+            mRows.run((bottom - top + mStep - 1) / mStep, mBody);
+        }
+        finally
+        {
+            mLuma = null;
+        }
+
+        synchronized (mTotalsLock)
+        {
+            double mean = (double) mSum / mCount;
+            return (double) mSumOfSquares / mCount - mean * mean;
+        }
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    void shutdown()
+    {
+        mRows.shutdown();
+    }
+
+    private void scoreRows(int fromRow, int toRow)
+    {
+        byte[] luma = mLuma;
+        int rowStride = mRowStride;
+        int left = mLeft;
+        int right = mRight;
+        int step = mStep;
+        long sum = 0;
+        long sumOfSquares = 0;
+        long count = 0;
+
+        for (int row = fromRow; row < toRow; row++)
+        {
+            int offset = (mTop + row * step) * rowStride;
+            for (int x = left; x < right; x += step)
+            {
+                int p = offset + x;
+                int laplacian = 4 * (luma[p] & 0xFF)
+                        - (luma[p - 1] & 0xFF) - (luma[p + 1] & 0xFF)
+                        - (luma[p - rowStride] & 0xFF) - (luma[p + rowStride] & 0xFF);
+                sum += laplacian;
+                sumOfSquares += laplacian * laplacian;
+                count++;
+            }
+        }
+
+        synchronized (mTotalsLock)
+        {
+            mSum += sum;
+            mSumOfSquares += sumOfSquares;
+            mCount += count;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The edits that turn a loaded vocabulary into a desired one, as computed for
+ * {@link VuzixSpeechClient#syncVocabulary}.
+ *
+ * Phrases missing from the desired vocabulary are deleted, in descending index order so that no
+ * delete moves the index of one still to come. Phrases whose params differ are updated, and new
+ * phrases are inserted in the order the desired map iterates. Intent labels can't be modified or
+ * removed once defined, so only the missing ones are listed.
+ */
+public final class VocabularyDiff
+{
+    private final List<String> mDeleted;
+    private final Map<String, String> mUpdated;
+    private final Map<String, String> mInserted;
+    private final List<String> mDefinedIntents;
+
+    private VocabularyDiff(List<String> deleted, Map<String, String> updated, Map<String, String> inserted,
+                           List<String> definedIntents)
+    {
+        mDeleted = Collections.unmodifiableList(deleted);
+        mUpdated = Collections.unmodifiableMap(updated);
+        mInserted = Collections.unmodifiableMap(inserted);
+        mDefinedIntents = Collections.unmodifiableList(definedIntents);
+    }
+
+    /**
+     * @param current        The loaded phrases. Params of null mean unknown, and always update
+     * @param desired        Phrase => params, "" for none
+     * @param currentIntents The labels already defined
+     * @param desiredIntents The labels that must be defined
+     */
+    static VocabularyDiff compute(final PhraseIndexMap current, Map<String, String> desired,
+                                  Set<String> currentIntents, Set<String> desiredIntents)
+    {
+        ArrayList<String> deleted = new ArrayList<>();
+        for (String phrase : current.phrases())
+        {
+            if (!desired.containsKey(phrase))
+                deleted.add(phrase);
+        }
+        Collections.sort(deleted, new Comparator<String>()
+        {
+            @Override
+            public int compare(String lhs, String rhs)
+            {
+                int l = current.indexOf(lhs);
+                int r = current.indexOf(rhs);
+                return l > r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+
+        LinkedHashMap<String, String> updated = new LinkedHashMap<>();
+        LinkedHashMap<String, String> inserted = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : desired.entrySet())
+        {
+            String params = entry.getValue() == null ? "" : entry.getValue();
+            if (!current.contains(entry.getKey()))
+                inserted.put(entry.getKey(), params);
+            else if (!params.equals(current.paramsOf(entry.getKey())))
+                updated.put(entry.getKey(), params);
+        }
+
+        ArrayList<String> definedIntents = new ArrayList<>();
+        for (String label : desiredIntents)
+        {
+            if (!currentIntents.contains(label))
+                definedIntents.add(label);
+        }
+
+        return new VocabularyDiff(deleted, updated, inserted, definedIntents);
+    }
+
+    /**
+     * @return The phrases deleted, highest index first
+     */
+    public List<String> getDeleted()
+    {
+        return mDeleted;
+    }
+
+    /**
+     * @return Phrase => new params
+     */
+    public Map<String, String> getUpdated()
+    {
+        return mUpdated;
+    }
+
+    /**
+     * @return Phrase => params, in insert order
+     */
+    public Map<String, String> getInserted()
+    {
+        return mInserted;
+    }
+
+    public List<String> getDefinedIntents()
+    {
+        return mDefinedIntents;
+    }
+
+    /**
+     * @return Whether the vocabulary is already as desired, i.e. nothing needs to be written
+     */
+    public boolean isEmpty()
+    {
+        return mDeleted.isEmpty() && mUpdated.isEmpty() && mInserted.isEmpty() && mDefinedIntents.isEmpty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "deleted " + mDeleted + ", updated " + mUpdated.keySet() + ", inserted " + mInserted.keySet()
+                + ", intents " + mDefinedIntents;
+    }
+}
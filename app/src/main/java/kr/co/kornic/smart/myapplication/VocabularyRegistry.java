@@ -0,0 +1,128 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The vocabularies loaded in this process, shared by every {@link VuzixSpeechClient} with the same
+ * package and client id, so they query the provider once and hold a single copy between them.
+ *
+ * Each vocabulary lives in a {@link Slot}. While several clients hold a slot, what it holds is a
+ * {@link Vocabulary} that is never modified once published: readers just take the current one,
+ * without locking or copying, and writers build a modified copy and publish it in its place. A
+ * slot with a single holder has no other reader, so its client edits the vocabulary in place
+ * instead of copying it on every edit. Writers serialize on the slot itself, so their provider
+ * edits and the indexes they derive from them never interleave, and a client joining a slot reads
+ * it under that lock too.
+ *
+ * A slot lives as long as some client holds it, see {@link #acquire} and {@link #release}.
+ */
+final class VocabularyRegistry
+{
+    /**
+     * A vocabulary as published to a slot. Neither map may be modified after that, unless the slot
+     * is locked and has a single holder, see {@link #isShared}.
+     */
+    static final class Vocabulary
+    {
+        final PhraseIndexMap phrases;
+        final Map<String, String> intents; // Label => intent; null until loaded
+
+        Vocabulary(PhraseIndexMap phrases, Map<String, String> intents)
+        {
+            this.phrases = phrases;
+            this.intents = intents;
+        }
+
+        Vocabulary withPhrases(PhraseIndexMap phrases)
+        {
+            return new Vocabulary(phrases, intents);
+        }
+
+        Vocabulary withIntents(Map<String, String> intents)
+        {
+            return new Vocabulary(phrases, intents);
+        }
+    }
+
+    /**
+     * Holds the current vocabulary of one package and client id. Lock it to write.
+     */
+    static final class Slot
+    {
+        final String key;
+        private volatile Vocabulary mCurrent; // null until loaded
+        private int mHolders; // Guarded by the registry
+
+        private Slot(String key)
+        {
+            this.key = key;
+        }
+
+        /**
+         * @return The current vocabulary, or null if nobody loaded it yet
+         */
+        Vocabulary get()
+        {
+            return mCurrent;
+        }
+
+        void set(Vocabulary vocabulary)
+        {
+            mCurrent = vocabulary;
+        }
+    }
+
+    private static final VocabularyRegistry INSTANCE = new VocabularyRegistry();
+
+    private final HashMap<String, Slot> mSlots = new HashMap<>();
+
+    static VocabularyRegistry getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * @return The slot for {@code packageName} and {@code clientId}, created empty if no client
+     * holds it. Give it back with {@link #release} when done.
+     */
+    synchronized Slot acquire(String packageName, int clientId)
+    {
+        String key = packageName + '/' + clientId;
+        Slot slot = mSlots.get(key);
+        if (slot == null)
+        {
+            slot = new Slot(key);
+            mSlots.put(key, slot);
+        }
+        slot.mHolders++;
+        return slot;
+    }
+
+    /**
+     * Drops the slot, and the vocabulary in it, once its last holder has released it.
+     */
+    synchronized void release(Slot slot)
+    {
+        if (slot.mHolders <= 0)
+            throw new IllegalStateException("Slot " + slot.key + " is not held");
+        if (--slot.mHolders == 0)
+            mSlots.remove(slot.key);
+    }
+
+    /**
+     * @return Whether more than one client holds {@code slot}
+     */
+    synchronized boolean isShared(Slot slot)
+    {
+        return slot.mHolders > 1;
+    }
+
+    /**
+     * @return The number of vocabularies held in this process
+     */
+    synchronized int size()
+    {
+        return mSlots.size();
+    }
+}
@@ -0,0 +1,195 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A copy on disk of the vocabulary a {@link VuzixSpeechClient} loaded from the Speech Recognition
+ * Service, so the next client for the same package and client id can skip the provider queries.
+ *
+ * The file starts with a format version, the package, the client id and the boot time; a file
+ * that doesn't match all of them, or that can't be parsed, reads as missing. The boot time is
+ * there because the service doesn't keep vocabularies across a reboot. Keeping the file in sync
+ * with the provider while the app runs is up to the client.
+ */
+final class VocabularySnapshot
+{
+    private static final int MAGIC = 0x56534e50; // "VSNP"
+    static final int VERSION = 1;
+
+    // Boot time is estimated from two clocks, so it wobbles by a few ms from one call to the next
+    private static final long BOOT_TOLERANCE_MS = 5000;
+
+    final String[] phrases;
+    final int[] indexes;
+    final String[] params; // Entries may be null: unknown
+    final String[] intentLabels; // null if the intent map was never loaded
+    final String[] intents; // Entries may be null: unknown
+
+    VocabularySnapshot(String[] phrases, int[] indexes, String[] params, String[] intentLabels, String[] intents)
+    {
+        this.phrases = phrases;
+        this.indexes = indexes;
+        this.params = params;
+        this.intentLabels = intentLabels;
+        this.intents = intents;
+    }
+
+    /**
+     * @return The snapshot in {@code file}, or null if there is none for this package, client id
+     * and boot, or it is unreadable
+     */
+    static VocabularySnapshot read(File file, String packageName, int clientId, long bootMillis)
+    {
+        if (!file.isFile())
+            return null;
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(packageName)
+                    || in.readInt() != clientId || Math.abs(in.readLong() - bootMillis) > BOOT_TOLERANCE_MS)
+                return null;
+
+            int phraseCount = in.readInt();
+            String[] phrases = new String[phraseCount];
+            int[] indexes = new int[phraseCount];
+            String[] params = new String[phraseCount];
+            for (int i = 0; i < phraseCount; i++)
+            {
+                phrases[i] = in.readUTF();
+                indexes[i] = in.readInt();
+                params[i] = readNullable(in);
+            }
+
+            int labelCount = in.readInt();
+            String[] labels = null;
+            String[] intents = null;
+            if (labelCount >= 0)
+            {
+                labels = new String[labelCount];
+                intents = new String[labelCount];
+                for (int i = 0; i < labelCount; i++)
+                {
+                    labels[i] = in.readUTF();
+                    intents[i] = readNullable(in);
+                }
+            }
+            return new VocabularySnapshot(phrases, indexes, params, labels, intents);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // Truncated or corrupt: same as no snapshot
+            return null;
+        }
+        finally
+        {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Replaces {@code file} with this snapshot. The file is written beside it first and renamed, so
+     * a reader never sees half of it.
+     */
+    void write(File file, String packageName, int clientId, long bootMillis) throws IOException
+    {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(packageName);
+            out.writeInt(clientId);
+            out.writeLong(bootMillis);
+
+            out.writeInt(phrases.length);
+            for (int i = 0; i < phrases.length; i++)
+            {
+                out.writeUTF(phrases[i]);
+                out.writeInt(indexes[i]);
+                writeNullable(out, params[i]);
+            }
+
+            if (intentLabels == null)
+            {
+                out.writeInt(-1);
+            }
+            else
+            {
+                out.writeInt(intentLabels.length);
+                for (int i = 0; i < intentLabels.length; i++)
+                {
+                    out.writeUTF(intentLabels[i]);
+                    writeNullable(out, intents[i]);
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+
+        if (!temp.renameTo(file))
+        {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Deletes the files beside {@code keep} whose names start with {@code prefix} and that were
+     * last written before this boot, e.g. snapshots of clients that are gone. None of them could
+     * be read anymore.
+     *
+     * @return The number of files deleted
+     */
+    static int deleteStale(File keep, String prefix, long bootMillis)
+    {
+        File[] files = keep.getAbsoluteFile().getParentFile().listFiles();
+        if (files == null)
+            return 0;
+
+        int deleted = 0;
+        for (File file : files)
+        {
+            if (file.getName().startsWith(prefix) && !file.equals(keep.getAbsoluteFile())
+                    && file.lastModified() < bootMillis - BOOT_TOLERANCE_MS && file.delete())
+                deleted++;
+        }
+        return deleted;
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    private static void closeQuietly(DataInputStream in)
+    {
+        if (in == null)
+            return;
+        try
+        {
+            in.close();
+        }
+        catch (IOException ignored)
+        {
+        }
+    }
+}
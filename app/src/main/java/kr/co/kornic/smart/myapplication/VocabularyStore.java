@@ -0,0 +1,107 @@
+package kr.co.kornic.smart.myapplication;
+
+import android.content.OperationApplicationException;
+import android.os.RemoteException;
+
+import java.util.List;
+
+/**
+ * The phrases and intent labels tables of the Speech Recognition Service, as
+ * {@link VuzixSpeechClient} uses them.
+ *
+ * Each client, by package and client id, has its own phrases table. A phrase is addressed by its
+ * index: an insert appends the phrase at the end of the table and returns its index, and deleting
+ * one decrements the index of every phrase after it. Intent labels are only ever added.
+ *
+ * {@link ContentResolverVocabularyStore} goes through the service's content provider; the unit
+ * tests use an in-process table instead.
+ */
+interface VocabularyStore
+{
+    /**
+     * Told about every change to the tables, on an arbitrary thread.
+     */
+    interface Observer
+    {
+        void onChange();
+    }
+
+    /**
+     * The phrases table of one client, in index order.
+     */
+    final class Phrases
+    {
+        final String[] phrases;
+        final int[] indexes;
+        final String[] params; // An entry is null if the service doesn't report params
+
+        Phrases(String[] phrases, int[] indexes, String[] params)
+        {
+            this.phrases = phrases;
+            this.indexes = indexes;
+            this.params = params;
+        }
+    }
+
+    /**
+     * One edit of a batch. {@link #index} is the phrase to update or delete.
+     */
+    final class Edit
+    {
+        static final int INSERT_PHRASE = 0;
+        static final int UPDATE_PHRASE = 1;
+        static final int DELETE_PHRASE = 2;
+        static final int DEFINE_INTENT = 3;
+
+        final int kind;
+        final String key; // Phrase or intent label
+        final int index;
+        String value; // Params of a phrase, or the encoded intent
+
+        Edit(int kind, String key, int index, String value)
+        {
+            this.kind = kind;
+            this.key = key;
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    void registerObserver(Observer observer);
+
+    void unregisterObserver(Observer observer);
+
+    /**
+     * @throws RemoteException if the service can't be reached
+     */
+    Phrases queryPhrases(String packageName, int clientId) throws RemoteException;
+
+    /**
+     * @throws RemoteException if the service can't be reached
+     */
+    List<String> queryIntentLabels(String packageName, int clientId) throws RemoteException;
+
+    /**
+     * @param params The substitution, or null for none
+     * @return The index of the new phrase
+     */
+    int insertPhrase(String packageName, int clientId, String phrase, String params);
+
+    void updatePhrase(String packageName, int clientId, int index, String phrase, String params);
+
+    void deletePhrase(String packageName, int clientId, int index);
+
+    /**
+     * @return The index of the new label
+     */
+    int insertIntent(String packageName, int clientId, String label, String intent);
+
+    /**
+     * Applies {@code edits} in order, in one transaction.
+     *
+     * @return For each edit, the index the service assigned to it, or -1 if it assigned none
+     * @throws OperationApplicationException if the service rejected an edit
+     * @throws RemoteException               if the service can't be reached
+     */
+    int[] applyBatch(String packageName, int clientId, List<Edit> edits) throws RemoteException, OperationApplicationException;
+}
@@ -0,0 +1,332 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Routes voice command broadcasts to the handlers registered for them.
+ *
+ * A broadcast carries the recognized phrase, or its text substitution, in its {@code phrase}
+ * extra; an intent phrase broadcasts the extras of its {@link IntentSpec} instead. Handlers are
+ * registered on a {@link Builder} under either, and {@link #dispatch} finds the handler with one
+ * map lookup per extra. Each handler runs on the UI or the background executor, as registered,
+ * so the broadcast receiver never waits for it.
+ *
+ * The service may report the same utterance twice in quick succession, so a handler that fired
+ * less than the debounce interval ago is not run again. {@link #dispatch} must always be called
+ * from the same thread, normally the main thread.
+ *
+ * Every dispatched command carries the time its broadcast was received. Its handler passes it on
+ * and calls {@link VoiceCommand#finish} once the action is done, e.g. once the picture is saved;
+ * the time from the broadcast to then goes to a {@link LatencyHistogram} per route. Broadcasts
+ * that match no route, duplicates and failed actions are counted.
+ */
+final class VoiceCommandRouter
+{
+    /**
+     * Where a handler runs.
+     */
+    enum Dispatch
+    {
+        UI,
+        BACKGROUND
+    }
+
+    interface CommandHandler
+    {
+        /**
+         * Runs the action for {@code command}, which must be finished once done, on any thread.
+         */
+        void onCommand(VoiceCommand command);
+    }
+
+    /**
+     * One recognition handed to a handler.
+     */
+    final class VoiceCommand
+    {
+        private final Route mRoute;
+        private final String mMatch;
+        private final long mReceivedNanos;
+        private boolean mFinished;
+
+        private VoiceCommand(Route route, String match, long receivedNanos)
+        {
+            mRoute = route;
+            mMatch = match;
+            mReceivedNanos = receivedNanos;
+        }
+
+        /**
+         * @return The phrase, or the {@code key=value} extra, that matched
+         */
+        String getMatch()
+        {
+            return mMatch;
+        }
+
+        /**
+         * @return {@link System#nanoTime()} when the broadcast was received
+         */
+        long getReceivedNanos()
+        {
+            return mReceivedNanos;
+        }
+
+        /**
+         * Records the time from the broadcast to now, or counts a failure. Later calls are ignored.
+         */
+        void finish(boolean success)
+        {
+            finish(success, System.nanoTime());
+        }
+
+        void finish(boolean success, long nowNanos)
+        {
+            synchronized (this)
+            {
+                if (mFinished)
+                    return;
+                mFinished = true;
+            }
+            if (success)
+                mRoute.latency.record(nowNanos - mReceivedNanos);
+            else
+                countFailed();
+        }
+    }
+
+    private static final class Route
+    {
+        final String name;
+        final CommandHandler handler;
+        final Executor executor;
+        final LatencyHistogram latency = new LatencyHistogram();
+        long lastFiredNanos;
+        boolean fired;
+
+        Route(String name, CommandHandler handler, Executor executor)
+        {
+            this.name = name;
+            this.handler = handler;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Collects the routes; {@link #build} then freezes them into the router's map.
+     */
+    static final class Builder
+    {
+        private final Executor mUiExecutor;
+        private final Executor mBackgroundExecutor;
+        private final HashMap<String, Route> mRoutes = new HashMap<>();
+        private long mDebounceMillis = 500;
+
+        Builder(Executor uiExecutor, Executor backgroundExecutor)
+        {
+            mUiExecutor = uiExecutor;
+            mBackgroundExecutor = backgroundExecutor;
+        }
+
+        Builder setDebounceMillis(long debounceMillis)
+        {
+            mDebounceMillis = debounceMillis;
+            return this;
+        }
+
+        /**
+         * Routes the broadcasts whose {@code phrase} extra is {@code phrase}: a phrase without
+         * substitution, or the text of a substitution.
+         */
+        Builder onPhrase(String phrase, Dispatch dispatch, CommandHandler handler)
+        {
+            return add(phrase, phrase, dispatch, handler);
+        }
+
+        /**
+         * Routes the phrases inserted with {@code substitution}, which must be a
+         * {@link PhraseSubstitution.Kind#TEXT} substitution.
+         */
+        Builder onSubstitution(PhraseSubstitution substitution, Dispatch dispatch, CommandHandler handler)
+        {
+            if (substitution.getKind() != PhraseSubstitution.Kind.TEXT)
+                throw new IllegalArgumentException("Only text substitutions are broadcast as a phrase: " + substitution);
+            return add(substitution.getText(), substitution.getText(), dispatch, handler);
+        }
+
+        /**
+         * Routes the broadcasts of the intent defined under {@code label}, which are told apart by
+         * the first extra of {@code spec}.
+         */
+        Builder onIntent(String label, IntentSpec spec, Dispatch dispatch, CommandHandler handler)
+        {
+            if (spec.getExtras().isEmpty())
+                throw new IllegalArgumentException("Intent " + label + " has no extra to recognize it by.");
+            Map.Entry<String, String> extra = spec.getExtras().entrySet().iterator().next();
+            return add(extraKey(extra.getKey(), extra.getValue()), "intent " + label, dispatch, handler);
+        }
+
+        VoiceCommandRouter build()
+        {
+            return new VoiceCommandRouter(new HashMap<>(mRoutes), mDebounceMillis);
+        }
+
+        private Builder add(String key, String name, Dispatch dispatch, CommandHandler handler)
+        {
+            if (mRoutes.containsKey(key))
+                throw new IllegalArgumentException("A handler is already registered for " + key);
+            mRoutes.put(key, new Route(name, handler, dispatch == Dispatch.UI ? mUiExecutor : mBackgroundExecutor));
+            return this;
+        }
+    }
+
+    private final HashMap<String, Route> mRoutes;
+    private final long mDebounceNanos;
+    private int mIgnoredCount;
+    private int mDebouncedCount;
+    private int mFailedCount;
+
+    private VoiceCommandRouter(HashMap<String, Route> routes, long debounceMillis)
+    {
+        mRoutes = routes;
+        mDebounceNanos = debounceMillis * 1000000L;
+    }
+
+    /**
+     * Hands a broadcast to its handler, by its phrase first and then by each of its extras.
+     *
+     * @param phrase        The {@code phrase} extra, or null
+     * @param extras        The other extras as text, or null
+     * @param receivedNanos {@link System#nanoTime()} when the broadcast was received
+     * @return false if no handler matched or it was debounced
+     */
+    boolean dispatch(String phrase, Map<String, String> extras, long receivedNanos)
+    {
+        if (phrase != null)
+        {
+            Route route = mRoutes.get(phrase);
+            if (route != null)
+                return fire(route, phrase, receivedNanos);
+        }
+        if (extras != null)
+        {
+            for (Map.Entry<String, String> extra : extras.entrySet())
+            {
+                String key = extraKey(extra.getKey(), extra.getValue());
+                Route route = mRoutes.get(key);
+                if (route != null)
+                    return fire(route, key, receivedNanos);
+            }
+        }
+        synchronized (this)
+        {
+            mIgnoredCount++;
+        }
+        return false;
+    }
+
+    /**
+     * @return The time from the broadcast to the end of the action, for the route registered
+     * under {@code phrase}, text substitution or {@code "intent " + label}; null if there is none
+     */
+    LatencyHistogram getLatency(String name)
+    {
+        for (Route route : mRoutes.values())
+        {
+            if (route.name.equals(name))
+                return route.latency;
+        }
+        return null;
+    }
+
+    /**
+     * @return The broadcasts no handler was registered for
+     */
+    synchronized int getIgnoredCount()
+    {
+        return mIgnoredCount;
+    }
+
+    /**
+     * @return The duplicate recognitions dropped by the debounce
+     */
+    synchronized int getDebouncedCount()
+    {
+        return mDebouncedCount;
+    }
+
+    /**
+     * @return The commands whose action failed, e.g. a capture the camera refused
+     */
+    synchronized int getFailedCount()
+    {
+        return mFailedCount;
+    }
+
+    /**
+     * @return A table of count, p50, p95, p99 and max per route, in milliseconds, and the counters
+     */
+    String dump()
+    {
+        ArrayList<Route> routes = new ArrayList<>(mRoutes.values());
+        Collections.sort(routes, new Comparator<Route>()
+        {
+            @Override
+            public int compare(Route lhs, Route rhs)
+            {
+                return lhs.name.compareTo(rhs.name);
+            }
+        });
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-24s %7s %9s %9s %9s %9s%n", "voice to action (ms)", "count", "p50", "p95", "p99", "max"));
+        for (Route route : routes)
+        {
+            LatencyHistogram h = route.latency;
+            sb.append(String.format(Locale.US, "%-24s %7d %9.2f %9.2f %9.2f %9.2f%n", route.name, h.getCount(),
+                    h.getPercentile(50) / 1e6, h.getPercentile(95) / 1e6, h.getPercentile(99) / 1e6, h.getMax() / 1e6));
+        }
+        sb.append("ignored: ").append(getIgnoredCount()).append(", debounced: ").append(getDebouncedCount())
+                .append(", failed: ").append(getFailedCount());
+        return sb.toString();
+    }
+
+    private boolean fire(final Route route, String match, long receivedNanos)
+    {
+        if (route.fired && receivedNanos - route.lastFiredNanos < mDebounceNanos)
+        {
+            synchronized (this)
+            {
+                mDebouncedCount++;
+            }
+            return false;
+        }
+        route.fired = true;
+        route.lastFiredNanos = receivedNanos;
+        final VoiceCommand command = new VoiceCommand(route, match, receivedNanos);
+        route.executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                route.handler.onCommand(command);
+            }
+        });
+        return true;
+    }
+
+    private synchronized void countFailed()
+    {
+        mFailedCount++;
+    }
+
+    private static String extraKey(String key, String value)
+    {
+        return key + '=' + value;
+    }
+}
@@ -16,23 +16,33 @@ import android.app.Fragment;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.pm.PackageManager;
+import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.v13.app.FragmentCompat;
 import android.util.Log;
 import android.util.Size;
 import android.view.Surface;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 
 import static android.Manifest.permission.CAMERA;
@@ -53,12 +63,6 @@ public class VuzixCam
     // 플래시 지원 여부
     private boolean flashSupported;
 
-    // 카메라 속성
-    private CameraCharacteristics characteristics;
-
-    // 카메라 속성 중에서도 스트림 관련 설정
-    private StreamConfigurationMap map;
-
     // 카메라 해상도
     private Size camSize;
 
@@ -72,6 +76,206 @@ public class VuzixCam
     // 카메라 퍼미션 코드
     private static final int REQUEST_CAMERA_PERMISSION = 1;
 
+    // 카메라 콜백 전용 스레드. 디바이스, 세션, 프레임 콜백이 모두 여기서 실행되어 UI 스레드와 경쟁하지 않음
+    private HandlerThread cameraThread;
+    // takePicture() 가 다른 스레드에서 읽음
+    private volatile Handler cameraHandler;
+
+    // 카메라 스레드 시작, 종료는 메인 스레드에서만 함
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 프레임 소비자(ZSL 콜백 등)를 실행할 Executor. null 이면 카메라 스레드에서 바로 실행
+    private volatile Executor frameExecutor;
+
+    // ZSL(무지연 촬영) 링에 보관할 프레임 수. 0이면 ZSL 사용 안 함
+    private int zslFrames;
+
+    // ZSL 링이 사용할 수 있는 최대 메모리(바이트)
+    private long zslMemoryBudget;
+
+    // 최신 프레임보다 이 시간(ns) 이상 오래된 프레임은 버림
+    private long zslMaxAgeNs;
+
+    // ZSL 용 JPEG 스트림. stall 없는 가장 큰 크기
+    private Size zslSize;
+    private ImageReader zslReader;
+
+    // 최근 프레임 보관용 링 버퍼
+    private volatile ZslRingBuffer<Image> zslRing;
+
+    // 가장 최근 프리뷰 결과의 SENSOR_TIMESTAMP. 셔터를 누른 시점으로 사용
+    private volatile long lastSensorTimestamp;
+
+    // 아직 트리거 시점의 프레임이 도착하지 않은 ZSL 촬영 요청
+    private final List<ZslRequest> pendingZslRequests = new ArrayList<>();
+
+    // ZSL 을 쓰지 않을 때 촬영용 최대 해상도 JPEG 스트림. 프리뷰 반복 요청에는 넣지 않으므로 프리뷰가 JPEG 인코딩을 기다리지 않음
+    private Size stillSize;
+    private ImageReader stillReader;
+
+    // 결과 JPEG 를 기다리는 촬영 요청(요청 순서). 카메라 스레드에서만 접근
+    private final ArrayDeque<PictureCallback> pendingStills = new ArrayDeque<>();
+
+    // 동시에 진행할 수 있는 촬영 요청 수. 넘치면 바로 실패 처리
+    private static final int MAX_PENDING_STILLS = 2;
+
+    // 분석 스트림(YUV) 최대 해상도. 0이면 분석 스트림 사용 안 함
+    private int analysisMaxWidth;
+    private int analysisMaxHeight;
+
+    // 분석용 저해상도 YUV 스트림
+    private Size analysisSize;
+    private ImageReader analysisReader;
+
+    // 분석기별로 최신 프레임만 전달
+    private final LatestFrameDispatcher frameDispatcher = new LatestFrameDispatcher();
+
+    /**
+     * {@link #takePicture} 결과를 받는 콜백. 프레임 소비자 Executor 에서 실행됨
+     */
+    public interface PictureCallback
+    {
+        /**
+         * @param image JPEG 프레임. ZSL 이면 트리거 시점에 가장 가까운 프레임. 사용 후 반드시 {@link Image#close()} 해야 함
+         */
+        void onPicture(Image image);
+
+        /**
+         * 촬영하지 못함(카메라가 닫히거나 세션이 바뀜, 촬영 실패, 요청이 밀림 등)
+         */
+        void onPictureFailed();
+    }
+
+    private static class ZslRequest
+    {
+        final long triggerTimestamp;
+        final PictureCallback callback;
+
+        ZslRequest(long triggerTimestamp, PictureCallback callback)
+        {
+            this.triggerTimestamp = triggerTimestamp;
+            this.callback = callback;
+        }
+    }
+
+    // 링에서 밀려난 프레임은 바로 반납
+    private static final ZslRingBuffer.Recycler<Image> IMAGE_RECYCLER = new ZslRingBuffer.Recycler<Image>()
+    {
+        @Override
+        public void recycle(Image frame)
+        {
+            frame.close();
+        }
+    };
+
+    // ZSL 프레임 수신 콜백
+    private final ImageReader.OnImageAvailableListener zslImageListener = new ImageReader.OnImageAvailableListener()
+    {
+        @Override
+        public void onImageAvailable(ImageReader reader)
+        {
+            Image image;
+            try
+            {
+                image = reader.acquireNextImage();
+            }
+            catch (IllegalStateException e)
+            {
+                // 촬영 결과를 받은 쪽이 프레임을 아직 반납하지 않음. 이번 프레임은 건너뜀
+                return;
+            }
+            if (image == null || zslRing == null)
+            {
+                if (image != null)
+                    image.close();
+                return;
+            }
+
+            zslRing.add(image, image.getTimestamp(), image.getPlanes()[0].getBuffer().capacity());
+            deliverZslFrames();
+        }
+    };
+
+    // 촬영 결과 수신 콜백. 결과는 요청 순서대로 도착함
+    private final ImageReader.OnImageAvailableListener stillImageListener = new ImageReader.OnImageAvailableListener()
+    {
+        @Override
+        public void onImageAvailable(ImageReader reader)
+        {
+            Image image;
+            try
+            {
+                image = reader.acquireNextImage();
+            }
+            catch (IllegalStateException e)
+            {
+                // 받은 쪽이 이전 결과를 아직 반납하지 않음
+                image = null;
+            }
+
+            PictureCallback callback = pendingStills.poll();
+            if (callback == null)
+            {
+                if (image != null)
+                    image.close();
+                return;
+            }
+            dispatchPicture(callback, image);
+        }
+    };
+
+    // 촬영 요청 콜백. 이미지가 만들어지지 않은 실패는 리더로 결과가 오지 않으므로 여기서 실패 처리
+    private final CameraCaptureSession.CaptureCallback stillCaptureCallback = new CameraCaptureSession.CaptureCallback()
+    {
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull CaptureFailure failure)
+        {
+            if (failure.wasImageCaptured())
+                return;
+
+            PictureCallback callback = (PictureCallback) request.getTag();
+            if (pendingStills.remove(callback))
+                dispatchPicture(callback, null);
+        }
+    };
+
+    // 분석 프레임 수신 콜백. 복사 후 바로 반납하므로 분석기가 느려도 리더가 막히지 않음
+    private final ImageReader.OnImageAvailableListener analysisImageListener = new ImageReader.OnImageAvailableListener()
+    {
+        @Override
+        public void onImageAvailable(ImageReader reader)
+        {
+            Image image;
+            try
+            {
+                // 밀린 프레임은 건너뛰고 가장 최근 것만 받음
+                image = reader.acquireLatestImage();
+            }
+            catch (IllegalStateException e)
+            {
+                return;
+            }
+            if (image == null)
+                return;
+
+            YuvFrame frame = null;
+            try
+            {
+                if (!frameDispatcher.isEmpty())
+                    frame = copyFrame(image);
+            }
+            finally
+            {
+                image.close();
+            }
+            if (frame != null)
+            {
+                frameDispatcher.offer(frame);
+                frame.release();
+            }
+        }
+    };
+
     // 카메라 디바이스 콜백
     private CameraDevice.StateCallback camDeviceStateCallback = new CameraDevice.StateCallback()
     {
@@ -84,17 +288,39 @@ public class VuzixCam
 
         @Override
         public void onDisconnected(@NonNull CameraDevice camera) {
-            camera.close();
-            cameraDevice = null;
+            releaseCamera(camera);
         }
 
         @Override
         public void onError(@NonNull CameraDevice camera, int error) {
-            camera.close();
-            cameraDevice = null;
+            releaseCamera(camera);
         }
     };
 
+    // 카메라를 잃었을 때 정리. 카메라 스레드도 종료해야 다음 openCamera() 에서 다시 열 수 있음
+    private void releaseCamera(CameraDevice camera)
+    {
+        camera.close();
+        cameraDevice = null;
+        captureSession = null;
+        releaseZsl();
+        releaseStill();
+        releaseAnalysis();
+
+        // 카메라 스레드는 자기 자신을 join 할 수 없으므로 메인 스레드에서 종료
+        final Looper looper = Looper.myLooper();
+        mainHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // 그 사이 closeCamera() 로 이미 정리됐으면 그대로 둠
+                if (cameraThread != null && cameraThread.getLooper() == looper)
+                    stopCameraThread();
+            }
+        });
+    }
+
     // 카메라 캡쳐 콜백
     private CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback()
     {
@@ -108,10 +334,17 @@ public class VuzixCam
         public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request, TotalCaptureResult result) {
 
             super.onCaptureCompleted(session, request, result);
+            Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            if (timestamp != null)
+                lastSensorTimestamp = timestamp;
         }
     };
 
     private Surface camSurface;
+
+    // camSurface 를 만든 SurfaceTexture. 같은 텍스처가 다시 붙으면 세션을 그대로 둠
+    private SurfaceTexture camTexture;
+
     private CaptureRequest.Builder previewRequestBuilder;
     private CaptureRequest previewRequest;
 
@@ -121,35 +354,56 @@ public class VuzixCam
     public VuzixCam(Activity camAtivity, int width, int height)
     {
         this.camActivity = camAtivity;
-        camManager = (CameraManager) camAtivity.getSystemService(Context.CAMERA_SERVICE);
+        // 액티비티보다 오래 살 수 있으므로 애플리케이션 컨텍스트 사용
+        camManager = (CameraManager) camAtivity.getApplicationContext().getSystemService(Context.CAMERA_SERVICE);
     }
 
-    private void initCam() throws CameraAccessException
+    /**
+     * 화면 회전 등으로 다시 만들어진 액티비티를 연결. 카메라는 열린 상태 그대로 유지됨.
+     * 권한 요청 다이얼로그는 이 액티비티에 띄움.
+     */
+    public void attach(Activity camActivity)
     {
-        for (String cameraId : camManager.getCameraIdList())
-        {
-            characteristics = camManager.getCameraCharacteristics(cameraId);
-
-            // 후면캠 사용(뷰직스 M300은 전면캠 없음)
-            Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
-            if (facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT)
-            {   continue;   }
-
-            // fps 률, 비디오 사이즈 등등 스트림 관련 설정
-            map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            if (map == null)
-            {   continue;   }
-
-            // 최고해상도로 출력 설정
-            Size[] sizes = map.getOutputSizes(SurfaceTexture.class);
-            camSize = sizes[0];
-            for (Size size : sizes)
-                if (size.getWidth() > camSize.getWidth())
-                    camSize = size;
+        this.camActivity = camActivity;
+    }
 
-            this.cameraId = cameraId;
-            return;
-        }
+    // @return 사용할 수 있는 후면캠이 없으면 false
+    private boolean initCam() throws CameraAccessException
+    {
+        // 카메라 속성은 펌웨어별로 한 번만 조회해 파일로 저장해 두고 재사용함(바인더 호출 생략)
+        // 후면캠 사용(뷰직스 M300은 전면캠 없음)
+        CameraCapabilityIndex capabilities = CameraCapabilities.get(camActivity.getApplicationContext());
+        if (capabilities == null || capabilities.previewSizes.length == 0 || capabilities.jpegSizes.length == 0)
+        {   return false;   }
+
+        // 최고해상도로 출력 설정
+        int[] sizes = capabilities.previewSizes;
+        int widest = 0;
+        for (int i = 2; i < sizes.length; i += 2)
+            if (sizes[i] > sizes[widest])
+                widest = i;
+        camSize = new Size(sizes[widest], sizes[widest + 1]);
+
+        // ZSL 은 반복 요청에 넣어도 프레임이 밀리지 않는(stall 없는) 가장 큰 JPEG 로 보관(면적 내림차순으로 정렬되어 있음).
+        // 그런 크기가 없으면 매 프리뷰 프레임마다 JPEG 인코딩을 기다리게 되므로 ZSL 을 사용하지 않음
+        int[] zslSizes = capabilities.stallFreeJpegSizes;
+        zslSize = zslSizes.length == 0 ? null : new Size(zslSizes[0], zslSizes[1]);
+        if (zslFrames > 0 && zslSize == null)
+            Log.w(LOG_TAG, "Every JPEG size stalls the preview, ZSL disabled");
+
+        // ZSL 을 쓰지 않으면 요청할 때마다 최대 해상도 JPEG 를 촬영함. 반복 요청이 아니므로 stall 은 촬영할 때만 생김
+        stillSize = new Size(capabilities.jpegSizes[0], capabilities.jpegSizes[1]);
+
+        // 분석 스트림은 지정한 크기 안에 드는 가장 큰 YUV 해상도
+        analysisSize = null;
+        int analysis = analysisMaxWidth > 0 ? CameraCapabilityIndex.largestWithin(capabilities.yuvSizes, analysisMaxWidth, analysisMaxHeight) : -1;
+        if (analysis >= 0)
+            analysisSize = new Size(capabilities.yuvSizes[analysis], capabilities.yuvSizes[analysis + 1]);
+
+        sensorOrientation = capabilities.sensorOrientation;
+        flashSupported = capabilities.flashSupported;
+        this.cameraId = capabilities.cameraId;
+        return true;
     }
 
     public void openCamera()
@@ -166,17 +420,115 @@ public class VuzixCam
             return;
         }
 
+        // 이미 열려 있거나 여는 중
+        if (cameraThread != null)
+            return;
+
+        // 카메라 정보를 먼저 확인하고, 열 수 있을 때만 카메라 스레드를 시작
         try
         {
-            initCam();
-            camManager.openCamera(this.cameraId, camDeviceStateCallback, null);
+            if (!initCam())
+            {
+                Log.e(LOG_TAG, "No usable camera");
+                return;
+            }
         }
         catch (CameraAccessException e)
         {
             e.printStackTrace();
+            return;
+        }
+
+        startCameraThread();
+        try
+        {
+            camManager.openCamera(this.cameraId, camDeviceStateCallback, cameraHandler);
+        }
+        catch (CameraAccessException e)
+        {
+            e.printStackTrace();
+            stopCameraThread();
+        }
+    }
+
+    /**
+     * 카메라를 닫고 카메라 스레드를 정리함. {@link Activity#onPause()} 에서 호출.
+     * 정리 작업은 카메라 스레드에서 실행되므로 진행 중인 콜백과 겹치지 않음. 끝날 때까지 기다리지 않음.
+     */
+    public void closeCamera()
+    {
+        closeCamera(null);
+    }
+
+    /**
+     * {@link #closeCamera()} 와 같음.
+     *
+     * @param onClosed 정리가 끝난 뒤 카메라 스레드에서 실행. 카메라가 열려 있지 않으면 바로 실행. null 가능
+     */
+    public void closeCamera(final Runnable onClosed)
+    {
+        if (cameraThread == null)
+        {
+            if (onClosed != null)
+                onClosed.run();
+            return;
         }
+
+        cameraHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (captureSession != null)
+                {
+                    captureSession.close();
+                    captureSession = null;
+                }
+                if (cameraDevice != null)
+                {
+                    cameraDevice.close();
+                    cameraDevice = null;
+                }
+                releaseZsl();
+                releaseStill();
+                releaseAnalysis();
+                if (onClosed != null)
+                    onClosed.run();
+            }
+        });
+        stopCameraThread();
+    }
+
+    /**
+     * 프레임 소비자(촬영 콜백)를 실행할 Executor 지정. null 이면 카메라 스레드에서 실행.
+     * 오래 걸리는 작업(파일 저장, 분석 등)이 카메라 콜백을 막지 않도록 별도 Executor 사용을 권장.
+     * 촬영 리더도 이 Executor 에서 닫으므로 작업을 순서대로 하나씩 실행하는 Executor 여야 함.
+     */
+    public void setFrameExecutor(Executor executor)
+    {
+        frameExecutor = executor;
+    }
+
+    // 카메라 스레드 시작
+    private void startCameraThread()
+    {
+        cameraThread = new HandlerThread("VuzixCamera");
+        cameraThread.start();
+        cameraHandler = new Handler(cameraThread.getLooper());
     }
 
+    // 남은 작업(디바이스 닫기 등)을 마친 뒤 카메라 스레드 종료. 기다리지 않으므로 UI 스레드가 HAL 을 기다리며 멈추지 않음
+    private void stopCameraThread()
+    {
+        cameraThread.quitSafely();
+        cameraThread = null;
+        cameraHandler = null;
+    }
+
+    /**
+     * 프리뷰를 출력할 SurfaceTexture 지정. 카메라가 이미 열려 있으면 다시 열지 않고
+     * 새 Surface 로 캡처 세션만 다시 만듦. 같은 텍스처를 다시 지정하면 아무것도 하지 않음.
+     */
     public boolean setPreview(SurfaceTexture surface)
     {
         if(surface == null)
@@ -185,10 +537,362 @@ public class VuzixCam
             return false;
         }
 
+        // 설정 변경 뒤 같은 텍스처를 새 TextureView 에 붙인 경우: 세션이 이미 이 텍스처로 출력 중
+        if (surface == camTexture)
+            return true;
+
+        this.camTexture = surface;
         this.camSurface = new Surface(surface);
+
+        if (cameraHandler != null)
+        {
+            cameraHandler.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (cameraDevice != null)
+                        createCameraPreviewSession();
+                }
+            });
+        }
         return  true;
     }
 
+    /**
+     * ZSL(무지연 촬영) 모드 설정. {@link #openCamera()} 전에 호출해야 함.
+     * 프리뷰와 함께 JPEG 프레임을 계속 받아 최근 프레임을 링 버퍼에 보관하고,
+     * {@link #takePicture} 요청 시 3A 시퀀스 없이 셔터 시점에 가장 가까운 프레임을 돌려줌.
+     * 프레임 수는 메모리 한도 안에서만 유지됨. 프리뷰를 늦추지 않는(stall 없는) JPEG 크기 중 가장 큰 것을
+     * 사용하며, 그런 크기가 없는 기기에서는 ZSL 대신 일반 촬영(TEMPLATE_STILL_CAPTURE)으로 찍음.
+     *
+     * @param frames        보관할 최대 프레임 수. 0이면 ZSL 사용 안 함
+     * @param memoryBudget  링 버퍼가 사용할 최대 메모리(바이트)
+     * @param maxFrameAgeMs 최신 프레임보다 이 시간 이상 오래된 프레임은 버림
+     */
+    public void setZsl(int frames, long memoryBudget, long maxFrameAgeMs)
+    {
+        if (frames < 0 || (frames > 0 && (memoryBudget <= 0 || maxFrameAgeMs <= 0)))
+            throw new IllegalArgumentException("Invalid ZSL configuration.");
+
+        zslFrames = frames;
+        zslMemoryBudget = memoryBudget;
+        zslMaxAgeNs = maxFrameAgeMs * 1000000L;
+    }
+
+    /**
+     * 사진 촬영. ZSL 이 동작 중이면 셔터를 누른 시점에 가장 가까운 프레임을 링 버퍼에서 꺼내 전달하고,
+     * 아니면 최대 해상도 JPEG 를 한 장 촬영해 전달함. 결과는 {@code callback} 으로 받음.
+     *
+     * @return 카메라가 열려 있지 않아 요청하지 못하면 false. 이때 콜백은 호출되지 않음
+     */
+    public boolean takePicture(final PictureCallback callback)
+    {
+        if (captureZsl(callback))
+            return true;
+
+        Handler handler = cameraHandler;
+        if (handler == null)
+            return false;
+        // 카메라 스레드가 이미 종료 중이면 false
+        return handler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                captureStill(callback);
+            }
+        });
+    }
+
+    // 셔터를 누른 시점(가장 최근 프리뷰의 SENSOR_TIMESTAMP)에 가장 가까운 프레임을 링 버퍼에서 꺼내 전달함.
+    // 그 시점의 프레임이 아직 도착하지 않았으면 도착한 뒤에 전달함. ZSL 이 동작 중이 아니면 false
+    private boolean captureZsl(PictureCallback callback)
+    {
+        if (zslRing == null)
+            return false;
+
+        long trigger = lastSensorTimestamp;
+        synchronized (pendingZslRequests)
+        {
+            pendingZslRequests.add(new ZslRequest(trigger, callback));
+        }
+        deliverZslFrames();
+        return true;
+    }
+
+    // 트리거 시점 이후의 프레임이 링에 들어온 요청들에 프레임 전달
+    private void deliverZslFrames()
+    {
+        ZslRingBuffer<Image> ring = zslRing;
+        if (ring == null)
+            return;
+
+        while (true)
+        {
+            ZslRequest request;
+            synchronized (pendingZslRequests)
+            {
+                if (pendingZslRequests.isEmpty() || pendingZslRequests.get(0).triggerTimestamp > ring.newestTimestamp())
+                    return;
+                request = pendingZslRequests.remove(0);
+            }
+
+            // 링이 비었으면(오래된 프레임이 모두 버려짐) null: 실패로 전달
+            dispatchPicture(request.callback, ring.takeClosest(request.triggerTimestamp));
+        }
+    }
+
+    // 최대 해상도 JPEG 한 장 촬영. 카메라 스레드에서 실행
+    private void captureStill(PictureCallback callback)
+    {
+        if (cameraDevice == null || captureSession == null || stillReader == null)
+        {
+            dispatchPicture(callback, null);
+            return;
+        }
+        if (pendingStills.size() >= MAX_PENDING_STILLS)
+        {
+            Log.w(LOG_TAG, "Still capture busy, picture skipped");
+            dispatchPicture(callback, null);
+            return;
+        }
+
+        try
+        {
+            CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+            builder.addTarget(stillReader.getSurface());
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+            builder.setTag(callback);
+            captureSession.capture(builder.build(), stillCaptureCallback, cameraHandler);
+            pendingStills.add(callback);
+        }
+        catch (CameraAccessException | IllegalStateException e)
+        {
+            // IllegalStateException: 세션이 이미 닫힘
+            e.printStackTrace();
+            dispatchPicture(callback, null);
+        }
+    }
+
+    // 촬영 결과를 프레임 소비자 Executor 로 전달. image 가 null 이면 실패로 전달
+    private void dispatchPicture(final PictureCallback callback, final Image image)
+    {
+        Runnable delivery = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (image != null)
+                    callback.onPicture(image);
+                else
+                    callback.onPictureFailed();
+            }
+        };
+
+        Executor executor = frameExecutor;
+        if (executor == null)
+        {
+            delivery.run();
+            return;
+        }
+
+        try
+        {
+            executor.execute(delivery);
+        }
+        catch (RejectedExecutionException e)
+        {
+            if (image != null)
+                image.close();
+            callback.onPictureFailed();
+        }
+    }
+
+    /**
+     * 분석 스트림 설정. {@link #openCamera()} 전에 호출해야 함.
+     * 프리뷰와 같은 세션에 저해상도 YUV_420_888 스트림을 추가하고, 각 프레임을 복사해
+     * {@link #addFrameAnalyzer} 로 등록한 분석기에 전달함.
+     * 분석기가 바쁜 동안 도착한 프레임은 가장 최근 것 하나만 남기고 버리므로 프리뷰가 밀리지 않음.
+     *
+     * @param maxWidth  분석 프레임 최대 폭. 이 크기 안에 드는 가장 큰 해상도를 사용. 0이면 사용 안 함
+     * @param maxHeight 분석 프레임 최대 높이
+     */
+    public void setAnalysisSize(int maxWidth, int maxHeight)
+    {
+        if (maxWidth < 0 || maxHeight < 0 || (maxWidth > 0) != (maxHeight > 0))
+            throw new IllegalArgumentException("Invalid analysis size.");
+
+        analysisMaxWidth = maxWidth;
+        analysisMaxHeight = maxHeight;
+    }
+
+    /**
+     * 분석기 등록. 분석기는 {@code executor} 에서 한 번에 한 프레임씩 실행됨.
+     * 분석기마다 다른 Executor 를 쓰면 느린 분석기가 다른 분석기를 막지 않음.
+     */
+    public void addFrameAnalyzer(FrameAnalyzer analyzer, Executor executor)
+    {
+        frameDispatcher.add(analyzer, executor);
+    }
+
+    /**
+     * 분석기 등록 해제. 분석 중인 프레임은 끝까지 분석함.
+     */
+    public void removeFrameAnalyzer(FrameAnalyzer analyzer)
+    {
+        frameDispatcher.remove(analyzer);
+    }
+
+    /**
+     * @return 분석기의 분석 fps, 분석한 프레임 수, 버린 프레임 수. 등록되지 않은 분석기면 null
+     */
+    public FrameAnalyzer.Stats getFrameAnalyzerStats(FrameAnalyzer analyzer)
+    {
+        return frameDispatcher.getStats(analyzer);
+    }
+
+    /**
+     * @return 분석 중이거나 분석을 기다리는 프레임 수. 분석기마다 최대 두 개
+     */
+    public int getAnalysisFramesInFlight()
+    {
+        return frameDispatcher.getFramesInFlight();
+    }
+
+    // Image 의 세 평면을 풀에서 받은 프레임에 복사
+    private YuvFrame copyFrame(Image image)
+    {
+        Image.Plane[] planes = image.getPlanes();
+        ByteBuffer y = planes[0].getBuffer();
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        int yLength = y.remaining();
+        int uvLength = Math.max(u.remaining(), v.remaining());
+
+        YuvFrame frame = frameDispatcher.obtain(image.getWidth(), image.getHeight(), yLength, uvLength);
+        y.get(frame.getY(), 0, yLength);
+        u.get(frame.getU(), 0, u.remaining());
+        v.get(frame.getV(), 0, v.remaining());
+        frame.set(image.getTimestamp(), planes[0].getRowStride(), planes[1].getRowStride(), planes[1].getPixelStride());
+        return frame;
+    }
+
+    // 분석 스트림 생성
+    private void createAnalysis()
+    {
+        releaseAnalysis();
+        if (analysisSize == null)
+            return;
+
+        // 복사 중인 프레임 하나와 새로 도착하는 프레임 하나
+        analysisReader = ImageReader.newInstance(analysisSize.getWidth(), analysisSize.getHeight(), ImageFormat.YUV_420_888, 2);
+        analysisReader.setOnImageAvailableListener(analysisImageListener, cameraHandler);
+    }
+
+    // 분석 스트림 해제. 분석 중인 프레임은 복사본이므로 그대로 둠
+    private void releaseAnalysis()
+    {
+        frameDispatcher.clearPending();
+        if (analysisReader != null)
+        {
+            analysisReader.close();
+            analysisReader = null;
+        }
+    }
+
+    // ZSL 스트림 생성
+    private void createZsl()
+    {
+        releaseZsl();
+        if (zslFrames == 0 || zslSize == null)
+            return;
+
+        // 링이 가득 찬 상태에서 새 프레임 하나, 촬영 결과로 넘겨준 프레임 하나를 더 받을 수 있어야 함
+        zslReader = ImageReader.newInstance(zslSize.getWidth(), zslSize.getHeight(), ImageFormat.JPEG, zslFrames + 2);
+        zslReader.setOnImageAvailableListener(zslImageListener, cameraHandler);
+        zslRing = new ZslRingBuffer<>(zslFrames, zslMemoryBudget, zslMaxAgeNs, IMAGE_RECYCLER);
+    }
+
+    // ZSL 스트림 해제
+    private void releaseZsl()
+    {
+        List<ZslRequest> dropped;
+        synchronized (pendingZslRequests)
+        {
+            dropped = new ArrayList<>(pendingZslRequests);
+            pendingZslRequests.clear();
+        }
+        for (ZslRequest request : dropped)
+            dispatchPicture(request.callback, null);
+        if (zslRing != null)
+        {
+            zslRing.clear();
+            zslRing = null;
+        }
+        if (zslReader != null)
+        {
+            final ImageReader reader = zslReader;
+            zslReader = null;
+            reader.setOnImageAvailableListener(null, null);
+            closeAfterPendingFrames(reader);
+        }
+    }
+
+    // 촬영 스트림 생성. ZSL 이 동작하면 ZSL 프레임을 쓰므로 만들지 않음
+    private void createStill()
+    {
+        releaseStill();
+        if (zslReader != null || stillSize == null)
+            return;
+
+        // 진행 중인 요청마다 하나, 촬영 결과로 넘겨준 프레임 하나
+        stillReader = ImageReader.newInstance(stillSize.getWidth(), stillSize.getHeight(), ImageFormat.JPEG, MAX_PENDING_STILLS + 1);
+        stillReader.setOnImageAvailableListener(stillImageListener, cameraHandler);
+    }
+
+    // 촬영 스트림 해제. 결과를 기다리던 요청은 실패 처리
+    private void releaseStill()
+    {
+        PictureCallback callback;
+        while ((callback = pendingStills.poll()) != null)
+            dispatchPicture(callback, null);
+        if (stillReader != null)
+        {
+            final ImageReader reader = stillReader;
+            stillReader = null;
+            reader.setOnImageAvailableListener(null, null);
+            closeAfterPendingFrames(reader);
+        }
+    }
+
+    // 리더를 닫으면 넘겨준 Image 의 버퍼도 무효가 되므로, 저장 중인 프레임이 끝난 뒤 프레임 소비자 Executor 에서 닫음.
+    // Executor 가 없으면 콜백이 카메라 스레드에서 이미 끝났으므로 바로 닫음
+    private void closeAfterPendingFrames(final ImageReader reader)
+    {
+        Executor executor = frameExecutor;
+        if (executor != null)
+        {
+            try
+            {
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        reader.close();
+                    }
+                });
+                return;
+            }
+            catch (RejectedExecutionException e)
+            {
+                // Executor 가 종료됨. 더 기다릴 수 없으므로 바로 닫음
+            }
+        }
+        reader.close();
+    }
+
     private boolean createCameraPreviewSession()
     {
         if(camSurface == null)
@@ -196,12 +900,36 @@ public class VuzixCam
 
         try
         {
+            createZsl();
+            createStill();
+            createAnalysis();
+
             // 캡쳐 요청 빌드
             previewRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
             previewRequestBuilder.addTarget(camSurface);
 
+            List<Surface> outputs = new ArrayList<>(4);
+            outputs.add(camSurface);
+            if (zslReader != null)
+            {
+                // ZSL 프레임도 프리뷰와 함께 계속 받음
+                previewRequestBuilder.addTarget(zslReader.getSurface());
+                outputs.add(zslReader.getSurface());
+            }
+            if (stillReader != null)
+            {
+                // 촬영할 때만 요청하므로 반복 요청에는 넣지 않음
+                outputs.add(stillReader.getSurface());
+            }
+            if (analysisReader != null)
+            {
+                // 분석 프레임도 프리뷰와 함께 계속 받음
+                previewRequestBuilder.addTarget(analysisReader.getSurface());
+                outputs.add(analysisReader.getSurface());
+            }
+
             // 캡처 세션 생성
-            cameraDevice.createCaptureSession(Arrays.asList(camSurface),
+            cameraDevice.createCaptureSession(outputs,
                     new CameraCaptureSession.StateCallback()
                     {
                         @Override
@@ -218,7 +946,7 @@ public class VuzixCam
 
                                 // 프리뷰 출력.
                                 previewRequest = previewRequestBuilder.build();
-                                captureSession.setRepeatingRequest(previewRequest, captureCallback, null);
+                                captureSession.setRepeatingRequest(previewRequest, captureCallback, cameraHandler);
                             }
                             catch (CameraAccessException e)
                             {
@@ -231,7 +959,7 @@ public class VuzixCam
                         {
 
                         }
-                    }, null
+                    }, cameraHandler
             );
             return true;
         }
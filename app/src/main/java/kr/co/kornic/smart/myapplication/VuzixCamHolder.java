@@ -0,0 +1,107 @@
+package kr.co.kornic.smart.myapplication;
+
+import android.app.Activity;
+import android.app.Fragment;
+import android.app.FragmentManager;
+import android.graphics.SurfaceTexture;
+import android.os.Bundle;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 화면 회전 등 설정 변경으로 액티비티가 다시 만들어져도 {@link VuzixCam} 을 유지하기 위한 UI 없는 프래그먼트.
+ * setRetainInstance(true) 로 액티비티보다 오래 살아남으므로 카메라 디바이스, 캡처 세션, 프리뷰
+ * SurfaceTexture 를 새 액티비티가 그대로 넘겨받음. 카메라를 다시 열지 않으므로 복구가 수 ms 안에 끝남.
+ */
+public class VuzixCamHolder extends Fragment
+{
+    private static final String FRAGMENT_TAG = "vuzix_cam_holder";
+
+    private VuzixCam vuzixCam;
+
+    // 설정 변경 동안 보관하는 프리뷰 텍스처. 새 TextureView 에 다시 붙임
+    private SurfaceTexture previewTexture;
+
+    // 사진 저장용 스레드. 카메라와 수명을 같이 함
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * 액티비티에 붙어 있는 홀더를 찾고, 없으면 새로 추가함.
+     */
+    public static VuzixCamHolder get(Activity activity)
+    {
+        FragmentManager fm = activity.getFragmentManager();
+        VuzixCamHolder holder = (VuzixCamHolder) fm.findFragmentByTag(FRAGMENT_TAG);
+        if (holder == null)
+        {
+            holder = new VuzixCamHolder();
+            fm.beginTransaction().add(holder, FRAGMENT_TAG).commit();
+        }
+        return holder;
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true);
+    }
+
+    /**
+     * @return 이전 액티비티가 쓰던 카메라. 처음 생성된 홀더면 null
+     */
+    public VuzixCam getCam()
+    {
+        return vuzixCam;
+    }
+
+    public void setCam(VuzixCam vuzixCam)
+    {
+        this.vuzixCam = vuzixCam;
+        vuzixCam.setFrameExecutor(saveExecutor);
+    }
+
+    /**
+     * 설정 변경으로 TextureView 가 사라질 때 프리뷰 텍스처를 맡겨 둠.
+     */
+    public void keepPreviewTexture(SurfaceTexture texture)
+    {
+        previewTexture = texture;
+    }
+
+    /**
+     * @return 맡겨 둔 프리뷰 텍스처. 한 번 꺼내면 홀더에서 비워짐
+     */
+    public SurfaceTexture takePreviewTexture()
+    {
+        SurfaceTexture texture = previewTexture;
+        previewTexture = null;
+        return texture;
+    }
+
+    // 액티비티가 완전히 종료될 때만 호출됨
+    @Override
+    public void onDestroy()
+    {
+        super.onDestroy();
+        // 카메라를 닫는 동안에도 세션이 텍스처에 출력하고, ZSL 리더를 닫는 작업이 저장 스레드에 들어가므로
+        // 둘 다 정리가 끝난 뒤 해제
+        final SurfaceTexture texture = previewTexture;
+        previewTexture = null;
+        Runnable release = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (texture != null)
+                    texture.release();
+                saveExecutor.shutdown();
+            }
+        };
+        if (vuzixCam != null)
+            vuzixCam.closeCamera(release);
+        else
+            release.run();
+    }
+}
@@ -36,19 +36,21 @@ import android.app.Fragment;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.ComponentName;
-import android.content.ContentUris;
+import android.content.Context;
+import android.content.OperationApplicationException;
 import android.os.Bundle;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
-import android.util.Pair;
-import java.util.Iterator;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.HashMap;
-import android.content.ContentValues;
-import android.database.Cursor;
-import android.content.ContentResolver;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import android.net.Uri;
-import android.provider.BaseColumns;
 
 /**
  * <h1>Vuzix Speech Client local vocabulary configurator for Smart Glasses Speech Recognition Service</h1>
@@ -66,41 +68,27 @@ public class VuzixSpeechClient {
     private final int mClientId;
     private final String mClientIdStr;
     private final String mPackageName;
-    private final ContentResolver mResolver;
+    private final VocabularyStore mStore;
     private final Boolean mIsActivity;
-    private HashMap<String, Pair<Integer, String>> mVocabularyMap; // Phrase => Pair<Index, Params>
-    private HashMap<String, String> mIntentMap; // Label => Intent (as string)
+    // Phrase => Index, Params and Label => Intent (as string), shared by every client of this
+    // package and client id in the process. Lock the slot to edit them.
+    private final VocabularyRegistry.Slot mSlot;
+    private boolean mClosed;
+    private final StringBuilder mEncodeBuffer = new StringBuilder(64); // Reused for every substitution and intent
+
+    // Local copy of what the provider returned, see loadSnapshot(). The observer deletes it as soon
+    // as anything in the provider changes, including our own edits. Both are null if there is none.
+    private final File mSnapshotFile;
+    private final VocabularyStore.Observer mSnapshotObserver;
+
+    // Batch state, see beginBatch(). The staged maps show the vocabulary as it will be once the
+    // batch is committed; the shared vocabulary is left untouched until then.
+    private ArrayList<VocabularyStore.Edit> mBatchEdits;
+    private PhraseIndexMap mBatchVocabularyMap;
+    private HashMap<String, String> mBatchIntentMap;
+    private static final int PENDING_INDEX = -1; // Index of a phrase whose insert is still queued
 
     public final static String ACTION_VOICE_COMMAND = "com.vuzix.action.VOICE_COMMAND";
-    private static final class SpeechRecognitionContract {
-        public static final String AUTHORITY = "com.vuzix.speechrecognitionservice.SpeechRecognitionVocabulary";
-        public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY);
-        public final String SELECTION_ID_BASED = BaseColumns._ID + " = ? ";
-        public interface VocabularyColumns extends BaseColumns {
-            public final String PHRASES = "phrases";
-            public final String PHRASE_ID = "phraseId";
-            public final String LABELS = "labels";
-            public final String LABEL_ID = "labelId";
-            public final String PARAMS = "params";
-            public final String INTENTS = "intents";
-            public final String ACTIVITY = "activity";
-            public final String ERROR = "error";
-        }
-        public static final class Phrases implements BaseColumns {
-            public final String CONTENT_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE +
-                    '/' + AUTHORITY + '.' + VocabularyColumns.PHRASES;
-            public final String ENTRY_CONTENT_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE +
-                    '/' + AUTHORITY + '.' + VocabularyColumns.PHRASES;
-            public static final Uri CONTENT_URI = Uri.withAppendedPath(SpeechRecognitionContract.CONTENT_URI, VocabularyColumns.PHRASES);
-        }
-        public static final class Intents implements BaseColumns {
-            public final String CONTENT_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE +
-                    '/' + AUTHORITY + '.' + VocabularyColumns.LABELS;
-            public final String ENTRY_CONTENT_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE +
-                    '/' + AUTHORITY + '.' + VocabularyColumns.LABELS;
-            public static final Uri CONTENT_URI = Uri.withAppendedPath(SpeechRecognitionContract.CONTENT_URI, VocabularyColumns.LABELS);
-        }
-    }
 
     /**
      * Create a {@link VuzixSpeechClient} object for creation of a local
@@ -113,48 +101,179 @@ public class VuzixSpeechClient {
      *
      */
     public VuzixSpeechClient(Activity activity) throws RemoteException {
-        mClientId = activity.hashCode();
-        mClientIdStr = Integer.toString(mClientId);
-        mPackageName = activity.getPackageName();
-        mResolver = activity.getContentResolver();
-        mIsActivity = true;
-        LoadVocabulary();
+        this(new ContentResolverVocabularyStore(activity.getContentResolver()), activity.getPackageName(),
+                clientId(activity.getClass()), true, snapshotFile(activity, activity.getPackageName(), activity.getClass()));
     }
 
 
     public VuzixSpeechClient(Fragment fragment) throws RemoteException {
-        mClientId = fragment.hashCode();
+        this(new ContentResolverVocabularyStore(fragment.getActivity().getContentResolver()), fragment.getActivity().getPackageName(),
+                clientId(fragment.getClass()), false, snapshotFile(fragment.getActivity(), fragment.getActivity().getPackageName(), fragment.getClass()));
+    }
+
+    /**
+     * Creates a client on any {@link VocabularyStore}, e.g. an in-process one in a unit test.
+     *
+     * @param snapshotFile Where to keep a copy of the loaded vocabulary, or null to always load
+     *                     it from {@code store}
+     */
+    VuzixSpeechClient(VocabularyStore store, String packageName, int clientId, boolean isActivity, File snapshotFile) throws RemoteException {
+        mClientId = clientId;
         mClientIdStr = Integer.toString(mClientId);
-        mPackageName = fragment.getActivity().getPackageName();
-        mResolver = fragment.getActivity().getContentResolver();
-        mIsActivity = false;
-        LoadVocabulary();
+        mPackageName = packageName;
+        mStore = store;
+        mIsActivity = isActivity;
+        mSnapshotFile = snapshotFile;
+        mSnapshotObserver = snapshotFile == null ? null : new SnapshotInvalidator(snapshotFile);
+        mSlot = VocabularyRegistry.getInstance().acquire(mPackageName, mClientId);
+        open();
     }
 
-    private void LoadVocabulary() throws RemoteException {
-        String[] selectionArgs = new String[] { mPackageName };
-        Cursor cursor = mResolver.query(SpeechRecognitionContract.Phrases.CONTENT_URI, null, mClientIdStr, selectionArgs, null);
-        if (cursor == null) {
-            throw new RemoteException("SpeechRecognitionService content resolver failure");
+    private void open() throws RemoteException {
+        // Observe before reading the snapshot, so no change can slip in between
+        if (mSnapshotObserver != null) {
+            mStore.registerObserver(mSnapshotObserver);
+        }
+        try {
+            synchronized (mSlot) {
+                // Another client of the same id may already have loaded it
+                if (mSlot.get() == null && !loadSnapshot()) {
+                    LoadVocabulary();
+                    saveSnapshot();
+                }
+            }
+        } catch (RemoteException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops watching the Speech Recognition Service for changes and lets go of the shared
+     * vocabulary. The vocabulary stays registered with the service; call this when the client is
+     * no longer used, e.g. in {@link Activity#onDestroy}.
+     */
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        if (mSnapshotObserver != null) {
+            mStore.unregisterObserver(mSnapshotObserver);
+        }
+        VocabularyRegistry.getInstance().release(mSlot);
+    }
+
+    // Derived from the class rather than the instance, so the vocabulary and its snapshot are
+    // found again after a rotation or the next launch
+    private static int clientId(Class<?> scope) {
+        return scope.getName().hashCode();
+    }
+
+    private static File snapshotFile(Context context, String packageName, Class<?> scope) {
+        return new File(context.getCacheDir(), snapshotPrefix(packageName) + scope.getName() + ".snapshot");
+    }
+
+    private static String snapshotPrefix(String packageName) {
+        return "vocabulary-" + packageName + '-';
+    }
+
+    private static long bootMillis() {
+        return System.currentTimeMillis() - SystemClock.elapsedRealtime();
+    }
+
+    private static final class SnapshotInvalidator implements VocabularyStore.Observer {
+        private final File mFile;
+
+        SnapshotInvalidator(File file) {
+            mFile = file; // Called on a binder thread; deleting the file is all it does
+        }
+
+        @Override
+        public void onChange() {
+            mFile.delete();
+        }
+    }
+
+    /**
+     * Loads the vocabulary and, if it was ever loaded, the intent map from the snapshot.
+     *
+     * @return false if there is no usable snapshot
+     */
+    private boolean loadSnapshot() {
+        if (mSnapshotFile == null) {
+            return false;
         }
-        int nameColumn = cursor.getColumnIndex(SpeechRecognitionContract.VocabularyColumns.PHRASES);
-        int indexColumn = cursor.getColumnIndex(SpeechRecognitionContract.VocabularyColumns._ID);
-        int phraseCount = cursor.getCount();
-        mVocabularyMap = new HashMap<String, Pair<Integer, String>>(phraseCount + 16); // Arbitrarily size for 16 more than needed
-        while (cursor.moveToNext()) {
-            // We will populate phrase params individually as needed
-            mVocabularyMap.put(cursor.getString(nameColumn), new Pair<Integer, String>(new Integer(cursor.getInt(indexColumn)), null));
+        VocabularySnapshot snapshot = VocabularySnapshot.read(mSnapshotFile, mPackageName, mClientId, bootMillis());
+        if (snapshot == null) {
+            return false;
+        }
+        PhraseIndexMap vocabulary = new PhraseIndexMap(snapshot.phrases.length + 16);
+        vocabulary.putAll(snapshot.phrases, snapshot.indexes, snapshot.params);
+        HashMap<String, String> intents = null;
+        if (snapshot.intentLabels != null) {
+            intents = new HashMap<String, String>(snapshot.intentLabels.length + 16);
+            for (int i = 0; i < snapshot.intentLabels.length; i++) {
+                intents.put(snapshot.intentLabels[i], snapshot.intents[i]);
+            }
+        }
+        mSlot.set(new VocabularyRegistry.Vocabulary(vocabulary, intents));
+        return true;
+    }
+
+    /**
+     * Writes the committed vocabulary and intent map to the snapshot. Only called right after
+     * reading from the provider; edits leave it to the observer to drop the snapshot.
+     */
+    private void saveSnapshot() {
+        if (mSnapshotFile == null) {
+            return;
+        }
+        VocabularyRegistry.Vocabulary current = mSlot.get();
+        PhraseIndexMap vocabulary = current.phrases;
+        int count = vocabulary.size();
+        String[] phrases = vocabulary.phrases().toArray(new String[count]);
+        int[] indexes = new int[count];
+        String[] params = new String[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = vocabulary.indexOf(phrases[i]);
+            params[i] = vocabulary.paramsOf(phrases[i]);
         }
-        cursor.close();
-        mIntentMap = null; // We will populate the intent map if we need it
+        String[] labels = null;
+        String[] intents = null;
+        if (current.intents != null) {
+            labels = current.intents.keySet().toArray(new String[current.intents.size()]);
+            intents = new String[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                intents[i] = current.intents.get(labels[i]);
+            }
+        }
+        long boot = bootMillis();
+        try {
+            new VocabularySnapshot(phrases, indexes, params, labels, intents)
+                    .write(mSnapshotFile, mPackageName, mClientId, boot);
+            // Snapshots of this package written before the boot can never be read again
+            VocabularySnapshot.deleteStale(mSnapshotFile, snapshotPrefix(mPackageName), boot);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write vocabulary snapshot: " + e.getMessage());
+            mSnapshotFile.delete();
+        }
+    }
+
+    private void LoadVocabulary() throws RemoteException {
+        VocabularyStore.Phrases loaded = mStore.queryPhrases(mPackageName, mClientId);
+        PhraseIndexMap vocabulary = new PhraseIndexMap(loaded.phrases.length + 16); // Arbitrarily size for 16 more than needed
+        // Params stay null (unknown) if the service doesn't report them
+        vocabulary.putAll(loaded.phrases, loaded.indexes, loaded.params);
+        // We will populate the intent map if we need it
+        mSlot.set(new VocabularyRegistry.Vocabulary(vocabulary, null));
     }
 
     public String dump() {
         String s = new String("Vocabulary for " + mPackageName + " ID " + mClientIdStr + ':');
-        Pair<Integer, String> p;
-        for (String key : mVocabularyMap.keySet()) {
-            p = mVocabularyMap.get(key);
-            s += "\n\"" + key + "\" : " + p.first + ", \"" + p.second + '"';
+        PhraseIndexMap vocabulary = vocabulary();
+        for (String key : vocabulary.phrases()) {
+            s += "\n\"" + key + "\" : " + vocabulary.indexOf(key) + ", \"" + vocabulary.paramsOf(key) + '"';
         }
         return s;
     }
@@ -164,42 +283,38 @@ public class VuzixSpeechClient {
     }
 
     public boolean insertPhrase(String phrase, String substitution) {
-        Pair<Integer, String> p = mVocabularyMap.get(phrase);
         int index;
+        substitution = normalizeSubstitution(substitution);
+        if (mBatchEdits != null) {
+            stagePhrase(phrase, substitution);
+            return true;
+        }
+        synchronized (mSlot) {
+            VocabularyRegistry.Vocabulary current = mSlot.get();
+            PhraseIndexMap vocabulary = editablePhrases(current);
+            if (!vocabulary.contains(phrase)) {
+                index = mStore.insertPhrase(mPackageName, mClientId, phrase, substitution);
+                vocabulary.put(phrase, index, substitution == null ? "" : substitution);
+            } else {
+                index = vocabulary.indexOf(phrase);
+                mStore.updatePhrase(mPackageName, mClientId, index, phrase, substitution);
+                vocabulary.setParams(phrase, substitution == null ? "" : substitution);
+            }
+            publishPhrases(current, vocabulary);
+        }
+        return true;
+    }
+
+    private static String normalizeSubstitution(String substitution) {
         if (substitution != null && substitution.indexOf(';') < 0 &&
                 !substitution.startsWith("s:") && !substitution.startsWith("S:")) {
             substitution = new String("s:" + substitution);
         }
-        ContentValues cv = new ContentValues();
-        cv.put(SpeechRecognitionContract.VocabularyColumns.ACTIVITY, mPackageName);
-        cv.put(SpeechRecognitionContract.VocabularyColumns.PHRASES, phrase);
-        cv.put(SpeechRecognitionContract.VocabularyColumns.PARAMS, substitution);
-        if (p == null) {
-            cv.put(SpeechRecognitionContract.VocabularyColumns._ID, mClientId);
-            Uri result = mResolver.insert(SpeechRecognitionContract.Phrases.CONTENT_URI, cv);
-            index = (int)ContentUris.parseId(result);
-        } else {
-            index = p.first.intValue();
-            mResolver.update(ContentUris.withAppendedId(SpeechRecognitionContract.Phrases.CONTENT_URI, index),
-                    cv, mClientIdStr, null);
-        }
-        if (substitution == null) {
-            mVocabularyMap.put(phrase, new Pair<Integer, String>(new Integer(index), ""));
-        } else {
-            mVocabularyMap.put(phrase, new Pair<Integer, String>(new Integer(index), substitution));
-        }
-        return true;
+        return substitution;
     }
 
     public boolean insertKeycodePhrase(String phrase, int keyevent, int repeatIntervalMs, String params) {
-        String substitution = new String("s:&k" + keyevent);
-        if (repeatIntervalMs > 0) {
-            substitution += ";r:" + repeatIntervalMs;
-        }
-        if (params != null && params.length() > 0) {
-            substitution += ";" + params;
-        }
-        return insertPhrase(phrase, substitution);
+        return insertPhrase(phrase, encode(PhraseSubstitution.keycode(keyevent, repeatIntervalMs, params)));
     }
 
     public boolean insertKeycodePhrase(String phrase, int keyevent, String params) {
@@ -215,16 +330,23 @@ public class VuzixSpeechClient {
     }
 
     public boolean insertIntentPhrase(String phrase, String intentLabel, String params) throws RemoteException {
-        populateIntentMap();
-        if (!mIntentMap.containsKey(intentLabel)) {
+        if (!intents().containsKey(intentLabel)) {
             Log.e(TAG, "Intent map label " + intentLabel + " not defined - cannot insert phrase");
             return false;
         }
-        String substitution = new String("s:&i" + intentLabel);
-        if (params != null && params.length() > 0) {
-            substitution += ";" + params;
-        }
-        return insertPhrase(phrase, substitution);
+        return insertPhrase(phrase, encode(PhraseSubstitution.intent(intentLabel, params)));
+    }
+
+    /**
+     * @return The substitution {@link #insertIntentPhrase} uses, e.g. for {@link #syncVocabulary}
+     */
+    public static String intentSubstitution(String intentLabel, String params) {
+        return PhraseSubstitution.intent(intentLabel, params).encode();
+    }
+
+    private String encode(PhraseSubstitution substitution) {
+        mEncodeBuffer.setLength(0);
+        return substitution.encodeTo(mEncodeBuffer).toString();
     }
 
     public boolean insertIntentPhrase(String phrase, String intentLabel) throws RemoteException {
@@ -232,92 +354,344 @@ public class VuzixSpeechClient {
     }
 
     public boolean deletePhrase(String phrase) {
-        Pair<Integer, String> p = mVocabularyMap.get(phrase);
-        if (p == null) {
+        if (!vocabulary().contains(phrase)) {
             return false;
         }
-        int index = p.first.intValue();
-        String[] selectionArgs = new String[] { mPackageName };
-        mResolver.delete(ContentUris.withAppendedId(SpeechRecognitionContract.Phrases.CONTENT_URI, index),
-                mClientIdStr, selectionArgs);
-        mVocabularyMap.remove(phrase);
-        // The removal of this entry in the SpeechRecognition vocabulary will decrement the index of everything above it.
-        for (String key : mVocabularyMap.keySet()) {
-            p = mVocabularyMap.get(key);
-            if (p.first.intValue() > index) {
-                mVocabularyMap.put(key, new Pair<Integer, String>(p.first.intValue() - 1, p.second));
+        if (mBatchEdits != null) {
+            stageDelete(phrase);
+            return true;
+        }
+        synchronized (mSlot) {
+            VocabularyRegistry.Vocabulary current = mSlot.get();
+            PhraseIndexMap vocabulary = editablePhrases(current);
+            int index = vocabulary.indexOf(phrase);
+            if (index < 0) {
+                return false; // Deleted by another client meanwhile
             }
+            mStore.deletePhrase(mPackageName, mClientId, index);
+            // The removal of this entry in the SpeechRecognition vocabulary will decrement the index of everything above it.
+            // PhraseIndexMap accounts for that in O(log n) without rewriting the other entries.
+            vocabulary.remove(phrase);
+            publishPhrases(current, vocabulary);
         }
         return true;
     }
 
+    // Copy on write only while other clients hold the slot and may be reading the current
+    // vocabulary; a sole holder edits it in place, so an edit stays O(log n). Slot locked.
+    private PhraseIndexMap editablePhrases(VocabularyRegistry.Vocabulary current) {
+        return VocabularyRegistry.getInstance().isShared(mSlot) ? current.phrases.copy() : current.phrases;
+    }
+
+    private void publishPhrases(VocabularyRegistry.Vocabulary current, PhraseIndexMap vocabulary) {
+        if (vocabulary != current.phrases) {
+            mSlot.set(current.withPhrases(vocabulary));
+        }
+    }
+
+    /**
+     * @return Phrase => params of the vocabulary as loaded, params being null if the service
+     * didn't report them. The map is a copy.
+     */
+    public Map<String, String> getPhrases() {
+        PhraseIndexMap vocabulary = vocabulary();
+        HashMap<String, String> phrases = new HashMap<String, String>(vocabulary.size() + 16);
+        for (String phrase : vocabulary.phrases()) {
+            phrases.put(phrase, vocabulary.paramsOf(phrase));
+        }
+        return phrases;
+    }
+
+    /**
+     * Makes the vocabulary match {@code desiredPhrases} and {@code desiredIntents}, sending only
+     * what differs from the vocabulary loaded from the service in one batch. Phrases not in
+     * {@code desiredPhrases} are deleted, and intent labels already defined are left as they are.
+     * If nothing differs, nothing is written.
+     *
+     * @param desiredPhrases Phrase => substitution as given to {@link #insertPhrase(String, String)},
+     *                       null for none. Phrases are inserted in iteration order.
+     * @param desiredIntents Label => intent as given to {@link #defineIntent}
+     * @return What was changed
+     * @throws RemoteException if the service can't be reached or rejects the batch, in which case
+     * the vocabulary is reloaded from it
+     */
+    public VocabularyDiff syncVocabulary(Map<String, String> desiredPhrases, Map<String, Intent> desiredIntents) throws RemoteException {
+        if (mBatchEdits != null) {
+            throw new IllegalStateException("Cannot sync while a batch is open");
+        }
+        LinkedHashMap<String, String> desired = new LinkedHashMap<String, String>(desiredPhrases.size() + 16);
+        for (Map.Entry<String, String> entry : desiredPhrases.entrySet()) {
+            String substitution = normalizeSubstitution(entry.getValue());
+            desired.put(entry.getKey(), substitution == null ? "" : substitution);
+        }
+        synchronized (mSlot) {
+            // Hold the slot so no other client of this id edits the vocabulary between diff and commit
+            populateIntentMap();
+            VocabularyRegistry.Vocabulary current = mSlot.get();
+            VocabularyDiff diff = VocabularyDiff.compute(current.phrases, desired, current.intents.keySet(), desiredIntents.keySet());
+            if (diff.isEmpty()) {
+                return diff;
+            }
+
+            beginBatch();
+            boolean staged = false;
+            try {
+                // Intents first, so the phrases that refer to them never see them missing.
+                for (String label : diff.getDefinedIntents()) {
+                    defineIntent(label, desiredIntents.get(label));
+                }
+                for (String phrase : diff.getDeleted()) {
+                    deletePhrase(phrase);
+                }
+                for (Map.Entry<String, String> entry : diff.getUpdated().entrySet()) {
+                    insertPhrase(entry.getKey(), entry.getValue().length() == 0 ? null : entry.getValue());
+                }
+                for (Map.Entry<String, String> entry : diff.getInserted().entrySet()) {
+                    insertPhrase(entry.getKey(), entry.getValue().length() == 0 ? null : entry.getValue());
+                }
+                staged = true;
+            } finally {
+                // Otherwise every later edit would be staged into the abandoned batch
+                if (!staged) {
+                    abortBatch();
+                }
+            }
+            if (!commitBatch()) {
+                throw new RemoteException("SpeechRecognitionService rejected the vocabulary sync");
+            }
+            return diff;
+        }
+    }
+
     private void populateIntentMap() throws RemoteException {
-        if (mIntentMap == null) {
-            String[] selectionArgs = new String[] { mPackageName };
-            Cursor cursor = mResolver.query(SpeechRecognitionContract.Intents.CONTENT_URI, null, mClientIdStr, selectionArgs, null);
-            if (cursor == null) {
-                throw new RemoteException("SpeechRecognitionService content resolver failure");
+        synchronized (mSlot) {
+            if (mSlot.get().intents != null) {
+                return;
             }
-            int labelColumn = cursor.getColumnIndex(SpeechRecognitionContract.VocabularyColumns.LABELS);
-            int phraseCount = cursor.getCount();
-            mIntentMap = new HashMap<String, String>(phraseCount + 16); // Arbitrarily size for 16 more than needed
-            while (cursor.moveToNext()) {
-                mIntentMap.put(cursor.getString(labelColumn), null);
-                Log.i(TAG, "Found existing intent label " + cursor.getString(labelColumn));
+            List<String> labels = mStore.queryIntentLabels(mPackageName, mClientId);
+            HashMap<String, String> intents = new HashMap<String, String>(labels.size() + 16); // Arbitrarily size for 16 more than needed
+            for (String label : labels) {
+                intents.put(label, null);
+                Log.i(TAG, "Found existing intent label " + label);
             }
-            cursor.close();
+            mSlot.set(mSlot.get().withIntents(intents));
+            saveSnapshot();
         }
     }
 
     public boolean defineIntent(String label, Intent intent) throws RemoteException {
-        String val;
-        populateIntentMap();
-        if (mIntentMap.containsKey(label)) {
+        return defineIntent(label, intentSpecOf(intent));
+    }
+
+    /**
+     * Same as {@link #defineIntent(String, Intent)}, for an intent that is already an {@link IntentSpec}.
+     */
+    public boolean defineIntent(String label, IntentSpec spec) throws RemoteException {
+        if (intents().containsKey(label)) {
             Log.e(TAG, "Intent map label " + label + " already exists and may not be modified.");
             return false;
         }
-        val = intent.getAction();
-        if (val == null) {
-            val = ACTION_VOICE_COMMAND;
+        mEncodeBuffer.setLength(0);
+        String ret = spec.encodeTo(mEncodeBuffer).toString();
+        if (mBatchEdits != null) {
+            mBatchEdits.add(new VocabularyStore.Edit(VocabularyStore.Edit.DEFINE_INTENT, label, PENDING_INDEX, ret));
+            mBatchIntentMap.put(label, ret);
+            return true;
         }
-        String ret = new String("action:" + val);
+        int index;
+        synchronized (mSlot) {
+            index = mStore.insertIntent(mPackageName, mClientId, label, ret);
+            VocabularyRegistry.Vocabulary current = mSlot.get();
+            HashMap<String, String> intents = new HashMap<String, String>(current.intents);
+            intents.put(label, ret);
+            mSlot.set(current.withIntents(intents));
+        }
+        return (index >= 0);
+    }
+
+    /**
+     * @return How {@link #defineIntent} stores {@code intent}; extras are kept as text
+     */
+    public static IntentSpec intentSpecOf(Intent intent) {
+        String action = intent.getAction();
+        IntentSpec spec = new IntentSpec(action == null ? ACTION_VOICE_COMMAND : action);
         Uri u = intent.getData();
         if (u != null) {
-            ret = ret.concat(";data:"+u.toString());
+            spec.setData(u.toString());
         }
         Set<String> categories = intent.getCategories();
         if (categories != null) {
-            Iterator<String> iterator = categories.iterator();
-            while(iterator.hasNext()) {
-                ret = ret.concat(";category:" + iterator.next());
+            for (String category : categories) {
+                spec.addCategory(category);
             }
         }
-        val = intent.getType();
-        if (val != null) {
-            ret = ret.concat(";type:" + val);
-        }
+        spec.setType(intent.getType());
         ComponentName component = intent.getComponent();
         if (component != null) {
-            ret = ret.concat(";component:" + component.flattenToString());
+            spec.setComponent(component.flattenToString());
         }
         Bundle extras = intent.getExtras();
         if (extras != null) {
-            Set<String> keys = extras.keySet();
-            Iterator<String> iterator = keys.iterator();
-            while(iterator.hasNext()) {
-                String bkey = iterator.next();
-                ret = ret.concat(";" + bkey + ":" + extras.get(bkey).toString());
+            for (String key : extras.keySet()) {
+                spec.putExtra(key, extras.get(key).toString());
             }
         }
-        ContentValues cv = new ContentValues();
-        cv.put(SpeechRecognitionContract.VocabularyColumns.ACTIVITY, mPackageName);
-        cv.put(SpeechRecognitionContract.VocabularyColumns.LABELS, label);
-        cv.put(SpeechRecognitionContract.VocabularyColumns.INTENTS, ret);
-        cv.put(SpeechRecognitionContract.VocabularyColumns._ID, mClientId);
-        Uri result = mResolver.insert(SpeechRecognitionContract.Intents.CONTENT_URI, cv);
-        int index = (int)ContentUris.parseId(result);
-        mIntentMap.put(label, ret);
-        return (index >= 0);
+        return spec;
+    }
+
+    /**
+     * Starts queueing vocabulary edits instead of sending each one to the Speech Recognition
+     * Service. {@link #insertPhrase}, {@link #deletePhrase}, {@link #defineIntent} and the
+     * methods built on them then only stage their edit, and {@link #dump} shows the staged
+     * vocabulary. {@link #commitBatch} sends every queued edit in a single
+     * {@link android.content.ContentResolver#applyBatch} round-trip.
+     */
+    public void beginBatch() {
+        if (mBatchEdits != null) {
+            throw new IllegalStateException("A batch is already open");
+        }
+        mBatchEdits = new ArrayList<VocabularyStore.Edit>();
+        mBatchVocabularyMap = mSlot.get().phrases.copy();
+        mBatchIntentMap = null; // Copied from the shared intent map when first needed
+    }
+
+    public boolean isBatchOpen() {
+        return mBatchEdits != null;
+    }
+
+    /**
+     * Sends the edits queued since {@link #beginBatch} in one transaction and closes the batch.
+     * The local vocabulary is only updated once the service has accepted the whole batch.
+     *
+     * @return true if every edit was applied. On failure the service may have applied part of
+     * the batch, so the local vocabulary is reloaded from it.
+     */
+    public boolean commitBatch() throws RemoteException {
+        if (mBatchEdits == null) {
+            throw new IllegalStateException("No batch is open");
+        }
+        ArrayList<VocabularyStore.Edit> edits = mBatchEdits;
+        abortBatch();
+        if (edits.isEmpty()) {
+            return true;
+        }
+
+        synchronized (mSlot) {
+            int[] results;
+            try {
+                results = mStore.applyBatch(mPackageName, mClientId, edits);
+            } catch (OperationApplicationException e) {
+                Log.e(TAG, "Vocabulary batch rejected: " + e.getMessage());
+                LoadVocabulary();
+                return false;
+            } catch (RemoteException e) {
+                Log.e(TAG, "Vocabulary batch failed: " + e.getMessage());
+                LoadVocabulary();
+                return false;
+            }
+
+            // Replay the edits on copies of the shared maps, with the indexes the service assigned.
+            VocabularyRegistry.Vocabulary current = mSlot.get();
+            PhraseIndexMap vocabulary = current.phrases.copy();
+            HashMap<String, String> intents = current.intents == null ? null : new HashMap<String, String>(current.intents);
+            boolean unknownIndex = false;
+            for (int i = 0; i < edits.size(); i++) {
+                VocabularyStore.Edit edit = edits.get(i);
+                switch (edit.kind) {
+                    case VocabularyStore.Edit.INSERT_PHRASE:
+                        // The service didn't say where it put the phrase
+                        unknownIndex |= results[i] < 0;
+                        vocabulary.put(edit.key, results[i], paramsOf(edit));
+                        break;
+                    case VocabularyStore.Edit.UPDATE_PHRASE:
+                        vocabulary.setParams(edit.key, paramsOf(edit));
+                        break;
+                    case VocabularyStore.Edit.DELETE_PHRASE:
+                        vocabulary.remove(edit.key);
+                        break;
+                    default:
+                        if (intents != null) {
+                            intents.put(edit.key, edit.value);
+                        }
+                        break;
+                }
+            }
+            if (unknownIndex) {
+                // A phrase without an index could never be updated or deleted: ask the service.
+                LoadVocabulary();
+                mSlot.set(mSlot.get().withIntents(intents));
+            } else {
+                mSlot.set(new VocabularyRegistry.Vocabulary(vocabulary, intents));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Discards the edits queued since {@link #beginBatch} and closes the batch.
+     */
+    public void abortBatch() {
+        mBatchEdits = null;
+        mBatchVocabularyMap = null;
+        mBatchIntentMap = null;
+    }
+
+    private void stagePhrase(String phrase, String substitution) {
+        String params = substitution == null ? "" : substitution;
+        if (!mBatchVocabularyMap.contains(phrase)) {
+            mBatchEdits.add(new VocabularyStore.Edit(VocabularyStore.Edit.INSERT_PHRASE, phrase, PENDING_INDEX, substitution));
+            mBatchVocabularyMap.put(phrase, PENDING_INDEX, params);
+            return;
+        }
+        int index = mBatchVocabularyMap.indexOf(phrase);
+        if (index == PENDING_INDEX) {
+            // Inserted earlier in this batch: send the insert with the new params instead.
+            findPendingInsert(phrase).value = substitution;
+        } else {
+            mBatchEdits.add(new VocabularyStore.Edit(VocabularyStore.Edit.UPDATE_PHRASE, phrase, index, substitution));
+        }
+        mBatchVocabularyMap.setParams(phrase, params);
+    }
+
+    private void stageDelete(String phrase) {
+        int index = mBatchVocabularyMap.indexOf(phrase);
+        if (index == PENDING_INDEX) {
+            // Never reached the service: just drop the insert. Phrases are appended, so no index moves.
+            mBatchEdits.remove(findPendingInsert(phrase));
+        } else {
+            mBatchEdits.add(new VocabularyStore.Edit(VocabularyStore.Edit.DELETE_PHRASE, phrase, index, null));
+        }
+        mBatchVocabularyMap.remove(phrase);
+    }
+
+    private VocabularyStore.Edit findPendingInsert(String phrase) {
+        for (int i = mBatchEdits.size() - 1; i >= 0; i--) {
+            VocabularyStore.Edit edit = mBatchEdits.get(i);
+            if (edit.kind == VocabularyStore.Edit.INSERT_PHRASE && edit.key.equals(phrase)) {
+                return edit;
+            }
+        }
+        throw new IllegalStateException("No queued insert for " + phrase);
+    }
+
+    private static String paramsOf(VocabularyStore.Edit edit) {
+        return edit.value == null ? "" : edit.value;
+    }
+
+    private PhraseIndexMap vocabulary() {
+        return mBatchEdits != null ? mBatchVocabularyMap : mSlot.get().phrases;
+    }
+
+    // Read only unless a batch is open
+    private Map<String, String> intents() throws RemoteException {
+        populateIntentMap();
+        if (mBatchEdits == null) {
+            return mSlot.get().intents;
+        }
+        if (mBatchIntentMap == null) {
+            mBatchIntentMap = new HashMap<String, String>(mSlot.get().intents);
+        }
+        return mBatchIntentMap;
     }
 }
 
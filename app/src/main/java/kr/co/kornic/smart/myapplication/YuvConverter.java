@@ -0,0 +1,190 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * Converts {@link YuvFrame}s to ARGB_8888 or RGB565 pixels, e.g. for a thumbnail or an analyzer
+ * that needs colour.
+ *
+ * The camera's YUV is full range BT.601 (JFIF). The colour terms come from integer lookup tables
+ * and the result is clamped through another, so a pixel costs a few table reads and adds. Rows
+ * are split over {@link ParallelRows}, and the output goes to a buffer the caller reuses.
+ *
+ * A scale of n converts each n x n block to one pixel, averaging its luma and taking the chroma
+ * at its centre, in the same pass; the output is then {@code width / n} by {@code height / n}.
+ */
+public final class YuvConverter
+{
+    private static final int CLAMP_OFFSET = 384;
+    private static final int[] CLAMP = new int[1024];
+    private static final int[] R_V = new int[256];
+    private static final int[] G_U = new int[256]; // 16.16 fixed point
+    private static final int[] G_V = new int[256]; // 16.16 fixed point
+    private static final int[] B_U = new int[256];
+
+    static
+    {
+        for (int i = 0; i < CLAMP.length; i++)
+            CLAMP[i] = Math.max(0, Math.min(255, i - CLAMP_OFFSET));
+        for (int i = 0; i < 256; i++)
+        {
+            int c = i - 128;
+            R_V[i] = (int) Math.round(1.402 * c);
+            G_U[i] = (int) Math.round(-0.344136 * c * 65536);
+            G_V[i] = (int) Math.round(-0.714136 * c * 65536) + 32768; // Rounds the sum
+            B_U[i] = (int) Math.round(1.772 * c);
+        }
+    }
+
+    private final ParallelRows mRows;
+
+    // The conversion in progress, read by the bands
+    private YuvFrame mFrame;
+    private int mScale;
+    private int[] mArgb;
+    private short[] mRgb565;
+
+    private final ParallelRows.Body mBody = new ParallelRows.Body()
+    {
+        @Override
+        public void run(int fromRow, int toRow)
+        {
+            convertRows(fromRow, toRow);
+        }
+    };
+
+    /**
+     * @param threads The threads to split the rows over, the caller's included
+     */
+    public YuvConverter(int threads)
+    {
+        mRows = new ParallelRows(threads);
+    }
+
+    /**
+     * Uses one thread per core.
+     */
+    public YuvConverter()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public static int outputWidth(YuvFrame frame, int scale)
+    {
+        return frame.getWidth() / scale;
+    }
+
+    public static int outputHeight(YuvFrame frame, int scale)
+    {
+        return frame.getHeight() / scale;
+    }
+
+    /**
+     * Fills {@code out} with opaque ARGB_8888 pixels, row by row.
+     *
+     * @param out At least {@link #outputWidth} x {@link #outputHeight} long
+     */
+    public synchronized void toArgb8888(YuvFrame frame, int scale, int[] out)
+    {
+        check(frame, scale, out.length);
+        mArgb = out;
+        convert(frame, scale);
+    }
+
+    /**
+     * Fills {@code out} with RGB565 pixels, row by row.
+     *
+     * @param out At least {@link #outputWidth} x {@link #outputHeight} long
+     */
+    public synchronized void toRgb565(YuvFrame frame, int scale, short[] out)
+    {
+        check(frame, scale, out.length);
+        mRgb565 = out;
+        convert(frame, scale);
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown()
+    {
+        mRows.shutdown();
+    }
+
+    private static void check(YuvFrame frame, int scale, int length)
+    {
+        if (scale < 1)
+            throw new IllegalArgumentException("Invalid scale " + scale);
+        if (length < outputWidth(frame, scale) * outputHeight(frame, scale))
+            throw new IllegalArgumentException("Output buffer too small");
+    }
+
+    private void convert(YuvFrame frame, int scale)
+    {
+        mFrame = frame;
+        mScale = scale;
+        try
+        {
+            mRows.run(outputHeight(frame, scale), mBody);
+        }
+        finally
+        {
+            mFrame = null;
+            mArgb = null;
+            mRgb565 = null;
+        }
+    }
+
+    private void convertRows(int fromRow, int toRow)
+    {
+        YuvFrame frame = mFrame;
+        int scale = mScale;
+        int[] argb = mArgb;
+        short[] rgb565 = mRgb565;
+        byte[] yPlane = frame.getY();
+        byte[] uPlane = frame.getU();
+        byte[] vPlane = frame.getV();
+        int yRowStride = frame.getYRowStride();
+        int uvRowStride = frame.getUvRowStride();
+        int uvPixelStride = frame.getUvPixelStride();
+        int outWidth = frame.getWidth() / scale;
+        int half = scale >> 1;
+        int area = scale * scale;
+        int shift = (scale & (scale - 1)) == 0 ? Integer.numberOfTrailingZeros(area) : -1; // Divides by shifting if it can
+
+        for (int row = fromRow; row < toRow; row++)
+        {
+            int top = row * scale;
+            int uvRow = ((top + half) >> 1) * uvRowStride;
+            int out = row * outWidth;
+            for (int col = 0, left = 0; col < outWidth; col++, left += scale)
+            {
+                int y;
+                if (scale == 1)
+                {
+                    y = yPlane[top * yRowStride + left] & 0xFF;
+                }
+                else
+                {
+                    int sum = 0;
+                    for (int by = 0, p = top * yRowStride + left; by < scale; by++, p += yRowStride)
+                    {
+                        for (int bx = 0; bx < scale; bx++)
+                            sum += yPlane[p + bx] & 0xFF;
+                    }
+                    y = shift >= 0 ? (sum + (area >> 1)) >> shift : (sum + (area >> 1)) / area;
+                }
+
+                int uv = uvRow + ((left + half) >> 1) * uvPixelStride;
+                int u = uPlane[uv] & 0xFF;
+                int v = vPlane[uv] & 0xFF;
+                int r = CLAMP[CLAMP_OFFSET + y + R_V[v]];
+                int g = CLAMP[CLAMP_OFFSET + y + ((G_U[u] + G_V[v]) >> 16)];
+                int b = CLAMP[CLAMP_OFFSET + y + B_U[u]];
+
+                if (argb != null)
+                    argb[out + col] = 0xFF000000 | (r << 16) | (g << 8) | b;
+                else
+                    rgb565[out + col] = (short) (((r >> 3) << 11) | ((g >> 2) << 5) | (b >> 3));
+            }
+        }
+    }
+}
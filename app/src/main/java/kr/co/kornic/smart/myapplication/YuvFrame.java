@@ -0,0 +1,135 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * A copy of one YUV_420_888 frame of the analysis stream, laid out as the camera delivered it.
+ *
+ * The luma of pixel (x, y) is {@code getY()[y * getYRowStride() + x]}; its chroma is at
+ * {@code (y / 2) * getUvRowStride() + (x / 2) * getUvPixelStride()} in {@link #getU()} and
+ * {@link #getV()}. Values are unsigned.
+ *
+ * Frames are pooled: a frame is only valid during {@link FrameAnalyzer#analyze}, and its buffers
+ * are reused for a later frame as soon as every analyzer given it has returned.
+ */
+public final class YuvFrame
+{
+    interface Recycler
+    {
+        void recycle(YuvFrame frame);
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final byte[] mY;
+    private final byte[] mU;
+    private final byte[] mV;
+    private final Recycler mRecycler;
+    private int mYRowStride;
+    private int mUvRowStride;
+    private int mUvPixelStride;
+    private long mTimestamp;
+    private int mReferences;
+
+    /**
+     * @param recycler Takes the frame back once it is no longer referenced, or null
+     */
+    YuvFrame(int width, int height, int yLength, int uvLength, Recycler recycler)
+    {
+        mWidth = width;
+        mHeight = height;
+        mY = new byte[yLength];
+        mU = new byte[uvLength];
+        mV = new byte[uvLength];
+        mRecycler = recycler;
+    }
+
+    /**
+     * Sets the layout of the data just copied into the planes, and takes the first reference.
+     */
+    void set(long timestamp, int yRowStride, int uvRowStride, int uvPixelStride)
+    {
+        mTimestamp = timestamp;
+        mYRowStride = yRowStride;
+        mUvRowStride = uvRowStride;
+        mUvPixelStride = uvPixelStride;
+        synchronized (this)
+        {
+            mReferences = 1;
+        }
+    }
+
+    synchronized void retain()
+    {
+        if (mReferences <= 0)
+            throw new IllegalStateException("Frame already recycled");
+        mReferences++;
+    }
+
+    void release()
+    {
+        synchronized (this)
+        {
+            if (mReferences <= 0)
+                throw new IllegalStateException("Frame already recycled");
+            if (--mReferences > 0)
+                return;
+        }
+        if (mRecycler != null)
+            mRecycler.recycle(this);
+    }
+
+    /**
+     * @return Whether this frame's buffers can hold a frame of the given size and plane lengths
+     */
+    boolean fits(int width, int height, int yLength, int uvLength)
+    {
+        return mWidth == width && mHeight == height && mY.length >= yLength && mU.length >= uvLength;
+    }
+
+    public int getWidth()
+    {
+        return mWidth;
+    }
+
+    public int getHeight()
+    {
+        return mHeight;
+    }
+
+    /**
+     * @return The sensor timestamp, in nanoseconds
+     */
+    public long getTimestamp()
+    {
+        return mTimestamp;
+    }
+
+    public byte[] getY()
+    {
+        return mY;
+    }
+
+    public byte[] getU()
+    {
+        return mU;
+    }
+
+    public byte[] getV()
+    {
+        return mV;
+    }
+
+    public int getYRowStride()
+    {
+        return mYRowStride;
+    }
+
+    public int getUvRowStride()
+    {
+        return mUvRowStride;
+    }
+
+    public int getUvPixelStride()
+    {
+        return mUvPixelStride;
+    }
+}
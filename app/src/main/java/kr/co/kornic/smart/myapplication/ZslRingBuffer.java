@@ -0,0 +1,189 @@
+package kr.co.kornic.smart.myapplication;
+
+/**
+ * A fixed-size ring of the most recent camera frames for zero-shutter-lag capture.
+ *
+ * Frames are stamped with their sensor timestamp ({@code SENSOR_TIMESTAMP}, which is also
+ * {@link android.media.Image#getTimestamp()}). The ring holds at most {@code capacity} frames and
+ * at most {@code memoryBudget} bytes, and drops frames that are more than {@code maxAge}
+ * nanoseconds older than the newest one. Evicted frames are handed to a {@link Recycler}, which
+ * for an {@link android.media.Image} simply closes it.
+ *
+ * All storage is allocated up front. The class is thread-safe.
+ *
+ * @param <T> The frame type
+ */
+final class ZslRingBuffer<T>
+{
+    /**
+     * Releases frames that leave the ring without being taken.
+     */
+    interface Recycler<T>
+    {
+        void recycle(T frame);
+    }
+
+    private final Object[] mFrames;
+    private final long[] mTimestamps;
+    private final long[] mSizes;
+    private final long mMemoryBudget;
+    private final long mMaxAgeNs;
+    private final Recycler<T> mRecycler;
+
+    /**
+     * Index of the oldest frame.
+     */
+    private int mHead;
+    private int mCount;
+    private long mBytes;
+
+    /**
+     * @param capacity     The maximum number of frames kept
+     * @param memoryBudget The maximum total size of the frames kept, in bytes
+     * @param maxAgeNs     How much older than the newest frame a frame may be, in nanoseconds
+     * @param recycler     Receives every frame that is evicted or rejected
+     */
+    ZslRingBuffer(int capacity, long memoryBudget, long maxAgeNs, Recycler<T> recycler)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive.");
+        if (memoryBudget <= 0 || maxAgeNs <= 0)
+            throw new IllegalArgumentException("Memory budget and maximum age must be positive.");
+
+        mFrames = new Object[capacity];
+        mTimestamps = new long[capacity];
+        mSizes = new long[capacity];
+        mMemoryBudget = memoryBudget;
+        mMaxAgeNs = maxAgeNs;
+        mRecycler = recycler;
+    }
+
+    /**
+     * Adds the newest frame, evicting the oldest ones as needed to respect the capacity, the
+     * memory budget and the maximum age. Frames must be added in timestamp order.
+     *
+     * @param frame       The frame
+     * @param timestampNs Its sensor timestamp
+     * @param sizeBytes   The memory it holds
+     * @return False if the frame alone exceeds the memory budget and was recycled right away
+     */
+    boolean add(T frame, long timestampNs, long sizeBytes)
+    {
+        if (sizeBytes > mMemoryBudget)
+        {
+            mRecycler.recycle(frame);
+            return false;
+        }
+
+        synchronized (this)
+        {
+            evictOlderThan(timestampNs - mMaxAgeNs);
+            while (mCount == mFrames.length || mBytes + sizeBytes > mMemoryBudget)
+                recycleAt(0);
+
+            int slot = physical(mCount);
+            mFrames[slot] = frame;
+            mTimestamps[slot] = timestampNs;
+            mSizes[slot] = sizeBytes;
+            mBytes += sizeBytes;
+            mCount++;
+            return true;
+        }
+    }
+
+    /**
+     * Removes and returns the frame whose timestamp is closest to {@code triggerNs}. On a tie the
+     * earlier frame wins, since it was exposed when the trigger was given.
+     *
+     * @return The frame, now owned by the caller, or null if the ring is empty
+     */
+    synchronized T takeClosest(long triggerNs)
+    {
+        if (mCount == 0)
+            return null;
+
+        int best = 0;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < mCount; i++)
+        {
+            long distance = Math.abs(mTimestamps[physical(i)] - triggerNs);
+            if (distance < bestDistance)
+            {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return removeAt(best);
+    }
+
+    /**
+     * @return The timestamp of the newest frame, or {@link Long#MIN_VALUE} if the ring is empty
+     */
+    synchronized long newestTimestamp()
+    {
+        return mCount == 0 ? Long.MIN_VALUE : mTimestamps[physical(mCount - 1)];
+    }
+
+    synchronized int size()
+    {
+        return mCount;
+    }
+
+    /**
+     * @return The total size of the frames held, in bytes
+     */
+    synchronized long bytes()
+    {
+        return mBytes;
+    }
+
+    /**
+     * Recycles every frame held.
+     */
+    synchronized void clear()
+    {
+        while (mCount > 0)
+            recycleAt(0);
+    }
+
+    private void evictOlderThan(long oldestAllowedNs)
+    {
+        while (mCount > 0 && mTimestamps[mHead] < oldestAllowedNs)
+            recycleAt(0);
+    }
+
+    private void recycleAt(int index)
+    {
+        mRecycler.recycle(removeAt(index));
+    }
+
+    /**
+     * Removes the frame at logical position {@code index}, closing the gap by moving the older
+     * frames up one slot.
+     */
+    @SuppressWarnings("unchecked")
+    private T removeAt(int index)
+    {
+        int slot = physical(index);
+        T frame = (T) mFrames[slot];
+        mBytes -= mSizes[slot];
+
+        for (int i = index; i > 0; i--)
+        {
+            int to = physical(i);
+            int from = physical(i - 1);
+            mFrames[to] = mFrames[from];
+            mTimestamps[to] = mTimestamps[from];
+            mSizes[to] = mSizes[from];
+        }
+        mFrames[mHead] = null;
+        mHead = physical(1);
+        mCount--;
+        return frame;
+    }
+
+    private int physical(int index)
+    {
+        return (mHead + index) % mFrames.length;
+    }
+}
@@ -0,0 +1,119 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncSpeechClientTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static AsyncSpeechClient.ClientFactory factory(final AtomicInteger created, final int failures) {
+        return new AsyncSpeechClient.ClientFactory() {
+            @Override
+            public VuzixSpeechClient create() {
+                if (created.incrementAndGet() <= failures)
+                    throw new IllegalStateException("service down");
+                return null;
+            }
+        };
+    }
+
+    private static AsyncSpeechClient.Operation<Integer> record(final List<Integer> log, final int value) {
+        return new AsyncSpeechClient.Operation<Integer>() {
+            @Override
+            Integer run(VuzixSpeechClient client) throws Exception {
+                Thread.sleep(value % 3);
+                log.add(value);
+                return value;
+            }
+        };
+    }
+
+    @Test
+    public void operations_runInSubmitOrderOffTheCaller() throws Exception {
+        AsyncSpeechClient client = new AsyncSpeechClient(factory(new AtomicInteger(), 0), DIRECT);
+        final List<Integer> log = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(client.submit(record(log, i), new AsyncSpeechClient.Callback<Integer>() {
+                @Override
+                public void onResult(Integer result) {
+                    threads.add(Thread.currentThread().getName());
+                }
+
+                @Override
+                public void onError(Exception error) {
+                    fail();
+                }
+            }));
+        }
+        for (int i = 0; i < 50; i++)
+            assertEquals(i, (int) futures.get(i).get());
+
+        for (int i = 0; i < 50; i++)
+            assertEquals(i, (int) log.get(i));
+        assertEquals("SpeechClient", threads.get(0));
+        client.close();
+    }
+
+    @Test
+    public void failedCreate_failsThatCallAndRetries() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        AsyncSpeechClient client = new AsyncSpeechClient(factory(created, 1), DIRECT);
+        final List<Exception> errors = new ArrayList<Exception>();
+        List<Integer> log = new ArrayList<Integer>();
+
+        Future<Integer> first = client.submit(record(log, 1), new AsyncSpeechClient.Callback<Integer>() {
+            @Override
+            public void onResult(Integer result) {
+                fail();
+            }
+
+            @Override
+            public void onError(Exception error) {
+                errors.add(error);
+            }
+        });
+        Future<Integer> second = client.submit(record(log, 2), null);
+
+        try {
+            first.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(2, (int) second.get());
+        assertEquals(1, errors.size());
+        assertEquals(2, created.get());
+        client.close();
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void callsAfterClose_areRejected() {
+        AsyncSpeechClient client = new AsyncSpeechClient(factory(new AtomicInteger(), 0), DIRECT);
+        client.close();
+        client.submit(record(new ArrayList<Integer>(), 0), null);
+    }
+
+    @Test
+    public void closeTwice_isHarmless() {
+        AsyncSpeechClient client = new AsyncSpeechClient(factory(new AtomicInteger(), 0), DIRECT);
+        client.close();
+        client.close();
+    }
+}
@@ -0,0 +1,95 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class CameraCapabilityIndexTest {
+    private static final String FINGERPRINT = "vuzix/m300/m300:6.0.1/1.2.3/user/release-keys";
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("camera_capabilities", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void sizes_areSortedLargestFirst() {
+        int[] sizes = CameraCapabilityIndex.sortByAreaDescending(
+                new int[]{640, 480, 4160, 3120, 1280, 720, 1920, 1080, 320, 240});
+
+        assertArrayEquals(new int[]{4160, 3120, 1920, 1080, 1280, 720, 640, 480, 320, 240}, sizes);
+    }
+
+    @Test
+    public void largestWithin_picksTheFirstSizeThatFits() {
+        int[] sizes = {1920, 1080, 1280, 720, 640, 480, 320, 240};
+
+        assertEquals(4, CameraCapabilityIndex.largestWithin(sizes, 640, 480));
+        assertEquals(4, CameraCapabilityIndex.largestWithin(sizes, 1000, 1000));
+        assertEquals(0, CameraCapabilityIndex.largestWithin(sizes, 4000, 3000));
+        assertEquals(-1, CameraCapabilityIndex.largestWithin(sizes, 300, 300));
+    }
+
+    @Test
+    public void index_roundTripsThroughFile() throws Exception {
+        CameraCapabilityIndex index = newIndex(FINGERPRINT);
+        index.writeTo(mFile);
+
+        CameraCapabilityIndex read = CameraCapabilityIndex.readFrom(mFile, FINGERPRINT);
+        assertNotNull(read);
+        assertEquals("0", read.cameraId);
+        assertEquals(90, read.sensorOrientation);
+        assertTrue(read.flashSupported);
+        assertArrayEquals(index.previewSizes, read.previewSizes);
+        assertArrayEquals(index.jpegSizes, read.jpegSizes);
+        assertArrayEquals(new int[0], read.yuvSizes);
+        assertArrayEquals(new int[]{1920, 1080}, read.stallFreeJpegSizes);
+
+        // The whole index stays well under a disk block.
+        assertTrue(mFile.length() < 256);
+    }
+
+    @Test
+    public void index_isIgnoredAfterFirmwareUpdate() throws Exception {
+        newIndex(FINGERPRINT).writeTo(mFile);
+
+        assertNull(CameraCapabilityIndex.readFrom(mFile, FINGERPRINT + ".1"));
+    }
+
+    @Test
+    public void missingOrDamagedFile_isIgnored() throws Exception {
+        assertNull(CameraCapabilityIndex.readFrom(new File(mFile.getPath() + ".missing"), FINGERPRINT));
+
+        newIndex(FINGERPRINT).writeTo(mFile);
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+        assertNull(CameraCapabilityIndex.readFrom(mFile, FINGERPRINT));
+
+        FileOutputStream out = new FileOutputStream(mFile);
+        out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        out.close();
+        assertNull(CameraCapabilityIndex.readFrom(mFile, FINGERPRINT));
+    }
+
+    private static CameraCapabilityIndex newIndex(String fingerprint) {
+        return new CameraCapabilityIndex(fingerprint, "0", 90, true,
+                new int[]{1280, 720, 1920, 1080, 640, 480},
+                new int[]{1920, 1080, 4160, 3120},
+                new int[0],
+                new int[]{1920, 1080});
+    }
+}
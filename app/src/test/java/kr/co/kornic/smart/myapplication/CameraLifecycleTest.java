@@ -0,0 +1,161 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CameraLifecycleTest {
+    private final List<String> mCalls = new ArrayList<>();
+    private CameraLifecycle mLifecycle;
+
+    @Before
+    public void setUp() {
+        mLifecycle = new CameraLifecycle(new CameraLifecycle.Driver() {
+            @Override
+            public void openCamera() {
+                mCalls.add("open");
+            }
+
+            @Override
+            public void createSession() {
+                mCalls.add("session");
+            }
+
+            @Override
+            public void closeCamera() {
+                mCalls.add("close");
+            }
+
+            @Override
+            public void onCameraIdle() {
+                mCalls.add("idle");
+            }
+        });
+    }
+
+    @Test
+    public void openAndClose_goThroughEveryState() {
+        mLifecycle.requestOpen();
+        assertEquals(CameraLifecycle.State.OPENING, mLifecycle.getState());
+        mLifecycle.onOpened();
+        assertEquals(CameraLifecycle.State.CONFIGURING, mLifecycle.getState());
+        mLifecycle.onConfigured();
+        assertEquals(CameraLifecycle.State.STREAMING, mLifecycle.getState());
+
+        mLifecycle.requestClose();
+        assertEquals(CameraLifecycle.State.CLOSING, mLifecycle.getState());
+        mLifecycle.onClosed();
+        assertEquals(CameraLifecycle.State.CLOSED, mLifecycle.getState());
+
+        assertEquals(Arrays.asList("open", "session", "close", "idle"), mCalls);
+    }
+
+    @Test
+    public void pauseResumeWhileOpening_keepsTheOpenGoing() {
+        mLifecycle.requestOpen();
+        mLifecycle.requestClose();
+        mLifecycle.requestOpen();
+        mLifecycle.onOpened();
+        mLifecycle.onConfigured();
+
+        assertEquals(CameraLifecycle.State.STREAMING, mLifecycle.getState());
+        assertEquals(Arrays.asList("open", "session"), mCalls);
+        assertEquals(1, mLifecycle.getOpenCount());
+    }
+
+    @Test
+    public void pauseResumeWhileClosing_reopensOnceClosed() {
+        streaming();
+        mLifecycle.requestClose();
+        mLifecycle.requestOpen();
+        mLifecycle.requestClose();
+        mLifecycle.requestOpen();
+        assertEquals(CameraLifecycle.State.CLOSING, mLifecycle.getState());
+
+        mLifecycle.onClosed();
+        assertEquals(CameraLifecycle.State.OPENING, mLifecycle.getState());
+        assertEquals(Arrays.asList("open", "session", "close", "open"), mCalls);
+        assertEquals(2, mLifecycle.getOpenCount());
+    }
+
+    @Test
+    public void closeWhileOpening_closesOnceOpened() {
+        mLifecycle.requestOpen();
+        mLifecycle.requestClose();
+        assertEquals(CameraLifecycle.State.OPENING, mLifecycle.getState());
+
+        mLifecycle.onOpened();
+        assertEquals(CameraLifecycle.State.CLOSING, mLifecycle.getState());
+        mLifecycle.onClosed();
+
+        assertEquals(Arrays.asList("open", "close", "idle"), mCalls);
+    }
+
+    @Test
+    public void closeWhileConfiguring_closesOnceConfigured() {
+        mLifecycle.requestOpen();
+        mLifecycle.onOpened();
+        mLifecycle.requestClose();
+        assertEquals(CameraLifecycle.State.CONFIGURING, mLifecycle.getState());
+
+        mLifecycle.onConfigured();
+        assertEquals(CameraLifecycle.State.CLOSING, mLifecycle.getState());
+        assertEquals(Arrays.asList("open", "session", "close"), mCalls);
+    }
+
+    @Test
+    public void lost_closesAndStaysClosed() {
+        mLifecycle.requestOpen();
+        mLifecycle.onOpened();
+        mLifecycle.onLost();
+        assertEquals(CameraLifecycle.State.CLOSING, mLifecycle.getState());
+
+        // A late configure callback of the dead session is ignored.
+        mLifecycle.onConfigured();
+        mLifecycle.onClosed();
+
+        assertEquals(CameraLifecycle.State.CLOSED, mLifecycle.getState());
+        assertEquals(Arrays.asList("open", "session", "close", "idle"), mCalls);
+    }
+
+    @Test
+    public void redundantRequests_doNothing() {
+        streaming();
+        mLifecycle.requestOpen();
+        mLifecycle.onOpened();
+        mLifecycle.onConfigured();
+        assertEquals(Arrays.asList("open", "session"), mCalls);
+        assertEquals(1, mLifecycle.getOpenCount());
+    }
+
+    @Test
+    public void firstFrame_recordsLatencyOncePerOpen() throws Exception {
+        assertEquals(-1, mLifecycle.getOpenToFirstFrameNanos());
+
+        mLifecycle.requestOpen();
+        mLifecycle.onFirstFrame(); // not streaming yet
+        assertEquals(-1, mLifecycle.getOpenToFirstFrameNanos());
+
+        mLifecycle.onOpened();
+        Thread.sleep(5);
+        mLifecycle.onConfigured();
+        mLifecycle.onFirstFrame();
+        long latency = mLifecycle.getOpenToFirstFrameNanos();
+        assertTrue(latency >= 5000000L);
+
+        Thread.sleep(5);
+        mLifecycle.onFirstFrame();
+        assertEquals(latency, mLifecycle.getOpenToFirstFrameNanos());
+    }
+
+    private void streaming() {
+        mLifecycle.requestOpen();
+        mLifecycle.onOpened();
+        mLifecycle.onConfigured();
+    }
+}
@@ -0,0 +1,119 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+import static kr.co.kornic.smart.myapplication.CaptureLatencyTracker.Stage.*;
+
+public class CaptureLatencyTrackerTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void finish_recordsEveryStageAndTheTotal() {
+        CaptureLatencyTracker tracker = new CaptureLatencyTracker(4);
+        tracker.start(7, 100 * MS, 102 * MS);
+        tracker.mark(7, FOCUS_LOCKED, 150 * MS);
+        tracker.mark(7, PRECAPTURE_STARTED, 151 * MS);
+        tracker.mark(7, STILL_REQUESTED, 200 * MS);
+        tracker.mark(7, IMAGE_AVAILABLE, 320 * MS);
+        tracker.mark(7, SAVED, 340 * MS);
+        tracker.finish(7, true);
+
+        assertEquals(2 * MS, tracker.getHistogram(STARTED).getMax());
+        assertEquals(48 * MS, tracker.getHistogram(FOCUS_LOCKED).getMax());
+        assertEquals(1 * MS, tracker.getHistogram(PRECAPTURE_STARTED).getMax());
+        assertEquals(49 * MS, tracker.getHistogram(STILL_REQUESTED).getMax());
+        assertEquals(120 * MS, tracker.getHistogram(IMAGE_AVAILABLE).getMax());
+        assertEquals(20 * MS, tracker.getHistogram(SAVED).getMax());
+        assertEquals(240 * MS, tracker.getTotal().getMax());
+    }
+
+    @Test
+    public void skippedStages_chargeTheNextOne() {
+        CaptureLatencyTracker tracker = new CaptureLatencyTracker(4);
+        // Fast shutter: no focus lock, no precapture.
+        tracker.start(1, 10 * MS, 10 * MS);
+        tracker.mark(1, STILL_REQUESTED, 11 * MS);
+        tracker.mark(1, IMAGE_AVAILABLE, 100 * MS);
+        tracker.mark(1, SAVED, 110 * MS);
+        tracker.finish(1, true);
+
+        assertEquals(0, tracker.getHistogram(FOCUS_LOCKED).getCount());
+        assertEquals(0, tracker.getHistogram(PRECAPTURE_STARTED).getCount());
+        assertEquals(1 * MS, tracker.getHistogram(STILL_REQUESTED).getMax());
+        assertEquals(100 * MS, tracker.getTotal().getMax());
+    }
+
+    @Test
+    public void failedCaptures_areOnlyCounted() {
+        CaptureLatencyTracker tracker = new CaptureLatencyTracker(4);
+        tracker.start(3, MS, 2 * MS);
+        tracker.mark(3, FOCUS_LOCKED, 3 * MS);
+        tracker.finish(3, false);
+        tracker.finish(3, false);
+
+        assertEquals(1, tracker.getFailedCount());
+        assertEquals(0, tracker.getTotal().getCount());
+    }
+
+    @Test
+    public void overlappingCaptures_keepTheirOwnRows() {
+        CaptureLatencyTracker tracker = new CaptureLatencyTracker(4);
+        tracker.start(0, 0, MS);
+        tracker.mark(0, STILL_REQUESTED, 2 * MS);
+        // The next capture locks focus while the first JPEG is being saved.
+        tracker.start(1, MS, 3 * MS);
+        tracker.mark(0, IMAGE_AVAILABLE, 10 * MS);
+        tracker.mark(1, FOCUS_LOCKED, 11 * MS);
+        tracker.mark(0, SAVED, 20 * MS);
+        tracker.finish(0, true);
+        tracker.mark(1, STILL_REQUESTED, 12 * MS);
+        tracker.mark(1, IMAGE_AVAILABLE, 30 * MS);
+        tracker.mark(1, SAVED, 31 * MS);
+        tracker.finish(1, true);
+
+        assertEquals(2, tracker.getTotal().getCount());
+        assertEquals(20 * MS, tracker.getTotal().getMin());
+        assertEquals(30 * MS, tracker.getTotal().getMax());
+    }
+
+    @Test
+    public void marks_forUntrackedCapturesAreIgnored() {
+        CaptureLatencyTracker tracker = new CaptureLatencyTracker(2);
+        tracker.start(0, 0, MS);
+        // Request 2 shares the slot of request 0 but was never started.
+        tracker.mark(2, SAVED, 50 * MS);
+        tracker.finish(2, true);
+        tracker.mark(0, SAVED, 5 * MS);
+        tracker.finish(0, true);
+
+        assertEquals(1, tracker.getTotal().getCount());
+        assertEquals(5 * MS, tracker.getTotal().getMax());
+    }
+
+    @Test
+    public void dump_listsEveryStage() throws Exception {
+        CaptureLatencyTracker tracker = new CaptureLatencyTracker(2);
+        tracker.start(0, 0, MS);
+        tracker.mark(0, SAVED, 5 * MS);
+        tracker.finish(0, true);
+
+        String dump = tracker.dump();
+        for (CaptureLatencyTracker.Stage stage : CaptureLatencyTracker.Stage.values())
+            if (stage != TRIGGERED)
+                assertTrue(dump, dump.contains(stage.label));
+        assertTrue(dump, dump.contains("total"));
+
+        File file = File.createTempFile("latency", ".txt");
+        try {
+            tracker.dumpTo(file);
+            assertEquals(dump, new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8")));
+        } finally {
+            file.delete();
+        }
+    }
+}
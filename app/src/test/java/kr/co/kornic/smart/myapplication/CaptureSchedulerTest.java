@@ -0,0 +1,138 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CaptureSchedulerTest {
+    private final List<CaptureScheduler.Request> mStarted = new ArrayList<>();
+    private final List<String> mFinished = new ArrayList<>();
+    private CaptureScheduler mScheduler;
+
+    private final CaptureScheduler.Listener mListener = new CaptureScheduler.Listener() {
+        @Override
+        public void onCaptureFinished(CaptureScheduler.Request request, boolean success) {
+            mFinished.add(request.getId() + (success ? ":ok" : ":failed"));
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mScheduler = new CaptureScheduler(new CaptureScheduler.Driver() {
+            @Override
+            public void startCapture(CaptureScheduler.Request request) {
+                mStarted.add(request);
+            }
+        });
+    }
+
+    @Test
+    public void idleTrigger_startsImmediately() {
+        CaptureScheduler.Request request = mScheduler.submit(mListener);
+
+        assertEquals(1, mStarted.size());
+        assertSame(request, mStarted.get(0));
+        assertTrue(mScheduler.isBusy());
+    }
+
+    @Test
+    public void nextRequest_startsWhenPreviousIsExposed() {
+        CaptureScheduler.Request first = mScheduler.submit(mListener);
+        CaptureScheduler.Request second = mScheduler.submit(mListener);
+        assertEquals(1, mStarted.size());
+
+        // The second focus lock overlaps the first JPEG being saved.
+        first.exposed();
+        assertEquals(2, mStarted.size());
+        assertSame(second, mStarted.get(1));
+        assertTrue(mFinished.isEmpty());
+
+        first.finish(true);
+        second.exposed();
+        second.finish(true);
+        assertEquals(2, mStarted.size());
+        assertEquals(Arrays.asList("0:ok", "1:ok"), mFinished);
+        assertFalse(mScheduler.isBusy());
+    }
+
+    @Test
+    public void failureBeforeExposure_startsNextRequest() {
+        CaptureScheduler.Request first = mScheduler.submit(mListener);
+        mScheduler.submit(mListener);
+
+        first.finish(false);
+        assertEquals(2, mStarted.size());
+        assertEquals(1, mFinished.size());
+        assertEquals("0:failed", mFinished.get(0));
+    }
+
+    @Test
+    public void queuePolicy_dropsBeyondMaxPending() {
+        mScheduler.setPolicy(CaptureScheduler.Policy.QUEUE, 1);
+        assertNotNull(mScheduler.submit(mListener));
+        assertNotNull(mScheduler.submit(mListener));
+        assertNull(mScheduler.submit(mListener));
+        assertEquals(1, mScheduler.getDroppedCount());
+    }
+
+    @Test
+    public void triggerTime_isKeptAsSubmitTime() {
+        mScheduler.setPolicy(CaptureScheduler.Policy.COALESCE, 1);
+        CaptureScheduler.Request first = mScheduler.submit(mListener, 100);
+        CaptureScheduler.Request second = mScheduler.submit(mListener, 200);
+        mScheduler.submit(mListener, 300);
+
+        // A coalesced trigger doesn't move the time its request is measured from.
+        assertEquals(100, first.getSubmitNanos());
+        assertEquals(200, second.getSubmitNanos());
+    }
+
+    @Test
+    public void coalescePolicy_mergesIntoWaitingRequest() {
+        mScheduler.setPolicy(CaptureScheduler.Policy.COALESCE, 1);
+        CaptureScheduler.Request first = mScheduler.submit(mListener);
+        CaptureScheduler.Request second = mScheduler.submit(mListener);
+        CaptureScheduler.Request third = mScheduler.submit(mListener);
+        assertSame(second, third);
+        assertEquals(0, mScheduler.getDroppedCount());
+
+        first.exposed();
+        first.finish(true);
+        second.exposed();
+        second.finish(true);
+
+        // Both merged triggers hear about the one picture taken for them.
+        assertEquals(Arrays.asList("0:ok", "1:ok", "1:ok"), mFinished);
+    }
+
+    @Test
+    public void dropPolicy_ignoresTriggersWhileBusy() {
+        mScheduler.setPolicy(CaptureScheduler.Policy.DROP, 3);
+        CaptureScheduler.Request first = mScheduler.submit(mListener);
+        assertNull(mScheduler.submit(mListener));
+
+        first.exposed();
+        assertNotNull(mScheduler.submit(mListener));
+    }
+
+    @Test
+    public void cancelAll_failsWaitingRequestsOnce() {
+        CaptureScheduler.Request first = mScheduler.submit(mListener);
+        mScheduler.submit(mListener);
+        mScheduler.cancelAll();
+
+        assertEquals(Arrays.asList("0:failed", "1:failed"), mFinished);
+        assertEquals(1, mStarted.size());
+
+        // Late callbacks from the camera for a cancelled request are ignored.
+        first.exposed();
+        first.finish(true);
+        assertEquals(2, mFinished.size());
+        assertFalse(mScheduler.isBusy());
+    }
+}
@@ -0,0 +1,251 @@
+package kr.co.kornic.smart.myapplication;
+
+import android.content.OperationApplicationException;
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-process stand-in for the Speech Recognition Service's vocabulary provider, so
+ * {@link VuzixSpeechClient} can be tested and benchmarked off the glasses.
+ *
+ * Like the service, each client has its own phrases table in which a phrase's index is its
+ * position: inserts append, and a delete shifts every later phrase down by one. Every call waits
+ * for {@link #setCallLatencyNanos} first, to stand for the IPC, and is counted; a batch is one
+ * call. A batch is applied all or nothing.
+ */
+final class FakeVocabularyStore implements VocabularyStore {
+    private static final class Row {
+        final String phrase;
+        String params;
+
+        Row(String phrase, String params) {
+            this.phrase = phrase;
+            this.params = params;
+        }
+    }
+
+    private final Map<String, ArrayList<Row>> mPhrases = new HashMap<String, ArrayList<Row>>();
+    private final Map<String, Map<String, String>> mIntents = new HashMap<String, Map<String, String>>();
+    private final List<Observer> mObservers = new CopyOnWriteArrayList<Observer>();
+    private volatile long mCallLatencyNanos;
+    private int mCallCount;
+    private boolean mOmitInsertUris;
+
+    /**
+     * @param nanos How long each call blocks the caller, busy waiting for accuracy
+     */
+    void setCallLatencyNanos(long nanos) {
+        mCallLatencyNanos = nanos;
+    }
+
+    /**
+     * @param omit Whether batched inserts report no index, as a provider that returns no URI does
+     */
+    synchronized void setOmitInsertUris(boolean omit) {
+        mOmitInsertUris = omit;
+    }
+
+    synchronized int getCallCount() {
+        return mCallCount;
+    }
+
+    /**
+     * Appends a phrase without counting a call, as the service's default vocabulary would be.
+     */
+    synchronized void seed(String packageName, int clientId, String phrase, String params) {
+        table(packageName, clientId).add(new Row(phrase, params));
+    }
+
+    /**
+     * @return The phrases of a client in index order
+     */
+    synchronized List<String> phrasesOf(String packageName, int clientId) {
+        ArrayList<String> phrases = new ArrayList<String>();
+        for (Row row : table(packageName, clientId))
+            phrases.add(row.phrase);
+        return phrases;
+    }
+
+    synchronized String paramsAt(String packageName, int clientId, int index) {
+        return table(packageName, clientId).get(index).params;
+    }
+
+    synchronized Map<String, String> intentsOf(String packageName, int clientId) {
+        return new HashMap<String, String>(labels(packageName, clientId));
+    }
+
+    @Override
+    public void registerObserver(Observer observer) {
+        mObservers.add(observer);
+    }
+
+    @Override
+    public void unregisterObserver(Observer observer) {
+        mObservers.remove(observer);
+    }
+
+    @Override
+    public Phrases queryPhrases(String packageName, int clientId) throws RemoteException {
+        call();
+        synchronized (this) {
+            ArrayList<Row> table = table(packageName, clientId);
+            String[] phrases = new String[table.size()];
+            int[] indexes = new int[table.size()];
+            String[] params = new String[table.size()];
+            for (int i = 0; i < phrases.length; i++) {
+                phrases[i] = table.get(i).phrase;
+                indexes[i] = i;
+                params[i] = table.get(i).params == null ? "" : table.get(i).params;
+            }
+            return new Phrases(phrases, indexes, params);
+        }
+    }
+
+    @Override
+    public List<String> queryIntentLabels(String packageName, int clientId) throws RemoteException {
+        call();
+        synchronized (this) {
+            return new ArrayList<String>(labels(packageName, clientId).keySet());
+        }
+    }
+
+    @Override
+    public int insertPhrase(String packageName, int clientId, String phrase, String params) {
+        call();
+        int index;
+        synchronized (this) {
+            ArrayList<Row> table = table(packageName, clientId);
+            table.add(new Row(phrase, params));
+            index = table.size() - 1;
+        }
+        notifyChange();
+        return index;
+    }
+
+    @Override
+    public void updatePhrase(String packageName, int clientId, int index, String phrase, String params) {
+        call();
+        synchronized (this) {
+            ArrayList<Row> table = table(packageName, clientId);
+            if (index < 0 || index >= table.size())
+                return; // Like an update that selects no row
+            table.get(index).params = params;
+        }
+        notifyChange();
+    }
+
+    @Override
+    public void deletePhrase(String packageName, int clientId, int index) {
+        call();
+        synchronized (this) {
+            ArrayList<Row> table = table(packageName, clientId);
+            if (index < 0 || index >= table.size())
+                return;
+            table.remove(index);
+        }
+        notifyChange();
+    }
+
+    @Override
+    public int insertIntent(String packageName, int clientId, String label, String intent) {
+        call();
+        int index;
+        synchronized (this) {
+            Map<String, String> labels = labels(packageName, clientId);
+            labels.put(label, intent);
+            index = labels.size() - 1;
+        }
+        notifyChange();
+        return index;
+    }
+
+    @Override
+    public int[] applyBatch(String packageName, int clientId, List<Edit> edits) throws RemoteException, OperationApplicationException {
+        call();
+        int[] results = new int[edits.size()];
+        synchronized (this) {
+            ArrayList<Row> table = new ArrayList<Row>();
+            for (Row row : table(packageName, clientId))
+                table.add(new Row(row.phrase, row.params));
+            Map<String, String> labels = new HashMap<String, String>(labels(packageName, clientId));
+            for (int i = 0; i < edits.size(); i++) {
+                Edit edit = edits.get(i);
+                results[i] = -1;
+                switch (edit.kind) {
+                    case Edit.INSERT_PHRASE:
+                        table.add(new Row(edit.key, edit.value));
+                        results[i] = mOmitInsertUris ? -1 : table.size() - 1;
+                        break;
+                    case Edit.UPDATE_PHRASE:
+                        checkIndex(table, edit);
+                        table.get(edit.index).params = edit.value;
+                        break;
+                    case Edit.DELETE_PHRASE:
+                        checkIndex(table, edit);
+                        table.remove(edit.index);
+                        break;
+                    default:
+                        labels.put(edit.key, edit.value);
+                        results[i] = labels.size() - 1;
+                        break;
+                }
+            }
+            mPhrases.put(key(packageName, clientId), table);
+            mIntents.put(key(packageName, clientId), labels);
+        }
+        notifyChange();
+        return results;
+    }
+
+    private static void checkIndex(List<Row> table, Edit edit) throws OperationApplicationException {
+        if (edit.index < 0 || edit.index >= table.size() || !table.get(edit.index).phrase.equals(edit.key))
+            throw new OperationApplicationException("No phrase " + edit.key + " at " + edit.index);
+    }
+
+    private void call() {
+        synchronized (this) {
+            mCallCount++;
+        }
+        long latency = mCallLatencyNanos;
+        if (latency > 0) {
+            long end = System.nanoTime() + latency;
+            while (System.nanoTime() < end) {
+                // Busy wait: sleeping is far coarser than an IPC
+            }
+        }
+    }
+
+    private void notifyChange() {
+        for (Observer observer : mObservers)
+            observer.onChange();
+    }
+
+    private ArrayList<Row> table(String packageName, int clientId) {
+        String key = key(packageName, clientId);
+        ArrayList<Row> table = mPhrases.get(key);
+        if (table == null) {
+            table = new ArrayList<Row>();
+            mPhrases.put(key, table);
+        }
+        return table;
+    }
+
+    private Map<String, String> labels(String packageName, int clientId) {
+        String key = key(packageName, clientId);
+        Map<String, String> labels = mIntents.get(key);
+        if (labels == null) {
+            labels = new HashMap<String, String>();
+            mIntents.put(key, labels);
+        }
+        return labels;
+    }
+
+    private static String key(String packageName, int clientId) {
+        return packageName + '/' + clientId;
+    }
+}
@@ -0,0 +1,65 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HomographyTest {
+    private static final double EPSILON = 1e-9;
+
+    private static void assertMaps(double[] h, double x, double y, double expectedX, double expectedY) {
+        assertEquals(expectedX, Homography.mapX(h, x, y), EPSILON);
+        assertEquals(expectedY, Homography.mapY(h, x, y), EPSILON);
+    }
+
+    @Test
+    public void unitSquare_mapsToTheCorners() {
+        double[][] quads = {
+                { 10, 20, 110, 20, 110, 120, 10, 120 },
+                // Parallelogram, then a general perspective quadrilateral
+                { 0, 0, 50, 10, 60, 60, 10, 50 },
+                { 5, 3, 90, 12, 70, 80, 14, 66 },
+        };
+        for (double[] q : quads) {
+            double[] h = new double[9];
+            Homography.squareToQuadrilateral(h, q[0], q[1], q[2], q[3], q[4], q[5], q[6], q[7]);
+            assertMaps(h, 0, 0, q[0], q[1]);
+            assertMaps(h, 1, 0, q[2], q[3]);
+            assertMaps(h, 1, 1, q[4], q[5]);
+            assertMaps(h, 0, 1, q[6], q[7]);
+        }
+    }
+
+    @Test
+    public void inverse_mapsBack() {
+        double[] h = new double[9];
+        double[] inverse = new double[9];
+        Homography.squareToQuadrilateral(h, 5, 3, 90, 12, 70, 80, 14, 66);
+        Homography.invert(h, inverse);
+        for (double u = 0; u <= 1; u += 0.25) {
+            for (double v = 0; v <= 1; v += 0.25) {
+                double x = Homography.mapX(h, u, v);
+                double y = Homography.mapY(h, u, v);
+                assertMaps(inverse, x, y, u, v);
+            }
+        }
+    }
+
+    @Test
+    public void product_appliesTheRightHandSideFirst() {
+        double[] toSquare = new double[9];
+        double[] fromSquare = new double[9];
+        double[] square = new double[9];
+        double[] product = new double[9];
+        // Quadrilateral to quadrilateral, through the unit square
+        Homography.squareToQuadrilateral(square, 3.5, 3.5, 21.5, 3.5, 18.5, 18.5, 3.5, 21.5);
+        Homography.invert(square, toSquare);
+        Homography.squareToQuadrilateral(fromSquare, 100, 50, 300, 70, 250, 240, 90, 260);
+        Homography.multiply(fromSquare, toSquare, product);
+
+        assertMaps(product, 3.5, 3.5, 100, 50);
+        assertMaps(product, 21.5, 3.5, 300, 70);
+        assertMaps(product, 18.5, 18.5, 250, 240);
+        assertMaps(product, 3.5, 21.5, 90, 260);
+    }
+}
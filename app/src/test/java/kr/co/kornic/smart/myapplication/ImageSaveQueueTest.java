@@ -0,0 +1,144 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ImageSaveQueueTest {
+    private ImageSaveQueue mQueue;
+
+    @Before
+    public void setUp() {
+        mQueue = new ImageSaveQueue(4, "test-saver");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mQueue.quit();
+    }
+
+    @Test
+    public void reserve_isClampedToFreeSlots() {
+        assertEquals(3, mQueue.reserve(3));
+        assertEquals(1, mQueue.reserve(10));
+        assertEquals(0, mQueue.reserve(1));
+
+        mQueue.release(2);
+        assertEquals(2, mQueue.available());
+    }
+
+    @Test
+    public void submit_releasesSlotAfterJobRan() throws Exception {
+        final CountDownLatch gate = new CountDownLatch(1);
+        assertEquals(4, mQueue.reserve(4));
+        mQueue.submit(new Runnable() {
+            @Override
+            public void run() {
+                await(gate);
+            }
+        });
+
+        // The slow job holds its slot, so a new burst is refused instead of queueing up.
+        assertEquals(0, mQueue.reserve(1));
+
+        gate.countDown();
+        waitForSlots(1);
+        assertEquals(1, mQueue.reserve(1));
+    }
+
+    @Test
+    public void jobs_runInSubmissionOrder() throws Exception {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        assertEquals(4, mQueue.reserve(4));
+        for (int i = 0; i < 4; i++) {
+            final int frame = i;
+            mQueue.submit(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(frame);
+                }
+            });
+        }
+        waitForSlots(4);
+        assertEquals(Arrays.asList(0, 1, 2, 3), order);
+    }
+
+    @Test
+    public void failingJob_stillReleasesSlot() throws Exception {
+        assertEquals(1, mQueue.reserve(1));
+        mQueue.submit(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("disk full");
+            }
+        });
+        waitForSlots(4);
+    }
+
+    @Test
+    public void quit_drainsQueuedJobs() throws Exception {
+        final CountDownLatch done = new CountDownLatch(3);
+        assertEquals(3, mQueue.reserve(3));
+        for (int i = 0; i < 3; i++) {
+            mQueue.submit(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+        mQueue.quit();
+        assertEquals(0, done.getCount());
+        mQueue = new ImageSaveQueue(1, "test-saver");
+    }
+
+    @Test
+    public void execute_runsAfterQueuedSavesWithoutTakingASlot() throws Exception {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        assertEquals(2, mQueue.reserve(2));
+        for (int i = 0; i < 2; i++) {
+            mQueue.submit(new Runnable() {
+                @Override
+                public void run() {
+                    order.add("save");
+                }
+            });
+        }
+        mQueue.execute(new Runnable() {
+            @Override
+            public void run() {
+                order.add("close");
+            }
+        });
+        mQueue.quit();
+
+        assertEquals(Arrays.asList("save", "save", "close"), order);
+        assertEquals(4, mQueue.available());
+        mQueue = new ImageSaveQueue(1, "test-saver");
+    }
+
+    private void waitForSlots(int slots) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mQueue.available() < slots) {
+            assertTrue("timed out waiting for slots", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class IntentSpecTest {
+    @Test
+    public void encode_putsFieldsInTheServiceOrder() {
+        IntentSpec spec = new IntentSpec("com.vuzix.action.VOICE_COMMAND")
+                .putExtra("click", "true")
+                .setComponent("kr.co.kornic/.MainActivity")
+                .setType("text/plain")
+                .addCategory("a")
+                .addCategory("b")
+                .setData("content://x/1");
+
+        assertEquals("action:com.vuzix.action.VOICE_COMMAND;data:content://x/1;category:a;category:b"
+                + ";type:text/plain;component:kr.co.kornic/.MainActivity;click:true", spec.encode());
+    }
+
+    @Test
+    public void parse_readsBackEveryField() {
+        IntentSpec spec = IntentSpec.parse("action:A;data:http://h:80/p;category:a;category:b;type:t;component:c/.D;info:97;hello:hello");
+
+        assertEquals("A", spec.getAction());
+        assertEquals("http://h:80/p", spec.getData());
+        assertEquals(Arrays.asList("a", "b"), spec.getCategories());
+        assertEquals("t", spec.getType());
+        assertEquals("c/.D", spec.getComponent());
+        assertEquals("97", spec.getExtras().get("info"));
+        assertEquals(Arrays.asList("info", "hello"), Arrays.asList(spec.getExtras().keySet().toArray()));
+    }
+
+    @Test
+    public void roundTrip() {
+        String[] encoded = { "action:A", "action:A;click:true", "action:A;data:d;type:t;x:", "action:A;category:c;e:1:2" };
+        for (String s : encoded)
+            assertEquals(s, IntentSpec.parse(s).encode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_requiresAnAction() {
+        IntentSpec.parse("data:d;action:A");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsFieldsWithoutValue() {
+        IntentSpec.parse("action:A;oops");
+    }
+}
@@ -0,0 +1,111 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link JpegFileWriter} persists a JPEG plane without copying it to the heap.
+ */
+public class JpegFileWriterTest {
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("pic", ".jpg");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    @Test
+    public void write_storesWholePlane() throws Exception {
+        FakeJpegSource source = new FakeJpegSource(1024 * 1024);
+        ByteBuffer plane = source.nextPlane();
+
+        assertEquals(plane.capacity(), JpegFileWriter.write(plane, mFile));
+        assertFalse(plane.hasRemaining());
+        assertArrayEquals(source.expected(), readFile(mFile));
+    }
+
+    @Test
+    public void write_allocatesNothingPerCapture() throws Exception {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        long threadId = Thread.currentThread().getId();
+
+        // A 12MP JPEG is a few megabytes; the save path must not allocate anything near that.
+        FakeJpegSource source = new FakeJpegSource(8 * 1024 * 1024);
+        for (int i = 0; i < 20; i++) // Warm up class loading and the JIT.
+            JpegFileWriter.write(source.nextPlane(), mFile);
+
+        final int captures = 50;
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < captures; i++)
+            JpegFileWriter.write(source.nextPlane(), mFile);
+        long perCapture = (threads.getThreadAllocatedBytes(threadId) - before) / captures;
+
+        // Only the stream and channel objects themselves remain, a few hundred bytes at most.
+        assertTrue("allocated " + perCapture + " bytes per capture", perCapture < 4096);
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream input = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length)
+                offset += input.read(bytes, offset, bytes.length - offset);
+        } finally {
+            input.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * Stands in for an {@link android.media.ImageReader}: hands out the same direct buffer, rewound,
+     * the way a JPEG {@link android.media.Image} exposes its single plane.
+     */
+    private static class FakeJpegSource {
+        private final ByteBuffer mPlane;
+        private final byte[] mExpected;
+
+        FakeJpegSource(int size) {
+            mExpected = new byte[size];
+            for (int i = 0; i < size; i++)
+                mExpected[i] = (byte) (i * 31 + 7);
+            mExpected[0] = (byte) 0xFF;
+            mExpected[1] = (byte) 0xD8;
+            mPlane = ByteBuffer.allocateDirect(size);
+            mPlane.put(mExpected);
+        }
+
+        ByteBuffer nextPlane() {
+            mPlane.clear();
+            return mPlane;
+        }
+
+        byte[] expected() {
+            return mExpected;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void buckets_areContiguousAndIncreasing() {
+        for (long value = 0; value < 100000; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= value);
+            assertTrue(LatencyHistogram.upperBound(bucket) >= value);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void bucketWidth_staysWithinAnEighth() {
+        for (long value = 16; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long width = LatencyHistogram.upperBound(bucket) - LatencyHistogram.lowerBound(bucket) + 1;
+            assertTrue("width " + width + " at " + value, width * 8 <= LatencyHistogram.lowerBound(bucket));
+        }
+    }
+
+    @Test
+    public void percentiles_ofUniformMillis() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++)
+            histogram.record(ms * 1000000L);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1000000L, histogram.getMin());
+        assertEquals(100000000L, histogram.getMax());
+        assertEquals(50500000L, histogram.getMean());
+        assertWithin(50000000L, histogram.getPercentile(50));
+        assertWithin(95000000L, histogram.getPercentile(95));
+        assertWithin(99000000L, histogram.getPercentile(99));
+        assertEquals(100000000L, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentiles_matchSortedSamples() {
+        Random random = new Random(42);
+        long[] samples = new long[5000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < samples.length; i++) {
+            // Log-normal-ish spread from microseconds to seconds.
+            samples[i] = (long) Math.exp(7 + random.nextGaussian() * 3);
+            histogram.record(samples[i]);
+        }
+        Arrays.sort(samples);
+
+        for (double p : new double[]{50, 95, 99}) {
+            long exact = samples[(int) Math.ceil(p / 100 * samples.length) - 1];
+            assertWithin(exact, histogram.getPercentile(p));
+        }
+    }
+
+    @Test
+    public void empty_reportsZeros() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void reset_forgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5);
+        histogram.record(-3);
+        assertEquals(0, histogram.getMin());
+
+        histogram.reset();
+        histogram.record(7);
+        assertEquals(1, histogram.getCount());
+        assertEquals(7, histogram.getMin());
+        assertEquals(7, histogram.getPercentile(50));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 8 + 1);
+    }
+}
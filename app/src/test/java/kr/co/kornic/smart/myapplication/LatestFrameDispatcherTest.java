@@ -0,0 +1,179 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+public class LatestFrameDispatcherTest {
+    /**
+     * Runs the queued analyses only when told to, like a busy worker.
+     */
+    private static final class QueueExecutor implements Executor {
+        final List<Runnable> queued = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            queued.add(command);
+        }
+
+        void runOne() {
+            queued.remove(0).run();
+        }
+    }
+
+    private static final class RecordingAnalyzer implements FrameAnalyzer {
+        final List<Long> timestamps = new ArrayList<Long>();
+
+        @Override
+        public void analyze(YuvFrame frame) {
+            timestamps.add(frame.getTimestamp());
+        }
+    }
+
+    private final LatestFrameDispatcher mDispatcher = new LatestFrameDispatcher();
+
+    // As VuzixCam does for each camera frame
+    private void deliver(long timestamp) {
+        YuvFrame frame = mDispatcher.obtain(4, 2, 8, 4);
+        frame.set(timestamp, 4, 4, 2);
+        mDispatcher.offer(frame);
+        frame.release();
+    }
+
+    @Test
+    public void busyAnalyzer_getsOnlyTheLatestFrame() {
+        QueueExecutor executor = new QueueExecutor();
+        RecordingAnalyzer analyzer = new RecordingAnalyzer();
+        mDispatcher.add(analyzer, executor);
+
+        deliver(1);
+        deliver(2);
+        deliver(3);
+        deliver(4);
+        assertEquals(1, executor.queued.size());
+        assertEquals(2, mDispatcher.getFramesInFlight());
+
+        executor.runOne();
+        executor.runOne();
+        assertTrue(executor.queued.isEmpty());
+        assertEquals(Arrays.asList(1L, 4L), analyzer.timestamps);
+        assertEquals(0, mDispatcher.getFramesInFlight());
+
+        FrameAnalyzer.Stats stats = mDispatcher.getStats(analyzer);
+        assertEquals(2, stats.getAnalyzedCount());
+        assertEquals(2, stats.getDroppedCount());
+    }
+
+    @Test
+    public void analyzers_doNotWaitForEachOther() {
+        QueueExecutor slow = new QueueExecutor();
+        RecordingAnalyzer slowAnalyzer = new RecordingAnalyzer();
+        RecordingAnalyzer fastAnalyzer = new RecordingAnalyzer();
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        mDispatcher.add(slowAnalyzer, slow);
+        mDispatcher.add(fastAnalyzer, direct);
+
+        for (long t = 1; t <= 5; t++)
+            deliver(t);
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), fastAnalyzer.timestamps);
+        assertTrue(slowAnalyzer.timestamps.isEmpty());
+        // The frame being analyzed and the one waiting
+        assertEquals(2, mDispatcher.getFramesInFlight());
+        assertEquals(0, mDispatcher.getStats(fastAnalyzer).getDroppedCount());
+    }
+
+    @Test
+    public void frames_areReused() {
+        RecordingAnalyzer analyzer = new RecordingAnalyzer();
+        final List<YuvFrame> seen = new ArrayList<YuvFrame>();
+        mDispatcher.add(new FrameAnalyzer() {
+            @Override
+            public void analyze(YuvFrame frame) {
+                seen.add(frame);
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        deliver(1);
+        deliver(2);
+        assertSame(seen.get(0), seen.get(1));
+        assertEquals(0, mDispatcher.getFramesInFlight());
+        assertNull(mDispatcher.getStats(analyzer));
+    }
+
+    @Test
+    public void fps_followsTheSensorTimestamps() {
+        RecordingAnalyzer analyzer = new RecordingAnalyzer();
+        mDispatcher.add(analyzer, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        deliver(0);
+        assertEquals(0, mDispatcher.getStats(analyzer).getFps(), 0);
+        for (int i = 1; i < 40; i++)
+            deliver(i * 50000000L); // 20 fps
+        assertEquals(20, mDispatcher.getStats(analyzer).getFps(), 0.01);
+    }
+
+    @Test
+    public void removedAnalyzer_releasesItsWaitingFrame() {
+        QueueExecutor executor = new QueueExecutor();
+        RecordingAnalyzer analyzer = new RecordingAnalyzer();
+        mDispatcher.add(analyzer, executor);
+        deliver(1);
+        deliver(2);
+
+        mDispatcher.remove(analyzer);
+        assertEquals(1, mDispatcher.getFramesInFlight());
+        executor.runOne();
+        assertEquals(0, mDispatcher.getFramesInFlight());
+        assertTrue(executor.queued.isEmpty());
+        assertTrue(mDispatcher.isEmpty());
+
+        deliver(3);
+        assertEquals(Arrays.asList(1L), analyzer.timestamps);
+    }
+
+    @Test
+    public void rejectedAnalysis_countsAsDropped() {
+        RecordingAnalyzer analyzer = new RecordingAnalyzer();
+        mDispatcher.add(analyzer, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+
+        deliver(1);
+        deliver(2);
+        assertEquals(2, mDispatcher.getStats(analyzer).getDroppedCount());
+        assertEquals(0, mDispatcher.getFramesInFlight());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releasedFrame_cannotBeReleasedAgain() {
+        YuvFrame frame = new YuvFrame(4, 2, 8, 4, null);
+        frame.set(0, 4, 4, 2);
+        frame.release();
+        frame.release();
+    }
+}
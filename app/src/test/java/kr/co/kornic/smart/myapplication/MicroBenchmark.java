@@ -0,0 +1,62 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.util.Locale;
+
+/**
+ * A minimal benchmark harness for unit tests: warms a body up, times a fixed number of runs and
+ * prints the mean cost. Benchmarks run with the unit tests, so they only print their timings and
+ * never assert on them; raise {@code -Dbenchmark.iterations} for steadier numbers.
+ */
+final class MicroBenchmark {
+    static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 20000);
+
+    interface Body {
+        /**
+         * @return Anything derived from the work done, so the JIT can't drop it
+         */
+        Object run(int iteration);
+    }
+
+    private static volatile int sSink;
+
+    private MicroBenchmark() {
+    }
+
+    /**
+     * @return The mean nanoseconds per run of {@code body}
+     */
+    static double measure(String name, Body body) {
+        return measure(name, ITERATIONS, body);
+    }
+
+    /**
+     * Same as {@link #measure(String, Body)} with fewer runs, for bodies that each do a lot of work.
+     */
+    static double measure(String name, int iterations, Body body) {
+        int sink = 0;
+        for (int i = 0; i < iterations; i++)
+            sink += body.run(i).hashCode();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            sink += body.run(i).hashCode();
+        double nanosPerRun = (System.nanoTime() - start) / (double) iterations;
+
+        sSink = sink;
+        System.out.println(String.format(Locale.US, "%-40s %10.1f ns/op", name, nanosPerRun));
+        return nanosPerRun;
+    }
+
+    /**
+     * Measures both bodies and prints how many times faster {@code candidate} is.
+     */
+    static void compare(String name, Body baseline, Body candidate) {
+        compare(name, ITERATIONS, baseline, candidate);
+    }
+
+    static void compare(String name, int iterations, Body baseline, Body candidate) {
+        double before = measure(name + " (before)", iterations, baseline);
+        double after = measure(name + " (after)", iterations, candidate);
+        System.out.println(String.format(Locale.US, "%-40s %10.2fx", name + " speedup", before / after));
+    }
+}
@@ -0,0 +1,102 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a recorded sequence of frames through {@link MotionDetector} at analysis sizes of the
+ * glasses: a still scene, an object arriving and stopping, then an exposure change. The frames
+ * are rendered once up front, so only the analysis is timed.
+ *
+ * The baseline differences every pixel of successive frames, which is what the block grid
+ * replaces.
+ */
+public class MotionDetectorBenchmarkTest {
+    private static final int[][] SIZES = { { 320, 240 }, { 640, 480 }, { 1280, 720 } };
+
+    private static YuvFrame[] record(int width, int height) {
+        MotionDetectorTest.Scene scene = new MotionDetectorTest.Scene(width, height, width);
+        YuvFrame[] frames = new YuvFrame[60];
+        int step = Math.max(20, width / 16);
+        for (int i = 0; i < frames.length; i++) {
+            int x = i < 10 ? Integer.MIN_VALUE : Math.min(-scene.objectSize + (i - 10) * step, width / 2);
+            frames[i] = scene.render(i, x, i < 45 ? 0 : 20);
+        }
+        return frames;
+    }
+
+    private static int iterations(int width) {
+        return Math.max(3, MicroBenchmark.ITERATIONS / 2000 * 320 / width);
+    }
+
+    /**
+     * Analyzes the whole sequence; returns the triggers.
+     */
+    private static final class Replay implements MicroBenchmark.Body {
+        private final YuvFrame[] mFrames;
+        int triggers;
+
+        Replay(YuvFrame[] frames) {
+            mFrames = frames;
+        }
+
+        @Override
+        public Object run(int iteration) {
+            MotionDetector detector = new MotionDetector(new MotionDetector.Listener() {
+                @Override
+                public void onSceneChanged(long timestamp, float changed) {
+                    triggers++;
+                }
+            });
+            for (YuvFrame frame : mFrames)
+                detector.analyze(frame);
+            return detector.getTriggerCount();
+        }
+    }
+
+    /**
+     * Counts the pixels that changed between successive frames, at full resolution.
+     */
+    private static final class PixelDifference implements MicroBenchmark.Body {
+        private final YuvFrame[] mFrames;
+
+        PixelDifference(YuvFrame[] frames) {
+            mFrames = frames;
+        }
+
+        @Override
+        public Object run(int iteration) {
+            int changed = 0;
+            for (int i = 1; i < mFrames.length; i++) {
+                byte[] a = mFrames[i - 1].getY();
+                byte[] b = mFrames[i].getY();
+                for (int p = 0; p < b.length; p++) {
+                    if (Math.abs((a[p] & 0xFF) - (b[p] & 0xFF)) > 12)
+                        changed++;
+                }
+            }
+            return changed;
+        }
+    }
+
+    @Test
+    public void replay() {
+        for (int[] size : SIZES) {
+            YuvFrame[] frames = record(size[0], size[1]);
+            String name = "motion " + size[0] + "x" + size[1];
+            Replay replay = new Replay(frames);
+            MicroBenchmark.compare(name + " pixels / blocks", iterations(size[0]), new PixelDifference(frames), replay);
+
+            double nanos = MicroBenchmark.measure(name + " per sequence", iterations(size[0]), replay);
+            System.out.println(String.format(Locale.US, "%-40s %10.1f us/frame", name, nanos / frames.length / 1000));
+
+            // The object arriving, and only that
+            replay.triggers = 0;
+            replay.run(0);
+            assertEquals(1, replay.triggers);
+        }
+    }
+}
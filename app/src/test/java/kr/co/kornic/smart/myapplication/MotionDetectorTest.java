@@ -0,0 +1,172 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MotionDetectorTest {
+    private static final long FRAME_NS = 33333333L; // 30 fps
+
+    /**
+     * Renders the frames of a scene: a fixed backdrop with sensor noise, an optional object and
+     * an optional exposure offset.
+     */
+    static final class Scene {
+        final int width;
+        final int height;
+        final int objectSize; // 100 at 320 x 240
+        private final byte[] mBackdrop;
+        private final Random mNoise;
+
+        Scene(int width, int height, long seed) {
+            this.width = width;
+            this.height = height;
+            objectSize = height * 5 / 12;
+            Random random = new Random(seed);
+            mBackdrop = new byte[width * height];
+            // Patches of 8 x 8, between 40 and 200 so an exposure change doesn't clip
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    Random patch = new Random(seed ^ ((row / 8) * 7919L + col / 8));
+                    mBackdrop[row * width + col] = (byte) (40 + patch.nextInt(160));
+                }
+            }
+            mNoise = random;
+        }
+
+        /**
+         * @param objectX The left of a square bright object, or Integer.MIN_VALUE for none
+         * @param exposure Added to every pixel
+         */
+        YuvFrame render(int index, int objectX, int exposure) {
+            YuvFrame frame = new YuvFrame(width, height, width * height, width * height / 2, null);
+            byte[] y = frame.getY();
+            int top = (height - objectSize) / 2;
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    int value = mBackdrop[row * width + col] & 0xFF;
+                    if (objectX != Integer.MIN_VALUE && col >= objectX && col < objectX + objectSize && row >= top && row < top + objectSize)
+                        value = 220;
+                    value += exposure + mNoise.nextInt(7) - 3;
+                    y[row * width + col] = (byte) Math.max(0, Math.min(255, value));
+                }
+            }
+            Arrays.fill(frame.getU(), (byte) 128);
+            Arrays.fill(frame.getV(), (byte) 128);
+            frame.set(index * FRAME_NS, width, width, 2);
+            return frame;
+        }
+    }
+
+    private final List<Integer> mTriggers = new ArrayList<Integer>();
+    private int mFrameIndex;
+
+    private final MotionDetector mDetector = new MotionDetector(new MotionDetector.Listener() {
+        @Override
+        public void onSceneChanged(long timestamp, float changed) {
+            assertEquals(mFrameIndex * FRAME_NS, timestamp);
+            assertTrue(changed >= 0.1f);
+            mTriggers.add(mFrameIndex);
+        }
+    });
+
+    private final Scene mScene = new Scene(320, 240, 1);
+
+    private void play(int frames, int objectX, int exposure) {
+        for (int i = 0; i < frames; i++) {
+            mDetector.analyze(mScene.render(mFrameIndex, objectX, exposure));
+            mFrameIndex++;
+        }
+    }
+
+    // An object sliding in from the left by 20 pixels a frame until it reaches the centre
+    private void slideIn() {
+        for (int x = -100; x < 110; x += 20)
+            play(1, x, 0);
+    }
+
+    @Test
+    public void stillScene_neverTriggers() {
+        play(60, Integer.MIN_VALUE, 0);
+        assertTrue(mTriggers.isEmpty());
+        assertEquals(0, mDetector.getChangedFraction(), 0.02f);
+    }
+
+    @Test
+    public void arrivingObject_triggersOnceItStops() {
+        play(10, Integer.MIN_VALUE, 0);
+        slideIn();
+        int stopped = mFrameIndex;
+        play(30, 110, 0);
+
+        // Three still analyses after the one it stopped in
+        assertEquals(Arrays.asList(stopped + 3), mTriggers);
+        assertEquals(1, mDetector.getTriggerCount());
+    }
+
+    @Test
+    public void newScene_becomesTheReference() {
+        play(5, Integer.MIN_VALUE, 0);
+        slideIn();
+        play(10, 110, 0);
+        // Taking the object away again is a change too
+        play(10, Integer.MIN_VALUE, 0);
+        assertEquals(2, mTriggers.size());
+    }
+
+    @Test
+    public void passingObject_doesNotTrigger() {
+        play(5, Integer.MIN_VALUE, 0);
+        for (int x = -100; x < 340; x += 20)
+            play(1, x, 0);
+        play(20, Integer.MIN_VALUE, 0);
+        assertTrue(mTriggers.isEmpty());
+    }
+
+    @Test
+    public void exposureChange_doesNotTrigger() {
+        play(5, Integer.MIN_VALUE, 0);
+        play(20, Integer.MIN_VALUE, 30);
+        play(20, Integer.MIN_VALUE, -25);
+        assertTrue(mTriggers.isEmpty());
+    }
+
+    @Test
+    public void maxRate_skipsFrames() {
+        mDetector.setMaxRate(10);
+        play(10, Integer.MIN_VALUE, 0);
+        int appeared = mFrameIndex;
+        play(30, 110, 0);
+
+        assertEquals(1, mTriggers.size());
+        // Three still analyses a tenth of a second apart, at 30 fps
+        assertTrue(mTriggers.get(0) >= appeared + 9);
+    }
+
+    @Test
+    public void reset_takesTheNextFrameAsReference() {
+        play(5, Integer.MIN_VALUE, 0);
+        mDetector.reset();
+        play(20, 110, 0);
+        assertTrue(mTriggers.isEmpty());
+    }
+
+    @Test
+    public void sizeChange_startsOver() {
+        play(5, Integer.MIN_VALUE, 0);
+        Scene small = new Scene(160, 120, 2);
+        for (int i = 0; i < 10; i++)
+            mDetector.analyze(small.render(mFrameIndex++, Integer.MIN_VALUE, 0));
+        assertTrue(mTriggers.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stopAboveStart_isRejected() {
+        mDetector.setThresholds(12, 0.1f, 0.2f);
+    }
+}
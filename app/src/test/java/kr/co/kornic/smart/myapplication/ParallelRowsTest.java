@@ -0,0 +1,80 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class ParallelRowsTest {
+    private final ParallelRows mRows = new ParallelRows(3);
+
+    @After
+    public void tearDown() {
+        mRows.shutdown();
+    }
+
+    @Test
+    public void bands_coverEveryRowOnce() {
+        for (int rows : new int[] { 0, 1, 2, 3, 10, 1081 }) {
+            final AtomicIntegerArray seen = new AtomicIntegerArray(rows);
+            mRows.run(rows, new ParallelRows.Body() {
+                @Override
+                public void run(int fromRow, int toRow) {
+                    for (int row = fromRow; row < toRow; row++)
+                        seen.incrementAndGet(row);
+                }
+            });
+            for (int row = 0; row < rows; row++)
+                assertEquals("row " + row + " of " + rows, 1, seen.get(row));
+        }
+    }
+
+    @Test
+    public void bands_runOnSeveralThreads() {
+        final Thread caller = Thread.currentThread();
+        final boolean[] onOther = new boolean[1];
+        mRows.run(30, new ParallelRows.Body() {
+            @Override
+            public void run(int fromRow, int toRow) {
+                if (Thread.currentThread() != caller) {
+                    synchronized (onOther) {
+                        onOther[0] = true;
+                    }
+                }
+            }
+        });
+        synchronized (onOther) {
+            assertTrue(onOther[0]);
+        }
+    }
+
+    @Test
+    public void failure_isRethrownAfterAllBands() {
+        final AtomicIntegerArray done = new AtomicIntegerArray(1);
+        try {
+            mRows.run(9, new ParallelRows.Body() {
+                @Override
+                public void run(int fromRow, int toRow) {
+                    if (fromRow > 0)
+                        throw new IllegalStateException("band " + fromRow);
+                    done.incrementAndGet(0);
+                }
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals(1, done.get(0));
+        }
+
+        // Still usable
+        final AtomicIntegerArray count = new AtomicIntegerArray(1);
+        mRows.run(9, new ParallelRows.Body() {
+            @Override
+            public void run(int fromRow, int toRow) {
+                count.addAndGet(0, toRow - fromRow);
+            }
+        });
+        assertEquals(9, count.get(0));
+    }
+}
@@ -0,0 +1,145 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PhraseIndexMapTest {
+    @Test
+    public void remove_shiftsLaterIndexesDown() {
+        PhraseIndexMap map = new PhraseIndexMap();
+        map.put("a", 0, "");
+        map.put("b", 1, "");
+        map.put("c", 2, "");
+        map.put("d", 3, "");
+
+        assertEquals(1, map.remove("b"));
+        assertEquals(0, map.indexOf("a"));
+        assertEquals(-1, map.indexOf("b"));
+        assertEquals(1, map.indexOf("c"));
+        assertEquals(2, map.indexOf("d"));
+        assertEquals(3, map.size());
+        assertEquals(-1, map.remove("b"));
+    }
+
+    @Test
+    public void putAll_acceptsAnyOrderAndGaps() {
+        PhraseIndexMap map = new PhraseIndexMap(2);
+        map.putAll(new String[] { "z", "x", "y" }, new int[] { 7, 2, 5 }, null);
+
+        assertEquals(2, map.indexOf("x"));
+        assertEquals(5, map.indexOf("y"));
+        assertEquals(7, map.indexOf("z"));
+        assertNull(map.paramsOf("x"));
+
+        map.remove("x");
+        assertEquals(4, map.indexOf("y"));
+        assertEquals(6, map.indexOf("z"));
+    }
+
+    @Test
+    public void pendingPhrase_hasNoIndexUntilPut() {
+        PhraseIndexMap map = new PhraseIndexMap();
+        map.put("a", 0, "");
+        map.put("b", -1, "sub");
+
+        assertTrue(map.contains("b"));
+        assertEquals(-1, map.indexOf("b"));
+        assertEquals("sub", map.paramsOf("b"));
+
+        map.remove("a");
+        map.put("b", 0, "sub");
+        assertEquals(0, map.indexOf("b"));
+    }
+
+    @Test
+    public void put_outOfOrderIndexRebuilds() {
+        PhraseIndexMap map = new PhraseIndexMap();
+        map.put("a", 0, "");
+        map.put("c", 5, "");
+        map.put("b", 3, "");
+
+        assertEquals(0, map.indexOf("a"));
+        assertEquals(3, map.indexOf("b"));
+        assertEquals(5, map.indexOf("c"));
+
+        map.remove("a");
+        assertEquals(2, map.indexOf("b"));
+        assertEquals(4, map.indexOf("c"));
+    }
+
+    @Test
+    public void copy_isIndependent() {
+        PhraseIndexMap map = new PhraseIndexMap();
+        map.put("a", 0, "");
+        map.put("b", 1, "x");
+
+        PhraseIndexMap copy = map.copy();
+        copy.remove("a");
+        copy.setParams("b", "y");
+
+        assertEquals(1, map.indexOf("b"));
+        assertEquals("x", map.paramsOf("b"));
+        assertEquals(0, copy.indexOf("b"));
+        assertEquals("y", copy.paramsOf("b"));
+        assertFalse(copy.contains("a"));
+    }
+
+    @Test
+    public void manyDeletesAndAppends_compactKeys() {
+        PhraseIndexMap map = new PhraseIndexMap(16);
+        int next = 0;
+        for (int round = 0; round < 1000; round++) {
+            map.put("p" + round, next++, "");
+            if (round >= 3) {
+                assertEquals(0, map.remove("p" + (round - 3)));
+                next--;
+            }
+        }
+        assertEquals(3, map.size());
+        assertEquals(0, map.indexOf("p997"));
+        assertEquals(2, map.indexOf("p999"));
+    }
+
+    @Test
+    public void randomEdits_matchTheShiftingHashMap() {
+        Random random = new Random(12);
+        for (int run = 0; run < 20; run++) {
+            PhraseIndexMap map = new PhraseIndexMap(1 + random.nextInt(40));
+            HashMap<String, Integer> model = new HashMap<String, Integer>();
+            ArrayList<String> phrases = new ArrayList<String>();
+            int nextPhrase = 0;
+
+            for (int step = 0; step < 2000; step++) {
+                int op = random.nextInt(10);
+                if (op < 5 || phrases.isEmpty()) {
+                    // The service appends: the new index is the phrase count
+                    String phrase = "phrase " + nextPhrase++;
+                    map.put(phrase, model.size(), "");
+                    model.put(phrase, model.size());
+                    phrases.add(phrase);
+                } else if (op < 9) {
+                    String phrase = phrases.remove(random.nextInt(phrases.size()));
+                    int index = model.remove(phrase);
+                    assertEquals(index, map.remove(phrase));
+                    for (String key : new ArrayList<String>(model.keySet())) {
+                        if (model.get(key) > index)
+                            model.put(key, model.get(key) - 1);
+                    }
+                } else {
+                    map = map.copy();
+                }
+
+                if (step % 50 == 0 || step == 1999) {
+                    assertEquals(model.size(), map.size());
+                    for (String key : model.keySet())
+                        assertEquals(key, (int) model.get(key), map.indexOf(key));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PhraseSubstitutionTest {
+    @Test
+    public void encode_matchesTheServiceFormat() {
+        assertEquals("s:snapit", PhraseSubstitution.text("snapit").encode());
+        assertEquals("s:&k66", PhraseSubstitution.keycode(66, 0, null).encode());
+        assertEquals("s:&k19;r:250", PhraseSubstitution.keycode(19, 250, null).encode());
+        assertEquals("s:&k19;r:250;x:1", PhraseSubstitution.keycode(19, 250, "x:1").encode());
+        assertEquals("s:&ipicture", PhraseSubstitution.intent("picture", "").encode());
+        assertEquals("s:&ipicture;x:1", PhraseSubstitution.intent("picture", "x:1").encode());
+    }
+
+    @Test
+    public void encodeTo_appendsToTheBuffer() {
+        StringBuilder buffer = new StringBuilder("[");
+        PhraseSubstitution.keycode(4, 0, null).encodeTo(buffer).append(']');
+        assertEquals("[s:&k4]", buffer.toString());
+    }
+
+    @Test
+    public void parse_readsEveryKind() {
+        PhraseSubstitution keycode = PhraseSubstitution.parse("s:&k19;r:250;x:1");
+        assertEquals(PhraseSubstitution.Kind.KEYCODE, keycode.getKind());
+        assertEquals(19, keycode.getKeycode());
+        assertEquals(250, keycode.getRepeatIntervalMs());
+        assertEquals("x:1", keycode.getParams());
+
+        PhraseSubstitution intent = PhraseSubstitution.parse("s:&ipicture");
+        assertEquals(PhraseSubstitution.Kind.INTENT, intent.getKind());
+        assertEquals("picture", intent.getIntentLabel());
+        assertNull(intent.getText());
+        assertNull(intent.getParams());
+
+        PhraseSubstitution text = PhraseSubstitution.parse("S:snapit");
+        assertEquals(PhraseSubstitution.Kind.TEXT, text.getKind());
+        assertEquals("snapit", text.getText());
+
+        assertEquals(PhraseSubstitution.Kind.NONE, PhraseSubstitution.parse("").getKind());
+        assertEquals(PhraseSubstitution.Kind.NONE, PhraseSubstitution.parse(null).getKind());
+        assertEquals("r:100;x:1", PhraseSubstitution.parse("r:100;x:1").getParams());
+    }
+
+    @Test
+    public void parse_keycodeNameIsText() {
+        PhraseSubstitution enter = PhraseSubstitution.parse("s:&K_ENTER");
+        assertEquals(PhraseSubstitution.Kind.TEXT, enter.getKind());
+        assertEquals("&K_ENTER", enter.getText());
+        assertEquals("s:&K_ENTER", enter.encode());
+    }
+
+    @Test
+    public void parse_repeatOnlyRightAfterTheKeycode() {
+        PhraseSubstitution keycode = PhraseSubstitution.parse("s:&k19;x:1;r:250");
+        assertEquals(0, keycode.getRepeatIntervalMs());
+        assertEquals("x:1;r:250", keycode.getParams());
+    }
+
+    @Test
+    public void roundTrip() {
+        String[] encoded = { "s:hello", "s:&k66", "s:&k66;r:10", "s:&k66;r:10;a:b;c:d", "s:&ilabel;e:f", "a:b" };
+        for (String params : encoded) {
+            PhraseSubstitution parsed = PhraseSubstitution.parse(params);
+            assertEquals(params, parsed.encode());
+            assertEquals(parsed, PhraseSubstitution.parse(parsed.encode()));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decodes a corpus of preview frames through {@link QrDecoder} at the analysis size of the
+ * glasses: labels of versions 1 to 10 at different sizes, angles and perspectives, with noise
+ * and uneven light, and frames without a code. No image files ship with the repository, so the
+ * corpus is rendered once up front by {@link QrTestEncoder}; only the decoding is timed.
+ *
+ * The baseline decodes whole frames, which the centred region of {@link QrScanStage} replaces.
+ */
+public class QrDecoderBenchmarkTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    // The region QrScanStage decodes by default
+    private static final float REGION = 0.6f;
+
+    static final class Corpus {
+        final YuvFrame[] frames;
+        final String[] texts;
+
+        Corpus(int size, long seed) {
+            Random random = new Random(seed);
+            frames = new YuvFrame[size];
+            texts = new String[size];
+            for (int i = 0; i < size; i++) {
+                if (i % 5 == 4) {
+                    // Nothing to read
+                    frames[i] = new MotionDetectorTest.Scene(WIDTH, HEIGHT, i).render(0, Integer.MIN_VALUE, 0);
+                    continue;
+                }
+                int version = 1 + random.nextInt(QrVersion.MAX_VERSION);
+                int level = random.nextInt(4);
+                String text = QrDecoderTest.randomText(random,
+                        1 + random.nextInt(Math.min(60, QrTestEncoder.byteCapacity(version, level))));
+                boolean[] modules = QrTestEncoder.encode(text, version, level, random.nextInt(8));
+
+                int dimension = QrVersion.dimension(version);
+                // 3 to 5 pixels per module, within the region whatever the angle
+                double moduleSize = Math.min(3 + random.nextDouble() * 2, HEIGHT * REGION / 2 / dimension);
+                QrTestEncoder.Look look = QrTestEncoder.Look.centred(dimension, moduleSize,
+                        WIDTH / 2 + random.nextInt(41) - 20, HEIGHT / 2 + random.nextInt(41) - 20, random.nextInt(360));
+                // Up to a tenth of the size nearer or further at each corner; version 1 has no
+                // alignment pattern to follow a perspective by, so only a thirtieth
+                double skew = dimension * moduleSize / (version == 1 ? 30 : 10);
+                for (int c = 0; c < 8; c++)
+                    look.corners[c] += (random.nextDouble() - 0.5) * skew;
+                look.noise = random.nextInt(12);
+                look.lightGradient = random.nextInt(81) - 40;
+                look.seed = i;
+                frames[i] = QrTestEncoder.render(modules, WIDTH, HEIGHT, look);
+                texts[i] = text;
+            }
+        }
+    }
+
+    private static int iterations() {
+        return Math.max(3, MicroBenchmark.ITERATIONS / 2000);
+    }
+
+    /**
+     * Decodes every frame of the corpus; returns how many were read correctly.
+     */
+    private static final class Decode implements MicroBenchmark.Body {
+        private final Corpus mCorpus;
+        private final float mRegion;
+        private final QrDecoder mDecoder = new QrDecoder();
+
+        Decode(Corpus corpus, float region) {
+            mCorpus = corpus;
+            mRegion = region;
+        }
+
+        @Override
+        public Object run(int iteration) {
+            int read = 0;
+            int width = Math.round(WIDTH * mRegion);
+            int height = Math.round(HEIGHT * mRegion);
+            for (int i = 0; i < mCorpus.frames.length; i++) {
+                YuvFrame frame = mCorpus.frames[i];
+                String text = mDecoder.decode(frame.getY(), frame.getYRowStride(), (WIDTH - width) / 2, (HEIGHT - height) / 2, width, height);
+                if (null != text && text.equals(mCorpus.texts[i]))
+                    read++;
+            }
+            return read;
+        }
+    }
+
+    @Test
+    public void corpus() {
+        Corpus corpus = new Corpus(40, 1);
+        int codes = 0;
+        for (String text : corpus.texts) {
+            if (null != text)
+                codes++;
+        }
+
+        Decode region = new Decode(corpus, REGION);
+        MicroBenchmark.compare("qr " + WIDTH + "x" + HEIGHT + " whole / region", iterations(), new Decode(corpus, 1), region);
+        double nanos = MicroBenchmark.measure("qr region per corpus", iterations(), region);
+        System.out.println(String.format(Locale.US, "%-40s %10.1f us/frame", "qr region", nanos / corpus.frames.length / 1000));
+
+        // Every code read, nothing read from the empty frames
+        assertEquals(codes, region.run(0));
+        for (int i = 0; i < corpus.frames.length; i++) {
+            if (null == corpus.texts[i])
+                assertNull(new QrDecoder().decode(corpus.frames[i]));
+        }
+    }
+}
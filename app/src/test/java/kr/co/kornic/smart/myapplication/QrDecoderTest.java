@@ -0,0 +1,187 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QrDecoderTest {
+    private final QrDecoder mDecoder = new QrDecoder();
+
+    static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            text.append((char) (' ' + random.nextInt(95)));
+        return text.toString();
+    }
+
+    private static YuvFrame frame(boolean[] modules, QrTestEncoder.Look look) {
+        return QrTestEncoder.render(modules, 320, 240, look);
+    }
+
+    private static QrTestEncoder.Look centred(int version, double moduleSize, double degrees) {
+        return QrTestEncoder.Look.centred(QrVersion.dimension(version), moduleSize, 160, 120, degrees);
+    }
+
+    @Test
+    public void workedExample_decodes() {
+        int[] raw = new int[26];
+        System.arraycopy(QrReedSolomonTest.HELLO_WORLD_DATA, 0, raw, 0, 16);
+        System.arraycopy(QrReedSolomonTest.HELLO_WORLD_EC, 0, raw, 16, 10);
+        boolean[] modules = QrTestEncoder.place(raw, 1, QrVersion.EC_M, 2);
+        assertEquals("HELLO WORLD", mDecoder.decodeModules(modules, 21));
+    }
+
+    @Test
+    public void everyVersionLevelAndMask_decodes() {
+        Random random = new Random(1);
+        for (int version = 1; version <= QrVersion.MAX_VERSION; version++) {
+            for (int level = 0; level < 4; level++) {
+                for (int mask = 0; mask < 8; mask++) {
+                    String text = randomText(random, QrTestEncoder.byteCapacity(version, level) - random.nextInt(3));
+                    boolean[] modules = QrTestEncoder.encode(text, version, level, mask);
+                    assertEquals("version " + version + " level " + level + " mask " + mask,
+                            text, mDecoder.decodeModules(modules, QrVersion.dimension(version)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void segments_decode() {
+        QrTestEncoder.Bits bits = new QrTestEncoder.Bits(3)
+                .numeric("0123456789")
+                .alphanumeric("AC-42 $%*+./:")
+                .numeric("7")
+                .bytes("lot 7/b".getBytes(QrTestEncoder.UTF_8));
+        boolean[] modules = QrTestEncoder.encode(bits, QrVersion.EC_M, 5);
+        assertEquals("0123456789AC-42 $%*+./:7lot 7/b", mDecoder.decodeModules(modules, 29));
+
+        // Version 10 uses longer character counts
+        bits = new QrTestEncoder.Bits(10).numeric("31415926535").alphanumeric("PI");
+        modules = QrTestEncoder.encode(bits, QrVersion.EC_H, 1);
+        assertEquals("31415926535PI", mDecoder.decodeModules(modules, 57));
+    }
+
+    @Test
+    public void bytes_decodeAsUtf8OrLatin1() {
+        String korean = "창고 B-3 선반";
+        assertEquals(korean, mDecoder.decodeModules(QrTestEncoder.encode(korean, 2, QrVersion.EC_L, 0), 25));
+
+        // Not valid UTF-8, so ISO-8859-1
+        QrTestEncoder.Bits bits = new QrTestEncoder.Bits(1).bytes("café".getBytes(QrTestEncoder.ISO_8859_1));
+        assertEquals("café", mDecoder.decodeModules(QrTestEncoder.encode(bits, QrVersion.EC_L, 3), 21));
+
+        // Declared ISO-8859-1, even though these bytes happen to be valid UTF-8
+        byte[] latin = "Ã©".getBytes(QrTestEncoder.ISO_8859_1);
+        bits = new QrTestEncoder.Bits(1).eci(3).bytes(latin);
+        assertEquals("Ã©", mDecoder.decodeModules(QrTestEncoder.encode(bits, QrVersion.EC_L, 3), 21));
+    }
+
+    @Test
+    public void damagedCodewords_areCorrected() {
+        Random random = new Random(2);
+        // Version 5-Q: four blocks of 18 error correction codewords, 9 correctable each
+        int version = 5;
+        int level = QrVersion.EC_Q;
+        String text = randomText(random, QrTestEncoder.byteCapacity(version, level));
+        int[] raw = QrTestEncoder.interleave(new QrTestEncoder.Bits(version).bytes(text.getBytes(QrTestEncoder.UTF_8))
+                .codewords(level), version, level);
+        // Interleaving spreads a run of damaged codewords over the blocks
+        for (int i = 40; i < 40 + 36; i++)
+            raw[i] ^= 0x5A;
+
+        assertEquals(text, mDecoder.decodeModules(QrTestEncoder.place(raw, version, level, 6), 37));
+        assertEquals(36, mDecoder.getCorrectedCount());
+
+        raw[10] ^= 0xFF;
+        assertNull(mDecoder.decodeModules(QrTestEncoder.place(raw, version, level, 6), 37));
+    }
+
+    @Test
+    public void damagedFormatCopy_isRecovered() {
+        boolean[] modules = QrTestEncoder.encode("SHELF-12", 1, QrVersion.EC_M, 4);
+        // Scratch across the top left copy
+        for (int x = 0; x < 6; x++)
+            modules[8 * 21 + x] = !modules[8 * 21 + x];
+        assertEquals("SHELF-12", mDecoder.decodeModules(modules, 21));
+    }
+
+    @Test
+    public void uprightCodes_decodeFromTheFrame() {
+        Random random = new Random(3);
+        double[][] cases = {
+                // version, pixels per module
+                { 1, 2.5 }, { 1, 6 }, { 2, 3 }, { 3, 4 }, { 4, 2.5 }, { 5, 3 }, { 7, 3 }, { 10, 2.5 },
+        };
+        for (double[] c : cases) {
+            int version = (int) c[0];
+            String text = randomText(random, Math.min(30, QrTestEncoder.byteCapacity(version, QrVersion.EC_M)));
+            boolean[] modules = QrTestEncoder.encode(text, version, QrVersion.EC_M, random.nextInt(8));
+            assertEquals("version " + version + " at " + c[1], text, mDecoder.decode(frame(modules, centred(version, c[1], 0))));
+        }
+    }
+
+    @Test
+    public void rotatedCodes_decode() {
+        boolean[] modules = QrTestEncoder.encode("PALLET 0042", 2, QrVersion.EC_M, 3);
+        for (double degrees : new double[] { 90, 180, 270, 12, -25, 45, 160 })
+            assertEquals(degrees + " degrees", "PALLET 0042", mDecoder.decode(frame(modules, centred(2, 4, degrees))));
+    }
+
+    @Test
+    public void perspective_isFollowed() {
+        boolean[] modules = QrTestEncoder.encode("https://example.com/asset/7731", 4, QrVersion.EC_M, 0);
+        QrTestEncoder.Look look = new QrTestEncoder.Look();
+        // Seen from the left: the right side further away
+        look.corners = new double[] { 70, 40, 230, 55, 232, 190, 60, 205 };
+        assertEquals("https://example.com/asset/7731", mDecoder.decode(frame(modules, look)));
+
+        // From below and turned
+        look.corners = new double[] { 90, 30, 240, 50, 228, 210, 70, 180 };
+        assertEquals("https://example.com/asset/7731", mDecoder.decode(frame(modules, look)));
+    }
+
+    @Test
+    public void noiseAndUnevenLight_areTolerated() {
+        boolean[] modules = QrTestEncoder.encode("BIN 4-17", 2, QrVersion.EC_Q, 7);
+        QrTestEncoder.Look look = centred(2, 4, 8);
+        look.noise = 18;
+        look.lightGradient = -120;
+        look.dark = 60;
+        look.light = 190;
+        assertEquals("BIN 4-17", mDecoder.decode(frame(modules, look)));
+    }
+
+    @Test
+    public void region_limitsTheSearch() {
+        boolean[] modules = QrTestEncoder.encode("LEFT", 1, QrVersion.EC_L, 1);
+        YuvFrame frame = frame(modules, QrTestEncoder.Look.centred(21, 3, 70, 120, 0));
+
+        assertEquals("LEFT", mDecoder.decode(frame.getY(), frame.getYRowStride(), 0, 20, 160, 200));
+        assertNull(mDecoder.decode(frame.getY(), frame.getYRowStride(), 160, 0, 160, 240));
+    }
+
+    @Test
+    public void noCode_decodesToNull() {
+        assertNull(mDecoder.decode(new MotionDetectorTest.Scene(320, 240, 4).render(0, Integer.MIN_VALUE, 0)));
+
+        // Half the code out of view
+        boolean[] modules = QrTestEncoder.encode("GONE", 1, QrVersion.EC_L, 2);
+        assertNull(mDecoder.decode(frame(modules, QrTestEncoder.Look.centred(21, 4, 320, 120, 0))));
+    }
+
+    @Test
+    public void sameCode_returnsTheCachedText() {
+        YuvFrame frame = frame(QrTestEncoder.encode("GATE 3", 1, QrVersion.EC_M, 0), centred(1, 4, 0));
+        String first = mDecoder.decode(frame);
+        assertEquals("GATE 3", first);
+        assertSame(first, mDecoder.decode(frame));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void regionOutsideTheFrame_isRejected() {
+        mDecoder.decode(new byte[100], 10, 5, 5, 6, 5);
+    }
+}
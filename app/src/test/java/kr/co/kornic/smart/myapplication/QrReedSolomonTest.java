@@ -0,0 +1,114 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QrReedSolomonTest {
+    // "HELLO WORLD" as version 1-M, the worked example of the specification's tutorials
+    static final int[] HELLO_WORLD_DATA = { 32, 91, 11, 120, 209, 114, 220, 77, 67, 64, 236, 17, 236, 17, 236, 17 };
+    static final int[] HELLO_WORLD_EC = { 196, 35, 39, 119, 235, 215, 231, 226, 93, 23 };
+
+    private final QrReedSolomon mReedSolomon = new QrReedSolomon();
+
+    private static int[] block(int[] data, int[] ec) {
+        int[] block = Arrays.copyOf(data, data.length + ec.length);
+        System.arraycopy(ec, 0, block, data.length, ec.length);
+        return block;
+    }
+
+    private static int[] randomBlock(Random random, int data, int ec) {
+        int[] codewords = new int[data];
+        for (int i = 0; i < data; i++)
+            codewords[i] = random.nextInt(256);
+        return block(codewords, QrTestEncoder.errorCorrection(codewords, ec));
+    }
+
+    // Replaces {@code errors} distinct codewords with different values
+    private static void damage(int[] block, int errors, Random random) {
+        boolean[] hit = new boolean[block.length];
+        for (int e = 0; e < errors; e++) {
+            int i;
+            do {
+                i = random.nextInt(block.length);
+            } while (hit[i]);
+            hit[i] = true;
+            block[i] ^= 1 + random.nextInt(255);
+        }
+    }
+
+    @Test
+    public void field_multipliesAndDivides() {
+        assertEquals(1, QrReedSolomon.exp(0));
+        assertEquals(2, QrReedSolomon.exp(1));
+        // x^8 reduced by x^8 + x^4 + x^3 + x^2 + 1
+        assertEquals(0x1D, QrReedSolomon.exp(8));
+        assertEquals(1, QrReedSolomon.exp(255));
+        for (int a = 1; a < 256; a++) {
+            for (int b = 1; b < 256; b += 7) {
+                int product = QrReedSolomon.multiply(a, b);
+                assertEquals(a, QrReedSolomon.divide(product, b));
+            }
+            assertEquals(0, QrReedSolomon.multiply(a, 0));
+        }
+    }
+
+    @Test
+    public void encoder_matchesTheWorkedExample() {
+        assertArrayEquals(HELLO_WORLD_EC, QrTestEncoder.errorCorrection(HELLO_WORLD_DATA, 10));
+    }
+
+    @Test
+    public void cleanBlock_isLeftAlone() {
+        int[] block = block(HELLO_WORLD_DATA, HELLO_WORLD_EC);
+        int[] original = block.clone();
+        assertEquals(0, mReedSolomon.correct(block, block.length, 10));
+        assertArrayEquals(original, block);
+    }
+
+    @Test
+    public void upToHalfTheEcCodewords_areCorrected() {
+        Random random = new Random(1);
+        int[][] shapes = { { 16, 10 }, { 19, 7 }, { 9, 17 }, { 116, 30 }, { 43, 26 }, { 15, 28 } };
+        for (int[] shape : shapes) {
+            for (int errors = 1; errors <= shape[1] / 2; errors++) {
+                int[] block = randomBlock(random, shape[0], shape[1]);
+                int[] original = block.clone();
+                damage(block, errors, random);
+
+                assertEquals(shape[0] + "+" + shape[1] + " with " + errors, errors, mReedSolomon.correct(block, block.length, shape[1]));
+                assertArrayEquals(original, block);
+            }
+        }
+    }
+
+    @Test
+    public void errorsAtBothEnds_areCorrected() {
+        int[] block = block(HELLO_WORLD_DATA, HELLO_WORLD_EC);
+        block[0] ^= 0xFF;
+        block[block.length - 1] ^= 0x01;
+        assertEquals(2, mReedSolomon.correct(block, block.length, 10));
+        assertArrayEquals(block(HELLO_WORLD_DATA, HELLO_WORLD_EC), block);
+    }
+
+    @Test
+    public void tooManyErrors_areReported() {
+        Random random = new Random(2);
+        int failures = 0;
+        for (int i = 0; i < 100; i++) {
+            int[] block = randomBlock(random, 28, 16);
+            int[] original = block.clone();
+            damage(block, 9, random);
+            int result = mReedSolomon.correct(block, block.length, 16);
+            // Never silently turned back into the original, which it can't know
+            assertFalse(result >= 0 && Arrays.equals(original, block));
+            if (result < 0)
+                failures++;
+        }
+        // A miscorrection to another codeword is possible, but rare
+        assertTrue(failures >= 95);
+    }
+}
@@ -0,0 +1,105 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class QrScanStageTest {
+    private static final long FRAME_NS = 33000000L;
+
+    private final List<String> mReported = new ArrayList<>();
+    private final QrScanStage mStage = new QrScanStage(new QrScanStage.Listener() {
+        @Override
+        public void onQrCode(String text, long timestamp) {
+            mReported.add(text + "@" + timestamp / FRAME_NS);
+        }
+    });
+
+    private static YuvFrame code(String text, double cx) {
+        boolean[] modules = QrTestEncoder.encode(text, 1, QrVersion.EC_M, 0);
+        return QrTestEncoder.render(modules, 320, 240, QrTestEncoder.Look.centred(21, 3, cx, 120, 0));
+    }
+
+    private static YuvFrame empty() {
+        return QrTestEncoder.render(new boolean[21 * 21], 320, 240, QrTestEncoder.Look.centred(21, 3, 160, 120, 0));
+    }
+
+    private void play(YuvFrame frame, int from, int to) {
+        for (int i = from; i < to; i++) {
+            frame.set(i * FRAME_NS, frame.getYRowStride(), frame.getUvRowStride(), frame.getUvPixelStride());
+            mStage.analyze(frame);
+        }
+    }
+
+    @Test
+    public void codeInView_isReportedOnce() {
+        mStage.setFrameInterval(1);
+        play(code("RACK 9", 160), 0, 10);
+
+        assertEquals(10, mStage.getScannedCount());
+        assertEquals(10, mStage.getDecodedCount());
+        assertEquals(1, mStage.getReportedCount());
+        assertEquals("[RACK 9@0]", mReported.toString());
+    }
+
+    @Test
+    public void frameInterval_skipsFrames() {
+        mStage.setFrameInterval(3);
+        play(code("RACK 9", 160), 0, 10);
+
+        // Frames 0, 3, 6 and 9
+        assertEquals(4, mStage.getScannedCount());
+        assertEquals(4, mStage.getDecodedCount());
+    }
+
+    @Test
+    public void codeBack_isReportedAfterTheRepeatDelay() {
+        mStage.setFrameInterval(1);
+        mStage.setRepeatDelay(200);
+        YuvFrame rack = code("RACK 9", 160);
+        play(rack, 0, 3);
+        // Looked away for about 100 ms, then 300 ms
+        play(empty(), 3, 6);
+        play(rack, 6, 8);
+        play(empty(), 8, 18);
+        play(rack, 18, 20);
+
+        assertEquals("[RACK 9@0, RACK 9@18]", mReported.toString());
+    }
+
+    @Test
+    public void differentCodes_areEachReported() {
+        mStage.setFrameInterval(1);
+        play(code("RACK 9", 160), 0, 2);
+        play(code("RACK 10", 160), 2, 4);
+        play(code("RACK 9", 160), 4, 6);
+
+        assertEquals("[RACK 9@0, RACK 10@2]", mReported.toString());
+    }
+
+    @Test
+    public void codeOutsideTheRegion_isIgnored() {
+        mStage.setFrameInterval(1);
+        mStage.setRegion(0.5f);
+        YuvFrame frame = code("EDGE", 40);
+        play(frame, 0, 2);
+        assertEquals(0, mStage.getDecodedCount());
+
+        mStage.setRegion(1);
+        play(frame, 2, 3);
+        assertEquals("[EDGE@2]", mReported.toString());
+    }
+
+    @Test
+    public void reset_reportsTheCodeAgain() {
+        mStage.setFrameInterval(1);
+        YuvFrame frame = code("RACK 9", 160);
+        play(frame, 0, 2);
+        mStage.reset();
+        play(frame, 2, 3);
+        assertEquals("[RACK 9@0, RACK 9@2]", mReported.toString());
+    }
+}
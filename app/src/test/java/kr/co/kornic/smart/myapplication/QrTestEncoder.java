@@ -0,0 +1,337 @@
+package kr.co.kornic.smart.myapplication;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Encodes QR codes for the decoder tests, from the segments down to the modules, and renders them
+ * into frames the way the camera would see a label: at any size, angle and perspective, with
+ * blurred edges, uneven light and sensor noise. Written from the specification rather than from
+ * the decoder, except for the tables in {@link QrVersion}.
+ */
+final class QrTestEncoder {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private QrTestEncoder() {
+    }
+
+    /**
+     * A bit stream of segments, most significant bit first.
+     */
+    static final class Bits {
+        private final int version;
+        private boolean[] mBits = new boolean[64];
+        private int mLength;
+
+        Bits(int version) {
+            this.version = version;
+        }
+
+        Bits append(int value, int count) {
+            if (mLength + count > mBits.length)
+                mBits = Arrays.copyOf(mBits, Math.max(mBits.length * 2, mLength + count));
+            for (int i = count - 1; i >= 0; i--)
+                mBits[mLength++] = ((value >> i) & 1) != 0;
+            return this;
+        }
+
+        int length() {
+            return mLength;
+        }
+
+        Bits numeric(String digits) {
+            append(1, 4).append(digits.length(), version < 10 ? 10 : 12);
+            int i = 0;
+            for (; i + 3 <= digits.length(); i += 3)
+                append(Integer.parseInt(digits.substring(i, i + 3)), 10);
+            if (digits.length() - i == 2)
+                append(Integer.parseInt(digits.substring(i)), 7);
+            else if (digits.length() - i == 1)
+                append(Integer.parseInt(digits.substring(i)), 4);
+            return this;
+        }
+
+        Bits alphanumeric(String text) {
+            String table = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+            append(2, 4).append(text.length(), version < 10 ? 9 : 11);
+            int i = 0;
+            for (; i + 2 <= text.length(); i += 2)
+                append(table.indexOf(text.charAt(i)) * 45 + table.indexOf(text.charAt(i + 1)), 11);
+            if (i < text.length())
+                append(table.indexOf(text.charAt(i)), 6);
+            return this;
+        }
+
+        Bits bytes(byte[] data) {
+            append(4, 4).append(data.length, version < 10 ? 8 : 16);
+            for (byte b : data)
+                append(b & 0xFF, 8);
+            return this;
+        }
+
+        Bits eci(int designator) {
+            append(7, 4);
+            if (designator < 128)
+                return append(designator, 8);
+            return append(0x8000 | designator, 16);
+        }
+
+        /**
+         * @return The data codewords: the segments, the terminator, zeros to a byte boundary and
+         * the alternating pad bytes up to the capacity
+         */
+        int[] codewords(int ecLevel) {
+            int capacity = QrVersion.dataCodewords(version, ecLevel);
+            if (mLength > capacity * 8)
+                throw new IllegalArgumentException(mLength + " bits don't fit version " + version);
+            append(0, Math.min(4, capacity * 8 - mLength));
+            append(0, (8 - mLength % 8) % 8);
+            int[] codewords = new int[capacity];
+            for (int i = 0; i < mLength / 8; i++) {
+                for (int b = 0; b < 8; b++)
+                    codewords[i] = (codewords[i] << 1) | (mBits[i * 8 + b] ? 1 : 0);
+            }
+            for (int i = mLength / 8, pad = 0; i < capacity; i++, pad++)
+                codewords[i] = pad % 2 == 0 ? 0xEC : 0x11;
+            return codewords;
+        }
+    }
+
+    /**
+     * @return The most bytes a byte segment holds at the version and level
+     */
+    static int byteCapacity(int version, int ecLevel) {
+        return (QrVersion.dataCodewords(version, ecLevel) * 8 - 4 - (version < 10 ? 8 : 16)) / 8;
+    }
+
+    /**
+     * @return The error correction codewords of {@code data}: the remainder of its division by
+     * the generator polynomial with roots alpha^0 to alpha^(count - 1)
+     */
+    static int[] errorCorrection(int[] data, int count) {
+        // Highest power first
+        int[] generator = new int[count + 1];
+        generator[0] = 1;
+        for (int i = 0; i < count; i++) {
+            // Times (x + alpha^i)
+            int root = QrReedSolomon.exp(i);
+            for (int j = i + 1; j >= 1; j--)
+                generator[j] ^= QrReedSolomon.multiply(generator[j - 1], root);
+        }
+
+        int[] remainder = new int[count];
+        for (int d : data) {
+            int factor = d ^ remainder[0];
+            System.arraycopy(remainder, 1, remainder, 0, count - 1);
+            remainder[count - 1] = 0;
+            for (int j = 0; j < count; j++)
+                remainder[j] ^= QrReedSolomon.multiply(factor, generator[j + 1]);
+        }
+        return remainder;
+    }
+
+    /**
+     * @return The codewords in the order they are placed: the blocks' data codewords
+     * interleaved, then their error correction codewords interleaved
+     */
+    static int[] interleave(int[] data, int version, int ecLevel) {
+        int ec = QrVersion.ecCodewordsPerBlock(version, ecLevel);
+        int shortBlocks = QrVersion.shortBlocks(version, ecLevel);
+        int blocks = shortBlocks + QrVersion.longBlocks(version, ecLevel);
+        int shortData = QrVersion.shortBlockDataCodewords(version, ecLevel);
+
+        int[][] blockData = new int[blocks][];
+        int[][] blockEc = new int[blocks][];
+        for (int b = 0, offset = 0; b < blocks; b++) {
+            int length = b < shortBlocks ? shortData : shortData + 1;
+            blockData[b] = Arrays.copyOfRange(data, offset, offset + length);
+            blockEc[b] = errorCorrection(blockData[b], ec);
+            offset += length;
+        }
+
+        int[] raw = new int[QrVersion.totalCodewords(version)];
+        int n = 0;
+        for (int i = 0; i <= shortData; i++) {
+            for (int b = 0; b < blocks; b++) {
+                if (i < blockData[b].length)
+                    raw[n++] = blockData[b][i];
+            }
+        }
+        for (int i = 0; i < ec; i++) {
+            for (int b = 0; b < blocks; b++)
+                raw[n++] = blockEc[b][i];
+        }
+        return raw;
+    }
+
+    /**
+     * @return The modules of the symbol, dark true, row by row
+     */
+    static boolean[] place(int[] raw, int version, int ecLevel, int mask) {
+        int dimension = QrVersion.dimension(version);
+        boolean[] modules = new boolean[dimension * dimension];
+
+        finder(modules, dimension, 0, 0);
+        finder(modules, dimension, dimension - 7, 0);
+        finder(modules, dimension, 0, dimension - 7);
+        for (int i = 8; i < dimension - 8; i++) {
+            modules[6 * dimension + i] = i % 2 == 0;
+            modules[i * dimension + 6] = i % 2 == 0;
+        }
+        int[] centres = QrVersion.alignmentCentres(version);
+        for (int cy : centres) {
+            for (int cx : centres) {
+                if ((cx < 9 && cy < 9) || (cx > dimension - 9 && cy < 9) || (cx < 9 && cy > dimension - 9))
+                    continue;
+                for (int dy = -2; dy <= 2; dy++) {
+                    for (int dx = -2; dx <= 2; dx++)
+                        modules[(cy + dy) * dimension + cx + dx] = Math.max(Math.abs(dx), Math.abs(dy)) != 1;
+                }
+            }
+        }
+        modules[(dimension - 8) * dimension + 8] = true;
+
+        int format = QrVersion.formatBits(ecLevel, mask);
+        int[][] copy1 = { { 0, 8 }, { 1, 8 }, { 2, 8 }, { 3, 8 }, { 4, 8 }, { 5, 8 }, { 7, 8 }, { 8, 8 },
+                { 8, 7 }, { 8, 5 }, { 8, 4 }, { 8, 3 }, { 8, 2 }, { 8, 1 }, { 8, 0 } };
+        for (int i = 0; i < 15; i++) {
+            boolean bit = ((format >> (14 - i)) & 1) != 0;
+            modules[copy1[i][1] * dimension + copy1[i][0]] = bit;
+            // Down the left of the bottom left finder, then along below the top right one
+            if (i < 7)
+                modules[(dimension - 1 - i) * dimension + 8] = bit;
+            else
+                modules[8 * dimension + dimension - 15 + i] = bit;
+        }
+
+        if (version >= 7) {
+            int bits = QrVersion.versionBits(version);
+            for (int i = 0; i < 18; i++) {
+                boolean bit = ((bits >> i) & 1) != 0;
+                int a = i / 3;
+                int b = dimension - 11 + i % 3;
+                modules[b * dimension + a] = bit;
+                modules[a * dimension + b] = bit;
+            }
+        }
+
+        // Data, in two-module columns from the right, alternately upwards and downwards
+        int bit = 0;
+        int totalBits = raw.length * 8;
+        boolean upwards = true;
+        for (int right = dimension - 1; right >= 1; right -= 2) {
+            if (right == 6)
+                right = 5;
+            for (int i = 0; i < dimension; i++) {
+                int y = upwards ? dimension - 1 - i : i;
+                for (int x = right; x >= right - 1; x--) {
+                    if (QrVersion.isFunction(version, x, y))
+                        continue;
+                    boolean dark = bit < totalBits && ((raw[bit / 8] >> (7 - bit % 8)) & 1) != 0;
+                    bit++;
+                    modules[y * dimension + x] = dark ^ QrVersion.isMasked(mask, x, y);
+                }
+            }
+            upwards = !upwards;
+        }
+        return modules;
+    }
+
+    private static void finder(boolean[] modules, int dimension, int left, int top) {
+        for (int dy = 0; dy < 7; dy++) {
+            for (int dx = 0; dx < 7; dx++) {
+                int ring = Math.max(Math.abs(dx - 3), Math.abs(dy - 3));
+                modules[(top + dy) * dimension + left + dx] = ring != 2;
+            }
+        }
+    }
+
+    static boolean[] encode(Bits bits, int ecLevel, int mask) {
+        return place(interleave(bits.codewords(ecLevel), bits.version, ecLevel), bits.version, ecLevel, mask);
+    }
+
+    /**
+     * @return The text as a UTF-8 byte segment
+     */
+    static boolean[] encode(String text, int version, int ecLevel, int mask) {
+        return encode(new Bits(version).bytes(text.getBytes(UTF_8)), ecLevel, mask);
+    }
+
+    /**
+     * How a rendered code looks.
+     */
+    static final class Look {
+        // The symbol's top left, top right, bottom right and bottom left corners in the frame
+        double[] corners;
+        int dark = 40;
+        int light = 210;
+        // Added from the left edge to the right one
+        int lightGradient;
+        // Standard deviation of the gaussian noise
+        double noise;
+        long seed = 1;
+
+        /**
+         * An upright code of {@code moduleSize} pixels per module, centred on (cx, cy) and turned
+         * by {@code degrees} clockwise.
+         */
+        static Look centred(int dimension, double moduleSize, double cx, double cy, double degrees) {
+            Look look = new Look();
+            double half = dimension * moduleSize / 2;
+            double cos = Math.cos(Math.toRadians(degrees));
+            double sin = Math.sin(Math.toRadians(degrees));
+            double[] unit = { -1, -1, 1, -1, 1, 1, -1, 1 };
+            look.corners = new double[8];
+            for (int i = 0; i < 4; i++) {
+                double x = unit[i * 2] * half;
+                double y = unit[i * 2 + 1] * half;
+                look.corners[i * 2] = cx + x * cos - y * sin;
+                look.corners[i * 2 + 1] = cy + x * sin + y * cos;
+            }
+            return look;
+        }
+    }
+
+    /**
+     * Renders the symbol with a light background all around, each pixel the mean of 4 x 4
+     * samples so edges blur as through a lens.
+     */
+    static YuvFrame render(boolean[] modules, int width, int height, Look look) {
+        YuvFrame frame = new YuvFrame(width, height, width * height, width * height / 2, null);
+        renderInto(frame.getY(), width, width, height, modules, look);
+        Arrays.fill(frame.getU(), (byte) 128);
+        Arrays.fill(frame.getV(), (byte) 128);
+        frame.set(0, width, width, 2);
+        return frame;
+    }
+
+    static void renderInto(byte[] luma, int rowStride, int width, int height, boolean[] modules, Look look) {
+        int dimension = (int) Math.round(Math.sqrt(modules.length));
+        double[] c = look.corners;
+        double[] squareToImage = new double[9];
+        double[] imageToSquare = new double[9];
+        Homography.squareToQuadrilateral(squareToImage, c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]);
+        Homography.invert(squareToImage, imageToSquare);
+        Random random = new Random(look.seed);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int dark = 0;
+                for (int s = 0; s < 16; s++) {
+                    double sx = x + (s % 4 + 0.5) / 4;
+                    double sy = y + (s / 4 + 0.5) / 4;
+                    double u = Homography.mapX(imageToSquare, sx, sy) * dimension;
+                    double v = Homography.mapY(imageToSquare, sx, sy) * dimension;
+                    if (u >= 0 && v >= 0 && u < dimension && v < dimension && modules[(int) v * dimension + (int) u])
+                        dark++;
+                }
+                double value = look.light + (look.dark - look.light) * dark / 16.0;
+                value += look.lightGradient * (double) x / width;
+                value += random.nextGaussian() * look.noise;
+                luma[y * rowStride + x] = (byte) Math.max(0, Math.min(255, Math.round(value)));
+            }
+        }
+    }
+}
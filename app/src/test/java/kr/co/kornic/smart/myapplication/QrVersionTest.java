@@ -0,0 +1,98 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QrVersionTest {
+    @Test
+    public void formatBits_matchThePublishedTable() {
+        assertEquals(0x5412, QrVersion.formatBits(QrVersion.EC_M, 0));
+        assertEquals(0x77C4, QrVersion.formatBits(QrVersion.EC_L, 0));
+        assertEquals(0x72F3, QrVersion.formatBits(QrVersion.EC_L, 1));
+        assertEquals(0x4AA0, QrVersion.formatBits(QrVersion.EC_M, 7));
+        assertEquals(0x355F, QrVersion.formatBits(QrVersion.EC_Q, 0));
+        assertEquals(0x1689, QrVersion.formatBits(QrVersion.EC_H, 0));
+    }
+
+    @Test
+    public void versionBits_matchThePublishedTable() {
+        assertEquals(0x07C94, QrVersion.versionBits(7));
+        assertEquals(0x085BC, QrVersion.versionBits(8));
+        assertEquals(0x09A99, QrVersion.versionBits(9));
+        assertEquals(0x0A4D3, QrVersion.versionBits(10));
+    }
+
+    @Test
+    public void format_isDecodedWithUpToThreeWrongBits() {
+        for (int format = 0; format < 32; format++) {
+            int bits = QrVersion.formatBits(format >> 3, format & 7);
+            assertEquals(format, QrVersion.decodeFormat(bits, bits));
+            assertEquals(format, QrVersion.decodeFormat(bits ^ 0x4402, bits ^ 0x4402));
+            // One good copy is enough
+            assertEquals(format, QrVersion.decodeFormat(bits ^ 0x000F, bits ^ 0x0010));
+        }
+    }
+
+    @Test
+    public void version_isDecodedWithUpToThreeWrongBits() {
+        for (int version = 7; version <= QrVersion.MAX_VERSION; version++) {
+            int bits = QrVersion.versionBits(version);
+            assertEquals(version, QrVersion.decodeVersion(bits ^ 0x20101, bits ^ 0x3F000));
+        }
+        assertEquals(-1, QrVersion.decodeVersion(0, 0));
+    }
+
+    @Test
+    public void codewordCounts_matchTheSpecification() {
+        int[] totals = { 26, 44, 70, 100, 134, 172, 196, 242, 292, 346 };
+        int[] dataL = { 19, 34, 55, 80, 108, 136, 156, 194, 232, 274 };
+        int[] dataH = { 9, 16, 26, 36, 46, 60, 66, 86, 100, 122 };
+        for (int version = 1; version <= QrVersion.MAX_VERSION; version++) {
+            assertEquals(totals[version - 1], QrVersion.totalCodewords(version));
+            assertEquals(dataL[version - 1], QrVersion.dataCodewords(version, QrVersion.EC_L));
+            assertEquals(dataH[version - 1], QrVersion.dataCodewords(version, QrVersion.EC_H));
+            // Every level fills the symbol
+            for (int level = 0; level < 4; level++) {
+                int blocks = QrVersion.shortBlocks(version, level) + QrVersion.longBlocks(version, level);
+                assertEquals(totals[version - 1], QrVersion.dataCodewords(version, level)
+                        + blocks * QrVersion.ecCodewordsPerBlock(version, level));
+            }
+        }
+    }
+
+    @Test
+    public void dataModules_holdEveryCodewordAndTheRemainderBits() {
+        int[] remainderBits = { 0, 7, 7, 7, 7, 7, 0, 0, 0, 0 };
+        for (int version = 1; version <= QrVersion.MAX_VERSION; version++) {
+            int dimension = QrVersion.dimension(version);
+            int data = 0;
+            for (int y = 0; y < dimension; y++) {
+                for (int x = 0; x < dimension; x++) {
+                    if (!QrVersion.isFunction(version, x, y))
+                        data++;
+                }
+            }
+            assertEquals("version " + version, QrVersion.totalCodewords(version) * 8 + remainderBits[version - 1], data);
+        }
+    }
+
+    @Test
+    public void masks_followTheirFormulas() {
+        assertTrue(QrVersion.isMasked(0, 0, 0));
+        assertFalse(QrVersion.isMasked(0, 1, 0));
+        assertTrue(QrVersion.isMasked(1, 5, 2));
+        assertFalse(QrVersion.isMasked(1, 2, 5));
+        assertTrue(QrVersion.isMasked(2, 3, 1));
+        assertFalse(QrVersion.isMasked(2, 1, 3));
+        assertTrue(QrVersion.isMasked(3, 1, 2));
+        // Row 2, column 3: (1 + 1) % 2
+        assertTrue(QrVersion.isMasked(4, 3, 2));
+        assertFalse(QrVersion.isMasked(4, 2, 3));
+        assertTrue(QrVersion.isMasked(5, 6, 1));
+        assertFalse(QrVersion.isMasked(5, 1, 1));
+        assertTrue(QrVersion.isMasked(6, 3, 2));
+        assertFalse(QrVersion.isMasked(6, 2, 2));
+        assertTrue(QrVersion.isMasked(7, 0, 0));
+    }
+}
@@ -0,0 +1,112 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SharpestFrameSelectorTest {
+    private final List<String> mRecycled = new ArrayList<String>();
+    private final List<String> mSelected = new ArrayList<String>();
+    private double mSelectedScore;
+
+    private SharpestFrameSelector<String> newSelector(int frames) {
+        return new SharpestFrameSelector<String>(frames, new ZslRingBuffer.Recycler<String>() {
+            @Override
+            public void recycle(String frame) {
+                mRecycled.add(frame);
+            }
+        }, new SharpestFrameSelector.Listener<String>() {
+            @Override
+            public void onSelected(String frame, long timestamp, double score) {
+                mSelected.add(frame);
+                mSelectedScore = score;
+            }
+        });
+    }
+
+    @Test
+    public void sharpestFrame_isSelected() {
+        SharpestFrameSelector<String> selector = newSelector(3);
+        selector.addFrame(10, "a");
+        selector.addScore(20, 5);
+        selector.addScore(10, 3);
+        selector.addFrame(30, "c");
+        selector.addFrame(20, "b");
+        assertTrue(mSelected.isEmpty());
+
+        selector.addScore(30, 4);
+        assertEquals(Arrays.asList("b"), mSelected);
+        assertEquals(5, mSelectedScore, 0);
+        assertEquals(Arrays.asList("a", "c"), mRecycled);
+        assertTrue(selector.isDone());
+    }
+
+    @Test
+    public void worseFrame_isRecycledOnceScored() {
+        SharpestFrameSelector<String> selector = newSelector(4);
+        selector.addFrame(1, "a");
+        selector.addScore(1, 9);
+        selector.addFrame(2, "b");
+        assertTrue(mRecycled.isEmpty());
+
+        selector.addScore(2, 1);
+        assertEquals(Arrays.asList("b"), mRecycled);
+        selector.addScore(3, 10);
+        selector.addFrame(3, "c");
+        assertEquals(Arrays.asList("b", "a"), mRecycled);
+        assertTrue(mSelected.isEmpty());
+    }
+
+    @Test
+    public void failedFrames_areCountedOff() {
+        SharpestFrameSelector<String> selector = newSelector(3);
+        selector.frameFailed();
+        selector.addFrame(1, "a");
+        selector.addScore(1, 2);
+        selector.frameFailed();
+        assertEquals(Arrays.asList("a"), mSelected);
+    }
+
+    @Test
+    public void allFailed_selectsNothing() {
+        SharpestFrameSelector<String> selector = newSelector(2);
+        selector.addFrame(1, "a");
+        selector.frameFailed();
+        selector.frameFailed();
+        assertEquals(1, mSelected.size());
+        assertNull(mSelected.get(0));
+        // The frame whose score never came
+        assertEquals(Arrays.asList("a"), mRecycled);
+    }
+
+    @Test
+    public void cancel_recyclesEverythingHeld() {
+        SharpestFrameSelector<String> selector = newSelector(3);
+        selector.addFrame(1, "a");
+        selector.addScore(1, 1);
+        selector.addFrame(2, "b");
+        selector.cancel();
+        assertTrue(mSelected.isEmpty());
+        assertEquals(Arrays.asList("b", "a"), mRecycled);
+
+        // Late halves are recycled too
+        selector.addFrame(3, "c");
+        selector.addScore(2, 5);
+        assertEquals(Arrays.asList("b", "a", "c"), mRecycled);
+        assertTrue(mSelected.isEmpty());
+    }
+
+    @Test
+    public void framesBeyondTheBurst_areRecycled() {
+        SharpestFrameSelector<String> selector = newSelector(1);
+        selector.addScore(1, 1);
+        selector.addFrame(2, "extra");
+        assertEquals(Arrays.asList("extra"), mRecycled);
+        selector.addFrame(1, "a");
+        assertEquals(Arrays.asList("a"), mSelected);
+    }
+}
@@ -0,0 +1,95 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures scoring a burst of 8 frames, as {@link Camera2BasicFragment} does for each
+ * best-of-burst picture, at the sizes the score stream may have. The whole burst has to score
+ * within one frame interval at 30 fps, 33 ms, to add no visible latency.
+ *
+ * The full-frame, every-pixel Laplacian is the baseline for the centred region sampled at every
+ * second pixel, on one thread and then on every core.
+ */
+public class SharpnessScorerBenchmarkTest {
+    private static final int BURST = 8;
+    private static final int[][] SIZES = { { 640, 360 }, { 1280, 720 }, { 1920, 1080 } };
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static int iterations(int width) {
+        return Math.max(3, MicroBenchmark.ITERATIONS / 2000 * 640 / width);
+    }
+
+    // Frames that blur more and more, like a burst taken while the head turns
+    private static byte[][] burst(int width, int height) {
+        byte[] sharp = SharpnessScorerTest.texture(width, height, width, width);
+        byte[][] frames = new byte[BURST][];
+        for (int i = 0; i < BURST; i++)
+            frames[i] = i == 0 ? sharp : SharpnessScorerTest.blur(sharp, width, height, width, i);
+        return frames;
+    }
+
+    /**
+     * Scores every frame of the burst and returns the index of the sharpest.
+     */
+    private static final class ScoreBurst implements MicroBenchmark.Body {
+        private final SharpnessScorer mScorer;
+        private final byte[][] mFrames;
+        private final int mWidth;
+        private final int mHeight;
+
+        ScoreBurst(SharpnessScorer scorer, byte[][] frames, int width, int height) {
+            mScorer = scorer;
+            mFrames = frames;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public Object run(int iteration) {
+            int best = 0;
+            double bestScore = -1;
+            for (int i = 0; i < mFrames.length; i++) {
+                double score = mScorer.score(mFrames[i], mWidth, mHeight, mWidth);
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+    }
+
+    @Test
+    public void burstOfEight() {
+        SharpnessScorer full = new SharpnessScorer(1);
+        full.setSampling(1, 1);
+        SharpnessScorer single = new SharpnessScorer(1);
+        SharpnessScorer parallel = new SharpnessScorer(THREADS);
+        try {
+            for (int[] size : SIZES) {
+                int width = size[0];
+                int height = size[1];
+                byte[][] frames = burst(width, height);
+                String name = "burst of " + BURST + " " + width + "x" + height;
+
+                MicroBenchmark.compare(name + " full / region", iterations(width),
+                        new ScoreBurst(full, frames, width, height), new ScoreBurst(single, frames, width, height));
+                double nanos = MicroBenchmark.measure(name + " region, " + THREADS + " threads", iterations(width),
+                        new ScoreBurst(parallel, frames, width, height));
+                System.out.println(String.format(Locale.US, "%-40s %10.2f frame intervals", name, nanos / 33333333.0));
+
+                // Whatever the sampling, the frame that was not blurred wins
+                assertEquals(0, new ScoreBurst(full, frames, width, height).run(0));
+                assertEquals(0, new ScoreBurst(parallel, frames, width, height).run(0));
+            }
+        } finally {
+            full.shutdown();
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SharpnessScorerTest {
+    private final SharpnessScorer mScorer = new SharpnessScorer(1);
+
+    @After
+    public void tearDown() {
+        mScorer.shutdown();
+    }
+
+    // Random texture, as a textured scene in focus
+    static byte[] texture(int width, int height, int rowStride, long seed) {
+        Random random = new Random(seed);
+        byte[] luma = new byte[rowStride * height];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++)
+                luma[row * rowStride + col] = (byte) random.nextInt(256);
+        }
+        return luma;
+    }
+
+    // Horizontal box blur over 2 * radius + 1 pixels, as motion blur while turning the head
+    static byte[] blur(byte[] luma, int width, int height, int rowStride, int radius) {
+        byte[] out = new byte[luma.length];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int sum = 0;
+                int count = 0;
+                for (int x = Math.max(0, col - radius); x <= Math.min(width - 1, col + radius); x++) {
+                    sum += luma[row * rowStride + x] & 0xFF;
+                    count++;
+                }
+                out[row * rowStride + col] = (byte) (sum / count);
+            }
+        }
+        return out;
+    }
+
+    // The variance of the Laplacian, straight from its definition
+    private static double reference(byte[] luma, int rowStride, int left, int right, int top, int bottom, int step) {
+        double sum = 0;
+        double sumOfSquares = 0;
+        int count = 0;
+        for (int y = top; y < bottom; y += step) {
+            for (int x = left; x < right; x += step) {
+                int p = y * rowStride + x;
+                double laplacian = 4 * (luma[p] & 0xFF) - (luma[p - 1] & 0xFF) - (luma[p + 1] & 0xFF)
+                        - (luma[p - rowStride] & 0xFF) - (luma[p + rowStride] & 0xFF);
+                sum += laplacian;
+                sumOfSquares += laplacian * laplacian;
+                count++;
+            }
+        }
+        double mean = sum / count;
+        return sumOfSquares / count - mean * mean;
+    }
+
+    @Test
+    public void flatFrame_scoresZero() {
+        byte[] luma = new byte[64 * 48];
+        Arrays.fill(luma, (byte) 200);
+        assertEquals(0, mScorer.score(luma, 64, 48, 64), 0);
+    }
+
+    @Test
+    public void blur_lowersTheScore() {
+        byte[] sharp = texture(160, 120, 160, 1);
+        double previous = mScorer.score(sharp, 160, 120, 160);
+        for (int radius = 1; radius <= 4; radius++) {
+            double score = mScorer.score(blur(sharp, 160, 120, 160, radius), 160, 120, 160);
+            assertTrue("radius " + radius, score < previous);
+            previous = score;
+        }
+    }
+
+    @Test
+    public void score_matchesTheDefinition() {
+        byte[] luma = texture(101, 77, 104, 2);
+        // Region of half the size, around the centre, every second pixel
+        assertEquals(reference(luma, 104, 25, 76, 19, 58, 2), mScorer.score(luma, 101, 77, 104), 1e-9);
+
+        mScorer.setSampling(1, 1);
+        assertEquals(reference(luma, 104, 1, 100, 1, 76, 1), mScorer.score(luma, 101, 77, 104), 1e-9);
+    }
+
+    @Test
+    public void region_ignoresTheBorder() {
+        byte[] luma = texture(80, 60, 80, 3);
+        double score = mScorer.score(luma, 80, 60, 80);
+        // Only the outer quarter on each side changes
+        for (int row = 0; row < 60; row++) {
+            for (int col = 0; col < 80; col++) {
+                if (row < 14 || row >= 46 || col < 19 || col >= 61)
+                    luma[row * 80 + col] = 0;
+            }
+        }
+        assertEquals(score, mScorer.score(luma, 80, 60, 80), 0);
+    }
+
+    @Test
+    public void rowStride_doesNotChangeTheScore() {
+        byte[] packed = texture(64, 48, 64, 4);
+        byte[] padded = new byte[96 * 48];
+        for (int row = 0; row < 48; row++)
+            System.arraycopy(packed, row * 64, padded, row * 96, 64);
+        assertEquals(mScorer.score(packed, 64, 48, 64), mScorer.score(padded, 64, 48, 96), 0);
+    }
+
+    @Test
+    public void threads_giveTheSameScore() {
+        byte[] luma = texture(321, 241, 336, 5);
+        SharpnessScorer parallel = new SharpnessScorer(4);
+        try {
+            assertEquals(mScorer.score(luma, 321, 241, 336), parallel.score(luma, 321, 241, 336), 0);
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void yuvFrame_isScoredOnItsLuma() {
+        YuvFrame frame = YuvConverterTest.random(40, 30, 6).planar(48, 24);
+        assertEquals(mScorer.score(frame.getY(), 40, 30, 48), mScorer.score(frame), 0);
+    }
+
+    @Test
+    public void tinyFrame_scoresZero() {
+        assertEquals(0, mScorer.score(new byte[] { 0, 127, (byte) 255, 3 }, 2, 2, 2), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyRegion_isRejected() {
+        mScorer.setSampling(0, 2);
+    }
+}
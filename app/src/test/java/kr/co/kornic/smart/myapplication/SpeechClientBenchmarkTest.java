@@ -0,0 +1,218 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures {@link VuzixSpeechClient} against a {@link FakeVocabularyStore}: loading the
+ * vocabulary, inserting phrases, deleting all of them and defining intents, at 10, 100 and 1000
+ * phrases, each edit one call at a time and then in one batch.
+ *
+ * Without {@code -Dbenchmark.providerLatencyMicros} the provider answers at once, so the timings
+ * are the client's own cost; set it to a round-trip measured on the glasses to see what the IPC
+ * adds. The provider calls each run makes are printed as well.
+ */
+public class SpeechClientBenchmarkTest {
+    private static final String PACKAGE = "kr.co.kornic.smart.myapplication";
+    private static final int CLIENT_ID = 4321;
+    private static final long LATENCY_NANOS = Long.getLong("benchmark.providerLatencyMicros", 0) * 1000;
+    private static final int[] SIZES = { 10, 100, 1000 };
+
+    private FakeVocabularyStore mLastStore;
+
+    private FakeVocabularyStore newStore(int seeded) {
+        FakeVocabularyStore store = new FakeVocabularyStore();
+        for (int i = 0; i < seeded; i++)
+            store.seed(PACKAGE, CLIENT_ID, phrase(i), null);
+        store.setCallLatencyNanos(LATENCY_NANOS);
+        mLastStore = store;
+        return store;
+    }
+
+    private static String phrase(int i) {
+        return "phrase " + i;
+    }
+
+    private static int iterations(int size) {
+        return Math.max(3, MicroBenchmark.ITERATIONS / (size * 20));
+    }
+
+    private void printCalls(String name) {
+        System.out.println(String.format(Locale.US, "%-40s %10d calls/op", name, mLastStore.getCallCount()));
+    }
+
+    /**
+     * Opens a client on a vocabulary of {@code size} phrases.
+     */
+    private final class Load implements MicroBenchmark.Body {
+        private final int mSize;
+
+        Load(int size) {
+            mSize = size;
+        }
+
+        @Override
+        public Object run(int iteration) {
+            try {
+                VuzixSpeechClient client = new VuzixSpeechClient(newStore(mSize), PACKAGE, CLIENT_ID, true, null);
+                int loaded = client.getPhrases().size();
+                client.close();
+                assertEquals(mSize, loaded);
+                return loaded;
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    @Test
+    public void load() {
+        for (int size : SIZES) {
+            MicroBenchmark.measure("load " + size, iterations(size), new Load(size));
+            new Load(size).run(0);
+            printCalls("load " + size);
+        }
+    }
+
+    /**
+     * Inserts {@code size} phrases into an empty vocabulary.
+     */
+    private final class Insert implements MicroBenchmark.Body {
+        private final int mSize;
+        private final boolean mBatch;
+
+        Insert(int size, boolean batch) {
+            mSize = size;
+            mBatch = batch;
+        }
+
+        @Override
+        public Object run(int iteration) {
+            try {
+                FakeVocabularyStore store = newStore(0);
+                VuzixSpeechClient client = new VuzixSpeechClient(store, PACKAGE, CLIENT_ID, true, null);
+                if (mBatch)
+                    client.beginBatch();
+                for (int i = 0; i < mSize; i++)
+                    client.insertPhrase(phrase(i), "p" + i);
+                if (mBatch)
+                    assertTrue(client.commitBatch());
+                client.close();
+                return store;
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    @Test
+    public void bulkInsert() {
+        for (int size : SIZES) {
+            MicroBenchmark.compare("insert " + size + " one by one / batch", iterations(size),
+                    new Insert(size, false), new Insert(size, true));
+            new Insert(size, false).run(0);
+            assertEquals(size, mLastStore.phrasesOf(PACKAGE, CLIENT_ID).size());
+            printCalls("insert " + size + " one by one");
+            new Insert(size, true).run(0);
+            assertEquals(size, mLastStore.phrasesOf(PACKAGE, CLIENT_ID).size());
+            printCalls("insert " + size + " batch");
+        }
+    }
+
+    /**
+     * Deletes all {@code size} phrases, lowest index first, so every delete shifts all the others.
+     */
+    private final class DeleteStorm implements MicroBenchmark.Body {
+        private final int mSize;
+        private final boolean mBatch;
+
+        DeleteStorm(int size, boolean batch) {
+            mSize = size;
+            mBatch = batch;
+        }
+
+        @Override
+        public Object run(int iteration) {
+            try {
+                FakeVocabularyStore store = newStore(mSize);
+                VuzixSpeechClient client = new VuzixSpeechClient(store, PACKAGE, CLIENT_ID, true, null);
+                if (mBatch)
+                    client.beginBatch();
+                for (int i = 0; i < mSize; i++)
+                    client.deletePhrase(phrase(i));
+                if (mBatch)
+                    assertTrue(client.commitBatch());
+                client.close();
+                return store;
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    @Test
+    public void deleteStorm() {
+        for (int size : SIZES) {
+            MicroBenchmark.compare("delete " + size + " one by one / batch", iterations(size),
+                    new DeleteStorm(size, false), new DeleteStorm(size, true));
+            new DeleteStorm(size, false).run(0);
+            assertTrue(mLastStore.phrasesOf(PACKAGE, CLIENT_ID).isEmpty());
+            printCalls("delete " + size + " one by one");
+            new DeleteStorm(size, true).run(0);
+            assertTrue(mLastStore.phrasesOf(PACKAGE, CLIENT_ID).isEmpty());
+            printCalls("delete " + size + " batch");
+        }
+    }
+
+    /**
+     * Defines {@code size} intents and a phrase for each.
+     */
+    private final class DefineIntents implements MicroBenchmark.Body {
+        private final int mSize;
+        private final boolean mBatch;
+
+        DefineIntents(int size, boolean batch) {
+            mSize = size;
+            mBatch = batch;
+        }
+
+        @Override
+        public Object run(int iteration) {
+            try {
+                FakeVocabularyStore store = newStore(0);
+                VuzixSpeechClient client = new VuzixSpeechClient(store, PACKAGE, CLIENT_ID, true, null);
+                if (mBatch)
+                    client.beginBatch();
+                for (int i = 0; i < mSize; i++) {
+                    String label = "label" + i;
+                    client.defineIntent(label, new IntentSpec(VuzixSpeechClient.ACTION_VOICE_COMMAND)
+                            .putExtra("command", Integer.toString(i)));
+                    client.insertIntentPhrase(phrase(i), label);
+                }
+                if (mBatch)
+                    assertTrue(client.commitBatch());
+                client.close();
+                return store;
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    @Test
+    public void intentDefinition() {
+        for (int size : SIZES) {
+            MicroBenchmark.compare("intents " + size + " one by one / batch", iterations(size),
+                    new DefineIntents(size, false), new DefineIntents(size, true));
+            new DefineIntents(size, false).run(0);
+            assertEquals(size, mLastStore.intentsOf(PACKAGE, CLIENT_ID).size());
+            printCalls("intents " + size + " one by one");
+            new DefineIntents(size, true).run(0);
+            assertEquals(size, mLastStore.intentsOf(PACKAGE, CLIENT_ID).size());
+            printCalls("intents " + size + " batch");
+        }
+    }
+}
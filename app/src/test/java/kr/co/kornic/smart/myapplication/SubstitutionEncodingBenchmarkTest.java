@@ -0,0 +1,112 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares {@link PhraseSubstitution} and {@link IntentSpec} with the string concatenation
+ * {@link VuzixSpeechClient} used before, after checking that both produce the same text.
+ */
+public class SubstitutionEncodingBenchmarkTest {
+    private static final List<String> CATEGORIES = new ArrayList<String>();
+    private static final Map<String, Object> EXTRAS = new LinkedHashMap<String, Object>();
+
+    static {
+        CATEGORIES.add("android.intent.category.DEFAULT");
+        EXTRAS.put("click", true);
+        EXTRAS.put("info", 97);
+        EXTRAS.put("hello", "hello");
+    }
+
+    // The encoders as they were in VuzixSpeechClient
+
+    private static String legacyKeycode(int keyevent, int repeatIntervalMs, String params) {
+        String substitution = new String("s:&k" + keyevent);
+        if (repeatIntervalMs > 0) {
+            substitution += ";r:" + repeatIntervalMs;
+        }
+        if (params != null && params.length() > 0) {
+            substitution += ";" + params;
+        }
+        return substitution;
+    }
+
+    private static String legacyIntent(String action, List<String> categories, Map<String, Object> extras) {
+        String ret = new String("action:" + action);
+        Iterator<String> iterator = categories.iterator();
+        while (iterator.hasNext()) {
+            ret = ret.concat(";category:" + iterator.next());
+        }
+        Iterator<String> keys = extras.keySet().iterator();
+        while (keys.hasNext()) {
+            String bkey = keys.next();
+            ret = ret.concat(";" + bkey + ":" + extras.get(bkey).toString());
+        }
+        return ret;
+    }
+
+    private static IntentSpec spec(String action) {
+        IntentSpec spec = new IntentSpec(action);
+        for (String category : CATEGORIES)
+            spec.addCategory(category);
+        for (Map.Entry<String, Object> extra : EXTRAS.entrySet())
+            spec.putExtra(extra.getKey(), extra.getValue().toString());
+        return spec;
+    }
+
+    @Test
+    public void keycode_sameTextFasterBuild() {
+        assertEquals(legacyKeycode(66, 250, "x:1"), PhraseSubstitution.keycode(66, 250, "x:1").encode());
+
+        final StringBuilder buffer = new StringBuilder(64);
+        MicroBenchmark.compare("keycode substitution", new MicroBenchmark.Body() {
+            @Override
+            public Object run(int iteration) {
+                return legacyKeycode(iteration & 255, 250, "x:1");
+            }
+        }, new MicroBenchmark.Body() {
+            @Override
+            public Object run(int iteration) {
+                buffer.setLength(0);
+                return PhraseSubstitution.keycode(iteration & 255, 250, "x:1").encodeTo(buffer).toString();
+            }
+        });
+    }
+
+    @Test
+    public void intent_sameTextFasterBuild() {
+        assertEquals(legacyIntent("com.vuzix.action.VOICE_COMMAND", CATEGORIES, EXTRAS),
+                spec("com.vuzix.action.VOICE_COMMAND").encode());
+
+        final StringBuilder buffer = new StringBuilder(128);
+        MicroBenchmark.compare("intent spec", new MicroBenchmark.Body() {
+            @Override
+            public Object run(int iteration) {
+                return legacyIntent("com.vuzix.action.VOICE_COMMAND", CATEGORIES, EXTRAS);
+            }
+        }, new MicroBenchmark.Body() {
+            @Override
+            public Object run(int iteration) {
+                buffer.setLength(0);
+                return spec("com.vuzix.action.VOICE_COMMAND").encodeTo(buffer).toString();
+            }
+        });
+    }
+
+    @Test
+    public void parse_keycode() {
+        MicroBenchmark.measure("parse keycode substitution", new MicroBenchmark.Body() {
+            @Override
+            public Object run(int iteration) {
+                return PhraseSubstitution.parse("s:&k66;r:250;x:1").getKeycode();
+            }
+        });
+    }
+}
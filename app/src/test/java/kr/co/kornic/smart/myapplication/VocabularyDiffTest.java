@@ -0,0 +1,84 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class VocabularyDiffTest {
+    private static PhraseIndexMap loaded() {
+        PhraseIndexMap current = new PhraseIndexMap();
+        current.putAll(new String[] { "go back", "hello", "photo", "okay" }, new int[] { 0, 1, 2, 3 },
+                new String[] { "", "", "s:snapit", "s:&K_ENTER" });
+        return current;
+    }
+
+    private static Map<String, String> desired(String... phraseParams) {
+        LinkedHashMap<String, String> desired = new LinkedHashMap<String, String>();
+        for (int i = 0; i < phraseParams.length; i += 2)
+            desired.put(phraseParams[i], phraseParams[i + 1]);
+        return desired;
+    }
+
+    private static Set<String> labels(String... labels) {
+        return new HashSet<String>(Arrays.asList(labels));
+    }
+
+    @Test
+    public void unchangedVocabulary_isEmpty() {
+        VocabularyDiff diff = VocabularyDiff.compute(loaded(),
+                desired("okay", "s:&K_ENTER", "hello", "", "photo", "s:snapit", "go back", ""),
+                labels("picture"), labels("picture"));
+
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void deletes_comeHighestIndexFirst() {
+        VocabularyDiff diff = VocabularyDiff.compute(loaded(), desired("photo", "s:snapit"),
+                labels(), labels());
+
+        assertEquals(Arrays.asList("okay", "hello", "go back"), diff.getDeleted());
+        assertTrue(diff.getUpdated().isEmpty());
+        assertTrue(diff.getInserted().isEmpty());
+    }
+
+    @Test
+    public void changedParams_update_newPhrases_insertInOrder() {
+        VocabularyDiff diff = VocabularyDiff.compute(loaded(),
+                desired("go back", "", "hello", "", "photo", "s:cheese", "okay", "s:&K_ENTER",
+                        "zebra", "", "apple", "s:&ipicture"),
+                labels(), labels());
+
+        assertTrue(diff.getDeleted().isEmpty());
+        assertEquals(Collections.singletonMap("photo", "s:cheese"), diff.getUpdated());
+        assertEquals(Arrays.asList("zebra", "apple"), Arrays.asList(diff.getInserted().keySet().toArray()));
+        assertEquals("s:&ipicture", diff.getInserted().get("apple"));
+    }
+
+    @Test
+    public void unknownParams_alwaysUpdate() {
+        PhraseIndexMap current = new PhraseIndexMap();
+        current.putAll(new String[] { "hello" }, new int[] { 0 }, null);
+
+        VocabularyDiff diff = VocabularyDiff.compute(current, desired("hello", null), labels(), labels());
+
+        assertEquals(Collections.singletonMap("hello", ""), diff.getUpdated());
+    }
+
+    @Test
+    public void onlyMissingIntents_areDefined() {
+        VocabularyDiff diff = VocabularyDiff.compute(loaded(),
+                desired("go back", "", "hello", "", "photo", "s:snapit", "okay", "s:&K_ENTER"),
+                labels("picture"), labels("picture", "getinfo"));
+
+        assertEquals(Collections.singletonList("getinfo"), diff.getDefinedIntents());
+        assertFalse(diff.isEmpty());
+    }
+}
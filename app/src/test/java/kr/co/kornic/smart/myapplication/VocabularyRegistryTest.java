@@ -0,0 +1,119 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VocabularyRegistryTest {
+    @Test
+    public void sameKey_sharesOneSlot() {
+        VocabularyRegistry registry = VocabularyRegistry.getInstance();
+        int before = registry.size();
+
+        VocabularyRegistry.Slot first = registry.acquire("kr.co.kornic", 7);
+        VocabularyRegistry.Slot second = registry.acquire("kr.co.kornic", 7);
+        VocabularyRegistry.Slot other = registry.acquire("kr.co.kornic", 8);
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(before + 2, registry.size());
+
+        registry.release(first);
+        assertEquals(before + 2, registry.size());
+        registry.release(second);
+        registry.release(other);
+        assertEquals(before, registry.size());
+    }
+
+    @Test
+    public void releasedSlot_startsEmptyNextTime() {
+        VocabularyRegistry registry = VocabularyRegistry.getInstance();
+        VocabularyRegistry.Slot slot = registry.acquire("kr.co.kornic", 9);
+        slot.set(new VocabularyRegistry.Vocabulary(new PhraseIndexMap(), null));
+        registry.release(slot);
+
+        VocabularyRegistry.Slot again = registry.acquire("kr.co.kornic", 9);
+        assertNull(again.get());
+        registry.release(again);
+    }
+
+    @Test
+    public void slot_isSharedWhileTwoClientsHoldIt() {
+        VocabularyRegistry registry = VocabularyRegistry.getInstance();
+        VocabularyRegistry.Slot slot = registry.acquire("kr.co.kornic", 13);
+        assertFalse(registry.isShared(slot));
+
+        registry.acquire("kr.co.kornic", 13);
+        assertTrue(registry.isShared(slot));
+        registry.release(slot);
+        assertFalse(registry.isShared(slot));
+        registry.release(slot);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releaseTwice_throws() {
+        VocabularyRegistry registry = VocabularyRegistry.getInstance();
+        VocabularyRegistry.Slot slot = registry.acquire("kr.co.kornic", 10);
+        registry.release(slot);
+        registry.release(slot);
+    }
+
+    @Test
+    public void readersKeepTheirVersion_whileWritersPublish() {
+        VocabularyRegistry registry = VocabularyRegistry.getInstance();
+        VocabularyRegistry.Slot slot = registry.acquire("kr.co.kornic", 11);
+        PhraseIndexMap phrases = new PhraseIndexMap();
+        phrases.put("hello", 0, "");
+        slot.set(new VocabularyRegistry.Vocabulary(phrases, null));
+
+        VocabularyRegistry.Vocabulary seen = slot.get();
+        PhraseIndexMap next = seen.phrases.copy();
+        next.remove("hello");
+        slot.set(seen.withPhrases(next));
+
+        assertTrue(seen.phrases.contains("hello"));
+        assertFalse(slot.get().phrases.contains("hello"));
+        registry.release(slot);
+    }
+
+    @Test
+    public void concurrentWriters_loseNoEdit() throws Exception {
+        VocabularyRegistry registry = VocabularyRegistry.getInstance();
+        final VocabularyRegistry.Slot slot = registry.acquire("kr.co.kornic", 12);
+        slot.set(new VocabularyRegistry.Vocabulary(new PhraseIndexMap(), null));
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int writer = t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 200; i++) {
+                        synchronized (slot) {
+                            VocabularyRegistry.Vocabulary current = slot.get();
+                            PhraseIndexMap next = current.phrases.copy();
+                            next.put("w" + writer + " " + i, next.size(), "");
+                            slot.set(current.withPhrases(next));
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        PhraseIndexMap result = slot.get().phrases;
+        assertEquals(800, result.size());
+        boolean[] seen = new boolean[800];
+        for (String phrase : result.phrases())
+            seen[result.indexOf(phrase)] = true;
+        for (boolean index : seen)
+            assertTrue(index);
+        registry.release(slot);
+    }
+}
@@ -0,0 +1,95 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class VocabularySnapshotTest {
+    private static final long BOOT = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static VocabularySnapshot sample() {
+        return new VocabularySnapshot(new String[] { "hello", "photo", "한글" }, new int[] { 0, 4, 7 },
+                new String[] { "", "s:snapit", null }, new String[] { "picture" }, new String[] { null });
+    }
+
+    @Test
+    public void roundTrip_keepsEverything() throws Exception {
+        File file = new File(folder.getRoot(), "v.snapshot");
+        sample().write(file, "kr.co.kornic", 42, BOOT);
+
+        VocabularySnapshot read = VocabularySnapshot.read(file, "kr.co.kornic", 42, BOOT + 3);
+
+        assertNotNull(read);
+        assertArrayEquals(new String[] { "hello", "photo", "한글" }, read.phrases);
+        assertArrayEquals(new int[] { 0, 4, 7 }, read.indexes);
+        assertArrayEquals(new String[] { "", "s:snapit", null }, read.params);
+        assertArrayEquals(new String[] { "picture" }, read.intentLabels);
+        assertArrayEquals(new String[] { null }, read.intents);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void intentMapNeverLoaded_staysNull() throws Exception {
+        File file = new File(folder.getRoot(), "v.snapshot");
+        new VocabularySnapshot(new String[0], new int[0], new String[0], null, null).write(file, "p", 1, BOOT);
+
+        VocabularySnapshot read = VocabularySnapshot.read(file, "p", 1, BOOT);
+
+        assertEquals(0, read.phrases.length);
+        assertNull(read.intentLabels);
+    }
+
+    @Test
+    public void otherPackageClientOrBoot_readsAsMissing() throws Exception {
+        File file = new File(folder.getRoot(), "v.snapshot");
+        sample().write(file, "kr.co.kornic", 42, BOOT);
+
+        assertNull(VocabularySnapshot.read(file, "kr.co.other", 42, BOOT));
+        assertNull(VocabularySnapshot.read(file, "kr.co.kornic", 43, BOOT));
+        assertNull(VocabularySnapshot.read(file, "kr.co.kornic", 42, BOOT + 60000));
+        assertNull(VocabularySnapshot.read(new File(folder.getRoot(), "missing"), "kr.co.kornic", 42, BOOT));
+    }
+
+    @Test
+    public void truncatedOrGarbage_readsAsMissing() throws Exception {
+        File file = new File(folder.getRoot(), "v.snapshot");
+        sample().write(file, "kr.co.kornic", 42, BOOT);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+        assertNull(VocabularySnapshot.read(file, "kr.co.kornic", 42, BOOT));
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+        out.close();
+        assertNull(VocabularySnapshot.read(file, "kr.co.kornic", 42, BOOT));
+    }
+
+    @Test
+    public void deleteStale_removesOnlyOlderSnapshotsOfThePackage() throws Exception {
+        File keep = new File(folder.getRoot(), "vocabulary-kr.co.kornic-MainActivity.snapshot");
+        File before = new File(folder.getRoot(), "vocabulary-kr.co.kornic-1234567.snapshot");
+        File current = new File(folder.getRoot(), "vocabulary-kr.co.kornic-Other.snapshot");
+        File otherPackage = new File(folder.getRoot(), "vocabulary-kr.co.other-1234567.snapshot");
+        for (File file : new File[] { keep, before, current, otherPackage }) {
+            sample().write(file, "kr.co.kornic", 42, BOOT);
+            assertTrue(file.setLastModified(BOOT - 3600000));
+        }
+        assertTrue(current.setLastModified(BOOT + 1000));
+
+        assertEquals(1, VocabularySnapshot.deleteStale(keep, "vocabulary-kr.co.kornic-", BOOT));
+        assertTrue(keep.exists());
+        assertFalse(before.exists());
+        assertTrue(current.exists());
+        assertTrue(otherPackage.exists());
+    }
+}
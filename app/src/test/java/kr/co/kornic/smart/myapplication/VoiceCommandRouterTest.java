@@ -0,0 +1,166 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class VoiceCommandRouterTest {
+    /**
+     * Records what each executor was given, to run it later.
+     */
+    private static final class QueueExecutor implements Executor {
+        final List<Runnable> queued = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            queued.add(command);
+        }
+
+        void runAll() {
+            for (Runnable r : queued)
+                r.run();
+            queued.clear();
+        }
+    }
+
+    private final QueueExecutor ui = new QueueExecutor();
+    private final QueueExecutor background = new QueueExecutor();
+    private final List<String> handled = new ArrayList<String>();
+    private final List<VoiceCommandRouter.VoiceCommand> commands = new ArrayList<VoiceCommandRouter.VoiceCommand>();
+
+    private VoiceCommandRouter.CommandHandler record(final String name) {
+        return new VoiceCommandRouter.CommandHandler() {
+            @Override
+            public void onCommand(VoiceCommandRouter.VoiceCommand command) {
+                handled.add(name + ":" + command.getMatch());
+                commands.add(command);
+            }
+        };
+    }
+
+    private static final long MS = 1000000L;
+
+    private VoiceCommandRouter router() {
+        return new VoiceCommandRouter.Builder(ui, background)
+                .setDebounceMillis(500)
+                .onSubstitution(PhraseSubstitution.text("snapit"), VoiceCommandRouter.Dispatch.BACKGROUND, record("capture"))
+                .onPhrase("do_dialog", VoiceCommandRouter.Dispatch.UI, record("dialog"))
+                .onIntent("getinfo", new IntentSpec("A").putExtra("info", "97"), VoiceCommandRouter.Dispatch.UI, record("info"))
+                .build();
+    }
+
+    private static Map<String, String> extras(String key, String value) {
+        Map<String, String> extras = new HashMap<String, String>();
+        extras.put(key, value);
+        return extras;
+    }
+
+    @Test
+    public void phrase_runsOnItsExecutorOnly() {
+        VoiceCommandRouter router = router();
+
+        assertTrue(router.dispatch("snapit", null, 0));
+        assertTrue(handled.isEmpty());
+        assertTrue(ui.queued.isEmpty());
+        background.runAll();
+        assertEquals(Collections.singletonList("capture:snapit"), handled);
+
+        handled.clear();
+        assertTrue(router.dispatch("do_dialog", null, 0));
+        assertTrue(background.queued.isEmpty());
+        ui.runAll();
+        assertEquals(Collections.singletonList("dialog:do_dialog"), handled);
+    }
+
+    @Test
+    public void intent_matchesByItsExtra() {
+        VoiceCommandRouter router = router();
+
+        assertFalse(router.dispatch(null, extras("info", "96"), 0));
+        assertTrue(router.dispatch(null, extras("info", "97"), 0));
+        ui.runAll();
+        assertEquals(Collections.singletonList("info:info=97"), handled);
+    }
+
+    @Test
+    public void unknownCommand_isIgnored() {
+        VoiceCommandRouter router = router();
+
+        assertFalse(router.dispatch("hello", extras("hello", "hello"), 0));
+        assertFalse(router.dispatch(null, null, 0));
+        assertTrue(ui.queued.isEmpty());
+        assertTrue(background.queued.isEmpty());
+        assertEquals(2, router.getIgnoredCount());
+    }
+
+    @Test
+    public void duplicates_areDebouncedPerHandler() {
+        VoiceCommandRouter router = router();
+
+        assertTrue(router.dispatch("snapit", null, 1000 * MS));
+        assertFalse(router.dispatch("snapit", null, 1200 * MS));
+        assertTrue(router.dispatch("do_dialog", null, 1300 * MS));
+        assertTrue(router.dispatch("snapit", null, 1500 * MS));
+        assertEquals(2, background.queued.size());
+        assertEquals(1, ui.queued.size());
+        assertEquals(1, router.getDebouncedCount());
+        assertEquals(0, router.getIgnoredCount());
+    }
+
+    @Test
+    public void finish_recordsLatencyFromReceiptPerRoute() {
+        VoiceCommandRouter router = router();
+
+        router.dispatch("snapit", null, 1000 * MS);
+        router.dispatch(null, extras("info", "97"), 1000 * MS);
+        background.runAll();
+        ui.runAll();
+        assertEquals(1000 * MS, commands.get(0).getReceivedNanos());
+
+        commands.get(0).finish(true, 1250 * MS);
+        commands.get(1).finish(true, 1010 * MS);
+
+        LatencyHistogram capture = router.getLatency("snapit");
+        assertEquals(1, capture.getCount());
+        assertTrue(capture.getMax() >= 250 * MS);
+        assertEquals(1, router.getLatency("intent getinfo").getCount());
+        assertEquals(0, router.getLatency("do_dialog").getCount());
+        assertNull(router.getLatency("hello"));
+        assertTrue(router.dump().contains("intent getinfo"));
+    }
+
+    @Test
+    public void finish_countsFailuresOnce() {
+        VoiceCommandRouter router = router();
+
+        router.dispatch("snapit", null, 0);
+        background.runAll();
+        VoiceCommandRouter.VoiceCommand command = commands.get(0);
+        command.finish(false, 10 * MS);
+        command.finish(true, 20 * MS);
+        command.finish(false, 30 * MS);
+
+        assertEquals(1, router.getFailedCount());
+        assertEquals(0, router.getLatency("snapit").getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateRoute_isRejected() {
+        new VoiceCommandRouter.Builder(ui, background)
+                .onPhrase("snapit", VoiceCommandRouter.Dispatch.UI, record("a"))
+                .onSubstitution(PhraseSubstitution.text("snapit"), VoiceCommandRouter.Dispatch.UI, record("b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keycodeSubstitution_cannotBeRouted() {
+        new VoiceCommandRouter.Builder(ui, background)
+                .onSubstitution(PhraseSubstitution.keycode(66, 0, null), VoiceCommandRouter.Dispatch.UI, record("a"));
+    }
+}
@@ -0,0 +1,178 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class VuzixSpeechClientTest {
+    private static final String PACKAGE = "kr.co.kornic.smart.myapplication";
+    private static final int CLIENT_ID = 1234;
+
+    private final FakeVocabularyStore mStore = new FakeVocabularyStore();
+    private VuzixSpeechClient mClient;
+
+    @Before
+    public void setUp() throws Exception {
+        for (String phrase : new String[] { "a", "b", "c", "d", "e" })
+            mStore.seed(PACKAGE, CLIENT_ID, phrase, null);
+        mClient = new VuzixSpeechClient(mStore, PACKAGE, CLIENT_ID, true, null);
+    }
+
+    @After
+    public void tearDown() {
+        mClient.close();
+    }
+
+    @Test
+    public void open_loadsTheClientsPhrases() {
+        mStore.seed(PACKAGE, CLIENT_ID + 1, "other", null);
+
+        assertEquals(5, mClient.getPhrases().size());
+        assertEquals("", mClient.getPhrases().get("c"));
+        assertEquals(1, mStore.getCallCount());
+    }
+
+    @Test
+    public void deletes_followTheShiftedIndexes() {
+        assertTrue(mClient.deletePhrase("a"));
+        assertTrue(mClient.deletePhrase("c"));
+        assertTrue(mClient.deletePhrase("e"));
+        assertFalse(mClient.deletePhrase("e"));
+
+        assertEquals(Arrays.asList("b", "d"), mStore.phrasesOf(PACKAGE, CLIENT_ID));
+    }
+
+    @Test
+    public void insertAndUpdate_reachTheStore() {
+        mClient.insertPhrase("f", "go");
+        mClient.insertPhrase("b", "back");
+        mClient.deletePhrase("a");
+        mClient.insertPhrase("f", "stop");
+
+        assertEquals(Arrays.asList("b", "c", "d", "e", "f"), mStore.phrasesOf(PACKAGE, CLIENT_ID));
+        assertEquals("s:back", mStore.paramsAt(PACKAGE, CLIENT_ID, 0));
+        assertEquals("s:stop", mStore.paramsAt(PACKAGE, CLIENT_ID, 4));
+    }
+
+    @Test
+    public void batch_isOneCallAndKeepsIndexesInStep() throws Exception {
+        int calls = mStore.getCallCount();
+        mClient.beginBatch();
+        mClient.deletePhrase("b");
+        mClient.deletePhrase("d");
+        mClient.insertPhrase("x");
+        mClient.insertPhrase("y", "why");
+        mClient.deletePhrase("x");
+        mClient.insertPhrase("e", "eh");
+        assertTrue(mClient.commitBatch());
+        assertEquals(calls + 1, mStore.getCallCount());
+        assertEquals(Arrays.asList("a", "c", "e", "y"), mStore.phrasesOf(PACKAGE, CLIENT_ID));
+
+        // The indexes the client keeps must still address the right rows.
+        assertTrue(mClient.deletePhrase("c"));
+        assertTrue(mClient.deletePhrase("y"));
+        assertEquals(Arrays.asList("a", "e"), mStore.phrasesOf(PACKAGE, CLIENT_ID));
+        assertEquals("s:eh", mStore.paramsAt(PACKAGE, CLIENT_ID, 1));
+    }
+
+    @Test
+    public void rejectedBatch_reloadsFromTheStore() throws Exception {
+        mStore.deletePhrase(PACKAGE, CLIENT_ID, 0); // Behind the client's back
+
+        mClient.beginBatch();
+        mClient.deletePhrase("e");
+        assertFalse(mClient.commitBatch());
+
+        assertEquals(4, mClient.getPhrases().size());
+        assertFalse(mClient.getPhrases().containsKey("a"));
+        assertTrue(mClient.deletePhrase("e"));
+        assertEquals(Arrays.asList("b", "c", "d"), mStore.phrasesOf(PACKAGE, CLIENT_ID));
+    }
+
+    @Test
+    public void sharedVocabulary_isCopiedOnWrite() throws Exception {
+        VuzixSpeechClient other = new VuzixSpeechClient(mStore, PACKAGE, CLIENT_ID, true, null);
+        VocabularyRegistry.Slot slot = VocabularyRegistry.getInstance().acquire(PACKAGE, CLIENT_ID);
+        VocabularyRegistry.Vocabulary seen = slot.get();
+
+        assertTrue(mClient.deletePhrase("a"));
+        assertTrue(seen.phrases.contains("a"));
+        assertNotSame(seen, slot.get());
+        assertFalse(other.getPhrases().containsKey("a"));
+
+        VocabularyRegistry.getInstance().release(slot);
+        other.close();
+    }
+
+    @Test
+    public void batchInsertWithoutIndex_reloadsFromTheStore() throws Exception {
+        mStore.setOmitInsertUris(true);
+        mClient.beginBatch();
+        mClient.insertPhrase("x");
+        mClient.insertPhrase("y");
+        assertTrue(mClient.commitBatch());
+        mStore.setOmitInsertUris(false);
+
+        // Both in a batch and on their own, the phrases can be edited again
+        mClient.beginBatch();
+        mClient.deletePhrase("x");
+        mClient.insertPhrase("y", "why");
+        assertTrue(mClient.commitBatch());
+        assertTrue(mClient.deletePhrase("a"));
+        assertEquals(Arrays.asList("b", "c", "d", "e", "y"), mStore.phrasesOf(PACKAGE, CLIENT_ID));
+        assertEquals("s:why", mStore.paramsAt(PACKAGE, CLIENT_ID, 4));
+    }
+
+    @Test
+    public void failedSync_closesTheBatch() throws Exception {
+        Map<String, android.content.Intent> intents = new HashMap<String, android.content.Intent>();
+        intents.put("broken", null);
+        try {
+            mClient.syncVocabulary(Collections.<String, String>emptyMap(), intents);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+
+        assertFalse(mClient.isBatchOpen());
+        mClient.insertPhrase("f");
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f"), mStore.phrasesOf(PACKAGE, CLIENT_ID));
+    }
+
+    @Test
+    public void syncVocabulary_sendsOnlyTheDifference() throws Exception {
+        Map<String, String> desired = new LinkedHashMap<String, String>();
+        desired.put("a", null);
+        desired.put("c", "see");
+        desired.put("z", null);
+
+        VocabularyDiff diff = mClient.syncVocabulary(desired, Collections.<String, android.content.Intent>emptyMap());
+        assertEquals(Arrays.asList("e", "d", "b"), diff.getDeleted());
+        assertEquals(Arrays.asList("a", "c", "z"), mStore.phrasesOf(PACKAGE, CLIENT_ID));
+
+        int calls = mStore.getCallCount();
+        assertTrue(mClient.syncVocabulary(desired, Collections.<String, android.content.Intent>emptyMap()).isEmpty());
+        assertEquals(calls, mStore.getCallCount());
+    }
+
+    @Test
+    public void defineIntent_isStoredOnce() throws Exception {
+        IntentSpec spec = new IntentSpec(VuzixSpeechClient.ACTION_VOICE_COMMAND).putExtra("info", "97");
+
+        assertTrue(mClient.defineIntent("getinfo", spec));
+        assertFalse(mClient.defineIntent("getinfo", spec));
+        assertTrue(mClient.insertIntentPhrase("info", "getinfo"));
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("getinfo", spec.encode());
+        assertEquals(expected, mStore.intentsOf(PACKAGE, CLIENT_ID));
+        assertEquals(VuzixSpeechClient.intentSubstitution("getinfo", null), mStore.paramsAt(PACKAGE, CLIENT_ID, 5));
+    }
+}
@@ -0,0 +1,152 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures {@link YuvConverter} on semi-planar frames at the glasses' preview sizes, against a
+ * per-pixel floating point conversion: on one thread, on every core, as RGB565 and downscaled.
+ */
+public class YuvConverterBenchmarkTest {
+    private static final int[][] SIZES = { { 640, 360 }, { 1280, 720 }, { 1920, 1080 } };
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static int iterations(int width) {
+        return Math.max(3, MicroBenchmark.ITERATIONS / 2000 * 640 / width);
+    }
+
+    private static YuvFrame frame(int width, int height) {
+        return YuvConverterTest.random(width, height, width).semiPlanar(width);
+    }
+
+    /**
+     * The straightforward conversion: the JFIF equations in floating point, pixel by pixel.
+     */
+    private static final class Naive implements MicroBenchmark.Body {
+        private final YuvFrame mFrame;
+        private final int[] mOut;
+
+        Naive(YuvFrame frame) {
+            mFrame = frame;
+            mOut = new int[frame.getWidth() * frame.getHeight()];
+        }
+
+        @Override
+        public Object run(int iteration) {
+            YuvFrame f = mFrame;
+            for (int row = 0; row < f.getHeight(); row++) {
+                for (int col = 0; col < f.getWidth(); col++) {
+                    int uv = (row >> 1) * f.getUvRowStride() + (col >> 1) * f.getUvPixelStride();
+                    mOut[row * f.getWidth() + col] = YuvConverterTest.reference(
+                            f.getY()[row * f.getYRowStride() + col] & 0xFF, f.getU()[uv] & 0xFF, f.getV()[uv] & 0xFF);
+                }
+            }
+            return mOut[iteration % mOut.length];
+        }
+    }
+
+    private static final class Argb implements MicroBenchmark.Body {
+        private final YuvConverter mConverter;
+        private final YuvFrame mFrame;
+        private final int mScale;
+        private final int[] mOut;
+
+        Argb(YuvConverter converter, YuvFrame frame, int scale) {
+            mConverter = converter;
+            mFrame = frame;
+            mScale = scale;
+            mOut = new int[YuvConverter.outputWidth(frame, scale) * YuvConverter.outputHeight(frame, scale)];
+        }
+
+        @Override
+        public Object run(int iteration) {
+            mConverter.toArgb8888(mFrame, mScale, mOut);
+            return mOut[iteration % mOut.length];
+        }
+    }
+
+    private static final class Rgb565 implements MicroBenchmark.Body {
+        private final YuvConverter mConverter;
+        private final YuvFrame mFrame;
+        private final short[] mOut;
+
+        Rgb565(YuvConverter converter, YuvFrame frame) {
+            mConverter = converter;
+            mFrame = frame;
+            mOut = new short[frame.getWidth() * frame.getHeight()];
+        }
+
+        @Override
+        public Object run(int iteration) {
+            mConverter.toRgb565(mFrame, 1, mOut);
+            return mOut[iteration % mOut.length];
+        }
+    }
+
+    @Test
+    public void lookupTables() {
+        YuvConverter converter = new YuvConverter(1);
+        try {
+            for (int[] size : SIZES) {
+                YuvFrame frame = frame(size[0], size[1]);
+                MicroBenchmark.compare("argb " + size[0] + "x" + size[1] + " float / LUT", iterations(size[0]),
+                        new Naive(frame), new Argb(converter, frame, 1));
+            }
+        } finally {
+            converter.shutdown();
+        }
+    }
+
+    @Test
+    public void threads() {
+        YuvConverter single = new YuvConverter(1);
+        YuvConverter parallel = new YuvConverter(THREADS);
+        try {
+            for (int[] size : SIZES) {
+                YuvFrame frame = frame(size[0], size[1]);
+                MicroBenchmark.compare("argb " + size[0] + "x" + size[1] + " 1 / " + THREADS + " threads",
+                        iterations(size[0]), new Argb(single, frame, 1), new Argb(parallel, frame, 1));
+
+                Argb expected = new Argb(single, frame, 1);
+                Argb actual = new Argb(parallel, frame, 1);
+                expected.run(0);
+                actual.run(0);
+                assertArrayEquals(expected.mOut, actual.mOut);
+            }
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void rgb565() {
+        YuvConverter converter = new YuvConverter(THREADS);
+        try {
+            for (int[] size : SIZES) {
+                YuvFrame frame = frame(size[0], size[1]);
+                MicroBenchmark.compare("argb / rgb565 " + size[0] + "x" + size[1], iterations(size[0]),
+                        new Argb(converter, frame, 1), new Rgb565(converter, frame));
+            }
+        } finally {
+            converter.shutdown();
+        }
+    }
+
+    @Test
+    public void downscale() {
+        YuvConverter converter = new YuvConverter(THREADS);
+        try {
+            for (int[] size : SIZES) {
+                YuvFrame frame = frame(size[0], size[1]);
+                for (int scale : new int[] { 2, 4 }) {
+                    MicroBenchmark.compare("argb " + size[0] + "x" + size[1] + " full / 1/" + scale,
+                            iterations(size[0]), new Argb(converter, frame, 1), new Argb(converter, frame, scale));
+                }
+            }
+        } finally {
+            converter.shutdown();
+        }
+    }
+}
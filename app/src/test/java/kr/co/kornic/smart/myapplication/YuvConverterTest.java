@@ -0,0 +1,273 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class YuvConverterTest {
+    private final YuvConverter mConverter = new YuvConverter(1);
+
+    @After
+    public void tearDown() {
+        mConverter.shutdown();
+    }
+
+    /**
+     * A test image as separate planes: luma {@code width x height}, chroma at half resolution.
+     */
+    static final class Planes {
+        final int width;
+        final int height;
+        final int[] y;
+        final int[] u;
+        final int[] v;
+
+        Planes(int width, int height) {
+            this.width = width;
+            this.height = height;
+            y = new int[width * height];
+            u = new int[chromaWidth() * chromaHeight()];
+            v = new int[u.length];
+        }
+
+        int chromaWidth() {
+            return (width + 1) / 2;
+        }
+
+        int chromaHeight() {
+            return (height + 1) / 2;
+        }
+
+        /**
+         * @return The image laid out as I420: one byte per sample, rows padded to {@code yRowStride}
+         */
+        YuvFrame planar(int yRowStride, int uvRowStride) {
+            YuvFrame frame = new YuvFrame(width, height, yRowStride * height, uvRowStride * chromaHeight(), null);
+            fillLuma(frame, yRowStride);
+            for (int row = 0; row < chromaHeight(); row++) {
+                for (int col = 0; col < chromaWidth(); col++) {
+                    frame.getU()[row * uvRowStride + col] = (byte) u[row * chromaWidth() + col];
+                    frame.getV()[row * uvRowStride + col] = (byte) v[row * chromaWidth() + col];
+                }
+            }
+            frame.set(0, yRowStride, uvRowStride, 1);
+            return frame;
+        }
+
+        /**
+         * @return The image laid out as the camera's semi-planar output: U and V interleaved, each
+         * plane starting at its own first sample
+         */
+        YuvFrame semiPlanar(int rowStride) {
+            int length = rowStride * chromaHeight();
+            YuvFrame frame = new YuvFrame(width, height, rowStride * height, length, null);
+            fillLuma(frame, rowStride);
+            byte[] interleaved = new byte[length + 1];
+            for (int row = 0; row < chromaHeight(); row++) {
+                for (int col = 0; col < chromaWidth(); col++) {
+                    interleaved[row * rowStride + col * 2] = (byte) u[row * chromaWidth() + col];
+                    interleaved[row * rowStride + col * 2 + 1] = (byte) v[row * chromaWidth() + col];
+                }
+            }
+            System.arraycopy(interleaved, 0, frame.getU(), 0, length);
+            System.arraycopy(interleaved, 1, frame.getV(), 0, length);
+            frame.set(0, rowStride, rowStride, 2);
+            return frame;
+        }
+
+        private void fillLuma(YuvFrame frame, int rowStride) {
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++)
+                    frame.getY()[row * rowStride + col] = (byte) y[row * width + col];
+            }
+        }
+    }
+
+    static Planes solid(int width, int height, int y, int u, int v) {
+        Planes planes = new Planes(width, height);
+        Arrays.fill(planes.y, y);
+        Arrays.fill(planes.u, u);
+        Arrays.fill(planes.v, v);
+        return planes;
+    }
+
+    static Planes random(int width, int height, long seed) {
+        Random random = new Random(seed);
+        Planes planes = new Planes(width, height);
+        for (int i = 0; i < planes.y.length; i++)
+            planes.y[i] = random.nextInt(256);
+        for (int i = 0; i < planes.u.length; i++) {
+            planes.u[i] = random.nextInt(256);
+            planes.v[i] = random.nextInt(256);
+        }
+        return planes;
+    }
+
+    // Horizontal luma ramp, chroma ramps in both directions
+    static Planes gradient(int width, int height) {
+        Planes planes = new Planes(width, height);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++)
+                planes.y[row * width + col] = col * 255 / (width - 1);
+        }
+        for (int row = 0; row < planes.chromaHeight(); row++) {
+            for (int col = 0; col < planes.chromaWidth(); col++) {
+                planes.u[row * planes.chromaWidth() + col] = col * 255 / (planes.chromaWidth() - 1);
+                planes.v[row * planes.chromaWidth() + col] = row * 255 / (planes.chromaHeight() - 1);
+            }
+        }
+        return planes;
+    }
+
+    // The JFIF equations in floating point
+    static int reference(double y, int u, int v) {
+        int r = clamp(y + 1.402 * (v - 128));
+        int g = clamp(y - 0.344136 * (u - 128) - 0.714136 * (v - 128));
+        int b = clamp(y + 1.772 * (u - 128));
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static void assertClose(int expected, int actual, String where) {
+        for (int shift = 0; shift < 24; shift += 8) {
+            int e = (expected >> shift) & 0xFF;
+            int a = (actual >> shift) & 0xFF;
+            if (Math.abs(e - a) > 1)
+                fail(where + ": expected " + Integer.toHexString(expected) + " but was " + Integer.toHexString(actual));
+        }
+    }
+
+    private int[] argb(YuvFrame frame, int scale) {
+        int[] out = new int[YuvConverter.outputWidth(frame, scale) * YuvConverter.outputHeight(frame, scale)];
+        mConverter.toArgb8888(frame, scale, out);
+        return out;
+    }
+
+    @Test
+    public void primaries_matchTheirRgb() {
+        int[][] colours = {
+                // y, u, v, rgb
+                { 255, 128, 128, 0xFFFFFF },
+                { 0, 128, 128, 0x000000 },
+                { 128, 128, 128, 0x808080 },
+                { 76, 85, 255, 0xFE0000 },
+                { 149, 43, 21, 0x00FF00 },
+                { 29, 255, 107, 0x0000FE },
+        };
+        for (int[] colour : colours) {
+            int[] out = argb(solid(2, 2, colour[0], colour[1], colour[2]).planar(2, 1), 1);
+            assertClose(0xFF000000 | colour[3], out[0], "YUV " + colour[0] + "," + colour[1] + "," + colour[2]);
+            assertEquals(0xFF, out[0] >>> 24);
+        }
+    }
+
+    @Test
+    public void everyPixel_matchesTheReference() {
+        Planes planes = random(37, 23, 1);
+        int[] out = argb(planes.planar(40, 20), 1);
+
+        for (int row = 0; row < planes.height; row++) {
+            for (int col = 0; col < planes.width; col++) {
+                int c = (row / 2) * planes.chromaWidth() + col / 2;
+                assertClose(reference(planes.y[row * planes.width + col], planes.u[c], planes.v[c]),
+                        out[row * planes.width + col], "pixel " + col + "," + row);
+            }
+        }
+    }
+
+    @Test
+    public void strides_doNotChangeTheResult() {
+        Planes planes = random(64, 32, 2);
+
+        int[] planar = argb(planes.planar(64, 32), 1);
+        assertArrayEquals(planar, argb(planes.planar(80, 48), 1));
+        assertArrayEquals(planar, argb(planes.semiPlanar(64), 1));
+        assertArrayEquals(planar, argb(planes.semiPlanar(96), 1));
+    }
+
+    // CRC32 of the RGB bytes of the 64 x 48 gradient, as first converted
+    private static final long GOLDEN_GRADIENT_CRC = 420903631L;
+
+    @Test
+    public void gradient_matchesGoldenImage() {
+        Planes planes = gradient(64, 48);
+        int[] out = argb(planes.semiPlanar(64), 1);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < out.length; i++) {
+            int c = (i / 64 / 2) * planes.chromaWidth() + (i % 64) / 2;
+            assertClose(reference(planes.y[i], planes.u[c], planes.v[c]), out[i], "pixel " + i);
+            crc.update(out[i] >>> 16);
+            crc.update(out[i] >>> 8);
+            crc.update(out[i]);
+        }
+        // Catches any change to the rounding, not only one past the tolerance
+        assertEquals(GOLDEN_GRADIENT_CRC, crc.getValue());
+    }
+
+    @Test
+    public void rgb565_isArgbTruncated() {
+        YuvFrame frame = random(32, 16, 3).semiPlanar(32);
+        int[] argb = argb(frame, 1);
+        short[] rgb565 = new short[argb.length];
+        mConverter.toRgb565(frame, 1, rgb565);
+
+        for (int i = 0; i < argb.length; i++) {
+            int p = argb[i];
+            int expected = (((p >> 19) & 0x1F) << 11) | (((p >> 10) & 0x3F) << 5) | ((p >> 3) & 0x1F);
+            assertEquals(expected, rgb565[i] & 0xFFFF);
+        }
+    }
+
+    @Test
+    public void downscale_averagesEachBlock() {
+        Planes planes = random(30, 18, 4);
+        for (int scale : new int[] { 2, 3, 4 }) {
+            YuvFrame frame = planes.semiPlanar(32);
+            int[] out = argb(frame, scale);
+            int outWidth = planes.width / scale;
+            assertEquals(outWidth * (planes.height / scale), out.length);
+
+            for (int row = 0; row < planes.height / scale; row++) {
+                for (int col = 0; col < outWidth; col++) {
+                    double sum = 0;
+                    for (int by = 0; by < scale; by++) {
+                        for (int bx = 0; bx < scale; bx++)
+                            sum += planes.y[(row * scale + by) * planes.width + col * scale + bx];
+                    }
+                    int c = ((row * scale + scale / 2) / 2) * planes.chromaWidth() + (col * scale + scale / 2) / 2;
+                    assertClose(reference(sum / (scale * scale), planes.u[c], planes.v[c]),
+                            out[row * outWidth + col], "scale " + scale + " pixel " + col + "," + row);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void threads_produceTheSameImage() {
+        YuvFrame frame = random(101, 67, 5).semiPlanar(104);
+        YuvConverter parallel = new YuvConverter(4);
+        try {
+            for (int scale = 1; scale <= 3; scale++) {
+                int[] expected = argb(frame, scale);
+                int[] actual = new int[expected.length];
+                parallel.toArgb8888(frame, scale, actual);
+                assertArrayEquals(expected, actual);
+            }
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void smallBuffer_isRejected() {
+        mConverter.toArgb8888(solid(4, 4, 0, 128, 128).planar(4, 2), 1, new int[15]);
+    }
+}
@@ -0,0 +1,131 @@
+package kr.co.kornic.smart.myapplication;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exercises the ZSL frame selection with synthetic sensor timestamps.
+ */
+public class ZslRingBufferTest {
+    private static final long FRAME_NS = 33333333L; // 30 fps
+    private static final long MB = 1024 * 1024;
+
+    private final List<String> mRecycled = new ArrayList<>();
+    private final ZslRingBuffer.Recycler<String> mRecycler = new ZslRingBuffer.Recycler<String>() {
+        @Override
+        public void recycle(String frame) {
+            mRecycled.add(frame);
+        }
+    };
+
+    private ZslRingBuffer<String> mRing;
+
+    @Before
+    public void setUp() {
+        mRing = new ZslRingBuffer<>(3, 100 * MB, 1000000000L, mRecycler);
+    }
+
+    @Test
+    public void takeClosest_picksFrameNearestTrigger() {
+        for (int i = 0; i < 3; i++)
+            mRing.add("f" + i, i * FRAME_NS, MB);
+
+        assertEquals("f1", mRing.takeClosest(FRAME_NS + FRAME_NS / 3));
+        assertEquals("f2", mRing.takeClosest(10 * FRAME_NS));
+        assertEquals("f0", mRing.takeClosest(-FRAME_NS));
+        assertNull(mRing.takeClosest(0));
+        assertTrue(mRecycled.isEmpty());
+    }
+
+    @Test
+    public void takeClosest_prefersEarlierFrameOnTie() {
+        mRing.add("f0", 0, MB);
+        mRing.add("f1", FRAME_NS, MB);
+
+        assertEquals("f0", mRing.takeClosest(FRAME_NS / 2));
+    }
+
+    @Test
+    public void add_evictsOldestWhenFull() {
+        for (int i = 0; i < 5; i++)
+            mRing.add("f" + i, i * FRAME_NS, MB);
+
+        assertEquals(3, mRing.size());
+        assertEquals(3 * MB, mRing.bytes());
+        assertEquals(Arrays.asList("f0", "f1"), mRecycled);
+        assertEquals(4 * FRAME_NS, mRing.newestTimestamp());
+    }
+
+    @Test
+    public void add_respectsMemoryBudget() {
+        mRing = new ZslRingBuffer<>(8, 10 * MB, 1000000000L, mRecycler);
+        for (int i = 0; i < 4; i++)
+            mRing.add("f" + i, i * FRAME_NS, 4 * MB);
+
+        assertEquals(2, mRing.size());
+        assertTrue(mRing.bytes() <= 10 * MB);
+        assertEquals("f2", mRing.takeClosest(0));
+    }
+
+    @Test
+    public void add_rejectsFrameLargerThanBudget() {
+        mRing = new ZslRingBuffer<>(8, 10 * MB, 1000000000L, mRecycler);
+        mRing.add("small", 0, MB);
+
+        assertFalse(mRing.add("huge", FRAME_NS, 11 * MB));
+        assertEquals(1, mRing.size());
+        assertEquals(Arrays.asList("huge"), mRecycled);
+    }
+
+    @Test
+    public void add_evictsFramesOlderThanMaxAge() {
+        mRing = new ZslRingBuffer<>(8, 100 * MB, 5 * FRAME_NS, mRecycler);
+        mRing.add("f0", 0, MB);
+        mRing.add("f1", FRAME_NS, MB);
+        // A stall: the next frame arrives much later.
+        mRing.add("f9", 9 * FRAME_NS, MB);
+
+        assertEquals(1, mRing.size());
+        assertEquals(Arrays.asList("f0", "f1"), mRecycled);
+        assertEquals("f9", mRing.takeClosest(0));
+    }
+
+    @Test
+    public void takeClosest_fromMiddleKeepsOrder() {
+        mRing = new ZslRingBuffer<>(4, 100 * MB, 1000000000L, mRecycler);
+        // Wrap the ring around before taking from the middle.
+        for (int i = 0; i < 6; i++)
+            mRing.add("f" + i, i * FRAME_NS, MB);
+
+        assertEquals("f3", mRing.takeClosest(3 * FRAME_NS));
+        mRing.add("f6", 6 * FRAME_NS, MB);
+        mRing.add("f7", 7 * FRAME_NS, MB);
+
+        // f7 no longer fits, so the oldest frame goes.
+        assertEquals(4, mRing.size());
+        assertEquals(Arrays.asList("f0", "f1", "f2"), mRecycled);
+        assertEquals(7 * FRAME_NS, mRing.newestTimestamp());
+        assertEquals("f4", mRing.takeClosest(0));
+        assertEquals("f5", mRing.takeClosest(0));
+        assertEquals("f6", mRing.takeClosest(0));
+        assertEquals("f7", mRing.takeClosest(0));
+    }
+
+    @Test
+    public void clear_recyclesEverything() {
+        mRing.add("f0", 0, MB);
+        mRing.add("f1", FRAME_NS, MB);
+        mRing.clear();
+
+        assertEquals(0, mRing.size());
+        assertEquals(0, mRing.bytes());
+        assertEquals(Long.MIN_VALUE, mRing.newestTimestamp());
+        assertEquals(2, mRecycled.size());
+    }
+}